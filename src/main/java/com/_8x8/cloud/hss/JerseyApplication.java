@@ -6,6 +6,7 @@ import com._8x8.cloud.hss.resource.StreamResource;
 import com._8x8.cloud.hss.resource.TestingResource;
 import io.swagger.jaxrs.listing.ApiListingResource;
 import io.swagger.jaxrs.listing.SwaggerSerializers;
+import org.glassfish.jersey.media.sse.SseFeature;
 import org.glassfish.jersey.message.GZipEncoder;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.server.filter.EncodingFilter;
@@ -29,6 +30,9 @@ public class JerseyApplication extends ResourceConfig
         register(EncodingFilter.class);
         register(GZipEncoder.class);
 
+        // Server-Sent Events, for the change feed.
+        register(SseFeature.class);
+
         // Make Swagger happy.
         registerClasses(ApiListingResource.class, SwaggerSerializers.class);
     }
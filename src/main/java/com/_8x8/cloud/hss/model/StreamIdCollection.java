@@ -0,0 +1,36 @@
+package com._8x8.cloud.hss.model;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Provides a transport model for a collection of zero or more stream IDs, IE: for looking up the status of a lot of
+ * streams in one go.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+@ApiModel(value = "Provides a list of stream IDs.")
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.PROPERTY)
+@XmlType(propOrder = {
+        "ids"
+})
+public class StreamIdCollection
+{
+    /**
+     * Holds a collection of zero or more stream IDs. May be empty, but will never be null.
+     */
+    private List<String> _ids = new LinkedList<>();
+
+    @ApiModelProperty(value = "Stream IDs", required = true)
+    public List<String> getIds() { return _ids; }
+    public void setIds(final List<String> ids) { _ids = null == ids ? new LinkedList<>() : ids; }
+}
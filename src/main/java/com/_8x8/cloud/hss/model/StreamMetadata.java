@@ -1,11 +1,13 @@
 package com._8x8.cloud.hss.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 import javax.xml.bind.annotation.XmlType;
 
 /**
@@ -24,7 +26,9 @@ import javax.xml.bind.annotation.XmlType;
         "status",
         "fileSize",
         "lastModified",
-        "createdTime"
+        "createdTime",
+        "crc32c",
+        "sha256"
 })
 public class StreamMetadata
 {
@@ -54,6 +58,31 @@ public class StreamMetadata
      */
     private long _lastModifiedTime;
 
+    /**
+     * Holds the version of the contents of the stream that readers should see, IE: which version file to read. This is
+     * swapped once a write has completed, so it always points at a complete stream. May be null for streams written
+     * before we versioned them, in which case the contents live in a file named for the ID alone.
+     */
+    private String _contentVersion;
+
+    /**
+     * Holds the CRC32C of the contents of the stream (IE: of {@link #getContentVersion()}), as 8 hex digits. Like the
+     * size, this is after filters have been applied. May be null for streams written before we digested them.
+     */
+    private String _crc32c;
+
+    /**
+     * Holds the SHA-256 of the contents of the stream, as 64 hex digits. This doubles as our entity tag. May be null
+     * for streams written before we digested them.
+     */
+    private String _sha256;
+
+    /**
+     * Holds the version of the metadata itself, which is bumped every time it's written. This is what lets us make a
+     * conditional transition: we only move a stream along if nobody else has touched it since we read it.
+     */
+    private long _version;
+
     @ApiModelProperty(value = "Stream Id", required = true)
     public String getId() { return _id; }
     public void setId(final String id) { _id = id; }
@@ -73,4 +102,35 @@ public class StreamMetadata
     @ApiModelProperty(value = "Creation time of the stream", required = false)
     public long getCreatedTime() { return _createdTime; }
     public void setCreatedTime(final long createdTime) { _createdTime = createdTime; }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @ApiModelProperty(value = "CRC32C of the stream, after filters have been applied", required = false)
+    public String getCrc32c() { return _crc32c; }
+    public void setCrc32c(final String crc32c) { _crc32c = crc32c; }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @ApiModelProperty(value = "SHA-256 of the stream, after filters have been applied", required = false)
+    public String getSha256() { return _sha256; }
+    public void setSha256(final String sha256) { _sha256 = sha256; }
+
+    @XmlTransient
+    public String getContentVersion() { return _contentVersion; }
+    public void setContentVersion(final String contentVersion) { _contentVersion = contentVersion; }
+
+    @XmlTransient
+    public long getVersion() { return _version; }
+    public void setVersion(final long version) { _version = version; }
+
+    /**
+     * Determines whether or not the stream has a complete version we can read. That's anything that's been successfully
+     * uploaded, including ones that are being updated: until the update is done, readers get the previous version.
+     *
+     * @return True if the stream can be read, else false.
+     */
+    @XmlTransient
+    public boolean isReadable()
+    {
+        return StreamStatus.SUCCESSFUL.equals(getStatus())
+            || (StreamStatus.IN_PROGRESS.equals(getStatus()) && null != getContentVersion());
+    }
 }
@@ -1,19 +1,30 @@
 package com._8x8.cloud.hss.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
 import java.util.LinkedList;
 import java.util.List;
 
 /**
- * Provides a transport model for a collection of zero or more {@link StreamMetadata} entities.
+ * Provides a transport model for a collection of zero or more {@link StreamMetadata} entities. If there are more where
+ * these came from, {@link #getNext()} says where to pick up.<p/>
+ *
+ * Please note that we use an explicit {@link XmlType} so that we can have reproducible ordering, and that the cursor is
+ * left out entirely on the last page.
  *
  * @author kog@epiphanic.org
  * @since 06/02/2015
  */
 @XmlRootElement
 @XmlAccessorType(XmlAccessType.PROPERTY)
+@XmlType(propOrder = {
+        "metadata",
+        "next"
+})
 public class StreamMetadataCollection
 {
     /**
@@ -21,6 +32,12 @@ public class StreamMetadataCollection
      */
     private List<StreamMetadata> _metadata = new LinkedList<>();
 
+    /**
+     * Holds an opaque cursor for the next page of {@link StreamMetadata}, if there is one. May be null, in which case
+     * this is the last page.
+     */
+    private String _next;
+
     public List<StreamMetadata> getMetadata()
     {
         return _metadata;
@@ -30,4 +47,15 @@ public class StreamMetadataCollection
     {
         _metadata = metadata;
     }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getNext()
+    {
+        return _next;
+    }
+
+    public void setNext(final String next)
+    {
+        _next = next;
+    }
 }
@@ -0,0 +1,99 @@
+package com._8x8.cloud.hss.model;
+
+import io.swagger.annotations.ApiParam;
+
+import javax.ws.rs.QueryParam;
+
+/**
+ * Provides a set of criteria for narrowing down a listing of {@link StreamMetadata}. Every criterion is optional, and
+ * those that are given must all match. Ranges are inclusive at the low end, and exclusive at the high end, so that
+ * adjacent ranges (IE: consecutive hours) don't overlap. Times are in milliseconds since the epoch, same as on
+ * {@link StreamMetadata}.<p/>
+ *
+ * This doubles as a bean for our query parameters, see {@link javax.ws.rs.BeanParam}.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamMetadataCriteria
+{
+    /**
+     * Holds the {@link StreamStatus} streams must have, if any.
+     */
+    @ApiParam(value = "Only list streams with this status.", required = false, allowableValues = "SUCCESSFUL,IN_PROGRESS,FAILED")
+    @QueryParam("status")
+    private StreamStatus _status;
+
+    /**
+     * Holds the smallest size streams may have, in bytes, if any.
+     */
+    @ApiParam(value = "Only list streams of at least this many bytes.", required = false)
+    @QueryParam("minSize")
+    private Long _minSize;
+
+    /**
+     * Holds the size streams must be smaller than, in bytes, if any.
+     */
+    @ApiParam(value = "Only list streams of fewer than this many bytes.", required = false)
+    @QueryParam("maxSize")
+    private Long _maxSize;
+
+    /**
+     * Holds the earliest time streams may have been created at, if any.
+     */
+    @ApiParam(value = "Only list streams created at or after this time (ms since the epoch).", required = false)
+    @QueryParam("createdAfter")
+    private Long _createdAfter;
+
+    /**
+     * Holds the time streams must have been created before, if any.
+     */
+    @ApiParam(value = "Only list streams created before this time (ms since the epoch).", required = false)
+    @QueryParam("createdBefore")
+    private Long _createdBefore;
+
+    /**
+     * Holds the earliest time streams may have last been modified at, if any.
+     */
+    @ApiParam(value = "Only list streams last modified at or after this time (ms since the epoch).", required = false)
+    @QueryParam("modifiedAfter")
+    private Long _modifiedAfter;
+
+    /**
+     * Holds the time streams must have last been modified before, if any.
+     */
+    @ApiParam(value = "Only list streams last modified before this time (ms since the epoch).", required = false)
+    @QueryParam("modifiedBefore")
+    private Long _modifiedBefore;
+
+    /**
+     * Holds the prefix stream IDs must start with, if any.
+     */
+    @ApiParam(value = "Only list streams whose IDs start with this prefix.", required = false)
+    @QueryParam("prefix")
+    private String _prefix;
+
+    public StreamStatus getStatus() { return _status; }
+    public void setStatus(final StreamStatus status) { _status = status; }
+
+    public Long getMinSize() { return _minSize; }
+    public void setMinSize(final Long minSize) { _minSize = minSize; }
+
+    public Long getMaxSize() { return _maxSize; }
+    public void setMaxSize(final Long maxSize) { _maxSize = maxSize; }
+
+    public Long getCreatedAfter() { return _createdAfter; }
+    public void setCreatedAfter(final Long createdAfter) { _createdAfter = createdAfter; }
+
+    public Long getCreatedBefore() { return _createdBefore; }
+    public void setCreatedBefore(final Long createdBefore) { _createdBefore = createdBefore; }
+
+    public Long getModifiedAfter() { return _modifiedAfter; }
+    public void setModifiedAfter(final Long modifiedAfter) { _modifiedAfter = modifiedAfter; }
+
+    public Long getModifiedBefore() { return _modifiedBefore; }
+    public void setModifiedBefore(final Long modifiedBefore) { _modifiedBefore = modifiedBefore; }
+
+    public String getPrefix() { return _prefix; }
+    public void setPrefix(final String prefix) { _prefix = prefix; }
+}
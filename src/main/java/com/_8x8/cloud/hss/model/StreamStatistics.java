@@ -0,0 +1,71 @@
+package com._8x8.cloud.hss.model;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * Provides a transport model for aggregate statistics over every stream known to the system, IE: for capacity planning.
+ * Streams that don't exist ({@link StreamStatus#NOT_FOUND}) aren't counted.<p/>
+ *
+ * Please note that we use an explicit {@link XmlType} so that we can have reproducible ordering.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+@ApiModel(value = "Provides counts of the streams known to the system by status, and how much they take up.")
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.PROPERTY)
+@XmlType(propOrder = {
+        "streamCount",
+        "successfulCount",
+        "inProgressCount",
+        "failedCount",
+        "totalBytes"
+})
+public class StreamStatistics
+{
+    /**
+     * Holds the number of {@link StreamStatus#SUCCESSFUL} streams.
+     */
+    private long _successfulCount;
+
+    /**
+     * Holds the number of {@link StreamStatus#IN_PROGRESS} streams.
+     */
+    private long _inProgressCount;
+
+    /**
+     * Holds the number of {@link StreamStatus#FAILED} streams.
+     */
+    private long _failedCount;
+
+    /**
+     * Holds the total size of every stream, after filters have been applied.
+     */
+    private long _totalBytes;
+
+    @ApiModelProperty(value = "Number of streams, whatever their status", required = true)
+    public long getStreamCount() { return _successfulCount + _inProgressCount + _failedCount; }
+    public void setStreamCount(final long streamCount) { /* Derived, but JAXB wants a setter. */ }
+
+    @ApiModelProperty(value = "Number of successfully uploaded streams", required = true)
+    public long getSuccessfulCount() { return _successfulCount; }
+    public void setSuccessfulCount(final long successfulCount) { _successfulCount = successfulCount; }
+
+    @ApiModelProperty(value = "Number of streams being uploaded", required = true)
+    public long getInProgressCount() { return _inProgressCount; }
+    public void setInProgressCount(final long inProgressCount) { _inProgressCount = inProgressCount; }
+
+    @ApiModelProperty(value = "Number of streams whose last upload failed", required = true)
+    public long getFailedCount() { return _failedCount; }
+    public void setFailedCount(final long failedCount) { _failedCount = failedCount; }
+
+    @ApiModelProperty(value = "Total size of all streams, after filters have been applied", required = true)
+    public long getTotalBytes() { return _totalBytes; }
+    public void setTotalBytes(final long totalBytes) { _totalBytes = totalBytes; }
+}
@@ -0,0 +1,78 @@
+package com._8x8.cloud.hss.model;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Provides a transport model for the status of each of a collection of streams. This is deliberately a lot smaller
+ * than a {@link StreamMetadataCollection}, since it's meant for checking up on thousands of streams at a time: each
+ * entry is just an ID and a {@link StreamStatus}, which is {@link StreamStatus#NOT_FOUND} for a stream we don't know.<p/>
+ *
+ * Please note that we use an explicit {@link XmlType} so that we can have reproducible ordering.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+@ApiModel(value = "Provides the status of each of a list of streams.")
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.PROPERTY)
+@XmlType(propOrder = {
+        "statuses"
+})
+public class StreamStatusCollection
+{
+    /**
+     * Holds the status of zero or more streams. May be empty, but will never be null.
+     */
+    private List<Entry> _statuses = new LinkedList<>();
+
+    @ApiModelProperty(value = "Stream statuses, one per distinct ID asked for, in the same order", required = true)
+    public List<Entry> getStatuses() { return _statuses; }
+    public void setStatuses(final List<Entry> statuses) { _statuses = statuses; }
+
+    /**
+     * Provides the status of a single stream.
+     */
+    @XmlAccessorType(XmlAccessType.PROPERTY)
+    @XmlType(name = "streamStatusEntry", propOrder = {
+            "id",
+            "status"
+    })
+    public static class Entry
+    {
+        /**
+         * Holds the ID of the stream.
+         */
+        private String _id;
+
+        /**
+         * Holds the {@link StreamStatus} of the stream.
+         */
+        private StreamStatus _status;
+
+        public Entry()
+        {
+        }
+
+        public Entry(final String id, final StreamStatus status)
+        {
+            _id = id;
+            _status = status;
+        }
+
+        @ApiModelProperty(value = "Stream Id", required = true)
+        public String getId() { return _id; }
+        public void setId(final String id) { _id = id; }
+
+        @ApiModelProperty(value = "Stream status", required = true)
+        public StreamStatus getStatus() { return _status; }
+        public void setStatus(final StreamStatus status) { _status = status; }
+    }
+}
@@ -0,0 +1,369 @@
+package com._8x8.cloud.hss.persistence;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
+import com._8x8.cloud.hss.model.StreamStatistics;
+import com._8x8.cloud.hss.model.StreamStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Provides a fast path for lookups of streams that don't exist, in front of another {@link IStreamStateDao}. Crawlers
+ * and buggy clients ask for a lot of those, and each one costs a query that comes back empty. We keep a Bloom filter of
+ * every stream ID we know about (see {@link StreamIdFilter}), and anything it's never heard of is answered as
+ * {@link StreamStatus#NOT_FOUND} on the spot.<p/>
+ *
+ * The filter is built from the database in the background once we start (see {@link #init()}), and we pass everything
+ * through until it's ready. Every stream written through us is added to it once the write is done. Deleted streams
+ * can't be taken out of a Bloom filter, so we rebuild it every so often (see {@link #setRebuildIntervalSeconds(long)}),
+ * which is also when we grow it if we've outgrown our sizing. Writes that land while we're rebuilding are added to both
+ * the old and new filters, so nothing falls through the cracks.<p/>
+ *
+ * Please note that when several nodes share a database, we won't know about streams created by the others until our
+ * next rebuild, and will answer that they don't exist in the meantime. If that matters, either rebuild often (see
+ * {@link #rebuild()}, which can also be called over JMX), or leave this out.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class BloomFilteredStreamStateDao implements IStreamStateDao
+{
+    /**
+     * Holds the {@link Logger} for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(BloomFilteredStreamStateDao.class);
+
+    /**
+     * Holds the number of {@link StreamMetadata} we read at a time while rebuilding.
+     */
+    static final int REBUILD_PAGE_SIZE = 1000;
+
+    /**
+     * Holds the {@link IStreamStateDao} we're filtering lookups for.
+     */
+    private IStreamStateDao _streamStateDao;
+
+    /**
+     * Holds the number of streams we size our filter for, at the least. Defaults to 1,000,000 (a bit over 1MB of filter).
+     */
+    private long _expectedStreams = 1000000;
+
+    /**
+     * Holds the rate of false positives (IE: lookups that go to the database for nothing) we're willing to put up with.
+     * Defaults to 1%.
+     */
+    private double _falsePositiveRate = 0.01;
+
+    /**
+     * Holds the number of seconds between rebuilds of our filter. Defaults to an hour.
+     */
+    private long _rebuildIntervalSeconds = 3600;
+
+    /**
+     * Holds the {@link StreamIdFilter} we check lookups against, or null if we haven't built one yet.
+     */
+    private volatile StreamIdFilter _filter;
+
+    /**
+     * Holds the {@link StreamIdFilter} we're in the middle of building, if any, so that writes can be added to it too.
+     */
+    private volatile StreamIdFilter _pendingFilter;
+
+    /**
+     * Holds the executor we rebuild on, if we were started with {@link #init()}.
+     */
+    private ScheduledExecutorService _executor;
+
+    /**
+     * Holds the number of lookups we answered without going to the database.
+     */
+    private final AtomicLong _lookupsSkipped = new AtomicLong();
+
+    /**
+     * Holds the number of lookups we let through to the database.
+     */
+    private final AtomicLong _lookupsPassed = new AtomicLong();
+
+    /**
+     * Holds the number of times we've rebuilt our filter.
+     */
+    private final AtomicLong _rebuildCount = new AtomicLong();
+
+    /**
+     * Holds how long our last rebuild took, in milliseconds.
+     */
+    private volatile long _lastRebuildMillis;
+
+    public IStreamStateDao getStreamStateDao() { return _streamStateDao; }
+    public void setStreamStateDao(final IStreamStateDao streamStateDao) { _streamStateDao = streamStateDao; }
+
+    public long getExpectedStreams() { return _expectedStreams; }
+    public void setExpectedStreams(final long expectedStreams) { _expectedStreams = expectedStreams; }
+
+    public double getFalsePositiveRate() { return _falsePositiveRate; }
+    public void setFalsePositiveRate(final double falsePositiveRate) { _falsePositiveRate = falsePositiveRate; }
+
+    public long getRebuildIntervalSeconds() { return _rebuildIntervalSeconds; }
+    public void setRebuildIntervalSeconds(final long rebuildIntervalSeconds) { _rebuildIntervalSeconds = rebuildIntervalSeconds; }
+
+    public long getLookupsSkipped() { return _lookupsSkipped.get(); }
+    public long getLookupsPassed() { return _lookupsPassed.get(); }
+    public long getRebuildCount() { return _rebuildCount.get(); }
+    public long getLastRebuildMillis() { return _lastRebuildMillis; }
+
+    /**
+     * Gets the number of stream IDs in our filter, which may count some streams more than once.
+     *
+     * @return The number of IDs we've added since our last rebuild, or -1 if we haven't built our filter yet.
+     */
+    public long getFilterSize()
+    {
+        final StreamIdFilter filter = _filter;
+        return null == filter ? -1 : filter.size();
+    }
+
+    /**
+     * Kicks off building our filter in the background, and schedules rebuilding it every so often.
+     */
+    public void init()
+    {
+        _executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "hss-stream-id-filter");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        _executor.scheduleWithFixedDelay(this::rebuildQuietly, 0, getRebuildIntervalSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops rebuilding our filter, and waits for any rebuild in progress to finish.
+     */
+    public void destroy() throws InterruptedException
+    {
+        if (null != _executor)
+        {
+            _executor.shutdownNow();
+            _executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    @Override
+    public StreamMetadata createStreamMetadata(final String streamId, final StreamStatus status)
+    {
+        return getStreamStateDao().createStreamMetadata(streamId, status);
+    }
+
+    @Override
+    public List<StreamMetadata> findStreamMetadata() throws Exception
+    {
+        return getStreamStateDao().findStreamMetadata();
+    }
+
+    @Override
+    public List<StreamMetadata> findStreamMetadata(final StreamMetadataCriteria criteria, final String afterStreamId, final int limit) throws Exception
+    {
+        return getStreamStateDao().findStreamMetadata(criteria, afterStreamId, limit);
+    }
+
+    @Override
+    public StreamMetadata findStreamMetadataById(final String streamId) throws Exception
+    {
+        if (!mightExist(streamId))
+        {
+            return createStreamMetadata(streamId, StreamStatus.NOT_FOUND);
+        }
+
+        return getStreamStateDao().findStreamMetadataById(streamId);
+    }
+
+    @Override
+    public List<StreamMetadata> findStreamMetadataByIds(final Collection<String> streamIds) throws Exception
+    {
+        final List<String> candidates = streamIds.stream().filter(this::mightExist).collect(Collectors.toList());
+        return candidates.isEmpty() ? Collections.emptyList() : getStreamStateDao().findStreamMetadataByIds(candidates);
+    }
+
+    @Override
+    public StreamStatistics getStreamStatistics() throws Exception
+    {
+        return getStreamStateDao().getStreamStatistics();
+    }
+
+    @Override
+    public void saveOrUpdateStreamMetadata(final StreamMetadata metadata) throws Exception
+    {
+        try
+        {
+            getStreamStateDao().saveOrUpdateStreamMetadata(metadata);
+        }
+        finally
+        {
+            add(metadata.getId());
+        }
+    }
+
+    @Override
+    public boolean transitionStreamMetadata(final StreamMetadata metadata, final StreamStatus status) throws Exception
+    {
+        try
+        {
+            return getStreamStateDao().transitionStreamMetadata(metadata, status);
+        }
+        finally
+        {
+            // Whether we created it or somebody else did, it's there now.
+            add(metadata.getId());
+        }
+    }
+
+    @Override
+    public int insertStreamMetadata(final Collection<StreamMetadata> metadata) throws Exception
+    {
+        try
+        {
+            return getStreamStateDao().insertStreamMetadata(metadata);
+        }
+        finally
+        {
+            metadata.forEach(streamMetadata -> add(streamMetadata.getId()));
+        }
+    }
+
+    @Override
+    public void deleteStreamMetadataById(final String streamId) throws Exception
+    {
+        // There's no taking it out of the filter, it'll be gone after our next rebuild.
+        getStreamStateDao().deleteStreamMetadataById(streamId);
+    }
+
+    /**
+     * Rebuilds our filter from scratch, from every stream ID in the database. Lookups carry on against our current
+     * filter (if any) while we do, and we swap the new one in once we're done.
+     *
+     * @return The number of streams in the new filter.
+     */
+    public synchronized long rebuild() throws Exception
+    {
+        final long start = System.nanoTime();
+
+        // Leave ourselves room to grow, if we're past our sizing.
+        final StreamIdFilter current = _filter;
+        final long expected = Math.max(getExpectedStreams(), null == current ? 0 : 2 * current.size());
+        final StreamIdFilter filter = new StreamIdFilter(expected, getFalsePositiveRate());
+
+        // Publish it before we read anything, so that any write we might miss gets added to it. See add(String).
+        _pendingFilter = filter;
+
+        try
+        {
+            String afterId = null;
+            List<StreamMetadata> page;
+
+            do
+            {
+                page = getStreamStateDao().findStreamMetadata(null, afterId, REBUILD_PAGE_SIZE);
+                page.forEach(metadata -> filter.put(metadata.getId()));
+
+                if (!page.isEmpty())
+                {
+                    afterId = page.get(page.size() - 1).getId();
+                }
+            }
+            while (page.size() == REBUILD_PAGE_SIZE && !Thread.currentThread().isInterrupted());
+
+            if (Thread.currentThread().isInterrupted())
+            {
+                throw new InterruptedException("Interrupted while rebuilding our filter.");
+            }
+
+            // This order matters, see add(String).
+            _filter = filter;
+        }
+        finally
+        {
+            _pendingFilter = null;
+        }
+
+        _lastRebuildMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        _rebuildCount.incrementAndGet();
+
+        LOGGER.info("Rebuilt stream ID filter with {} streams ({} bits, {} hashes) in {}ms.",
+                    filter.size(), filter.getBitCount(), filter.getHashCount(), _lastRebuildMillis);
+
+        return filter.size();
+    }
+
+    /**
+     * Checks whether a given stream might exist, and keeps score.
+     *
+     * @param streamId The ID of the stream to check. Must not be null.
+     *
+     * @return False if the stream definitely doesn't exist, true if it might (or if we don't have a filter yet).
+     */
+    boolean mightExist(final String streamId)
+    {
+        final StreamIdFilter filter = _filter;
+
+        if (null != filter && !filter.mightContain(streamId))
+        {
+            _lookupsSkipped.incrementAndGet();
+            return false;
+        }
+
+        _lookupsPassed.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Adds a stream ID to our filter, and to the one we're building if we're in the middle of a rebuild. This has to
+     * happen after the write: then either the rebuild had yet to start (and will read our write), or we'll see the
+     * filter it's building. We check for that first, because a rebuild swaps its filter in before it stops publishing
+     * it, so if we find it's done we're sure to see the new filter.
+     *
+     * @param streamId The ID of the stream to add. Must not be null.
+     */
+    void add(final String streamId)
+    {
+        final StreamIdFilter pending = _pendingFilter;
+        final StreamIdFilter filter = _filter;
+
+        if (null != pending)
+        {
+            pending.put(streamId);
+        }
+
+        if (null != filter && filter != pending)
+        {
+            filter.put(streamId);
+        }
+    }
+
+    /**
+     * Provides a convenience method to rebuild on our executor, where there's nobody to throw to.
+     */
+    void rebuildQuietly()
+    {
+        try
+        {
+            rebuild();
+        }
+        catch (final InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (final Exception ex)
+        {
+            LOGGER.error("Failed to rebuild stream ID filter, keeping the one we have.", ex);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com._8x8.cloud.hss.persistence;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
+import com._8x8.cloud.hss.model.StreamStatistics;
+import com._8x8.cloud.hss.model.StreamStatus;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides a write-through cache of {@link StreamMetadata} by ID, in front of another {@link IStreamStateDao}. Every GET
+ * looks up the metadata for its stream more than once (IE: for the status, and again for the contents), and the bulk of
+ * our traffic is for a handful of streams, so there's no reason for those lookups to go to the database every time.<p/>
+ *
+ * Only {@link #findStreamMetadataById(String)} is cached (unknown streams included); listings always go to the database.
+ * Every write through us drops the cached entry once it's done (or failed), so a stale entry can't survive a write, and
+ * the next read picks up what the database filled in (IE: the new version and timestamps). We don't reload there and
+ * then: a stream is written several times per upload, and there's no point paying a round trip apiece for reads that
+ * may never come. A load that read the row before a write can't land after we've dropped it, since loads and drops for
+ * the same ID are atomic with respect to one another. Since {@link StreamMetadata} is mutable, callers always get their
+ * own copy.<p/>
+ *
+ * Please note that when several nodes share a database, we won't see writes made by the others until our entry expires
+ * (see {@link #setExpireAfterSeconds(long)}), or somebody calls {@link #invalidate(String)} or {@link #invalidateAll()}
+ * (IE: over JMX, or from a message listener). A transition made against a stale entry simply fails its compare-and-set,
+ * after which we drop it, so at worst a stale entry costs a retry rather than a lost write.<p/>
+ *
+ * Hit, miss and eviction counts are exposed via getters, so they can be published over JMX and used to size the cache.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class CachingStreamStateDao implements IStreamStateDao
+{
+    /**
+     * Holds the {@link IStreamStateDao} we're caching in front of.
+     */
+    private IStreamStateDao _streamStateDao;
+
+    /**
+     * Holds the maximum number of streams we'll cache metadata for. Defaults to 100,000.
+     */
+    private long _maximumSize = 100000;
+
+    /**
+     * Holds the number of seconds we'll hold on to cached metadata for, which bounds how stale it can get when somebody
+     * else writes to our database. Defaults to 30.
+     */
+    private long _expireAfterSeconds = 30;
+
+    /**
+     * Holds the {@link Ticker} our expiry is measured against. Only overridden for testing.
+     */
+    private Ticker _ticker = Ticker.systemTicker();
+
+    /**
+     * Holds the actual {@link Cache}, keyed by stream ID. Created by {@link #init()}.
+     */
+    private Cache<String, StreamMetadata> _cache;
+
+    public IStreamStateDao getStreamStateDao() { return _streamStateDao; }
+    public void setStreamStateDao(final IStreamStateDao streamStateDao) { _streamStateDao = streamStateDao; }
+
+    public long getMaximumSize() { return _maximumSize; }
+    public void setMaximumSize(final long maximumSize) { _maximumSize = maximumSize; }
+
+    public long getExpireAfterSeconds() { return _expireAfterSeconds; }
+    public void setExpireAfterSeconds(final long expireAfterSeconds) { _expireAfterSeconds = expireAfterSeconds; }
+
+    void setTicker(final Ticker ticker) { _ticker = ticker; }
+
+    /**
+     * Builds our underlying cache from our configuration. Must be called before anything else.
+     */
+    public void init()
+    {
+        _cache = Caffeine.newBuilder()
+                         .maximumSize(getMaximumSize())
+                         .expireAfterWrite(getExpireAfterSeconds(), TimeUnit.SECONDS)
+                         .ticker(_ticker)
+                         .recordStats()
+                         .build();
+    }
+
+    @Override
+    public StreamMetadata createStreamMetadata(final String streamId, final StreamStatus status)
+    {
+        return getStreamStateDao().createStreamMetadata(streamId, status);
+    }
+
+    @Override
+    public List<StreamMetadata> findStreamMetadata() throws Exception
+    {
+        return getStreamStateDao().findStreamMetadata();
+    }
+
+    @Override
+    public List<StreamMetadata> findStreamMetadata(final StreamMetadataCriteria criteria, final String afterStreamId, final int limit) throws Exception
+    {
+        return getStreamStateDao().findStreamMetadata(criteria, afterStreamId, limit);
+    }
+
+    @Override
+    public StreamMetadata findStreamMetadataById(final String streamId) throws Exception
+    {
+        try
+        {
+            return copy(_cache.get(streamId, this::load));
+        }
+        catch (final UndeclaredThrowableException ex)
+        {
+            throw (Exception) ex.getCause();
+        }
+    }
+
+    @Override
+    public List<StreamMetadata> findStreamMetadataByIds(final Collection<String> streamIds) throws Exception
+    {
+        return getStreamStateDao().findStreamMetadataByIds(streamIds);
+    }
+
+    @Override
+    public StreamStatistics getStreamStatistics() throws Exception
+    {
+        return getStreamStateDao().getStreamStatistics();
+    }
+
+    @Override
+    public void saveOrUpdateStreamMetadata(final StreamMetadata metadata) throws Exception
+    {
+        try
+        {
+            getStreamStateDao().saveOrUpdateStreamMetadata(metadata);
+        }
+        finally
+        {
+            invalidate(metadata.getId());
+        }
+    }
+
+    @Override
+    public boolean transitionStreamMetadata(final StreamMetadata metadata, final StreamStatus status) throws Exception
+    {
+        try
+        {
+            return getStreamStateDao().transitionStreamMetadata(metadata, status);
+        }
+        finally
+        {
+            // Either way our entry is out of date: we've just changed it, or it had changed underneath us (or we can't tell).
+            invalidate(metadata.getId());
+        }
+    }
+
+    @Override
+    public int insertStreamMetadata(final Collection<StreamMetadata> metadata) throws Exception
+    {
+        try
+        {
+            return getStreamStateDao().insertStreamMetadata(metadata);
+        }
+        finally
+        {
+            // As with any other write, these load on demand.
+            metadata.forEach(streamMetadata -> invalidate(streamMetadata.getId()));
+        }
+    }
+
+    @Override
+    public void deleteStreamMetadataById(final String streamId) throws Exception
+    {
+        try
+        {
+            getStreamStateDao().deleteStreamMetadataById(streamId);
+        }
+        finally
+        {
+            invalidate(streamId);
+        }
+    }
+
+    /**
+     * Drops any cached metadata for a given stream, so that the next lookup goes to the database. Should be called
+     * whenever somebody else (IE: another node) modifies or deletes a stream.
+     *
+     * @param streamId The ID of the stream to invalidate. Must not be null.
+     */
+    public void invalidate(final String streamId)
+    {
+        _cache.invalidate(streamId);
+    }
+
+    /**
+     * Drops all cached metadata, so that every lookup goes to the database until the cache warms back up.
+     */
+    public void invalidateAll()
+    {
+        _cache.invalidateAll();
+    }
+
+    public long getHitCount() { return _cache.stats().hitCount(); }
+    public long getMissCount() { return _cache.stats().missCount(); }
+    public long getEvictionCount() { return _cache.stats().evictionCount(); }
+    public double getHitRate() { return _cache.stats().hitRate(); }
+    public long getSize() { return _cache.estimatedSize(); }
+
+    /**
+     * Gets a snapshot of the statistics for our cache.
+     *
+     * @return A {@link CacheStats} snapshot. Will not be null.
+     */
+    CacheStats getStats()
+    {
+        return _cache.stats();
+    }
+
+    /**
+     * Provides a convenience method to load the metadata for a given stream from the database, for use by our cache.
+     *
+     * @param streamId The ID of the stream to load. Must not be null.
+     *
+     * @return The {@link StreamMetadata} for the stream. Will not be null.
+     *
+     * @throws UndeclaredThrowableException If we fail to load the metadata, wrapping whatever the database threw.
+     */
+    StreamMetadata load(final String streamId)
+    {
+        try
+        {
+            return getStreamStateDao().findStreamMetadataById(streamId);
+        }
+        catch (final RuntimeException ex)
+        {
+            throw ex;
+        }
+        catch (final Exception ex)
+        {
+            throw new UndeclaredThrowableException(ex);
+        }
+    }
+
+    /**
+     * Provides a convenience method to copy a {@link StreamMetadata}, so that callers can't change what we've cached.
+     *
+     * @param metadata The {@link StreamMetadata} to copy. Must not be null.
+     *
+     * @return A new {@link StreamMetadata} with the same values. Will not be null.
+     */
+    static StreamMetadata copy(final StreamMetadata metadata)
+    {
+        final StreamMetadata copy = new StreamMetadata();
+
+        copy.setId(metadata.getId());
+        copy.setStatus(metadata.getStatus());
+        copy.setFileSize(metadata.getFileSize());
+        copy.setCreatedTime(metadata.getCreatedTime());
+        copy.setLastModified(metadata.getLastModified());
+        copy.setContentVersion(metadata.getContentVersion());
+        copy.setCrc32c(metadata.getCrc32c());
+        copy.setSha256(metadata.getSha256());
+        copy.setVersion(metadata.getVersion());
+
+        return copy;
+    }
+}
@@ -0,0 +1,103 @@
+package com._8x8.cloud.hss.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provides a way to measure (and trigger) the expensive parts of running against a file-backed HSQL database: opening it,
+ * and checkpointing it.<p/>
+ *
+ * On open, HSQL replays whatever is in its log since the last checkpoint, and loads any <code>MEMORY</code> tables in
+ * full. On checkpoint, it rewrites its script and flushes its cache, which stalls writers for the duration. Both are
+ * bounded by our durable schema (see <code>schema-durable.sql</code>): our table is <code>CACHED</code>, so only its
+ * index roots are read on open, and the log is capped so there's only so much to replay. This keeps score, so we can tell
+ * whether the bounds are right.<p/>
+ *
+ * HSQL checkpoints on its own once the log fills up. {@link #checkpoint()} is there for when you'd rather pick the moment
+ * (IE: off-peak, or right before a planned restart), and times the result. Timings are exposed via getters, so they can be
+ * published over JMX.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class DatabaseCheckpointer
+{
+    /**
+     * Holds a logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseCheckpointer.class);
+
+    /**
+     * Holds a {@link JdbcTemplate} over the database we're checkpointing.
+     */
+    private JdbcTemplate _jdbcTemplate;
+
+    /**
+     * Holds how long it took to open the database, in milliseconds.
+     */
+    private volatile long _openMillis;
+
+    /**
+     * Holds how long our last checkpoint took, in milliseconds.
+     */
+    private volatile long _lastCheckpointMillis;
+
+    /**
+     * Holds the number of checkpoints we've requested.
+     */
+    private final AtomicLong _checkpointCount = new AtomicLong();
+
+    /**
+     * Holds how long all our checkpoints have taken, in milliseconds.
+     */
+    private final AtomicLong _totalCheckpointMillis = new AtomicLong();
+
+    public JdbcTemplate getJdbcTemplate() { return _jdbcTemplate; }
+    public void setDataSource(final DataSource dataSource) { _jdbcTemplate = new JdbcTemplate(dataSource); }
+
+    public long getOpenMillis() { return _openMillis; }
+    public long getLastCheckpointMillis() { return _lastCheckpointMillis; }
+    public long getCheckpointCount() { return _checkpointCount.get(); }
+    public long getTotalCheckpointMillis() { return _totalCheckpointMillis.get(); }
+
+    /**
+     * Opens the database, and records how long that took. Please note that this needs to run before anything else touches
+     * the database, or there'll be nothing left to measure.
+     */
+    public void init()
+    {
+        final long start = System.nanoTime();
+
+        // Our pool doesn't connect until somebody asks, and HSQL doesn't open the database until somebody connects.
+        getJdbcTemplate().execute((ConnectionCallback<Void>) connection -> null);
+
+        _openMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOGGER.info("Opened metadata store in {}ms.", _openMillis);
+    }
+
+    /**
+     * Checkpoints the database: its log is folded into its data files and truncated, so the next open has nothing to
+     * replay. Writers are blocked while this runs.
+     *
+     * @return How long the checkpoint took, in milliseconds.
+     */
+    public long checkpoint()
+    {
+        final long start = System.nanoTime();
+
+        getJdbcTemplate().execute("CHECKPOINT");
+
+        _lastCheckpointMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        _checkpointCount.incrementAndGet();
+        _totalCheckpointMillis.addAndGet(_lastCheckpointMillis);
+
+        LOGGER.info("Checkpointed metadata store in {}ms.", _lastCheckpointMillis);
+        return _lastCheckpointMillis;
+    }
+}
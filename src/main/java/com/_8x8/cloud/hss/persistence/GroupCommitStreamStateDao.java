@@ -0,0 +1,379 @@
+package com._8x8.cloud.hss.persistence;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
+import com._8x8.cloud.hss.model.StreamStatistics;
+import com._8x8.cloud.hss.model.StreamStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Provides group commit for state transitions and deletes, in front of a {@link StreamStateDao}. Every upload costs at
+ * least two transitions (IE: to in progress, then to successful or failed), each of which is a round trip and a commit
+ * of its own, so under a burst of small uploads the database becomes our bottleneck. Instead, callers queue up their
+ * writes and wait, while a single writer thread applies whatever has queued up as one batch, in one transaction (see
+ * {@link StreamStateDao#transitionStreamMetadata(List)}). Each caller is let go as soon as the batch holding its write
+ * has committed, with the same answer it would have had on its own.<p/>
+ *
+ * By default we don't wait around for a batch to fill up: writes that arrive while a batch is being committed simply
+ * make up the next one, so batches grow with the load and a lone writer pays nothing extra. Setting
+ * {@link #setMaxDelayMillis(long)} makes the writer hold each batch open for up to that long, trading a little latency
+ * for bigger batches.<p/>
+ *
+ * Everything else (IE: lookups, blind saves and bulk inserts) goes straight through. Batch counts and sizes are exposed
+ * via getters, so they can be published over JMX.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class GroupCommitStreamStateDao implements IStreamStateDao
+{
+    /**
+     * Holds the {@link Logger} for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(GroupCommitStreamStateDao.class);
+
+    /**
+     * Holds the {@link StreamStateDao} we're batching writes for.
+     */
+    private StreamStateDao _streamStateDao;
+
+    /**
+     * Holds the longest we'll hold a batch open waiting for more writes, in milliseconds. Defaults to 0 (IE: take what's
+     * queued up, and go).
+     */
+    private long _maxDelayMillis = 0;
+
+    /**
+     * Holds the most writes we'll put in a single batch. Defaults to 500.
+     */
+    private int _maxBatchSize = 500;
+
+    /**
+     * Holds the writes waiting for the next batch.
+     */
+    private final BlockingQueue<PendingTransition> _queue = new LinkedBlockingQueue<>();
+
+    /**
+     * Holds our writer thread, if we were started with {@link #init()}.
+     */
+    private Thread _writer;
+
+    /**
+     * Holds whether our writer is (still) taking writes.
+     */
+    private volatile boolean _running;
+
+    /**
+     * Holds the number of batches we've committed.
+     */
+    private final AtomicLong _batchCount = new AtomicLong();
+
+    /**
+     * Holds the number of writes we've committed, across all our batches.
+     */
+    private final AtomicLong _transitionCount = new AtomicLong();
+
+    /**
+     * Holds the number of writes in the biggest batch we've committed.
+     */
+    private volatile int _largestBatchSize;
+
+    public StreamStateDao getStreamStateDao() { return _streamStateDao; }
+    public void setStreamStateDao(final StreamStateDao streamStateDao) { _streamStateDao = streamStateDao; }
+
+    public long getMaxDelayMillis() { return _maxDelayMillis; }
+    public void setMaxDelayMillis(final long maxDelayMillis) { _maxDelayMillis = maxDelayMillis; }
+
+    public int getMaxBatchSize() { return _maxBatchSize; }
+    public void setMaxBatchSize(final int maxBatchSize) { _maxBatchSize = maxBatchSize; }
+
+    public long getBatchCount() { return _batchCount.get(); }
+    public long getTransitionCount() { return _transitionCount.get(); }
+    public int getLargestBatchSize() { return _largestBatchSize; }
+    public int getQueueSize() { return _queue.size(); }
+
+    /**
+     * Gets the average number of writes per batch, which is how much we're saving.
+     *
+     * @return The average batch size, or 0 if we haven't committed anything yet.
+     */
+    public double getAverageBatchSize()
+    {
+        final long batches = getBatchCount();
+        return 0 == batches ? 0 : (double) getTransitionCount() / batches;
+    }
+
+    /**
+     * Starts our writer thread. Until this is called, every write goes to the database on its own.
+     */
+    public void init()
+    {
+        _running = true;
+
+        _writer = new Thread(this::write, "hss-group-commit");
+        _writer.setDaemon(true);
+        _writer.start();
+    }
+
+    /**
+     * Stops our writer thread, once it has committed everything that's been queued up.
+     */
+    public void destroy() throws InterruptedException
+    {
+        _running = false;
+
+        if (null != _writer)
+        {
+            _writer.interrupt();
+            _writer.join(TimeUnit.MINUTES.toMillis(1));
+        }
+
+        // Anything that snuck in after our writer left still needs to go.
+        flush();
+    }
+
+    @Override
+    public StreamMetadata createStreamMetadata(final String streamId, final StreamStatus status)
+    {
+        return getStreamStateDao().createStreamMetadata(streamId, status);
+    }
+
+    @Override
+    public List<StreamMetadata> findStreamMetadata() throws Exception
+    {
+        return getStreamStateDao().findStreamMetadata();
+    }
+
+    @Override
+    public List<StreamMetadata> findStreamMetadata(final StreamMetadataCriteria criteria, final String afterStreamId, final int limit) throws Exception
+    {
+        return getStreamStateDao().findStreamMetadata(criteria, afterStreamId, limit);
+    }
+
+    @Override
+    public StreamMetadata findStreamMetadataById(final String streamId) throws Exception
+    {
+        return getStreamStateDao().findStreamMetadataById(streamId);
+    }
+
+    @Override
+    public List<StreamMetadata> findStreamMetadataByIds(final Collection<String> streamIds) throws Exception
+    {
+        return getStreamStateDao().findStreamMetadataByIds(streamIds);
+    }
+
+    @Override
+    public StreamStatistics getStreamStatistics() throws Exception
+    {
+        return getStreamStateDao().getStreamStatistics();
+    }
+
+    @Override
+    public void saveOrUpdateStreamMetadata(final StreamMetadata metadata) throws Exception
+    {
+        getStreamStateDao().saveOrUpdateStreamMetadata(metadata);
+    }
+
+    @Override
+    public boolean transitionStreamMetadata(final StreamMetadata metadata, final StreamStatus status) throws Exception
+    {
+        return submit(new StreamTransition(metadata, status));
+    }
+
+    @Override
+    public int insertStreamMetadata(final Collection<StreamMetadata> metadata) throws Exception
+    {
+        // These are already batched.
+        return getStreamStateDao().insertStreamMetadata(metadata);
+    }
+
+    @Override
+    public void deleteStreamMetadataById(final String streamId) throws Exception
+    {
+        submit(new StreamTransition(createStreamMetadata(streamId, StreamStatus.NOT_FOUND), StreamStatus.NOT_FOUND));
+    }
+
+    /**
+     * Queues up a write for our next batch, and waits for that batch to commit.
+     *
+     * @param transition The {@link StreamTransition} to write. Must not be null.
+     *
+     * @return True if the transition succeeded, false if it lost its compare-and-set.
+     *
+     * @throws Exception If the batch failed, with whatever the database threw.
+     */
+    boolean submit(final StreamTransition transition) throws Exception
+    {
+        final PendingTransition pending = new PendingTransition(transition);
+
+        if (_running)
+        {
+            _queue.add(pending);
+
+            // If we're shutting down, our writer may have left before we got in, in which case it's on us.
+            if (!_running)
+            {
+                flush();
+            }
+        }
+        else
+        {
+            commit(Collections.singletonList(pending));
+        }
+
+        try
+        {
+            return pending.getResult().get();
+        }
+        catch (final ExecutionException ex)
+        {
+            throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+        }
+    }
+
+    /**
+     * Runs our writer: takes whatever's queued up, commits it as a batch, and goes back for more until we're stopped.
+     */
+    void write()
+    {
+        while (_running && !Thread.currentThread().isInterrupted())
+        {
+            final List<PendingTransition> batch = take();
+
+            if (!batch.isEmpty())
+            {
+                commit(batch);
+            }
+        }
+    }
+
+    /**
+     * Provides a convenience method to wait for the next batch of writes. If we're interrupted, we hand back whatever
+     * we have so far (and leave the interrupt for {@link #write()} to see), so that nobody is left hanging.
+     *
+     * @return The next batch, of between 1 and {@link #getMaxBatchSize()} writes, or none if we were interrupted while
+     *         waiting for the first one. Will not be null.
+     */
+    List<PendingTransition> take()
+    {
+        final List<PendingTransition> batch = new ArrayList<>();
+
+        try
+        {
+            batch.add(_queue.take());
+
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(getMaxDelayMillis());
+            long remaining;
+
+            while (batch.size() < getMaxBatchSize() && (remaining = deadline - System.nanoTime()) > 0)
+            {
+                final PendingTransition pending = _queue.poll(remaining, TimeUnit.NANOSECONDS);
+
+                if (null == pending)
+                {
+                    break;
+                }
+
+                batch.add(pending);
+            }
+
+            _queue.drainTo(batch, getMaxBatchSize() - batch.size());
+        }
+        catch (final InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        return batch;
+    }
+
+    /**
+     * Commits everything that's queued up, on the calling thread. Used once our writer has stopped.
+     */
+    void flush()
+    {
+        final List<PendingTransition> batch = new ArrayList<>();
+
+        while (0 < _queue.drainTo(batch, getMaxBatchSize()))
+        {
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Commits a batch of writes, and lets everybody waiting on it know how they did. The batch is one transaction, so a
+     * single bad write (IE: one the database won't take) would otherwise fail everybody else in it. If a batch fails, we
+     * commit its writes again one at a time, so that each caller gets its own answer, as it would have without us.
+     *
+     * @param batch The {@link PendingTransition}s to commit. Must not be null or empty.
+     */
+    void commit(final List<PendingTransition> batch)
+    {
+        try
+        {
+            final boolean[] transitioned = getStreamStateDao().transitionStreamMetadata(batch.stream()
+                                                                                             .map(PendingTransition::getTransition)
+                                                                                             .collect(Collectors.toList()));
+
+            _batchCount.incrementAndGet();
+            _transitionCount.addAndGet(batch.size());
+            _largestBatchSize = Math.max(_largestBatchSize, batch.size());
+
+            for (int i = 0; i < batch.size(); i++)
+            {
+                batch.get(i).getResult().complete(transitioned[i]);
+            }
+        }
+        catch (final Throwable ex)
+        {
+            if (1 == batch.size())
+            {
+                LOGGER.warn("Failed to commit a transition.", ex);
+                batch.get(0).getResult().completeExceptionally(ex);
+                return;
+            }
+
+            // Nothing was applied (the transaction rolled back), so we're free to have another go.
+            LOGGER.warn(String.format("Failed to commit a batch of %d transitions, retrying them one at a time.", batch.size()), ex);
+            batch.forEach(pending -> commit(Collections.singletonList(pending)));
+        }
+    }
+
+    /**
+     * Provides a write waiting on its batch, along with the answer it's waiting for.
+     */
+    static class PendingTransition
+    {
+        /**
+         * Holds the {@link StreamTransition} to write.
+         */
+        private final StreamTransition _transition;
+
+        /**
+         * Holds whether our transition succeeded, once its batch has committed.
+         */
+        private final CompletableFuture<Boolean> _result = new CompletableFuture<>();
+
+        PendingTransition(final StreamTransition transition)
+        {
+            _transition = transition;
+        }
+
+        StreamTransition getTransition() { return _transition; }
+        CompletableFuture<Boolean> getResult() { return _result; }
+    }
+}
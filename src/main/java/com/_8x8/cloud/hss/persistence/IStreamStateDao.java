@@ -1,8 +1,11 @@
 package com._8x8.cloud.hss.persistence;
 
 import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
+import com._8x8.cloud.hss.model.StreamStatistics;
 import com._8x8.cloud.hss.model.StreamStatus;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -30,13 +33,30 @@ public interface IStreamStateDao
     StreamMetadata createStreamMetadata(String streamId, StreamStatus status);
 
     /**
-     * Attempts to find the {@link StreamMetadata} associated with all streams known to the system.
+     * Attempts to find the {@link StreamMetadata} associated with all streams known to the system. Please note that this
+     * loads everything at once: if you don't know how many streams there are, see
+     * {@link #findStreamMetadata(StreamMetadataCriteria, String, int)}.
      *
      * @return A list of zero or more {@link StreamMetadata}, as known to the system. May be empty, but will never be
      * null.
      */
     List<StreamMetadata> findStreamMetadata() throws Exception;
 
+    /**
+     * Attempts to find a page of the {@link StreamMetadata} known to the system matching some criteria, in stream ID
+     * order. Pages are addressed by the last ID of the previous page rather than by offset, so each one costs the same
+     * no matter how far in we are, and concurrent creates or deletes can't make us skip or repeat a stream.
+     *
+     * @param criteria The {@link StreamMetadataCriteria} to match. May be null, in which case everything matches.
+     * @param afterStreamId The ID of the last stream on the previous page. May be null, in which case we start at the beginning.
+     * @param limit The maximum number of {@link StreamMetadata} to return. Must be positive.
+     *
+     * @return A list of up to <code>limit</code> {@link StreamMetadata}, sorted by ID, all of which match our criteria
+     * and come after <code>afterStreamId</code>. May be empty, in which case there's nothing left, but will never be
+     * null.
+     */
+    List<StreamMetadata> findStreamMetadata(StreamMetadataCriteria criteria, String afterStreamId, int limit) throws Exception;
+
     /**
      * Attempts to find the known {@link StreamMetadata} for a given stream.
      *
@@ -47,6 +67,24 @@ public interface IStreamStateDao
      */
     StreamMetadata findStreamMetadataById(String streamId) throws Exception;
 
+    /**
+     * Attempts to find the known {@link StreamMetadata} for a given set of streams, in a single round trip.
+     *
+     * @param streamIds The IDs of the streams to find {@link StreamMetadata} for. Must not be null or empty, must be valid.
+     *
+     * @return A list of zero or more {@link StreamMetadata}, one for each stream we know about. Unlike
+     * {@link #findStreamMetadataById(String)} unknown streams are simply left out. Will never be null.
+     */
+    List<StreamMetadata> findStreamMetadataByIds(Collection<String> streamIds) throws Exception;
+
+    /**
+     * Attempts to count the streams known to the system by {@link StreamStatus}, and total up how much they take up, in
+     * a single aggregate query rather than by listing them.
+     *
+     * @return {@link StreamStatistics} covering every stream known to the system. Will never be null.
+     */
+    StreamStatistics getStreamStatistics() throws Exception;
+
     /**
      * Attempts to save (or update) the {@link StreamMetadata} for a given stream. Please note that this operation may
      * fail if the stream is currently {@link com._8x8.cloud.hss.model.StreamStatus#IN_PROGRESS}.
@@ -55,6 +93,33 @@ public interface IStreamStateDao
      */
     void saveOrUpdateStreamMetadata(StreamMetadata metadata) throws Exception;
 
+    /**
+     * Attempts to move a stream from the state described by a given {@link StreamMetadata} to a new {@link StreamStatus},
+     * as a single compare-and-set. The transition only happens if the persisted stream still has the status and
+     * version of the metadata we were handed, IE: nobody has touched it since we read it. This holds even when several
+     * nodes share the same store.<p/>
+     *
+     * If the metadata is {@link StreamStatus#NOT_FOUND}, the transition creates the stream, and only succeeds if nobody
+     * else created it first. Otherwise the size and content version of the metadata are written along with the status.
+     * On success the metadata is updated in place with the new status and version, so that it can be transitioned again.
+     *
+     * @param metadata The {@link StreamMetadata} as we last read it. Must not be null, must be a valid stream ID.
+     * @param status The {@link StreamStatus} to move to. Must not be null.
+     *
+     * @return True if the stream was transitioned, false if it had changed underneath us.
+     */
+    boolean transitionStreamMetadata(StreamMetadata metadata, StreamStatus status) throws Exception;
+
+    /**
+     * Attempts to create {@link StreamMetadata} for a batch of streams, in a single round trip. Streams that somebody
+     * else has created in the meantime are left alone.
+     *
+     * @param metadata The {@link StreamMetadata} to create. Must not be null, each must be a valid stream ID.
+     *
+     * @return The number of streams we actually created.
+     */
+    int insertStreamMetadata(Collection<StreamMetadata> metadata) throws Exception;
+
     /**
      * Attempts to delete the {@link StreamMetadata} for a given stream.
      *
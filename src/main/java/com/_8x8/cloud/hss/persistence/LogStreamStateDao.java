@@ -0,0 +1,616 @@
+package com._8x8.cloud.hss.persistence;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
+import com._8x8.cloud.hss.model.StreamStatistics;
+import com._8x8.cloud.hss.model.StreamStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provides an implementation of {@link IStreamStateDao} that keeps our metadata in an append-only log on local disk
+ * (see {@link StreamLog}), rather than in a database. All we ever do is look streams up by ID, write them by ID and page
+ * through them in ID order, and an index in memory pointing into a log on disk does all three without a query planner,
+ * transactions or a connection pool in the way: a lookup is a map lookup and a single positional read, and a write is a
+ * single append.<p/>
+ *
+ * Writes are serialized, which is what makes a transition's compare-and-set atomic, and cheap enough (IE: an append)
+ * that it doesn't hurt. Reads never wait on writes. By default appends are flushed to disk every 100ms (see
+ * {@link #setSyncIntervalMillis(long)}), so a crash can lose that much. That's less than our durable HSQL setup
+ * promises, since it syncs every commit: set the interval to 0 to do the same, at the cost of every write waiting on the
+ * disk.<p/>
+ *
+ * Overwrites and deletes leave dead records behind, so every so often we compact: copy the live records to a new log,
+ * catch up on whatever was written while we copied, and swap the new log in for the old. Reads and writes carry on in
+ * the meantime, bar the catch up. The index is rebuilt on startup by reading the log through once, which is about as
+ * fast as reading the file: records are barely bigger than the hint entries a separate index file would hold, so we
+ * don't keep one.<p/>
+ *
+ * Please note that our index is sorted rather than hashed, since listings page by ID. Listings that filter on anything
+ * but a prefix have to read each record to check it, so they cost a scan.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class LogStreamStateDao implements IStreamStateDao
+{
+    /**
+     * Holds the {@link Logger} for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogStreamStateDao.class);
+
+    /**
+     * Holds the name of our log, in our directory.
+     */
+    static final String LOG_FILE_NAME = "streams.log";
+
+    /**
+     * Holds the name of the log we compact into, in our directory, before it takes the place of our log.
+     */
+    static final String COMPACTION_FILE_NAME = "streams.log.compacting";
+
+    /**
+     * Holds the directory our log lives in.
+     */
+    private File _directory;
+
+    /**
+     * Holds how often we flush appends to disk, in milliseconds. If 0, we flush after every write. Defaults to 100.
+     */
+    private long _syncIntervalMillis = 100;
+
+    /**
+     * Holds the fraction of our log that has to be dead before we compact. Defaults to half.
+     */
+    private double _compactionThreshold = 0.5;
+
+    /**
+     * Holds the number of bytes of our log that have to be dead before we compact, so that we don't bother for a small
+     * log. Defaults to 16MB.
+     */
+    private long _compactionMinimumBytes = 16 * 1024 * 1024;
+
+    /**
+     * Holds how often we check whether we need to compact, in seconds. Defaults to a minute.
+     */
+    private long _compactionIntervalSeconds = 60;
+
+    /**
+     * Holds the {@link StreamLog} we're reading and appending to. Swapped out by compaction.
+     */
+    private volatile StreamLog _log;
+
+    /**
+     * Holds the lock serializing our writes.
+     */
+    private final Object _writeLock = new Object();
+
+    /**
+     * Holds the lock making sure only one compaction runs at a time.
+     */
+    private final Object _compactionLock = new Object();
+
+    /**
+     * Holds the executor we sync and compact on, if we were started with {@link #init()}.
+     */
+    private ScheduledExecutorService _executor;
+
+    /**
+     * Holds the number of times we've compacted our log.
+     */
+    private final AtomicLong _compactionCount = new AtomicLong();
+
+    /**
+     * Holds how long our last compaction took, in milliseconds.
+     */
+    private volatile long _lastCompactionMillis;
+
+    /**
+     * Holds how long it took to open our log (IE: rebuild our index), in milliseconds.
+     */
+    private volatile long _openMillis;
+
+    public File getDirectory() { return _directory; }
+    public void setDirectory(final File directory) { _directory = directory; }
+
+    public long getSyncIntervalMillis() { return _syncIntervalMillis; }
+    public void setSyncIntervalMillis(final long syncIntervalMillis) { _syncIntervalMillis = syncIntervalMillis; }
+
+    public double getCompactionThreshold() { return _compactionThreshold; }
+    public void setCompactionThreshold(final double compactionThreshold) { _compactionThreshold = compactionThreshold; }
+
+    public long getCompactionMinimumBytes() { return _compactionMinimumBytes; }
+    public void setCompactionMinimumBytes(final long compactionMinimumBytes) { _compactionMinimumBytes = compactionMinimumBytes; }
+
+    public long getCompactionIntervalSeconds() { return _compactionIntervalSeconds; }
+    public void setCompactionIntervalSeconds(final long compactionIntervalSeconds) { _compactionIntervalSeconds = compactionIntervalSeconds; }
+
+    public long getCompactionCount() { return _compactionCount.get(); }
+    public long getLastCompactionMillis() { return _lastCompactionMillis; }
+    public long getOpenMillis() { return _openMillis; }
+
+    public long getStreamCount() { return _log.getIndex().size(); }
+    public long getLogBytes() { return _log.getSize(); }
+    public long getDeadBytes() { return _log.getDeadBytes(); }
+
+    /**
+     * Opens our log (creating it if need be), rebuilds our index from it, and starts syncing and compacting in the
+     * background. Must be called before anything else.
+     */
+    public void init() throws IOException
+    {
+        final long start = System.nanoTime();
+
+        Files.createDirectories(getDirectory().toPath());
+
+        // A compaction that didn't finish leaves its log behind. Ours is still intact, so we start over.
+        Files.deleteIfExists(new File(getDirectory(), COMPACTION_FILE_NAME).toPath());
+
+        _log = StreamLog.open(new File(getDirectory(), LOG_FILE_NAME));
+        _openMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        LOGGER.info("Opened {} with {} streams ({} bytes, {} dead) in {}ms.",
+                    _log.getFile(), _log.getIndex().size(), _log.getSize(), _log.getDeadBytes(), _openMillis);
+
+        _executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "hss-stream-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (0 < getSyncIntervalMillis())
+        {
+            _executor.scheduleAtFixedRate(this::syncQuietly, getSyncIntervalMillis(), getSyncIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        _executor.scheduleWithFixedDelay(this::compactQuietly, getCompactionIntervalSeconds(), getCompactionIntervalSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops syncing and compacting, and flushes and closes our log.
+     */
+    public void destroy() throws Exception
+    {
+        if (null != _executor)
+        {
+            _executor.shutdownNow();
+            _executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        synchronized (_writeLock)
+        {
+            _log.force();
+            _log.close();
+        }
+    }
+
+    @Override
+    public StreamMetadata createStreamMetadata(final String streamId, final StreamStatus status)
+    {
+        final StreamMetadata metadata = new StreamMetadata();
+
+        metadata.setId(streamId);
+        metadata.setStatus(null == status ? StreamStatus.IN_PROGRESS : status);
+
+        return metadata;
+    }
+
+    @Override
+    public List<StreamMetadata> findStreamMetadata() throws Exception
+    {
+        final List<StreamMetadata> metadata = new ArrayList<>();
+
+        for (final String streamId : _log.getIndex().keySet())
+        {
+            final StreamMetadata streamMetadata = read(streamId);
+
+            // Deleted since we started.
+            if (null != streamMetadata)
+            {
+                metadata.add(streamMetadata);
+            }
+        }
+
+        return metadata;
+    }
+
+    @Override
+    public List<StreamMetadata> findStreamMetadata(final StreamMetadataCriteria criteria, final String afterStreamId, final int limit) throws Exception
+    {
+        final String prefix = null == criteria ? null : criteria.getPrefix();
+        final NavigableSet<String> streamIds = _log.getIndex().navigableKeySet();
+        final List<StreamMetadata> page = new ArrayList<>();
+
+        // Everything with our prefix sorts together, starting at the prefix itself. So we start from whichever of that
+        // and the last page is further along.
+        final NavigableSet<String> candidates;
+
+        if (null != prefix && (null == afterStreamId || prefix.compareTo(afterStreamId) > 0))
+        {
+            candidates = streamIds.tailSet(prefix, true);
+        }
+        else
+        {
+            candidates = null == afterStreamId ? streamIds : streamIds.tailSet(afterStreamId, false);
+        }
+
+        for (final String streamId : candidates)
+        {
+            if (null != prefix && !streamId.startsWith(prefix))
+            {
+                break;
+            }
+
+            final StreamMetadata metadata = read(streamId);
+
+            if (null != metadata && matches(criteria, metadata))
+            {
+                page.add(metadata);
+
+                if (page.size() == limit)
+                {
+                    break;
+                }
+            }
+        }
+
+        return page;
+    }
+
+    @Override
+    public StreamMetadata findStreamMetadataById(final String streamId) throws Exception
+    {
+        final StreamMetadata metadata = read(streamId);
+        return null == metadata ? createStreamMetadata(streamId, StreamStatus.NOT_FOUND) : metadata;
+    }
+
+    @Override
+    public List<StreamMetadata> findStreamMetadataByIds(final Collection<String> streamIds) throws Exception
+    {
+        final List<StreamMetadata> metadata = new ArrayList<>();
+
+        for (final String streamId : streamIds)
+        {
+            final StreamMetadata streamMetadata = read(streamId);
+
+            if (null != streamMetadata)
+            {
+                metadata.add(streamMetadata);
+            }
+        }
+
+        return metadata;
+    }
+
+    /**
+     * {@inheritDoc}<p/>
+     *
+     * Please note that our log has no aggregates of its own, so this reads every live record. They're small, and likely
+     * to be in the page cache, so it's still a good deal quicker than listing the same streams from a database.
+     */
+    @Override
+    public StreamStatistics getStreamStatistics() throws Exception
+    {
+        final StreamStatistics statistics = new StreamStatistics();
+
+        for (final String streamId : _log.getIndex().keySet())
+        {
+            final StreamMetadata metadata = read(streamId);
+
+            if (null == metadata)
+            {
+                continue;
+            }
+
+            switch (metadata.getStatus())
+            {
+                case SUCCESSFUL:
+                    statistics.setSuccessfulCount(statistics.getSuccessfulCount() + 1);
+                    break;
+
+                case IN_PROGRESS:
+                    statistics.setInProgressCount(statistics.getInProgressCount() + 1);
+                    break;
+
+                case FAILED:
+                    statistics.setFailedCount(statistics.getFailedCount() + 1);
+                    break;
+
+                default:
+                    continue;
+            }
+
+            statistics.setTotalBytes(statistics.getTotalBytes() + metadata.getFileSize());
+        }
+
+        return statistics;
+    }
+
+    @Override
+    public void saveOrUpdateStreamMetadata(final StreamMetadata metadata) throws Exception
+    {
+        synchronized (_writeLock)
+        {
+            final StreamMetadata current = read(metadata.getId());
+
+            // Same as the MERGE in StreamStateDao: an update bumps the version, and keeps the creation time.
+            write(metadata, metadata.getStatus(), current);
+        }
+    }
+
+    @Override
+    public boolean transitionStreamMetadata(final StreamMetadata metadata, final StreamStatus status) throws Exception
+    {
+        synchronized (_writeLock)
+        {
+            final StreamMetadata current = read(metadata.getId());
+
+            if (StreamStatus.NOT_FOUND.equals(metadata.getStatus()))
+            {
+                // Whoever creates it first wins.
+                if (null != current)
+                {
+                    return false;
+                }
+            }
+            else if (null == current || !current.getStatus().equals(metadata.getStatus()) || current.getVersion() != metadata.getVersion())
+            {
+                return false;
+            }
+
+            write(metadata, status, current);
+        }
+
+        StreamStateDao.applyTransition(metadata, status);
+
+        return true;
+    }
+
+    @Override
+    public int insertStreamMetadata(final Collection<StreamMetadata> metadata) throws Exception
+    {
+        int inserted = 0;
+
+        synchronized (_writeLock)
+        {
+            for (final StreamMetadata streamMetadata : metadata)
+            {
+                // A stream that exists already wins.
+                if (!_log.getIndex().containsKey(streamMetadata.getId()))
+                {
+                    write(streamMetadata, streamMetadata.getStatus(), null);
+                    inserted++;
+                }
+            }
+        }
+
+        return inserted;
+    }
+
+    @Override
+    public void deleteStreamMetadataById(final String streamId) throws Exception
+    {
+        synchronized (_writeLock)
+        {
+            if (_log.getIndex().containsKey(streamId))
+            {
+                write(createStreamMetadata(streamId, StreamStatus.NOT_FOUND), StreamStatus.NOT_FOUND, null);
+            }
+        }
+    }
+
+    /**
+     * Compacts our log: copies every live record into a new log, then catches up on anything written while we were
+     * copying and swaps the new log in. Writes only wait for the catch up, and reads don't wait at all.
+     *
+     * @return The number of bytes we got back.
+     */
+    public long compact() throws IOException
+    {
+        synchronized (_compactionLock)
+        {
+            final long start = System.nanoTime();
+            final StreamLog log = _log;
+            final long end;
+
+            // Anything before this point we copy from the index, anything after we replay.
+            synchronized (_writeLock)
+            {
+                end = log.getSize();
+            }
+
+            final File target = new File(getDirectory(), COMPACTION_FILE_NAME);
+            Files.deleteIfExists(target.toPath());
+
+            final StreamLog compacted = new StreamLog(target);
+
+            try
+            {
+                for (final Map.Entry<String, StreamLog.Location> entry : log.getIndex().entrySet())
+                {
+                    if (entry.getValue().getOffset() < end)
+                    {
+                        compacted.append(entry.getKey(), log.readRecord(entry.getValue()), false);
+                    }
+                }
+
+                synchronized (_writeLock)
+                {
+                    // Every record since we started, in order. A delete only needs keeping if we copied what it deletes.
+                    final long replayed = log.scan(end, log.getSize(), (metadata, offset, length) -> {
+                        if (!StreamStatus.NOT_FOUND.equals(metadata.getStatus()) || compacted.getIndex().containsKey(metadata.getId()))
+                        {
+                            compacted.append(metadata);
+                        }
+                    });
+
+                    if (replayed != log.getSize())
+                    {
+                        throw new IOException(String.format("Failed to replay %s from %d, stopped at %d of %d.", log.getFile(), end, replayed, log.getSize()));
+                    }
+
+                    compacted.force();
+                    compacted.moveTo(log.getFile());
+
+                    _log = compacted;
+                }
+            }
+            catch (final IOException | RuntimeException ex)
+            {
+                compacted.close();
+                Files.deleteIfExists(target.toPath());
+                throw ex;
+            }
+
+            // Anybody still reading from the old log will find it closed, and come back for the new one.
+            log.close();
+
+            _lastCompactionMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            _compactionCount.incrementAndGet();
+
+            LOGGER.info("Compacted {} from {} to {} bytes in {}ms.", compacted.getFile(), log.getSize(), compacted.getSize(), _lastCompactionMillis);
+
+            return log.getSize() - compacted.getSize();
+        }
+    }
+
+    /**
+     * Checks whether we have enough dead records to be worth compacting.
+     *
+     * @return True if we should compact, false otherwise.
+     */
+    boolean needsCompaction()
+    {
+        final StreamLog log = _log;
+        return log.getDeadBytes() >= getCompactionMinimumBytes() && log.getDeadBytes() >= getCompactionThreshold() * log.getSize();
+    }
+
+    /**
+     * Provides a convenience method to compact on our executor if need be, where there's nobody to throw to.
+     */
+    void compactQuietly()
+    {
+        try
+        {
+            if (needsCompaction())
+            {
+                compact();
+            }
+        }
+        catch (final Exception ex)
+        {
+            LOGGER.error("Failed to compact stream log, carrying on with the one we have.", ex);
+        }
+    }
+
+    /**
+     * Provides a convenience method to flush our log on our executor, where there's nobody to throw to.
+     */
+    void syncQuietly()
+    {
+        try
+        {
+            _log.force();
+        }
+        catch (final ClosedChannelException ex)
+        {
+            // Compacted away, or we're shutting down. Either way it's been flushed.
+        }
+        catch (final IOException ex)
+        {
+            LOGGER.error("Failed to sync stream log.", ex);
+        }
+    }
+
+    /**
+     * Provides a convenience method to read the latest metadata for a stream, coming back for the new log if we're
+     * compacted out from under.
+     *
+     * @param streamId The ID of the stream. Must not be null.
+     *
+     * @return The {@link StreamMetadata} for the stream, or null if it doesn't exist.
+     */
+    StreamMetadata read(final String streamId) throws IOException
+    {
+        while (true)
+        {
+            final StreamLog log = _log;
+
+            try
+            {
+                return log.read(streamId);
+            }
+            catch (final ClosedChannelException ex)
+            {
+                if (log == _log)
+                {
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Provides a convenience method to append a new record for a stream. Must be called holding our write lock.
+     *
+     * @param metadata The {@link StreamMetadata} to write, for its ID, size, content version and digests. Must
+     *                 not be null.
+     * @param status The {@link StreamStatus} to write. If {@link StreamStatus#NOT_FOUND}, this is a delete.
+     * @param current The latest {@link StreamMetadata} we have for the stream. May be null if it doesn't exist.
+     */
+    private void write(final StreamMetadata metadata, final StreamStatus status, final StreamMetadata current) throws IOException
+    {
+        final long now = System.currentTimeMillis();
+        final StreamMetadata record = createStreamMetadata(metadata.getId(), status);
+
+        record.setFileSize(metadata.getFileSize());
+        record.setContentVersion(metadata.getContentVersion());
+        record.setCrc32c(metadata.getCrc32c());
+        record.setSha256(metadata.getSha256());
+        record.setCreatedTime(null == current ? now : current.getCreatedTime());
+        record.setLastModified(now);
+        record.setVersion(null == current ? 0 : current.getVersion() + 1);
+
+        _log.append(record);
+
+        if (0 == getSyncIntervalMillis())
+        {
+            _log.force();
+        }
+    }
+
+    /**
+     * Provides a convenience method to check some metadata against our criteria, bar the prefix (which we handle by
+     * where we start and stop).
+     *
+     * @param criteria The {@link StreamMetadataCriteria} to match. May be null, in which case everything matches.
+     * @param metadata The {@link StreamMetadata} to check. Must not be null.
+     *
+     * @return True if the metadata matches, false otherwise.
+     */
+    static boolean matches(final StreamMetadataCriteria criteria, final StreamMetadata metadata)
+    {
+        return null == criteria ||
+               (null == criteria.getStatus() || criteria.getStatus().equals(metadata.getStatus())) &&
+               (null == criteria.getModifiedAfter() || metadata.getLastModified() >= criteria.getModifiedAfter()) &&
+               (null == criteria.getModifiedBefore() || metadata.getLastModified() < criteria.getModifiedBefore()) &&
+               (null == criteria.getCreatedAfter() || metadata.getCreatedTime() >= criteria.getCreatedAfter()) &&
+               (null == criteria.getCreatedBefore() || metadata.getCreatedTime() < criteria.getCreatedBefore()) &&
+               (null == criteria.getMinSize() || metadata.getFileSize() >= criteria.getMinSize()) &&
+               (null == criteria.getMaxSize() || metadata.getFileSize() < criteria.getMaxSize());
+    }
+}
@@ -0,0 +1,753 @@
+package com._8x8.cloud.hss.persistence;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamStatus;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Provides a map of stream ID to {@link StreamMetadata} that lives outside of the heap, for when there are too many
+ * streams to keep their metadata around as objects (IE: tens of millions, at 100+ bytes of headers, strings and
+ * references apiece). The GC never sees our entries, only a handful of buffers.<p/>
+ *
+ * We're split into segments by hash, each an open-addressing table with linear probing over a direct buffer of fixed
+ * width slots. A slot holds the full 64-bit hash of its ID (0 meaning empty), where its ID, content version and digests
+ * (if any, as raw bytes) live in the segment's arena (another direct buffer, which we append to), and the rest of the
+ * metadata inline. Deletes shift
+ * later entries back into the gap, so there are no tombstones. Once a segment's arena is full we copy its live bytes
+ * into a new one, growing it if they take up more than half.<p/>
+ *
+ * Each segment has its own {@link StampedLock}: lookups are optimistic, and only fall back to taking the read lock if a
+ * write got in the way. Writes take the write lock, so writes to different segments don't contend.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+class OffHeapStreamIndex
+{
+    /**
+     * Holds the width of a slot, in bytes: hash (8), arena offset (4), ID length (2), content version length (1),
+     * status (1, with {@link #DIGESTS_FLAG} set if there are digests), size (8), created (8), last modified (8) and
+     * version (8).
+     */
+    static final int SLOT_BYTES = 48;
+
+    /**
+     * Holds the fullest we'll let a segment get before we grow it.
+     */
+    static final double MAX_LOAD_FACTOR = 0.75;
+
+    /**
+     * Holds the bit of a slot's status byte that says its entry ends with digests.
+     */
+    private static final int DIGESTS_FLAG = 0x80;
+
+    /**
+     * Holds the size of an entry's digests, in bytes: CRC32C (4) and SHA-256 (32).
+     */
+    private static final int DIGESTS_BYTES = 36;
+
+    /**
+     * Holds the {@link StreamStatus}es, by ordinal.
+     */
+    private static final StreamStatus[] STATUSES = StreamStatus.values();
+
+    /**
+     * Holds our segments. There's always a power of two of them.
+     */
+    private final Segment[] _segments;
+
+    /**
+     * Creates a new, empty index.
+     *
+     * @param expectedStreams The number of streams we expect to hold, which we size our segments for up front.
+     * @param segments The number of segments to split into. Rounded up to a power of two.
+     */
+    OffHeapStreamIndex(final long expectedStreams, final int segments)
+    {
+        _segments = new Segment[nextPowerOfTwo(Math.max(1, segments))];
+
+        for (int i = 0; i < _segments.length; i++)
+        {
+            _segments[i] = new Segment((int) Math.min(Integer.MAX_VALUE / SLOT_BYTES, expectedStreams / _segments.length / MAX_LOAD_FACTOR + 1));
+        }
+    }
+
+    /**
+     * Looks up the metadata for a stream.
+     *
+     * @param streamId The ID of the stream. Must not be null.
+     *
+     * @return A new {@link StreamMetadata} for the stream, or null if we don't have it.
+     */
+    StreamMetadata get(final String streamId)
+    {
+        final long hash = hash(streamId);
+        return segment(hash).get(streamId, hash, streamId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Adds (or replaces) the metadata for a stream.
+     *
+     * @param metadata The {@link StreamMetadata} to hold on to. Must not be null, and must not be
+     *                 {@link StreamStatus#NOT_FOUND}.
+     */
+    void put(final StreamMetadata metadata)
+    {
+        final long hash = hash(metadata.getId());
+        segment(hash).put(metadata, hash, metadata.getId().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Removes the metadata for a stream, if we have it.
+     *
+     * @param streamId The ID of the stream. Must not be null.
+     *
+     * @return True if we had it, false otherwise.
+     */
+    boolean remove(final String streamId)
+    {
+        final long hash = hash(streamId);
+        return segment(hash).remove(hash, streamId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Gets the number of streams we hold.
+     *
+     * @return The number of streams in the index.
+     */
+    long size()
+    {
+        long size = 0;
+
+        for (final Segment segment : _segments)
+        {
+            size += segment.size();
+        }
+
+        return size;
+    }
+
+    /**
+     * Gets the number of bytes we've allocated outside of the heap, slots and arenas both.
+     *
+     * @return The number of bytes of direct buffers we're holding.
+     */
+    long getOffHeapBytes()
+    {
+        long bytes = 0;
+
+        for (final Segment segment : _segments)
+        {
+            bytes += segment.getOffHeapBytes();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Provides a convenience method to find the segment for a given hash. We use the high bits here, and the low bits
+     * within the segment.
+     *
+     * @param hash The hash of a stream ID.
+     *
+     * @return The {@link Segment} holding (or that would hold) the stream.
+     */
+    private Segment segment(final long hash)
+    {
+        return _segments[(int) (hash >>> 40) & (_segments.length - 1)];
+    }
+
+    /**
+     * Provides a convenience method to hash a stream ID, the same way as {@link StreamIdFilter}, but never to 0 (which
+     * marks an empty slot).
+     *
+     * @param streamId The ID to hash. Must not be null.
+     *
+     * @return A non-zero 64-bit hash of the ID.
+     */
+    static long hash(final String streamId)
+    {
+        final long hash = StreamIdFilter.hash(streamId);
+        return 0 == hash ? 1 : hash;
+    }
+
+    /**
+     * Provides a convenience method to round up to a power of two.
+     *
+     * @param value The value to round. Must be positive, and no more than 2^30.
+     *
+     * @return The smallest power of two at least as big as the value.
+     */
+    static int nextPowerOfTwo(final int value)
+    {
+        return 1 >= value ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    /**
+     * Provides a single open-addressing table, with its own arena and lock.
+     */
+    static class Segment
+    {
+        /**
+         * Holds our lock. Everything below is guarded by it.
+         */
+        private final StampedLock _lock = new StampedLock();
+
+        /**
+         * Holds our slots. The capacity is always a power of two slots.
+         */
+        private ByteBuffer _slots;
+
+        /**
+         * Holds the IDs and content versions our slots point to.
+         */
+        private ByteBuffer _arena;
+
+        /**
+         * Holds the number of bytes of our arena in use, live or not. This is where the next entry goes.
+         */
+        private int _arenaUsed;
+
+        /**
+         * Holds the number of bytes of our arena still referred to by a slot.
+         */
+        private int _arenaLive;
+
+        /**
+         * Holds the number of slots in use.
+         */
+        private int _size;
+
+        /**
+         * Creates a new, empty segment.
+         *
+         * @param expectedSlots The number of slots to start with, at the least.
+         */
+        Segment(final int expectedSlots)
+        {
+            final int slots = nextPowerOfTwo(Math.max(16, expectedSlots));
+
+            _slots = ByteBuffer.allocateDirect(slots * SLOT_BYTES);
+
+            // Room for a UUID and a content version apiece, to start with.
+            _arena = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, 72L * slots));
+        }
+
+        /**
+         * Looks up the metadata for a stream, optimistically if we can.
+         *
+         * @param streamId The ID of the stream. Must not be null.
+         * @param hash The hash of the ID.
+         * @param id The ID, as UTF-8.
+         *
+         * @return A new {@link StreamMetadata} for the stream, or null if we don't have it.
+         */
+        StreamMetadata get(final String streamId, final long hash, final byte[] id)
+        {
+            final long stamp = _lock.tryOptimisticRead();
+
+            if (0 != stamp)
+            {
+                try
+                {
+                    final StreamMetadata metadata = read(streamId, hash, id);
+
+                    if (_lock.validate(stamp))
+                    {
+                        return metadata;
+                    }
+                }
+                catch (final RuntimeException ex)
+                {
+                    // We read halfway through a write (IE: a slot pointing past the end of an arena), so try again properly.
+                }
+            }
+
+            final long readStamp = _lock.readLock();
+
+            try
+            {
+                return read(streamId, hash, id);
+            }
+            finally
+            {
+                _lock.unlockRead(readStamp);
+            }
+        }
+
+        /**
+         * Adds (or replaces) the metadata for a stream.
+         *
+         * @param metadata The {@link StreamMetadata} to hold on to. Must not be null.
+         * @param hash The hash of the ID.
+         * @param id The ID, as UTF-8.
+         */
+        void put(final StreamMetadata metadata, final long hash, final byte[] id)
+        {
+            final byte[] contentVersion = null == metadata.getContentVersion() ? null : metadata.getContentVersion().getBytes(StandardCharsets.UTF_8);
+            final byte[] digests = digests(metadata);
+            final int entryBytes = id.length + (null == contentVersion ? 0 : contentVersion.length) + (null == digests ? 0 : DIGESTS_BYTES);
+
+            if (0xFFFF < id.length || (null != contentVersion && 0xFE < contentVersion.length))
+            {
+                throw new IllegalArgumentException(String.format("Stream %s is too big to index.", metadata.getId()));
+            }
+
+            final long stamp = _lock.writeLock();
+
+            try
+            {
+                int slot = find(_slots, _arena, hash, id);
+
+                if (0 > slot && _size + 1 > MAX_LOAD_FACTOR * slotCount(_slots))
+                {
+                    resize(2 * slotCount(_slots));
+                }
+
+                if (_arena.capacity() - _arenaUsed < entryBytes)
+                {
+                    compactArena(entryBytes);
+                    slot = find(_slots, _arena, hash, id);
+                }
+
+                if (0 > slot)
+                {
+                    slot = emptySlot(_slots, hash);
+                    _size++;
+                }
+                else
+                {
+                    _arenaLive -= entryBytes(_slots, slot);
+                }
+
+                final int offset = _arenaUsed;
+
+                for (int i = 0; i < id.length; i++)
+                {
+                    _arena.put(offset + i, id[i]);
+                }
+
+                if (null != contentVersion)
+                {
+                    for (int i = 0; i < contentVersion.length; i++)
+                    {
+                        _arena.put(offset + id.length + i, contentVersion[i]);
+                    }
+                }
+
+                if (null != digests)
+                {
+                    for (int i = 0; i < DIGESTS_BYTES; i++)
+                    {
+                        _arena.put(offset + entryBytes - DIGESTS_BYTES + i, digests[i]);
+                    }
+                }
+
+                _arenaUsed += entryBytes;
+                _arenaLive += entryBytes;
+
+                final int base = slot * SLOT_BYTES;
+
+                _slots.putLong(base, hash);
+                _slots.putInt(base + 8, offset);
+                _slots.putShort(base + 12, (short) id.length);
+                _slots.put(base + 14, (byte) (null == contentVersion ? 0 : contentVersion.length + 1));
+                _slots.put(base + 15, (byte) (metadata.getStatus().ordinal() | (null == digests ? 0 : DIGESTS_FLAG)));
+                _slots.putLong(base + 16, metadata.getFileSize());
+                _slots.putLong(base + 24, metadata.getCreatedTime());
+                _slots.putLong(base + 32, metadata.getLastModified());
+                _slots.putLong(base + 40, metadata.getVersion());
+            }
+            finally
+            {
+                _lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Removes the metadata for a stream, shifting back any entries that probed past it so that lookups for them
+         * still find them.
+         *
+         * @param hash The hash of the ID.
+         * @param id The ID, as UTF-8.
+         *
+         * @return True if we had it, false otherwise.
+         */
+        boolean remove(final long hash, final byte[] id)
+        {
+            final long stamp = _lock.writeLock();
+
+            try
+            {
+                int gap = find(_slots, _arena, hash, id);
+
+                if (0 > gap)
+                {
+                    return false;
+                }
+
+                _arenaLive -= entryBytes(_slots, gap);
+                _size--;
+
+                final int mask = slotCount(_slots) - 1;
+                int slot = gap;
+
+                while (true)
+                {
+                    slot = (slot + 1) & mask;
+
+                    final long candidate = _slots.getLong(slot * SLOT_BYTES);
+
+                    if (0 == candidate)
+                    {
+                        break;
+                    }
+
+                    // Anything whose home is cyclically after the gap, up to where it sits, can stay where it is.
+                    final int home = (int) candidate & mask;
+                    final boolean stays = gap <= slot ? gap < home && home <= slot : gap < home || home <= slot;
+
+                    if (!stays)
+                    {
+                        copySlot(slot, gap);
+                        gap = slot;
+                    }
+                }
+
+                _slots.putLong(gap * SLOT_BYTES, 0);
+
+                return true;
+            }
+            finally
+            {
+                _lock.unlockWrite(stamp);
+            }
+        }
+
+        int size()
+        {
+            final long stamp = _lock.readLock();
+
+            try
+            {
+                return _size;
+            }
+            finally
+            {
+                _lock.unlockRead(stamp);
+            }
+        }
+
+        long getOffHeapBytes()
+        {
+            final long stamp = _lock.readLock();
+
+            try
+            {
+                return (long) _slots.capacity() + _arena.capacity();
+            }
+            finally
+            {
+                _lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Provides a convenience method to read the metadata for a stream, without any locking.
+         *
+         * @param streamId The ID of the stream. Must not be null.
+         * @param hash The hash of the ID.
+         * @param id The ID, as UTF-8.
+         *
+         * @return A new {@link StreamMetadata} for the stream, or null if we don't have it.
+         */
+        private StreamMetadata read(final String streamId, final long hash, final byte[] id)
+        {
+            // Only look at these once, so that we're at least consistent with ourselves if they're swapped under us.
+            final ByteBuffer slots = _slots;
+            final ByteBuffer arena = _arena;
+
+            final int slot = find(slots, arena, hash, id);
+
+            if (0 > slot)
+            {
+                return null;
+            }
+
+            final int base = slot * SLOT_BYTES;
+            final int contentVersionLength = (slots.get(base + 14) & 0xFF) - 1;
+            final StreamMetadata metadata = new StreamMetadata();
+
+            metadata.setId(streamId);
+            metadata.setStatus(STATUSES[slots.get(base + 15) & (DIGESTS_FLAG - 1)]);
+            metadata.setFileSize(slots.getLong(base + 16));
+            metadata.setCreatedTime(slots.getLong(base + 24));
+            metadata.setLastModified(slots.getLong(base + 32));
+            metadata.setVersion(slots.getLong(base + 40));
+
+            if (0 <= contentVersionLength)
+            {
+                final byte[] contentVersion = new byte[contentVersionLength];
+                final int offset = slots.getInt(base + 8) + (slots.getShort(base + 12) & 0xFFFF);
+
+                for (int i = 0; i < contentVersionLength; i++)
+                {
+                    contentVersion[i] = arena.get(offset + i);
+                }
+
+                metadata.setContentVersion(new String(contentVersion, StandardCharsets.UTF_8));
+            }
+
+            if (0 != (slots.get(base + 15) & DIGESTS_FLAG))
+            {
+                final byte[] sha256 = new byte[DIGESTS_BYTES - 4];
+                final int offset = slots.getInt(base + 8) + entryBytes(slots, slot) - DIGESTS_BYTES;
+
+                for (int i = 0; i < sha256.length; i++)
+                {
+                    sha256[i] = arena.get(offset + 4 + i);
+                }
+
+                metadata.setCrc32c(String.format("%08x", arena.getInt(offset)));
+                metadata.setSha256(Hex.encodeHexString(sha256));
+            }
+
+            return metadata;
+        }
+
+        /**
+         * Provides a convenience method to find the slot holding a given ID.
+         *
+         * @param slots Our slots. Must not be null.
+         * @param arena Our arena. Must not be null.
+         * @param hash The hash of the ID.
+         * @param id The ID, as UTF-8.
+         *
+         * @return The index of the slot, or -1 if we don't have it.
+         */
+        private static int find(final ByteBuffer slots, final ByteBuffer arena, final long hash, final byte[] id)
+        {
+            final int mask = slotCount(slots) - 1;
+
+            // We're never full, so there's always an empty slot to stop at.
+            for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask)
+            {
+                final int base = slot * SLOT_BYTES;
+                final long candidate = slots.getLong(base);
+
+                if (0 == candidate)
+                {
+                    return -1;
+                }
+
+                if (hash == candidate && idEquals(slots, arena, base, id))
+                {
+                    return slot;
+                }
+            }
+        }
+
+        /**
+         * Provides a convenience method to compare the ID in a slot against a given one.
+         *
+         * @param slots Our slots. Must not be null.
+         * @param arena Our arena. Must not be null.
+         * @param base The offset of the slot.
+         * @param id The ID, as UTF-8.
+         *
+         * @return True if the slot holds the ID, false otherwise.
+         */
+        private static boolean idEquals(final ByteBuffer slots, final ByteBuffer arena, final int base, final byte[] id)
+        {
+            if ((slots.getShort(base + 12) & 0xFFFF) != id.length)
+            {
+                return false;
+            }
+
+            final int offset = slots.getInt(base + 8);
+
+            for (int i = 0; i < id.length; i++)
+            {
+                if (arena.get(offset + i) != id[i])
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Provides a convenience method to find the first empty slot for a given hash.
+         *
+         * @param slots Our slots. Must not be null, and must not be full.
+         * @param hash The hash to find a slot for.
+         *
+         * @return The index of the slot.
+         */
+        private static int emptySlot(final ByteBuffer slots, final long hash)
+        {
+            final int mask = slotCount(slots) - 1;
+            int slot = (int) hash & mask;
+
+            while (0 != slots.getLong(slot * SLOT_BYTES))
+            {
+                slot = (slot + 1) & mask;
+            }
+
+            return slot;
+        }
+
+        /**
+         * Provides a convenience method to move to a bigger table, rehashing everything into it.
+         *
+         * @param slotCount The number of slots in the new table. Must be a power of two.
+         */
+        private void resize(final int slotCount)
+        {
+            final ByteBuffer slots = ByteBuffer.allocateDirect(slotCount * SLOT_BYTES);
+
+            for (int slot = 0; slot < slotCount(_slots); slot++)
+            {
+                final int base = slot * SLOT_BYTES;
+                final long hash = _slots.getLong(base);
+
+                if (0 != hash)
+                {
+                    copy(_slots, base, slots, emptySlot(slots, hash) * SLOT_BYTES);
+                }
+            }
+
+            _slots = slots;
+        }
+
+        /**
+         * Provides a convenience method to copy our live entries into a new arena, leaving room for one more.
+         *
+         * @param entryBytes The size of the entry we need room for.
+         */
+        private void compactArena(final int entryBytes)
+        {
+            final long needed = (long) _arenaLive + entryBytes;
+            final long capacity = needed > _arena.capacity() / 2 ? Math.max(2L * _arena.capacity(), 2 * needed) : _arena.capacity();
+
+            if (Integer.MAX_VALUE < needed)
+            {
+                throw new IllegalStateException("Index segment is full, it needs more segments.");
+            }
+
+            final ByteBuffer arena = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, capacity));
+            int used = 0;
+
+            for (int slot = 0; slot < slotCount(_slots); slot++)
+            {
+                final int base = slot * SLOT_BYTES;
+
+                if (0 != _slots.getLong(base))
+                {
+                    final int offset = _slots.getInt(base + 8);
+                    final int length = entryBytes(_slots, slot);
+
+                    for (int i = 0; i < length; i++)
+                    {
+                        arena.put(used + i, _arena.get(offset + i));
+                    }
+
+                    _slots.putInt(base + 8, used);
+                    used += length;
+                }
+            }
+
+            _arena = arena;
+            _arenaUsed = used;
+            _arenaLive = used;
+        }
+
+        /**
+         * Provides a convenience method to move one slot's entry into another.
+         *
+         * @param from The index of the slot to move.
+         * @param to The index of the slot to move it to.
+         */
+        private void copySlot(final int from, final int to)
+        {
+            copy(_slots, from * SLOT_BYTES, _slots, to * SLOT_BYTES);
+        }
+
+        /**
+         * Provides a convenience method to copy a slot, possibly between tables.
+         */
+        private static void copy(final ByteBuffer from, final int fromBase, final ByteBuffer to, final int toBase)
+        {
+            for (int i = 0; i < SLOT_BYTES; i += 8)
+            {
+                to.putLong(toBase + i, from.getLong(fromBase + i));
+            }
+        }
+
+        /**
+         * Provides a convenience method to get the number of arena bytes a slot's entry takes up.
+         *
+         * @param slots Our slots. Must not be null.
+         * @param slot The index of the slot.
+         *
+         * @return The length of the slot's ID, content version and digests, together.
+         */
+        private static int entryBytes(final ByteBuffer slots, final int slot)
+        {
+            final int base = slot * SLOT_BYTES;
+            return (slots.getShort(base + 12) & 0xFFFF) + Math.max(0, (slots.get(base + 14) & 0xFF) - 1)
+                   + (0 == (slots.get(base + 15) & DIGESTS_FLAG) ? 0 : DIGESTS_BYTES);
+        }
+
+        /**
+         * Provides a convenience method to pack the digests of a stream into the bytes we keep in our arena.
+         *
+         * @param metadata The {@link StreamMetadata} to get the digests from. Must not be null.
+         *
+         * @return The CRC32C followed by the SHA-256, or null if the stream hasn't got both.
+         *
+         * @throws IllegalArgumentException If either of the digests isn't valid hex of the right length.
+         */
+        private static byte[] digests(final StreamMetadata metadata)
+        {
+            if (null == metadata.getCrc32c() || null == metadata.getSha256())
+            {
+                return null;
+            }
+
+            try
+            {
+                final byte[] sha256 = Hex.decodeHex(metadata.getSha256().toCharArray());
+
+                if (8 != metadata.getCrc32c().length() || DIGESTS_BYTES - 4 != sha256.length)
+                {
+                    throw new IllegalArgumentException(String.format("Stream %s has malformed digests.", metadata.getId()));
+                }
+
+                return ByteBuffer.allocate(DIGESTS_BYTES).putInt(Integer.parseUnsignedInt(metadata.getCrc32c(), 16)).put(sha256).array();
+            }
+            catch (final DecoderException | NumberFormatException ex)
+            {
+                throw new IllegalArgumentException(String.format("Stream %s has malformed digests.", metadata.getId()), ex);
+            }
+        }
+
+        /**
+         * Provides a convenience method to get the number of slots in a table.
+         *
+         * @param slots The table. Must not be null.
+         *
+         * @return The number of slots in it.
+         */
+        private static int slotCount(final ByteBuffer slots)
+        {
+            return slots.capacity() / SLOT_BYTES;
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package com._8x8.cloud.hss.persistence;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
+import com._8x8.cloud.hss.model.StreamStatistics;
+import com._8x8.cloud.hss.model.StreamStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the metadata for every stream in an {@link OffHeapStreamIndex}, in front of another {@link IStreamStateDao}, so
+ * that status checks never go to the database. Unlike {@link CachingStreamStateDao} we hold everything rather than the
+ * popular streams, which is only affordable because our entries live outside of the heap (at around 250 bytes per
+ * expected stream, IDs and the slack in our tables included, and nothing for the GC to trace), and which means that a
+ * stream we don't have doesn't exist. That makes a {@link BloomFilteredStreamStateDao} behind us redundant. Mind
+ * <code>-XX:MaxDirectMemorySize</code>, which has to cover all of it.<p/>
+ *
+ * Our index is loaded from the database in the background once we start (see {@link #init()}), and we pass lookups
+ * through until it's done. Every write through us refreshes its entry from the database once it's done (unlike
+ * {@link CachingStreamStateDao}, a stream we don't have is one that doesn't exist, so we can't just drop it), under a
+ * lock striped by ID so that concurrent writers can't leave an older entry behind. Streams written while we're loading are left alone by the load, which may have read them before the write. If
+ * we can't refresh an entry we stop trusting it, and look it up in the database until we can.<p/>
+ *
+ * Only {@link #findStreamMetadataById(String)} and {@link #findStreamMetadataByIds(Collection)} are answered from our
+ * index; listings always go to the database.<p/>
+ *
+ * Please note that when several nodes share a database we never see writes made by the others, unless somebody calls
+ * {@link #invalidate(String)} (IE: over JMX, or from a message listener), so this is for a database of our own.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class OffHeapStreamStateDao implements IStreamStateDao
+{
+    /**
+     * Holds the {@link Logger} for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(OffHeapStreamStateDao.class);
+
+    /**
+     * Holds the number of {@link StreamMetadata} we read at a time while loading.
+     */
+    static final int LOAD_PAGE_SIZE = 1000;
+
+    /**
+     * Holds the number of locks we stripe refreshes over.
+     */
+    private static final int LOCK_STRIPES = 1024;
+
+    /**
+     * Holds the {@link IStreamStateDao} we're indexing.
+     */
+    private IStreamStateDao _streamStateDao;
+
+    /**
+     * Holds the number of streams we size our index for up front. Defaults to 1,000,000. We grow past it as needed,
+     * but setting it close to the real number saves rehashing while we load.
+     */
+    private long _expectedStreams = 1000000;
+
+    /**
+     * Holds the number of segments we split our index into, which bounds both how many writers can update it at once
+     * and how big any one segment gets. Defaults to 64.
+     */
+    private int _segments = 64;
+
+    /**
+     * Holds the number of seconds we wait before trying again if loading fails. Defaults to 60.
+     */
+    private long _loadRetrySeconds = 60;
+
+    /**
+     * Holds our index. Created by {@link #init()}.
+     */
+    private OffHeapStreamIndex _index;
+
+    /**
+     * Holds the locks we refresh and load entries under, striped by ID.
+     */
+    private final Object[] _locks = new Object[LOCK_STRIPES];
+
+    /**
+     * Holds the IDs of the streams written while we're loading, if we are, so that the load doesn't overwrite them.
+     */
+    private volatile Set<String> _written;
+
+    /**
+     * Holds the IDs of the streams we failed to refresh, whose entries we can't trust.
+     */
+    private final Set<String> _untrusted = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Holds whether we've finished loading, after which our index is the whole truth.
+     */
+    private volatile boolean _loaded;
+
+    /**
+     * Holds the executor we load on, if we were started with {@link #init()}.
+     */
+    private ScheduledExecutorService _executor;
+
+    /**
+     * Holds the number of lookups answered from our index.
+     */
+    private final AtomicLong _hitCount = new AtomicLong();
+
+    /**
+     * Holds the number of lookups we passed through to the database.
+     */
+    private final AtomicLong _missCount = new AtomicLong();
+
+    /**
+     * Holds how long loading took, in milliseconds.
+     */
+    private volatile long _loadMillis;
+
+    public OffHeapStreamStateDao()
+    {
+        for (int i = 0; i < LOCK_STRIPES; i++)
+        {
+            _locks[i] = new Object();
+        }
+    }
+
+    public IStreamStateDao getStreamStateDao() { return _streamStateDao; }
+    public void setStreamStateDao(final IStreamStateDao streamStateDao) { _streamStateDao = streamStateDao; }
+
+    public long getExpectedStreams() { return _expectedStreams; }
+    public void setExpectedStreams(final long expectedStreams) { _expectedStreams = expectedStreams; }
+
+    public int getSegments() { return _segments; }
+    public void setSegments(final int segments) { _segments = segments; }
+
+    public long getLoadRetrySeconds() { return _loadRetrySeconds; }
+    public void setLoadRetrySeconds(final long loadRetrySeconds) { _loadRetrySeconds = loadRetrySeconds; }
+
+    void setIndex(final OffHeapStreamIndex index) { _index = index; }
+
+    public boolean isLoaded() { return _loaded; }
+    public long getLoadMillis() { return _loadMillis; }
+    public long getHitCount() { return _hitCount.get(); }
+    public long getMissCount() { return _missCount.get(); }
+    public long getSize() { return _index.size(); }
+    public long getOffHeapBytes() { return _index.getOffHeapBytes(); }
+    public int getUntrustedCount() { return _untrusted.size(); }
+
+    /**
+     * Creates our index, and kicks off loading it in the background.
+     */
+    public void init()
+    {
+        _index = new OffHeapStreamIndex(getExpectedStreams(), getSegments());
+
+        _executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "hss-off-heap-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        _executor.scheduleWithFixedDelay(this::loadQuietly, 0, getLoadRetrySeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops loading, if we still are. Our index is released along with us.
+     */
+    public void destroy() throws InterruptedException
+    {
+        if (null != _executor)
+        {
+            _executor.shutdownNow();
+            _executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    @Override
+    public StreamMetadata createStreamMetadata(final String streamId, final StreamStatus status)
+    {
+        return getStreamStateDao().createStreamMetadata(streamId, status);
+    }
+
+    @Override
+    public List<StreamMetadata> findStreamMetadata() throws Exception
+    {
+        return getStreamStateDao().findStreamMetadata();
+    }
+
+    @Override
+    public List<StreamMetadata> findStreamMetadata(final StreamMetadataCriteria criteria, final String afterStreamId, final int limit) throws Exception
+    {
+        return getStreamStateDao().findStreamMetadata(criteria, afterStreamId, limit);
+    }
+
+    @Override
+    public StreamMetadata findStreamMetadataById(final String streamId) throws Exception
+    {
+        if (!trusts(streamId))
+        {
+            _missCount.incrementAndGet();
+            return getStreamStateDao().findStreamMetadataById(streamId);
+        }
+
+        _hitCount.incrementAndGet();
+
+        final StreamMetadata metadata = _index.get(streamId);
+        return null == metadata ? createStreamMetadata(streamId, StreamStatus.NOT_FOUND) : metadata;
+    }
+
+    @Override
+    public List<StreamMetadata> findStreamMetadataByIds(final Collection<String> streamIds) throws Exception
+    {
+        if (!_loaded)
+        {
+            _missCount.incrementAndGet();
+            return getStreamStateDao().findStreamMetadataByIds(streamIds);
+        }
+
+        final List<StreamMetadata> found = new ArrayList<>();
+
+        for (final String streamId : streamIds)
+        {
+            final StreamMetadata metadata = findStreamMetadataById(streamId);
+
+            if (StreamStatus.NOT_FOUND != metadata.getStatus())
+            {
+                found.add(metadata);
+            }
+        }
+
+        return found;
+    }
+
+    @Override
+    public StreamStatistics getStreamStatistics() throws Exception
+    {
+        return getStreamStateDao().getStreamStatistics();
+    }
+
+    @Override
+    public void saveOrUpdateStreamMetadata(final StreamMetadata metadata) throws Exception
+    {
+        try
+        {
+            getStreamStateDao().saveOrUpdateStreamMetadata(metadata);
+        }
+        finally
+        {
+            refresh(metadata.getId());
+        }
+    }
+
+    @Override
+    public boolean transitionStreamMetadata(final StreamMetadata metadata, final StreamStatus status) throws Exception
+    {
+        try
+        {
+            return getStreamStateDao().transitionStreamMetadata(metadata, status);
+        }
+        finally
+        {
+            // Whether we failed, lost the compare-and-set or won it, our entry may be out of date.
+            refresh(metadata.getId());
+        }
+    }
+
+    @Override
+    public int insertStreamMetadata(final Collection<StreamMetadata> metadata) throws Exception
+    {
+        try
+        {
+            return getStreamStateDao().insertStreamMetadata(metadata);
+        }
+        finally
+        {
+            // Unlike the cache we can't let these load on demand, since a missing entry means a missing stream.
+            metadata.forEach(streamMetadata -> refresh(streamMetadata.getId()));
+        }
+    }
+
+    @Override
+    public void deleteStreamMetadataById(final String streamId) throws Exception
+    {
+        try
+        {
+            getStreamStateDao().deleteStreamMetadataById(streamId);
+        }
+        finally
+        {
+            refresh(streamId);
+        }
+    }
+
+    /**
+     * Reloads the entry for a given stream from the database. Should be called whenever somebody else (IE: another
+     * node) modifies or deletes a stream.
+     *
+     * @param streamId The ID of the stream to invalidate. Must not be null.
+     */
+    public void invalidate(final String streamId)
+    {
+        refresh(streamId);
+    }
+
+    /**
+     * Loads every stream in the database into our index, after which we answer lookups from it. Anything written
+     * through us in the meantime has already been refreshed, and is left alone.
+     *
+     * @return The number of streams in our index.
+     */
+    public synchronized long load() throws Exception
+    {
+        if (_loaded)
+        {
+            return _index.size();
+        }
+
+        final long start = System.nanoTime();
+        final Set<String> written = ConcurrentHashMap.newKeySet();
+
+        // Publish this before we read anything, so that any write we might have read too early is left alone. See refresh(String).
+        _written = written;
+
+        try
+        {
+            String afterId = null;
+            List<StreamMetadata> page;
+
+            do
+            {
+                page = getStreamStateDao().findStreamMetadata(null, afterId, LOAD_PAGE_SIZE);
+
+                for (final StreamMetadata metadata : page)
+                {
+                    synchronized (lock(metadata.getId()))
+                    {
+                        if (!written.contains(metadata.getId()))
+                        {
+                            _index.put(metadata);
+                        }
+                    }
+                }
+
+                if (!page.isEmpty())
+                {
+                    afterId = page.get(page.size() - 1).getId();
+                }
+            }
+            while (page.size() == LOAD_PAGE_SIZE && !Thread.currentThread().isInterrupted());
+
+            if (Thread.currentThread().isInterrupted())
+            {
+                throw new InterruptedException("Interrupted while loading our index.");
+            }
+
+            _loaded = true;
+        }
+        finally
+        {
+            _written = null;
+        }
+
+        _loadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        LOGGER.info("Loaded {} streams into our off-heap index ({} bytes) in {}ms.", _index.size(), _index.getOffHeapBytes(), _loadMillis);
+
+        return _index.size();
+    }
+
+    /**
+     * Checks whether we can answer a lookup for a given stream from our index.
+     *
+     * @param streamId The ID of the stream. Must not be null.
+     *
+     * @return True if we've loaded, and haven't lost track of the stream since.
+     */
+    boolean trusts(final String streamId)
+    {
+        if (!_loaded)
+        {
+            return false;
+        }
+
+        // Try again, in case whatever stopped us refreshing it has gone away.
+        if (!_untrusted.isEmpty() && _untrusted.contains(streamId))
+        {
+            refresh(streamId);
+            return !_untrusted.contains(streamId);
+        }
+
+        return true;
+    }
+
+    /**
+     * Reloads the entry for a given stream from the database, once a write has gone through. This happens under a lock
+     * for the ID, so if we race with another writer the last one to refresh sees both writes. If we're loading, we mark
+     * the stream as written, so that the load doesn't put back what it read before our write. The write has already
+     * happened by now, so if we can't reload we stop trusting our entry rather than failing it.
+     *
+     * @param streamId The ID of the stream to refresh. Must not be null.
+     */
+    void refresh(final String streamId)
+    {
+        synchronized (lock(streamId))
+        {
+            final Set<String> written = _written;
+
+            if (null != written)
+            {
+                written.add(streamId);
+            }
+
+            try
+            {
+                final StreamMetadata metadata = getStreamStateDao().findStreamMetadataById(streamId);
+
+                if (StreamStatus.NOT_FOUND == metadata.getStatus())
+                {
+                    _index.remove(streamId);
+                }
+                else
+                {
+                    _index.put(metadata);
+                }
+
+                _untrusted.remove(streamId);
+            }
+            catch (final Exception ex)
+            {
+                LOGGER.warn(String.format("Failed to refresh metadata for %s, passing lookups through.", streamId), ex);
+                _untrusted.add(streamId);
+            }
+        }
+    }
+
+    /**
+     * Provides a convenience method to load on our executor, where there's nobody to throw to. Once we've loaded,
+     * there's nothing left for it to do.
+     */
+    void loadQuietly()
+    {
+        try
+        {
+            load();
+            _executor.shutdown();
+        }
+        catch (final InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (final Exception ex)
+        {
+            LOGGER.error(String.format("Failed to load our off-heap index, trying again in %ss.", getLoadRetrySeconds()), ex);
+        }
+    }
+
+    /**
+     * Provides a convenience method to find the lock for a given stream ID.
+     *
+     * @param streamId The ID of the stream. Must not be null.
+     *
+     * @return The lock to refresh or load it under. Will not be null.
+     */
+    private Object lock(final String streamId)
+    {
+        return _locks[streamId.hashCode() & (LOCK_STRIPES - 1)];
+    }
+}
@@ -0,0 +1,176 @@
+package com._8x8.cloud.hss.persistence;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Provides a Bloom filter over stream IDs: a compact, probabilistic set that can tell us a stream definitely doesn't
+ * exist, or that it might. There are no false negatives, and false positives happen at roughly the rate we were sized
+ * for, as long as we hold no more IDs than we were sized for. IDs can't be removed, so the only way to forget about a
+ * deleted stream is to build a new filter.<p/>
+ *
+ * Both {@link #put(String)} and {@link #mightContain(String)} are lock-free, so writers and readers can share a filter.
+ * We use the usual trick of deriving all our bit positions from two halves of a single 64-bit hash (see Kirsch and
+ * Mitzenmacher, "Less Hashing, Same Performance"), so adding or checking an ID only hashes it once.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+class StreamIdFilter
+{
+    /**
+     * Holds our bits, 64 to a word.
+     */
+    private final AtomicLongArray _bits;
+
+    /**
+     * Holds the number of bits we have, which is a whole number of words.
+     */
+    private final long _bitCount;
+
+    /**
+     * Holds the number of bits we set (and check) per ID.
+     */
+    private final int _hashCount;
+
+    /**
+     * Holds the number of IDs we've been asked to put. This counts duplicates, so it's an upper bound.
+     */
+    private final AtomicLong _size = new AtomicLong();
+
+    /**
+     * Creates a new, empty filter, sized for a given number of IDs and false positive rate.
+     *
+     * @param expectedIds The number of IDs we expect to hold. Must be positive.
+     * @param falsePositiveRate The rate of false positives we're willing to put up with, once we're holding that many.
+     *                          Must be between 0 and 1, exclusive.
+     */
+    StreamIdFilter(final long expectedIds, final double falsePositiveRate)
+    {
+        // The usual optimal sizing: m = -n ln(p) / ln(2)^2 bits, and k = (m / n) ln(2) hashes.
+        final long bits = (long) Math.ceil(-expectedIds * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        final int words = (int) Math.max(1, (bits + 63) / 64);
+
+        _bits = new AtomicLongArray(words);
+        _bitCount = 64L * words;
+        _hashCount = (int) Math.max(1, Math.round((double) _bitCount / expectedIds * Math.log(2)));
+    }
+
+    /**
+     * Adds a stream ID to the filter, after which {@link #mightContain(String)} will always be true for it.
+     *
+     * @param streamId The ID to add. Must not be null.
+     */
+    void put(final String streamId)
+    {
+        final long hash = hash(streamId);
+        final int first = (int) hash;
+        final int second = (int) (hash >>> 32);
+
+        for (int i = 1; i <= _hashCount; i++)
+        {
+            setBit(index(first, second, i));
+        }
+
+        _size.incrementAndGet();
+    }
+
+    /**
+     * Checks whether a stream ID might have been added to the filter.
+     *
+     * @param streamId The ID to check. Must not be null.
+     *
+     * @return False if the ID has definitely never been added, true if it might have been.
+     */
+    boolean mightContain(final String streamId)
+    {
+        final long hash = hash(streamId);
+        final int first = (int) hash;
+        final int second = (int) (hash >>> 32);
+
+        for (int i = 1; i <= _hashCount; i++)
+        {
+            final long index = index(first, second, i);
+
+            if (0 == (_bits.get((int) (index >>> 6)) & (1L << index)))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the number of IDs that have been put into the filter, counting any duplicates.
+     *
+     * @return The number of IDs we've been given.
+     */
+    long size()
+    {
+        return _size.get();
+    }
+
+    long getBitCount() { return _bitCount; }
+    int getHashCount() { return _hashCount; }
+
+    /**
+     * Provides a convenience method to find the bit for the i-th hash of an ID.
+     *
+     * @param first The low half of the hash of the ID.
+     * @param second The high half of the hash of the ID.
+     * @param i Which hash we want, starting from 1.
+     *
+     * @return The index of the bit, between 0 and {@link #_bitCount}.
+     */
+    private long index(final int first, final int second, final int i)
+    {
+        return ((first + (long) i * second) & Long.MAX_VALUE) % _bitCount;
+    }
+
+    /**
+     * Provides a convenience method to set a single bit, without stepping on anybody else setting bits in the same word.
+     *
+     * @param index The index of the bit to set.
+     */
+    private void setBit(final long index)
+    {
+        final int word = (int) (index >>> 6);
+        final long mask = 1L << index;
+
+        long current;
+
+        do
+        {
+            current = _bits.get(word);
+        }
+        while (0 == (current & mask) && !_bits.compareAndSet(word, current, current | mask));
+    }
+
+    /**
+     * Provides a convenience method to hash a stream ID to 64 bits: FNV-1a over its characters, followed by the
+     * MurmurHash3 finalizer to spread out the bits (FNV alone is a bit weak in the high bits for short keys).
+     *
+     * @param streamId The ID to hash. Must not be null.
+     *
+     * @return A 64-bit hash of the ID.
+     */
+    static long hash(final String streamId)
+    {
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < streamId.length(); i++)
+        {
+            hash ^= streamId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+}
@@ -0,0 +1,655 @@
+package com._8x8.cloud.hss.persistence;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+/**
+ * Provides a single append-only file of {@link StreamMetadata} records, along with an in-memory index of where the
+ * latest record for each stream lives. This is the storage half of {@link LogStreamStateDao}, which decides what to
+ * write; we just write it, and find it again.<p/>
+ *
+ * Each record is a CRC32 of its body, the length of its body, and then the body itself: the stream ID, status, size,
+ * timestamps, version, content version and digests. A delete is just a record with a status of {@link StreamStatus#NOT_FOUND}
+ * (IE: a tombstone). When we open a log we read it through from the start to rebuild our index, and stop at the first
+ * record that's cut short or fails its CRC, which is what a crash in the middle of a write leaves behind. If that's all
+ * there is (IE: there isn't a good record anywhere after it) it's truncated, so that we're back to appending after the
+ * last good record. Otherwise something has gone wrong in the middle of the log, and truncating would quietly throw away
+ * every good record after it, so we refuse to open it at all.<p/>
+ *
+ * Reads are positional and lock-free, so any number can run at once. Appends must be serialized by our caller. A
+ * {@link FileChannel} is closed for everybody when a thread using it is interrupted, so if that happens we quietly
+ * reopen it for everybody else.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+class StreamLog
+{
+    /**
+     * Holds the {@link Logger} for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamLog.class);
+
+    /**
+     * Holds the number of bytes in a record header: the CRC, followed by the length of the body.
+     */
+    static final int HEADER_BYTES = 8;
+
+    /**
+     * Holds the largest record body we'll believe. Our IDs top out at 255 characters (see <code>schema.sql</code>), so
+     * anything much bigger than that is a corrupt length.
+     */
+    static final int MAX_RECORD_BYTES = 64 * 1024;
+
+    /**
+     * Holds the file we're appending to. Changes if we're moved (see {@link #moveTo(File)}).
+     */
+    private volatile File _file;
+
+    /**
+     * Holds our open channel to {@link #_file}.
+     */
+    private volatile FileChannel _channel;
+
+    /**
+     * Holds the location of the latest record for every stream that exists, by ID.
+     */
+    private final ConcurrentSkipListMap<String, Location> _index = new ConcurrentSkipListMap<>();
+
+    /**
+     * Holds the number of bytes of good records in our file, which is where the next one goes.
+     */
+    private volatile long _size;
+
+    /**
+     * Holds the number of bytes in our file taken up by records that have since been overwritten or deleted (tombstones
+     * included), which is what compaction would get back.
+     */
+    private volatile long _deadBytes;
+
+    /**
+     * Holds whether we've been closed for good.
+     */
+    private volatile boolean _closed;
+
+    /**
+     * Creates a new log over a given file, which is created (empty) if it doesn't exist. Use {@link #open(File)} to
+     * read an existing log.
+     *
+     * @param file The file to append to. Must not be null.
+     */
+    StreamLog(final File file) throws IOException
+    {
+        _file = file;
+        _channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Opens an existing log (or creates an empty one), and rebuilds our index from it.
+     *
+     * @param file The file holding the log. Must not be null.
+     *
+     * @return A {@link StreamLog} ready for reading and appending. Will not be null.
+     */
+    static StreamLog open(final File file) throws IOException
+    {
+        final StreamLog log = new StreamLog(file);
+        final long end = log.scan(0, Long.MAX_VALUE, (metadata, offset, length) -> log.index(metadata, offset, length));
+        final long size = log._channel.size();
+
+        if (end < size)
+        {
+            final long next = log.findRecord(end + 1);
+
+            if (0 <= next)
+            {
+                log.close();
+                throw new IOException(String.format("Found a corrupt record at %d in %s, but a good one after it at %d. Refusing to " +
+                                                    "truncate the rest of the log; restore it, or truncate it by hand.", end, file, next));
+            }
+
+            LOGGER.warn("Truncating {} bytes of partial or corrupt records from the end of {}.", size - end, file);
+            log._channel.truncate(end);
+        }
+
+        log._size = end;
+
+        return log;
+    }
+
+    long getSize() { return _size; }
+    long getDeadBytes() { return _deadBytes; }
+    File getFile() { return _file; }
+
+    /**
+     * Gets our index, in stream ID order.
+     *
+     * @return The {@link Location} of the latest record for each stream that exists, by ID. Will not be null.
+     */
+    NavigableMap<String, Location> getIndex()
+    {
+        return _index;
+    }
+
+    /**
+     * Reads the latest metadata for a given stream.
+     *
+     * @param streamId The ID of the stream. Must not be null.
+     *
+     * @return The {@link StreamMetadata} for the stream, or null if it doesn't exist.
+     *
+     * @throws ClosedChannelException If we've been closed (IE: compacted away) in the meantime.
+     */
+    StreamMetadata read(final String streamId) throws IOException
+    {
+        final Location location = _index.get(streamId);
+        return null == location ? null : decode(readRecord(location));
+    }
+
+    /**
+     * Reads a whole record, header and all.
+     *
+     * @param location The {@link Location} of the record. Must be one of ours.
+     *
+     * @return A {@link ByteBuffer} holding the record, ready for reading. Will not be null.
+     */
+    ByteBuffer readRecord(final Location location) throws IOException
+    {
+        while (true)
+        {
+            final FileChannel channel = _channel;
+            final ByteBuffer record = ByteBuffer.allocate(location.getLength());
+
+            try
+            {
+                while (record.hasRemaining())
+                {
+                    if (0 > channel.read(record, location.getOffset() + record.position()))
+                    {
+                        throw new EOFException(String.format("Unexpected end of %s at %d.", _file, location.getOffset() + record.position()));
+                    }
+                }
+
+                record.flip();
+                return record;
+            }
+            catch (final ClosedByInterruptException ex)
+            {
+                // We're the ones that got interrupted, so there's no retrying: but nobody else should suffer for it.
+                reopen(channel);
+                throw ex;
+            }
+            catch (final ClosedChannelException ex)
+            {
+                // Somebody else got interrupted.
+                reopen(channel);
+            }
+        }
+    }
+
+    /**
+     * Appends a record for some metadata, and points our index at it (or, for a tombstone, takes the stream out of it).
+     * Must not be called concurrently.
+     *
+     * @param metadata The {@link StreamMetadata} to append. Must not be null.
+     */
+    void append(final StreamMetadata metadata) throws IOException
+    {
+        append(metadata.getId(), encode(metadata), StreamStatus.NOT_FOUND.equals(metadata.getStatus()));
+    }
+
+    /**
+     * Appends a record we've already encoded (IE: one we've read from another log). Must not be called concurrently.
+     *
+     * @param streamId The ID of the stream the record is for. Must not be null.
+     * @param record The whole record, header and all. Must not be null.
+     * @param tombstone Whether the record is a delete.
+     */
+    void append(final String streamId, final ByteBuffer record, final boolean tombstone) throws IOException
+    {
+        final long offset = _size;
+        final int length = record.remaining();
+        final FileChannel channel = _channel;
+
+        try
+        {
+            while (record.hasRemaining())
+            {
+                channel.write(record, offset + length - record.remaining());
+            }
+        }
+        catch (final IOException ex)
+        {
+            // Don't leave half a record behind: we'd lose everything after it the next time we're opened.
+            final boolean interrupted = Thread.interrupted();
+
+            try
+            {
+                reopen(channel).truncate(offset);
+            }
+            catch (final IOException truncateException)
+            {
+                ex.addSuppressed(truncateException);
+            }
+            finally
+            {
+                if (interrupted)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            throw ex;
+        }
+
+        _size = offset + length;
+        index(streamId, offset, length, tombstone);
+    }
+
+    /**
+     * Reads through a range of our file, record by record, stopping at the end of the range or at the first record
+     * that's cut short or fails its CRC.
+     *
+     * @param from The offset of the first record to read. Must be the start of a record.
+     * @param to The offset to stop at. May be past the end of the file.
+     * @param visitor The {@link RecordVisitor} to hand each record to. Must not be null.
+     *
+     * @return The offset just past the last good record we read.
+     */
+    long scan(final long from, final long to, final RecordVisitor visitor) throws IOException
+    {
+        long offset = from;
+
+        try (final FileInputStream file = new FileInputStream(_file))
+        {
+            file.getChannel().position(from);
+
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(file, 1 << 16));
+
+            while (offset < to)
+            {
+                final int crc;
+                final int length;
+                final byte[] body;
+
+                try
+                {
+                    crc = in.readInt();
+                    length = in.readInt();
+
+                    if (0 >= length || MAX_RECORD_BYTES < length)
+                    {
+                        LOGGER.warn("Found a record with a length of {} at {} in {}, stopping.", length, offset, _file);
+                        break;
+                    }
+
+                    body = new byte[length];
+                    in.readFully(body);
+                }
+                catch (final EOFException ex)
+                {
+                    break;
+                }
+
+                if (crc != crc(body, 0, length))
+                {
+                    LOGGER.warn("Found a record with a bad CRC at {} in {}, stopping.", offset, _file);
+                    break;
+                }
+
+                visitor.visit(decodeBody(body), offset, HEADER_BYTES + length);
+                offset += HEADER_BYTES + length;
+            }
+        }
+
+        return offset;
+    }
+
+    /**
+     * Looks for the first good record (IE: one with a believable length, a matching CRC and a body we can decode) at or
+     * after a given offset, one byte at a time, since whatever came before it tells us nothing about where it starts.
+     *
+     * @param from The offset to start looking at.
+     *
+     * @return The offset of the first good record we found, or -1 if there isn't one.
+     */
+    long findRecord(final long from) throws IOException
+    {
+        final long size = _channel.size();
+        final ByteBuffer window = ByteBuffer.allocate(2 * (HEADER_BYTES + MAX_RECORD_BYTES));
+        long windowStart = from;
+        int windowLength = 0;
+
+        for (long offset = from; offset + HEADER_BYTES <= size; offset++)
+        {
+            // Keep room for the largest record we'd believe ahead of us, as long as there's more of the file to read.
+            if (offset + HEADER_BYTES + MAX_RECORD_BYTES > windowStart + windowLength && windowStart + windowLength < size)
+            {
+                windowStart = offset;
+                windowLength = readFully(window, windowStart);
+            }
+
+            final int start = (int) (offset - windowStart);
+            final int length = window.getInt(start + 4);
+
+            if (0 >= length || MAX_RECORD_BYTES < length || start + HEADER_BYTES + length > windowLength
+                || window.getInt(start) != crc(window.array(), start + HEADER_BYTES, length))
+            {
+                continue;
+            }
+
+            try
+            {
+                decodeBody(Arrays.copyOfRange(window.array(), start + HEADER_BYTES, start + HEADER_BYTES + length));
+                return offset;
+            }
+            catch (final IOException | RuntimeException ex)
+            {
+                // A CRC that matches by chance. Unlikely, but keep looking.
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Flushes everything we've appended so far to disk.
+     */
+    void force() throws IOException
+    {
+        try
+        {
+            _channel.force(false);
+        }
+        catch (final ClosedChannelException ex)
+        {
+            reopen(_channel).force(false);
+        }
+    }
+
+    /**
+     * Moves our file somewhere else (IE: over the top of the log we were compacting), atomically.
+     *
+     * @param target Where our file should go. Must be on the same filesystem.
+     */
+    void moveTo(final File target) throws IOException
+    {
+        Files.move(_file.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        _file = target;
+
+        // The move itself isn't durable until the directory is, which we can only ask for on some platforms.
+        try (final FileChannel directory = FileChannel.open(target.getAbsoluteFile().getParentFile().toPath(), StandardOpenOption.READ))
+        {
+            directory.force(true);
+        }
+        catch (final IOException ex)
+        {
+            LOGGER.debug("Couldn't sync {}, carrying on.", target.getParentFile(), ex);
+        }
+    }
+
+    /**
+     * Closes our file for good. Anybody in the middle of a read will get a {@link ClosedChannelException}.
+     */
+    synchronized void close() throws IOException
+    {
+        _closed = true;
+        _channel.close();
+    }
+
+    /**
+     * Provides a convenience method to reopen our channel, if it's been closed out from under us by an interrupt. Only
+     * the first caller to find a given channel closed actually reopens it.
+     *
+     * @param closed The channel that was closed. Must not be null.
+     *
+     * @return Our current channel.
+     *
+     * @throws ClosedChannelException If we've been closed for good.
+     */
+    private synchronized FileChannel reopen(final FileChannel closed) throws IOException
+    {
+        if (_closed)
+        {
+            throw new ClosedChannelException();
+        }
+
+        if (closed == _channel && !closed.isOpen())
+        {
+            _channel = FileChannel.open(_file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        return _channel;
+    }
+
+    /**
+     * Provides a convenience method to fill a buffer from our file, starting at a given offset, for as much as there is.
+     *
+     * @param buffer The {@link ByteBuffer} to fill. Must not be null. Will be cleared first.
+     * @param offset The offset to start reading at.
+     *
+     * @return The number of bytes read, which is fewer than the buffer holds only at the end of our file.
+     */
+    private int readFully(final ByteBuffer buffer, final long offset) throws IOException
+    {
+        buffer.clear();
+
+        while (buffer.hasRemaining())
+        {
+            if (0 > _channel.read(buffer, offset + buffer.position()))
+            {
+                break;
+            }
+        }
+
+        return buffer.position();
+    }
+
+    /**
+     * Provides a convenience method to point our index at a new record, and keep track of the space it makes dead.
+     *
+     * @param metadata The {@link StreamMetadata} in the record. Must not be null.
+     * @param offset The offset of the record.
+     * @param length The length of the record, header and all.
+     */
+    private void index(final StreamMetadata metadata, final long offset, final int length)
+    {
+        index(metadata.getId(), offset, length, StreamStatus.NOT_FOUND.equals(metadata.getStatus()));
+    }
+
+    /**
+     * Provides a convenience method to point our index at a new record, and keep track of the space it makes dead.
+     *
+     * @param streamId The ID of the stream the record is for. Must not be null.
+     * @param offset The offset of the record.
+     * @param length The length of the record, header and all.
+     * @param tombstone Whether the record is a delete, in which case it's dead on arrival.
+     */
+    private void index(final String streamId, final long offset, final int length, final boolean tombstone)
+    {
+        final Location previous = tombstone ? _index.remove(streamId) : _index.put(streamId, new Location(offset, length));
+        _deadBytes += (null == previous ? 0 : previous.getLength()) + (tombstone ? length : 0);
+    }
+
+    /**
+     * Encodes a record for some metadata.
+     *
+     * @param metadata The {@link StreamMetadata} to encode. Must not be null.
+     *
+     * @return The whole record, header and all, ready for writing. Will not be null.
+     */
+    static ByteBuffer encode(final StreamMetadata metadata) throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        // We'll come back for the header once we know what's in the body.
+        out.writeLong(0);
+        out.writeUTF(metadata.getId());
+        out.writeUTF(metadata.getStatus().name());
+        out.writeLong(metadata.getFileSize());
+        out.writeLong(metadata.getCreatedTime());
+        out.writeLong(metadata.getLastModified());
+        out.writeLong(metadata.getVersion());
+        out.writeBoolean(null != metadata.getContentVersion());
+
+        if (null != metadata.getContentVersion())
+        {
+            out.writeUTF(metadata.getContentVersion());
+        }
+
+        // Digests came later, so they go last: a record from before them just stops short.
+        out.writeBoolean(null != metadata.getCrc32c());
+
+        if (null != metadata.getCrc32c())
+        {
+            out.writeUTF(metadata.getCrc32c());
+        }
+
+        out.writeBoolean(null != metadata.getSha256());
+
+        if (null != metadata.getSha256())
+        {
+            out.writeUTF(metadata.getSha256());
+        }
+
+        final byte[] record = bytes.toByteArray();
+        final int length = record.length - HEADER_BYTES;
+
+        return ByteBuffer.wrap(record).putInt(0, crc(record, HEADER_BYTES, length)).putInt(4, length);
+    }
+
+    /**
+     * Decodes a whole record, checking it against its CRC.
+     *
+     * @param record The whole record, header and all. Must not be null.
+     *
+     * @return The {@link StreamMetadata} in the record. Will not be null.
+     *
+     * @throws IOException If the record is corrupt.
+     */
+    static StreamMetadata decode(final ByteBuffer record) throws IOException
+    {
+        final int crc = record.getInt(0);
+        final int length = record.getInt(4);
+        final byte[] body = new byte[length];
+
+        ((ByteBuffer) record.position(HEADER_BYTES)).get(body);
+
+        if (crc != crc(body, 0, length))
+        {
+            throw new IOException("Found a record with a bad CRC.");
+        }
+
+        return decodeBody(body);
+    }
+
+    /**
+     * Provides a convenience method to decode the body of a record.
+     *
+     * @param body The body of the record. Must not be null.
+     *
+     * @return The {@link StreamMetadata} in the record. Will not be null.
+     */
+    private static StreamMetadata decodeBody(final byte[] body) throws IOException
+    {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        final StreamMetadata metadata = new StreamMetadata();
+
+        metadata.setId(in.readUTF());
+        metadata.setStatus(StreamStatus.valueOf(in.readUTF()));
+        metadata.setFileSize(in.readLong());
+        metadata.setCreatedTime(in.readLong());
+        metadata.setLastModified(in.readLong());
+        metadata.setVersion(in.readLong());
+        metadata.setContentVersion(in.readBoolean() ? in.readUTF() : null);
+
+        if (0 < in.available())
+        {
+            metadata.setCrc32c(in.readBoolean() ? in.readUTF() : null);
+            metadata.setSha256(in.readBoolean() ? in.readUTF() : null);
+        }
+
+        return metadata;
+    }
+
+    /**
+     * Provides a convenience method to compute the CRC32 of part of an array.
+     *
+     * @param bytes The array. Must not be null.
+     * @param offset Where to start.
+     * @param length How many bytes to include.
+     *
+     * @return The CRC, as an int.
+     */
+    private static int crc(final byte[] bytes, final int offset, final int length)
+    {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Provides a callback for each record we find while scanning.
+     */
+    interface RecordVisitor
+    {
+        /**
+         * Handles a single record.
+         *
+         * @param metadata The {@link StreamMetadata} in the record. Will not be null.
+         * @param offset The offset of the record.
+         * @param length The length of the record, header and all.
+         */
+        void visit(StreamMetadata metadata, long offset, int length) throws IOException;
+    }
+
+    /**
+     * Provides the location of a record in our file.
+     */
+    static class Location
+    {
+        /**
+         * Holds the offset of the record.
+         */
+        private final long _offset;
+
+        /**
+         * Holds the length of the record, header and all.
+         */
+        private final int _length;
+
+        Location(final long offset, final int length)
+        {
+            _offset = offset;
+            _length = length;
+        }
+
+        long getOffset() { return _offset; }
+        int getLength() { return _length; }
+    }
+}
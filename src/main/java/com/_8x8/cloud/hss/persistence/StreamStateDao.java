@@ -1,14 +1,24 @@
 package com._8x8.cloud.hss.persistence;
 
 import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
+import com._8x8.cloud.hss.model.StreamStatistics;
 import com._8x8.cloud.hss.model.StreamStatus;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcDaoSupport;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -38,6 +48,47 @@ public class StreamStateDao extends NamedParameterJdbcDaoSupport implements IStr
 {
     // TODO [kog@epiphanic.org - 6/11/15]: queries -> property files
 
+    /**
+     * Holds the query for creating a stream that doesn't exist yet, in a batch. Unlike a plain INSERT, a stream that
+     * already exists just doesn't match (IE: 0 rows), rather than failing the whole batch.
+     */
+    static final String INSERT_QUERY = "MERGE INTO STREAM_STATUS AS S "+
+                                       "USING (VALUES :streamId, :status, :size, CAST(:contentVersion AS VARCHAR(64)), CAST(:crc32c AS VARCHAR(8)), CAST(:sha256 AS VARCHAR(64))) " +
+                                       "I(STREAM_ID, STATUS, SIZE, CONTENT_VERSION, CRC32C, SHA256) "+
+                                       "ON (S.STREAM_ID = I.STREAM_ID) " +
+                                       "WHEN NOT MATCHED THEN INSERT(STREAM_ID, STATUS, SIZE, CONTENT_VERSION, CRC32C, SHA256, VERSION, CREATED, LAST_UPDATED) " +
+                                       "VALUES(I.STREAM_ID, I.STATUS, I.SIZE, I.CONTENT_VERSION, I.CRC32C, I.SHA256, 0, NOW(), NOW())";
+
+    /**
+     * Holds the compare-and-set for moving an existing stream from one status to another.
+     */
+    static final String UPDATE_QUERY = "UPDATE STREAM_STATUS SET STATUS = :status, SIZE = :size, CONTENT_VERSION = :contentVersion, CRC32C = :crc32c, SHA256 = :sha256, " +
+                                       "VERSION = VERSION + 1, LAST_UPDATED = NOW() " +
+                                       "WHERE STREAM_ID = :streamId AND STATUS = :expectedStatus AND VERSION = :version";
+
+    /**
+     * Holds the query for deleting a stream.
+     */
+    static final String DELETE_QUERY = "DELETE FROM STREAM_STATUS WHERE STREAM_ID = :streamId";
+
+    /**
+     * Holds the most IDs we'll put in a single IN list. Past this the statements get unwieldy (every ID is a bind
+     * parameter, and each distinct count is a statement of its own to prepare), so we split bigger lookups up.
+     */
+    static final int MAX_IDS_PER_QUERY = 500;
+
+    /**
+     * Holds the {@link TransactionTemplate} we apply batches of transitions in. Created once we have our data source.
+     */
+    private TransactionTemplate _transactionTemplate;
+
+    @Override
+    protected void initTemplateConfig()
+    {
+        super.initTemplateConfig();
+        _transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(getDataSource()));
+    }
+
     @Override
     public StreamMetadata createStreamMetadata(final String streamId, final StreamStatus status)
     {
@@ -55,6 +106,16 @@ public class StreamStateDao extends NamedParameterJdbcDaoSupport implements IStr
         return getNamedParameterJdbcTemplate().query("SELECT * FROM STREAM_STATUS", new StreamMetadataMapper());
     }
 
+    @Override
+    public List<StreamMetadata> findStreamMetadata(final StreamMetadataCriteria criteria, final String afterStreamId, final int limit)
+    {
+        final MapSqlParameterSource parameters = new MapSqlParameterSource("limit", limit);
+
+        return getNamedParameterJdbcTemplate().query(createQuery(criteria, afterStreamId, parameters),
+                                                     parameters,
+                                                     new StreamMetadataMapper());
+    }
+
     @Override
     public StreamMetadata findStreamMetadataById(final String streamId)
     {
@@ -73,26 +134,355 @@ public class StreamStateDao extends NamedParameterJdbcDaoSupport implements IStr
         return createStreamMetadata(streamId, StreamStatus.NOT_FOUND);
     }
 
+    /**
+     * {@inheritDoc}<p/>
+     *
+     * Please note that this is a round trip per {@link #MAX_IDS_PER_QUERY} IDs, rather than a single one.
+     */
+    @Override
+    public List<StreamMetadata> findStreamMetadataByIds(final Collection<String> streamIds)
+    {
+        final List<String> ids = new ArrayList<>(streamIds);
+        final List<StreamMetadata> metadata = new ArrayList<>(ids.size());
+
+        for (int start = 0; start < ids.size(); start += MAX_IDS_PER_QUERY)
+        {
+            metadata.addAll(getNamedParameterJdbcTemplate().query("SELECT * FROM STREAM_STATUS WHERE STREAM_ID IN (:streamIds)",
+                                                                  new MapSqlParameterSource("streamIds", ids.subList(start, Math.min(ids.size(), start + MAX_IDS_PER_QUERY))),
+                                                                  new StreamMetadataMapper()));
+        }
+
+        return metadata;
+    }
+
+    @Override
+    public StreamStatistics getStreamStatistics()
+    {
+        final StreamStatistics statistics = new StreamStatistics();
+
+        getJdbcTemplate().query("SELECT STATUS, COUNT(*) AS STREAMS, COALESCE(SUM(SIZE), 0) AS TOTAL_SIZE FROM STREAM_STATUS GROUP BY STATUS",
+                                (RowCallbackHandler) rs -> {
+                                    final long streams = rs.getLong("STREAMS");
+
+                                    switch (StreamStatus.valueOf(rs.getString("STATUS")))
+                                    {
+                                        case SUCCESSFUL:
+                                            statistics.setSuccessfulCount(streams);
+                                            break;
+
+                                        case IN_PROGRESS:
+                                            statistics.setInProgressCount(streams);
+                                            break;
+
+                                        case FAILED:
+                                            statistics.setFailedCount(streams);
+                                            break;
+
+                                        default:
+                                            break;
+                                    }
+
+                                    statistics.setTotalBytes(statistics.getTotalBytes() + rs.getLong("TOTAL_SIZE"));
+                                });
+
+        return statistics;
+    }
+
     @Override
     public void saveOrUpdateStreamMetadata(final StreamMetadata metadata)
     {
+        // Please note that the content version (and its digests) is swapped in the same statement as the status, which is
+        // what makes a versioned write visible to readers atomically.
         final String query = "MERGE INTO STREAM_STATUS AS S "+
-                             "USING (VALUES :streamId, :status, :size) I(STREAM_ID, STATUS, SIZE) "+
+                             "USING (VALUES :streamId, :status, :size, CAST(:contentVersion AS VARCHAR(64)), CAST(:crc32c AS VARCHAR(8)), CAST(:sha256 AS VARCHAR(64))) " +
+                             "I(STREAM_ID, STATUS, SIZE, CONTENT_VERSION, CRC32C, SHA256) "+
                              "ON (S.STREAM_ID = I.STREAM_ID) " +
-                             "WHEN MATCHED THEN UPDATE SET S.STREAM_ID = I.STREAM_ID, S.STATUS = I.STATUS, S.SIZE = I.SIZE, LAST_UPDATED = NOW() " +
-                             "WHEN NOT MATCHED THEN INSERT(STREAM_ID, STATUS, SIZE, CREATED, LAST_UPDATED) VALUES(I.STREAM_ID, I.STATUS, I.SIZE, NOW(), NOW())";
+                             "WHEN MATCHED THEN UPDATE SET S.STREAM_ID = I.STREAM_ID, S.STATUS = I.STATUS, S.SIZE = I.SIZE, S.CONTENT_VERSION = I.CONTENT_VERSION, " +
+                             "S.CRC32C = I.CRC32C, S.SHA256 = I.SHA256, S.VERSION = S.VERSION + 1, LAST_UPDATED = NOW() " +
+                             "WHEN NOT MATCHED THEN INSERT(STREAM_ID, STATUS, SIZE, CONTENT_VERSION, CRC32C, SHA256, CREATED, LAST_UPDATED) " +
+                             "VALUES(I.STREAM_ID, I.STATUS, I.SIZE, I.CONTENT_VERSION, I.CRC32C, I.SHA256, NOW(), NOW())";
 
         final SqlParameterSource parameters = new MapSqlParameterSource("streamId", metadata.getId()).addValue("status", metadata.getStatus().toString())
-                                                                                                     .addValue("size", metadata.getFileSize());
+                                                                                                     .addValue("size", metadata.getFileSize())
+                                                                                                     .addValue("contentVersion", metadata.getContentVersion())
+                                                                                                     .addValue("crc32c", metadata.getCrc32c())
+                                                                                                     .addValue("sha256", metadata.getSha256());
 
         getNamedParameterJdbcTemplate().update(query, parameters);
     }
 
+    @Override
+    public boolean transitionStreamMetadata(final StreamMetadata metadata, final StreamStatus status)
+    {
+        final boolean transitioned;
+
+        if (StreamStatus.NOT_FOUND.equals(metadata.getStatus()))
+        {
+            // There's nothing to compare against yet, so let the primary key decide: whoever inserts first wins.
+            try
+            {
+                getNamedParameterJdbcTemplate().update("INSERT INTO STREAM_STATUS(STREAM_ID, STATUS, SIZE, CONTENT_VERSION, CRC32C, SHA256, VERSION, CREATED, LAST_UPDATED) " +
+                                                       "VALUES(:streamId, :status, :size, :contentVersion, :crc32c, :sha256, 0, NOW(), NOW())",
+                                                       createParameters(metadata, status));
+
+                transitioned = true;
+            }
+            catch (final DuplicateKeyException ex)
+            {
+                return false;
+            }
+        }
+        else
+        {
+            transitioned = 1 == getNamedParameterJdbcTemplate().update(UPDATE_QUERY, createParameters(metadata, status));
+        }
+
+        if (transitioned)
+        {
+            applyTransition(metadata, status);
+        }
+
+        return transitioned;
+    }
+
+    /**
+     * Applies a batch of transitions in a single transaction, so that the whole batch costs one commit (and, if we're
+     * durable, one sync of the log) rather than one apiece. Each transition succeeds or fails on its own, exactly as it
+     * would through {@link #transitionStreamMetadata(StreamMetadata, StreamStatus)}, except that creating a stream that
+     * already exists simply fails rather than aborting the batch. Transitions to {@link StreamStatus#NOT_FOUND} are
+     * deletes (see {@link StreamTransition}).<p/>
+     *
+     * Please note that we group our statements by kind: creates, then updates, then deletes. If two transitions in the
+     * same batch touch the same stream, that's the order they happen in, which is as good as any for writes that were
+     * all in flight at once.
+     *
+     * @param transitions The {@link StreamTransition}s to apply. Must not be null.
+     *
+     * @return Whether each transition succeeded, in the same order. Will not be null.
+     */
+    public boolean[] transitionStreamMetadata(final List<StreamTransition> transitions)
+    {
+        final List<Integer> inserts = new ArrayList<>();
+        final List<Integer> updates = new ArrayList<>();
+        final List<Integer> deletes = new ArrayList<>();
+
+        for (int i = 0; i < transitions.size(); i++)
+        {
+            final StreamTransition transition = transitions.get(i);
+
+            if (transition.isDelete())
+            {
+                deletes.add(i);
+            }
+            else if (StreamStatus.NOT_FOUND.equals(transition.getMetadata().getStatus()))
+            {
+                inserts.add(i);
+            }
+            else
+            {
+                updates.add(i);
+            }
+        }
+
+        final boolean[] transitioned = new boolean[transitions.size()];
+
+        _transactionTemplate.execute(status -> {
+            batchUpdate(INSERT_QUERY, transitions, inserts, transitioned);
+            batchUpdate(UPDATE_QUERY, transitions, updates, transitioned);
+            batchUpdate(DELETE_QUERY, transitions, deletes, transitioned);
+
+            return null;
+        });
+
+        // Only now that it's all committed do we touch anybody's metadata.
+        for (int i = 0; i < transitions.size(); i++)
+        {
+            if (transitioned[i] && !transitions.get(i).isDelete())
+            {
+                applyTransition(transitions.get(i).getMetadata(), transitions.get(i).getStatus());
+            }
+        }
+
+        return transitioned;
+    }
+
+    @Override
+    public int insertStreamMetadata(final Collection<StreamMetadata> metadata)
+    {
+        // This is the same MERGE as saveOrUpdateStreamMetadata, minus the update: a stream that exists already wins.
+        final String query = "MERGE INTO STREAM_STATUS AS S "+
+                             "USING (VALUES :streamId, :status, :size, CAST(:contentVersion AS VARCHAR(64)), CAST(:crc32c AS VARCHAR(8)), CAST(:sha256 AS VARCHAR(64))) " +
+                             "I(STREAM_ID, STATUS, SIZE, CONTENT_VERSION, CRC32C, SHA256) "+
+                             "ON (S.STREAM_ID = I.STREAM_ID) " +
+                             "WHEN NOT MATCHED THEN INSERT(STREAM_ID, STATUS, SIZE, CONTENT_VERSION, CRC32C, SHA256, CREATED, LAST_UPDATED) " +
+                             "VALUES(I.STREAM_ID, I.STATUS, I.SIZE, I.CONTENT_VERSION, I.CRC32C, I.SHA256, NOW(), NOW())";
+
+        final SqlParameterSource[] parameters = metadata.stream()
+                                                        .map(m -> new MapSqlParameterSource("streamId", m.getId()).addValue("status", m.getStatus().toString())
+                                                                                                                  .addValue("size", m.getFileSize())
+                                                                                                                  .addValue("contentVersion", m.getContentVersion())
+                                                                                                                  .addValue("crc32c", m.getCrc32c())
+                                                                                                                  .addValue("sha256", m.getSha256()))
+                                                        .toArray(SqlParameterSource[]::new);
+
+        return Arrays.stream(getNamedParameterJdbcTemplate().batchUpdate(query, parameters)).sum();
+    }
+
     @Override
     public void deleteStreamMetadataById(final String streamId)
     {
-        getNamedParameterJdbcTemplate().update("DELETE FROM STREAM_STATUS WHERE STREAM_ID = :streamId",
-                                                createParameters(streamId));
+        getNamedParameterJdbcTemplate().update(DELETE_QUERY, createParameters(streamId));
+    }
+
+    /**
+     * Provides a convenience method to build the query for a page of {@link StreamMetadata} matching some criteria.<p/>
+     *
+     * Each criterion is backed by an index (see <code>schema.sql</code>), and so is the page itself: we seek straight to
+     * where the last page left off on the primary key, rather than counting our way there. The ID prefix is expressed
+     * as a range on the primary key too, since that's something HSQL knows how to use an index for, and a
+     * <code>LIKE</code> with a parameter isn't.
+     *
+     * @param criteria The {@link StreamMetadataCriteria} to match. May be null, in which case everything matches.
+     * @param afterStreamId The ID of the last stream on the previous page. May be null, in which case we start at the beginning.
+     * @param parameters The {@link MapSqlParameterSource} to add our parameters to. Must not be null, must already have our limit.
+     *
+     * @return The query to run. Will not be null.
+     */
+    String createQuery(final StreamMetadataCriteria criteria, final String afterStreamId, final MapSqlParameterSource parameters)
+    {
+        final List<String> conditions = new ArrayList<>();
+
+        if (null != criteria)
+        {
+            if (null != criteria.getStatus())
+            {
+                conditions.add("STATUS = :status");
+                parameters.addValue("status", criteria.getStatus().toString());
+            }
+
+            if (null != criteria.getModifiedAfter())
+            {
+                conditions.add("LAST_UPDATED >= :modifiedAfter");
+                parameters.addValue("modifiedAfter", new Timestamp(criteria.getModifiedAfter()));
+            }
+
+            if (null != criteria.getModifiedBefore())
+            {
+                conditions.add("LAST_UPDATED < :modifiedBefore");
+                parameters.addValue("modifiedBefore", new Timestamp(criteria.getModifiedBefore()));
+            }
+
+            if (null != criteria.getCreatedAfter())
+            {
+                conditions.add("CREATED >= :createdAfter");
+                parameters.addValue("createdAfter", new Timestamp(criteria.getCreatedAfter()));
+            }
+
+            if (null != criteria.getCreatedBefore())
+            {
+                conditions.add("CREATED < :createdBefore");
+                parameters.addValue("createdBefore", new Timestamp(criteria.getCreatedBefore()));
+            }
+
+            if (null != criteria.getMinSize())
+            {
+                conditions.add("SIZE >= :minSize");
+                parameters.addValue("minSize", criteria.getMinSize());
+            }
+
+            if (null != criteria.getMaxSize())
+            {
+                conditions.add("SIZE < :maxSize");
+                parameters.addValue("maxSize", criteria.getMaxSize());
+            }
+
+            // Everything with our prefix sorts between the prefix itself and the prefix followed by the highest character
+            // there is.
+            if (null != criteria.getPrefix())
+            {
+                conditions.add("STREAM_ID >= :prefix AND STREAM_ID < :prefixEnd");
+                parameters.addValue("prefix", criteria.getPrefix()).addValue("prefixEnd", criteria.getPrefix() + Character.MAX_VALUE);
+            }
+        }
+
+        if (null != afterStreamId)
+        {
+            conditions.add("STREAM_ID > :afterStreamId");
+            parameters.addValue("afterStreamId", afterStreamId);
+        }
+
+        final StringBuilder query = new StringBuilder("SELECT * FROM STREAM_STATUS");
+
+        if (!conditions.isEmpty())
+        {
+            query.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+
+        return query.append(" ORDER BY STREAM_ID LIMIT :limit").toString();
+    }
+
+    /**
+     * Provides a convenience method to create the {@link SqlParameterSource} for a transition.
+     *
+     * @param metadata The {@link StreamMetadata} we're transitioning from. Must not be null.
+     * @param status The {@link StreamStatus} we're transitioning to. Must not be null.
+     *
+     * @return A {@link SqlParameterSource} that'll do for any of our transition queries. Will not be null.
+     */
+    SqlParameterSource createParameters(final StreamMetadata metadata, final StreamStatus status)
+    {
+        return new MapSqlParameterSource("streamId", metadata.getId()).addValue("status", status.toString())
+                                                                      .addValue("size", metadata.getFileSize())
+                                                                      .addValue("contentVersion", metadata.getContentVersion())
+                                                                      .addValue("crc32c", metadata.getCrc32c())
+                                                                      .addValue("sha256", metadata.getSha256())
+                                                                      .addValue("expectedStatus", metadata.getStatus().toString())
+                                                                      .addValue("version", metadata.getVersion());
+    }
+
+    /**
+     * Provides a convenience method to run one kind of transition from a batch, as a JDBC batch of its own.
+     *
+     * @param query The query to run for each transition. Must be one of ours.
+     * @param transitions The whole batch of {@link StreamTransition}s. Must not be null.
+     * @param indexes The indexes of the transitions in the batch to run this query for. Must not be null.
+     * @param transitioned Where we record which of them succeeded. Must be as long as the batch.
+     */
+    void batchUpdate(final String query, final List<StreamTransition> transitions, final List<Integer> indexes, final boolean[] transitioned)
+    {
+        if (indexes.isEmpty())
+        {
+            return;
+        }
+
+        final SqlParameterSource[] parameters = indexes.stream()
+                                                       .map(transitions::get)
+                                                       .map(transition -> createParameters(transition.getMetadata(), transition.getStatus()))
+                                                       .toArray(SqlParameterSource[]::new);
+
+        final int[] counts = getNamedParameterJdbcTemplate().batchUpdate(query, parameters);
+
+        for (int i = 0; i < counts.length; i++)
+        {
+            transitioned[indexes.get(i)] = 1 == counts[i];
+        }
+    }
+
+    /**
+     * Provides a convenience method to bring a {@link StreamMetadata} in line with what we've just written for it.
+     *
+     * @param metadata The {@link StreamMetadata} we transitioned from. Must not be null.
+     * @param status The {@link StreamStatus} we transitioned to. Must not be null.
+     */
+    static void applyTransition(final StreamMetadata metadata, final StreamStatus status)
+    {
+        // A stream we've just created starts out at version 0, which is what it already has.
+        if (!StreamStatus.NOT_FOUND.equals(metadata.getStatus()))
+        {
+            metadata.setVersion(metadata.getVersion() + 1);
+        }
+
+        metadata.setStatus(status);
     }
 
     /**
@@ -122,6 +512,10 @@ public class StreamStateDao extends NamedParameterJdbcDaoSupport implements IStr
             metadata.setFileSize(rs.getLong("SIZE"));
             metadata.setCreatedTime(rs.getTimestamp("CREATED").getTime());
             metadata.setLastModified(rs.getTimestamp("LAST_UPDATED").getTime());
+            metadata.setContentVersion(rs.getString("CONTENT_VERSION"));
+            metadata.setCrc32c(rs.getString("CRC32C"));
+            metadata.setSha256(rs.getString("SHA256"));
+            metadata.setVersion(rs.getLong("VERSION"));
 
             return metadata;
         }
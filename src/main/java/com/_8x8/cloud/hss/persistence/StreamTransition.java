@@ -0,0 +1,51 @@
+package com._8x8.cloud.hss.persistence;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamStatus;
+
+/**
+ * Provides a single metadata write, as part of a batch (see {@link StreamStateDao#transitionStreamMetadata(java.util.List)}).
+ * This is the same compare-and-set as {@link IStreamStateDao#transitionStreamMetadata(StreamMetadata, StreamStatus)},
+ * with one exception: a transition to {@link StreamStatus#NOT_FOUND} deletes the stream, unconditionally, the same as
+ * {@link IStreamStateDao#deleteStreamMetadataById(String)} would.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamTransition
+{
+    /**
+     * Holds the {@link StreamMetadata} we're transitioning from, which is updated in place if we succeed.
+     */
+    private final StreamMetadata _metadata;
+
+    /**
+     * Holds the {@link StreamStatus} we're transitioning to.
+     */
+    private final StreamStatus _status;
+
+    /**
+     * Creates a new transition.
+     *
+     * @param metadata The {@link StreamMetadata} to transition from. Must not be null.
+     * @param status The {@link StreamStatus} to transition to. Must not be null.
+     */
+    public StreamTransition(final StreamMetadata metadata, final StreamStatus status)
+    {
+        _metadata = metadata;
+        _status = status;
+    }
+
+    public StreamMetadata getMetadata() { return _metadata; }
+    public StreamStatus getStatus() { return _status; }
+
+    /**
+     * Checks whether this transition is actually a delete.
+     *
+     * @return True if we're deleting our stream, false otherwise.
+     */
+    public boolean isDelete()
+    {
+        return StreamStatus.NOT_FOUND.equals(_status);
+    }
+}
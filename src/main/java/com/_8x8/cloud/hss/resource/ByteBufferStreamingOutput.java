@@ -0,0 +1,61 @@
+package com._8x8.cloud.hss.resource;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Provides a {@link StreamingOutput} that writes the remaining contents of a {@link ByteBuffer} straight to the
+ * response. This is what we use for raw (unfiltered) downloads of streams we've got in memory (see
+ * {@link com._8x8.cloud.hss.service.StreamCache}), which would otherwise go through a {@link java.io.InputStream} a
+ * chunk at a time.<p/>
+ *
+ * Please note that this takes ownership of the given buffer's position, so callers should hand us a view (IE: via
+ * {@link ByteBuffer#duplicate()}) if the buffer is shared.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class ByteBufferStreamingOutput implements StreamingOutput
+{
+    /**
+     * Holds the {@link ByteBuffer} we're going to write.
+     */
+    private final ByteBuffer _contents;
+
+    /**
+     * Creates a new instance of the {@link ByteBufferStreamingOutput}.
+     *
+     * @param contents A {@link ByteBuffer} to write, from its position to its limit. Must not be null.
+     */
+    public ByteBufferStreamingOutput(final ByteBuffer contents)
+    {
+        _contents = contents;
+    }
+
+    /**
+     * Gets the number of bytes we'll write.
+     *
+     * @return The number of bytes remaining in our buffer.
+     */
+    public long getContentLength()
+    {
+        return _contents.remaining();
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException, WebApplicationException
+    {
+        final WritableByteChannel target = Channels.newChannel(output);
+
+        // A channel over an OutputStream takes everything in one go, but we don't get to rely on that.
+        while (_contents.hasRemaining())
+        {
+            target.write(_contents);
+        }
+    }
+}
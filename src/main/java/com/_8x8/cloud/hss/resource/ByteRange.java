@@ -0,0 +1,234 @@
+package com._8x8.cloud.hss.resource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Provides a model for a single, satisfiable byte range of a stream (RFC 7233), along with the logic to turn a
+ * <code>Range</code> header into a list of them.<p/>
+ *
+ * Both ends of the range are inclusive, as they are in the header, and are always clamped to the length of the stream.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class ByteRange
+{
+    /**
+     * Holds the maximum number of ranges we're willing to serve for a single request. Anything past this and we'll just
+     * serve the whole stream, which the spec allows us to do. This keeps people from asking for a few thousand one byte
+     * ranges...
+     */
+    static final int MAX_RANGES = 64;
+
+    /**
+     * Holds the only range unit we support.
+     */
+    private static final String BYTES_UNIT = "bytes=";
+
+    /**
+     * Holds the offset of the first byte in the range.
+     */
+    private final long _first;
+
+    /**
+     * Holds the offset of the last byte in the range.
+     */
+    private final long _last;
+
+    /**
+     * Creates a new instance of the {@link ByteRange}.
+     *
+     * @param first The offset of the first byte in the range. Must be non-negative.
+     * @param last The offset of the last byte in the range. Must not be less than <code>first</code>.
+     */
+    public ByteRange(final long first, final long last)
+    {
+        _first = first;
+        _last = last;
+    }
+
+    public long getFirst() { return _first; }
+    public long getLast() { return _last; }
+
+    /**
+     * Gets the number of bytes in this range.
+     *
+     * @return The number of bytes covered by the range. Will always be positive.
+     */
+    public long getLength()
+    {
+        return _last - _first + 1;
+    }
+
+    /**
+     * Creates the value of a <code>Content-Range</code> header for this range.
+     *
+     * @param totalLength The total length of the stream.
+     *
+     * @return A <code>Content-Range</code> value, IE: <code>bytes 0-499/1234</code>.
+     */
+    public String toContentRange(final long totalLength)
+    {
+        return String.format("bytes %d-%d/%d", _first, _last, totalLength);
+    }
+
+    /**
+     * Creates the value of a <code>Content-Range</code> header for a 416/REQUESTED RANGE NOT SATISFIABLE.
+     *
+     * @param totalLength The total length of the stream.
+     *
+     * @return A <code>Content-Range</code> value, IE: <code>bytes *&#47;1234</code>.
+     */
+    public static String toUnsatisfiableContentRange(final long totalLength)
+    {
+        return String.format("bytes */%d", totalLength);
+    }
+
+    /**
+     * Parses a <code>Range</code> header against a stream of a given length. Overlapping and adjacent ranges are
+     * coalesced, and the result is sorted by offset.<p/>
+     *
+     * Please note the difference between the two "failure" cases: if the header is missing, malformed, uses a unit we
+     * don't know or asks for too many ranges we return <code>null</code> and the caller should ignore it (IE: send the
+     * whole thing). If the header is fine, but none of the ranges overlap the stream, we return an empty list and the
+     * caller should send a 416.
+     *
+     * @param header The value of the <code>Range</code> header. May be null.
+     * @param length The length of the stream, in bytes. Must not be negative.
+     *
+     * @return <code>null</code> if the header should be ignored, an empty list if it's unsatisfiable, else one or more
+     * {@link ByteRange}s to serve.
+     */
+    public static List<ByteRange> parse(final String header, final long length)
+    {
+        if (null == header || !header.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length()))
+        {
+            return null;
+        }
+
+        final String[] specs = header.substring(BYTES_UNIT.length()).split(",");
+
+        if (specs.length > MAX_RANGES)
+        {
+            return null;
+        }
+
+        final List<ByteRange> ranges = new ArrayList<>(specs.length);
+
+        try
+        {
+            for (final String rawSpec : specs)
+            {
+                final String spec = rawSpec.trim();
+                final int dash = spec.indexOf('-');
+
+                if (dash < 0)
+                {
+                    return null;
+                }
+
+                final String start = spec.substring(0, dash).trim();
+                final String end = spec.substring(dash + 1).trim();
+
+                if (start.isEmpty())
+                {
+                    // Suffix range: the last N bytes. Asking for zero of them is unsatisfiable, rather than invalid.
+                    final long suffixLength = Long.parseLong(end);
+
+                    if (suffixLength > 0 && length > 0)
+                    {
+                        ranges.add(new ByteRange(Math.max(0, length - suffixLength), length - 1));
+                    }
+
+                    continue;
+                }
+
+                final long first = Long.parseLong(start);
+                final long last = end.isEmpty() ? Long.MAX_VALUE : Long.parseLong(end);
+
+                // A backwards range means the whole header is bogus.
+                if (first < 0 || last < first)
+                {
+                    return null;
+                }
+
+                // Starting past the end of the stream is unsatisfiable, but might not be for the other ranges.
+                if (first < length)
+                {
+                    ranges.add(new ByteRange(first, Math.min(last, length - 1)));
+                }
+            }
+        }
+        catch (final NumberFormatException ex)
+        {
+            return null;
+        }
+
+        return coalesce(ranges);
+    }
+
+    /**
+     * Provides a convenience method to sort, and merge, overlapping or adjacent ranges.
+     *
+     * @param ranges A list of zero or more {@link ByteRange}s. May be empty, but must not be null.
+     *
+     * @return A sorted list of zero or more non-overlapping {@link ByteRange}s. May be empty, but never null.
+     */
+    static List<ByteRange> coalesce(final List<ByteRange> ranges)
+    {
+        if (ranges.size() < 2)
+        {
+            return ranges;
+        }
+
+        final List<ByteRange> sorted = new ArrayList<>(ranges);
+        Collections.sort(sorted, Comparator.comparingLong(ByteRange::getFirst));
+
+        final LinkedList<ByteRange> merged = new LinkedList<>();
+
+        for (final ByteRange range : sorted)
+        {
+            final ByteRange previous = merged.peekLast();
+
+            if (null != previous && range.getFirst() <= previous.getLast() + 1)
+            {
+                merged.removeLast();
+                merged.add(new ByteRange(previous.getFirst(), Math.max(previous.getLast(), range.getLast())));
+            }
+            else
+            {
+                merged.add(range);
+            }
+        }
+
+        return merged;
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+        if (!(obj instanceof ByteRange))
+        {
+            return false;
+        }
+
+        final ByteRange other = (ByteRange) obj;
+        return _first == other._first && _last == other._last;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Long.hashCode(_first) * 31 + Long.hashCode(_last);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%d-%d", _first, _last);
+    }
+}
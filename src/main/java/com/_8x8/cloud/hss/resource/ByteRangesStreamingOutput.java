@@ -0,0 +1,147 @@
+package com._8x8.cloud.hss.resource;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Provides a {@link StreamingOutput} that serves several regions of a file as a <code>multipart/byteranges</code> body
+ * (RFC 7233, Appendix A). Each part is copied with positioned reads, a chunk at a time (see
+ * {@link FileChannelStreamingOutput}), so we never buffer the regions themselves.<p/>
+ *
+ * Since the part headers are entirely predictable, we can also work out the exact length of the body up front, which
+ * means clients still get a <code>Content-Length</code>.<p/>
+ *
+ * Please note that this takes ownership of the given {@link FileChannel}, and will close it once the write is complete.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class ByteRangesStreamingOutput implements StreamingOutput
+{
+    /**
+     * Holds the line separator HTTP wants.
+     */
+    private static final String CRLF = "\r\n";
+
+    /**
+     * Holds the {@link FileChannel} we're going to stream from.
+     */
+    private final FileChannel _channel;
+
+    /**
+     * Holds the list of {@link ByteRange}s to serve, in order.
+     */
+    private final List<ByteRange> _ranges;
+
+    /**
+     * Holds the total length of the underlying stream, for our Content-Range headers.
+     */
+    private final long _totalLength;
+
+    /**
+     * Holds the multipart boundary we're going to use.
+     */
+    private final String _boundary;
+
+    /**
+     * Creates a new instance of the {@link ByteRangesStreamingOutput}, with a random boundary.
+     *
+     * @param channel A {@link FileChannel} to stream. Must not be null, must be open for reading.
+     * @param ranges A list of one or more non-overlapping {@link ByteRange}s to serve. Must not be null or empty.
+     * @param totalLength The total length of the underlying stream.
+     */
+    public ByteRangesStreamingOutput(final FileChannel channel, final List<ByteRange> ranges, final long totalLength)
+    {
+        this(channel, ranges, totalLength, UUID.randomUUID().toString().replace("-", ""));
+    }
+
+    /**
+     * Creates a new instance of the {@link ByteRangesStreamingOutput}.
+     *
+     * @param channel A {@link FileChannel} to stream. Must not be null, must be open for reading.
+     * @param ranges A list of one or more non-overlapping {@link ByteRange}s to serve. Must not be null or empty.
+     * @param totalLength The total length of the underlying stream.
+     * @param boundary The multipart boundary to use. Must not be blank, and must not appear in the stream.
+     */
+    ByteRangesStreamingOutput(final FileChannel channel, final List<ByteRange> ranges, final long totalLength, final String boundary)
+    {
+        _channel = channel;
+        _ranges = ranges;
+        _totalLength = totalLength;
+        _boundary = boundary;
+    }
+
+    /**
+     * Gets the {@link MediaType} of the body we're going to produce, complete with boundary.
+     *
+     * @return A <code>multipart/byteranges</code> {@link MediaType}. Will not be null.
+     */
+    public MediaType getMediaType()
+    {
+        return MediaType.valueOf("multipart/byteranges; boundary=" + _boundary);
+    }
+
+    /**
+     * Gets the exact length of the body we're going to produce.
+     *
+     * @return The number of bytes {@link #write(OutputStream)} will produce.
+     */
+    public long getContentLength()
+    {
+        long length = getTrailer().length();
+
+        for (final ByteRange range : _ranges)
+        {
+            length += getPartHeader(range).length() + range.getLength();
+        }
+
+        return length;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException, WebApplicationException
+    {
+        try (final FileChannel channel = _channel)
+        {
+            for (final ByteRange range : _ranges)
+            {
+                output.write(getPartHeader(range).getBytes(StandardCharsets.US_ASCII));
+                FileChannelStreamingOutput.transfer(channel, range.getFirst(), range.getLength(), output);
+            }
+
+            output.write(getTrailer().getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    /**
+     * Provides a convenience method to create the headers that go in front of a given part, including the boundary.
+     *
+     * @param range The {@link ByteRange} the part is for. Must not be null.
+     *
+     * @return The part headers, ready to write. Will be pure ASCII.
+     */
+    String getPartHeader(final ByteRange range)
+    {
+        return CRLF + "--" + _boundary + CRLF +
+               "Content-Type: " + MediaType.APPLICATION_OCTET_STREAM + CRLF +
+               "Content-Range: " + range.toContentRange(_totalLength) + CRLF +
+               CRLF;
+    }
+
+    /**
+     * Provides a convenience method to create the closing boundary.
+     *
+     * @return The closing boundary, ready to write. Will be pure ASCII.
+     */
+    String getTrailer()
+    {
+        return CRLF + "--" + _boundary + "--" + CRLF;
+    }
+}
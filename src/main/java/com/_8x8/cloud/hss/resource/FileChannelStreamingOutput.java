@@ -0,0 +1,118 @@
+package com._8x8.cloud.hss.resource;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Provides a {@link StreamingOutput} that writes the contents of a {@link FileChannel} to the response, in large
+ * chunks.<p/>
+ *
+ * This is what we use for raw (unfiltered) downloads. Please note that it isn't zero-copy: Jersey hands us an
+ * {@link OutputStream} wrapped around the container's, so there's no socket for sendfile to get at, and
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} into anything else just copies
+ * through a buffer of its own. What this buys us over an {@link java.io.InputStream} is a
+ * <code>Content-Length</code> from the version we opened, a 64KB buffer per download rather than a new one per chunk,
+ * and positioned reads.<p/>
+ *
+ * We can also serve a single region of the file (IE: for a <code>Range</code> request), in which case we read from
+ * the start of the region rather than seeking.<p/>
+ *
+ * Please note that this takes ownership of the given {@link FileChannel}, and will close it once the write is complete.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class FileChannelStreamingOutput implements StreamingOutput
+{
+    /**
+     * Holds the {@link FileChannel} we're going to stream from.
+     */
+    private final FileChannel _channel;
+
+    /**
+     * Holds the region of the file we're going to stream, or <code>null</code> for the whole thing.
+     */
+    private final ByteRange _range;
+
+    /**
+     * Holds how many bytes we read from the file at a time.
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Creates a new instance of the {@link FileChannelStreamingOutput}, which will stream the entire file.
+     *
+     * @param channel A {@link FileChannel} to stream. Must not be null, must be open for reading.
+     */
+    public FileChannelStreamingOutput(final FileChannel channel)
+    {
+        this(channel, null);
+    }
+
+    /**
+     * Creates a new instance of the {@link FileChannelStreamingOutput}, which will stream a single region of the file.
+     *
+     * @param channel A {@link FileChannel} to stream. Must not be null, must be open for reading.
+     * @param range The {@link ByteRange} to stream. If null, the whole file will be streamed.
+     */
+    public FileChannelStreamingOutput(final FileChannel channel, final ByteRange range)
+    {
+        _channel = channel;
+        _range = range;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException, WebApplicationException
+    {
+        try (final FileChannel channel = _channel)
+        {
+            if (null == _range)
+            {
+                transfer(channel, 0, channel.size(), output);
+            }
+            else
+            {
+                transfer(channel, _range.getFirst(), _range.getLength(), output);
+            }
+        }
+    }
+
+    /**
+     * Provides a convenience method to copy a region of a {@link FileChannel} to an {@link OutputStream}. This does
+     * positioned reads, so it does not move the position of the source channel.
+     *
+     * @param channel The {@link FileChannel} to read from. Must not be null, must be open for reading.
+     * @param offset The offset of the first byte to copy.
+     * @param count The number of bytes to copy.
+     * @param output The {@link OutputStream} to write to. Must not be null.
+     *
+     * @throws IOException If the copy fails, or the file is shorter than we expected.
+     */
+    static void transfer(final FileChannel channel, final long offset, final long count, final OutputStream output) throws IOException
+    {
+        final byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(count, 1))];
+        final ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+        final long end = offset + count;
+
+        long position = offset;
+
+        while (position < end)
+        {
+            wrapped.clear().limit((int) Math.min(buffer.length, end - position));
+            final int read = channel.read(wrapped, position);
+
+            // If the file shrank underneath us we'd spin forever, and we've already promised a Content-Length...
+            if (read < 0 || (0 == read && position >= channel.size()))
+            {
+                throw new IOException(String.format("Stream truncated after %d of %d bytes.", position - offset, count));
+            }
+
+            output.write(buffer, 0, read);
+            position += read;
+        }
+    }
+}
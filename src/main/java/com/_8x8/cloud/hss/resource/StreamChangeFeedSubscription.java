@@ -0,0 +1,277 @@
+package com._8x8.cloud.hss.resource;
+
+import com._8x8.cloud.hss.service.StreamChangeFeed;
+import com._8x8.cloud.hss.service.StreamChangeFeed.Change;
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Provides a subscription to a {@link StreamChangeFeed}, which follows it as Server-Sent Events on an {@link EventOutput},
+ * one <code>change</code> event per transition, until the client goes away. Each event's ID is the feed's epoch and the
+ * change's sequence number (IE: <code>&lt;epoch&gt;-&lt;sequence&gt;</code>), so a client that reconnects with a
+ * <code>Last-Event-ID</code> picks up where it left off, and its data is the
+ * {@link com._8x8.cloud.hss.model.StreamMetadata} of the stream (as in the JSON listing), with a status of
+ * {@link com._8x8.cloud.hss.model.StreamStatus#NOT_FOUND} for a delete.<p/>
+ *
+ * If the client has missed changes (IE: it fell behind, or is resuming from before a restart), we send a
+ * <code>reset</code> event before carrying on from the oldest change we have, and it should go back to the listing for
+ * anything it cares about. We also send a comment every so often when nothing is happening, which keeps proxies from
+ * timing us out and tells us when the client has gone.<p/>
+ *
+ * Please note that we don't hold a thread between events. The feed calls us back when there's something to write, and
+ * we write it on one of its threads, so a slow client only holds up itself.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamChangeFeedSubscription implements Runnable
+{
+    /**
+     * Holds the {@link Logger} for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamChangeFeedSubscription.class);
+
+    /**
+     * Holds the {@link ObjectMapper} we serialize with, set up the same way as for NDJSON (see
+     * {@link StreamMetadataNdjsonOutput}).
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().setAnnotationIntrospector(
+            AnnotationIntrospector.pair(new JaxbAnnotationIntrospector(TypeFactory.defaultInstance()), new JacksonAnnotationIntrospector()));
+
+    /**
+     * Holds the most changes we'll read from the feed at a time.
+     */
+    static final int BATCH_SIZE = 1000;
+
+    /**
+     * Holds what we send when there's nothing to say: a comment, which clients ignore. Jersey won't write an event
+     * without data, but empty data doesn't make an event either, so it's just as quiet.
+     */
+    private static final OutboundEvent HEARTBEAT = new OutboundEvent.Builder().comment("").data(String.class, "").build();
+
+    /**
+     * Holds the {@link StreamChangeFeed} we follow.
+     */
+    private final StreamChangeFeed _changeFeed;
+
+    /**
+     * Holds the {@link EventOutput} we write to.
+     */
+    private final EventOutput _output;
+
+    /**
+     * Holds how long we'll go without writing anything, in milliseconds.
+     */
+    private final long _heartbeatMillis;
+
+    /**
+     * Holds the sequence number of the last change we've written. Guarded by <code>this</code>.
+     */
+    private long _sequence;
+
+    /**
+     * Holds whether the client has to be told it's missed changes, whatever we have for it. Guarded by <code>this</code>.
+     */
+    private boolean _reset;
+
+    /**
+     * Holds when we last wrote anything, in milliseconds since the epoch. Guarded by <code>this</code>.
+     */
+    private long _lastWriteMillis;
+
+    /**
+     * Holds whether we've got a write coming up, so that a burst of changes doesn't queue up a write for each.
+     */
+    private final AtomicBoolean _scheduled = new AtomicBoolean();
+
+    /**
+     * Holds our heartbeat, once we've started.
+     */
+    private volatile ScheduledFuture<?> _heartbeat;
+
+    /**
+     * Holds whether we've been closed.
+     */
+    private volatile boolean _closed;
+
+    /**
+     * Creates a new instance of the {@link StreamChangeFeedSubscription}.
+     *
+     * @param changeFeed The {@link StreamChangeFeed} to follow. Must not be null.
+     * @param output The {@link EventOutput} to write to. Must not be null.
+     * @param afterSequence The sequence number of the last change the client saw. Zero for everything we have.
+     * @param reset Whether or not the client has missed changes we can't tell it about, IE: from before a restart.
+     * @param heartbeatMillis How long to go without writing anything before we send a comment, in milliseconds.
+     */
+    public StreamChangeFeedSubscription(final StreamChangeFeed changeFeed, final EventOutput output, final long afterSequence,
+                                        final boolean reset, final long heartbeatMillis)
+    {
+        _changeFeed = changeFeed;
+        _output = output;
+        _sequence = afterSequence;
+        _reset = reset;
+        _heartbeatMillis = heartbeatMillis;
+    }
+
+    /**
+     * Starts following the feed. We write whatever the client has missed (or a comment, to let it know we're there)
+     * straight away.
+     */
+    public void start()
+    {
+        if (!_changeFeed.subscribe(this))
+        {
+            close();
+            return;
+        }
+
+        _heartbeat = _changeFeed.schedule(this, _heartbeatMillis);
+        run();
+    }
+
+    /**
+     * Arranges for us to catch up with the feed on one of its threads, unless we already have. Called whenever there's
+     * something new, and on every heartbeat.
+     */
+    @Override
+    public void run()
+    {
+        if (_changeFeed.isClosed())
+        {
+            close();
+        }
+        else if (!_closed && _scheduled.compareAndSet(false, true))
+        {
+            _changeFeed.dispatch(this::write);
+        }
+    }
+
+    /**
+     * Writes whatever's been published since we last wrote, or a comment if it's been a while since we wrote anything.
+     */
+    synchronized void write()
+    {
+        // Anything published from here on needs another write, since we might already have read past where it went.
+        _scheduled.set(false);
+
+        if (_closed)
+        {
+            return;
+        }
+
+        try
+        {
+            List<Change> changes = _changeFeed.read(_sequence, BATCH_SIZE, 0);
+
+            if (_reset && changes.isEmpty())
+            {
+                writeEvent(_sequence, "reset", "{}");
+            }
+
+            while (!changes.isEmpty())
+            {
+                final long first = changes.get(0).getSequence();
+
+                if (_reset || first != _sequence + 1)
+                {
+                    writeEvent(first - 1, "reset", "{}");
+                }
+
+                for (final Change change : changes)
+                {
+                    writeEvent(change.getSequence(), "change", OBJECT_MAPPER.writeValueAsString(change.getMetadata()));
+                }
+
+                _sequence = changes.get(changes.size() - 1).getSequence();
+                changes = _changeFeed.read(_sequence, BATCH_SIZE, 0);
+            }
+
+            // This is where we find out that the client has gone.
+            if (System.currentTimeMillis() - _lastWriteMillis >= _heartbeatMillis)
+            {
+                write(HEARTBEAT);
+            }
+        }
+        catch (final IOException ex)
+        {
+            LOGGER.debug("Dropping a change feed subscriber, as it's gone away.");
+            close();
+        }
+        catch (final InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            close();
+        }
+    }
+
+    /**
+     * Stops following the feed, and ends the response.
+     */
+    public void close()
+    {
+        _closed = true;
+        _changeFeed.unsubscribe(this);
+
+        final ScheduledFuture<?> heartbeat = _heartbeat;
+
+        if (null != heartbeat)
+        {
+            heartbeat.cancel(false);
+        }
+
+        try
+        {
+            _output.close();
+        }
+        catch (final IOException ex)
+        {
+            LOGGER.debug("Failed to close a change feed subscriber, which has likely gone away already.", ex);
+        }
+    }
+
+    /**
+     * Checks whether we've been closed.
+     *
+     * @return True if we've stopped following the feed, else false.
+     */
+    public boolean isClosed()
+    {
+        return _closed;
+    }
+
+    /**
+     * Provides a convenience method to write a single event.
+     *
+     * @param sequence The sequence number the event is for, which the client will hand back if it reconnects.
+     * @param name The name of the event. Must not be null.
+     * @param data The data for the event, which must be a single line. Must not be null.
+     */
+    private void writeEvent(final long sequence, final String name, final String data) throws IOException
+    {
+        write(new OutboundEvent.Builder().id(_changeFeed.getEpoch() + "-" + sequence).name(name).data(String.class, data).build());
+        _reset = false;
+    }
+
+    /**
+     * Provides a convenience method to write an event, and note when we did.
+     *
+     * @param event The {@link OutboundEvent} to write. Must not be null.
+     */
+    private void write(final OutboundEvent event) throws IOException
+    {
+        _output.write(event);
+        _lastWriteMillis = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,71 @@
+package com._8x8.cloud.hss.resource;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCollection;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
+import com._8x8.cloud.hss.service.IStreamService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Provides a {@link StreamMetadataOutput} that writes a {@link StreamMetadataCollection} as JSON, just as our JSON
+ * provider would, but an entry at a time rather than all at once. There's never a cursor, since this is everything.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamMetadataJsonOutput extends StreamMetadataOutput
+{
+    /**
+     * Holds what comes before the first entry.
+     */
+    private static final byte[] START = "{\"metadata\":[".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Holds what comes between entries.
+     */
+    private static final int SEPARATOR = ',';
+
+    /**
+     * Holds what comes after the last entry.
+     */
+    private static final byte[] END = "]}".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Creates a new instance of the {@link StreamMetadataJsonOutput}.
+     *
+     * @param streamService The {@link IStreamService} to page through. Must not be null.
+     * @param criteria The {@link StreamMetadataCriteria} streams must match. May be null, in which case we list everything.
+     * @param pageSize The number of {@link StreamMetadata} to fetch at a time. Must be positive.
+     */
+    public StreamMetadataJsonOutput(final IStreamService streamService, final StreamMetadataCriteria criteria, final int pageSize)
+    {
+        super(streamService, criteria, null, pageSize);
+    }
+
+    @Override
+    protected void writeStart(final OutputStream output) throws IOException
+    {
+        output.write(START);
+    }
+
+    @Override
+    protected void writeMetadata(final OutputStream output, final StreamMetadata metadata, final boolean first) throws IOException
+    {
+        if (!first)
+        {
+            output.write(SEPARATOR);
+        }
+
+        // Don't hand the mapper our stream, or it'll close it on us.
+        output.write(OBJECT_MAPPER.writeValueAsBytes(metadata));
+    }
+
+    @Override
+    protected void writeEnd(final OutputStream output) throws IOException
+    {
+        output.write(END);
+    }
+}
@@ -0,0 +1,44 @@
+package com._8x8.cloud.hss.resource;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
+import com._8x8.cloud.hss.service.IStreamService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Provides a {@link StreamMetadataOutput} that writes newline-delimited JSON (NDJSON): one object per line, each just
+ * like an entry in the JSON listing.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamMetadataNdjsonOutput extends StreamMetadataOutput
+{
+    /**
+     * Holds the line separator for NDJSON, which is always a bare newline.
+     */
+    private static final int NEWLINE = '\n';
+
+    /**
+     * Creates a new instance of the {@link StreamMetadataNdjsonOutput}.
+     *
+     * @param streamService The {@link IStreamService} to page through. Must not be null.
+     * @param criteria The {@link StreamMetadataCriteria} streams must match. May be null, in which case we list everything.
+     * @param afterId The ID of the stream to start after. May be null, in which case we start at the beginning.
+     * @param pageSize The number of {@link StreamMetadata} to fetch at a time. Must be positive.
+     */
+    public StreamMetadataNdjsonOutput(final IStreamService streamService, final StreamMetadataCriteria criteria, final String afterId, final int pageSize)
+    {
+        super(streamService, criteria, afterId, pageSize);
+    }
+
+    @Override
+    protected void writeMetadata(final OutputStream output, final StreamMetadata metadata, final boolean first) throws IOException
+    {
+        // Don't hand the mapper our stream, or it'll close it on us.
+        output.write(OBJECT_MAPPER.writeValueAsBytes(metadata));
+        output.write(NEWLINE);
+    }
+}
@@ -0,0 +1,159 @@
+package com._8x8.cloud.hss.resource;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
+import com._8x8.cloud.hss.service.IStreamService;
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Provides a {@link StreamingOutput} that writes the {@link StreamMetadata} for every stream known to the system (or
+ * just those matching some criteria), as we go. Subclasses decide what it looks like on the wire.<p/>
+ *
+ * We pull the metadata a page at a time (see {@link IStreamService#getMetadataForStreams(StreamMetadataCriteria, String, int)}),
+ * so only one page is ever on the heap, however many streams there are. Paging rather than holding a single cursor open also means
+ * a slow client doesn't pin a database connection for the whole listing. Each page is flushed once it's written, so the
+ * client can start on it while we fetch the next one.<p/>
+ *
+ * Please note that since we page by ID, streams created behind us while we're writing won't show up, and the listing is
+ * not a point-in-time snapshot.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public abstract class StreamMetadataOutput implements StreamingOutput
+{
+    /**
+     * Holds the {@link ObjectMapper} we serialize JSON with. We'd like each entry to look just like one from our JSON
+     * provider, so we honor the JAXB annotations first (IE: for ordering, and leaving out our internal versions).
+     */
+    protected static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().setAnnotationIntrospector(
+            AnnotationIntrospector.pair(new JaxbAnnotationIntrospector(TypeFactory.defaultInstance()), new JacksonAnnotationIntrospector()));
+
+    /**
+     * Holds the {@link IStreamService} we page through.
+     */
+    private final IStreamService _streamService;
+
+    /**
+     * Holds the {@link StreamMetadataCriteria} streams must match, or <code>null</code> to list everything.
+     */
+    private final StreamMetadataCriteria _criteria;
+
+    /**
+     * Holds the ID of the stream to start after, or <code>null</code> to start at the beginning.
+     */
+    private final String _afterId;
+
+    /**
+     * Holds the number of {@link StreamMetadata} to fetch at a time.
+     */
+    private final int _pageSize;
+
+    /**
+     * Creates a new instance of the {@link StreamMetadataOutput}.
+     *
+     * @param streamService The {@link IStreamService} to page through. Must not be null.
+     * @param criteria The {@link StreamMetadataCriteria} streams must match. May be null, in which case we list everything.
+     * @param afterId The ID of the stream to start after. May be null, in which case we start at the beginning.
+     * @param pageSize The number of {@link StreamMetadata} to fetch at a time. Must be positive.
+     */
+    protected StreamMetadataOutput(final IStreamService streamService, final StreamMetadataCriteria criteria, final String afterId, final int pageSize)
+    {
+        _streamService = streamService;
+        _criteria = criteria;
+        _afterId = afterId;
+        _pageSize = pageSize;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException, WebApplicationException
+    {
+        String afterId = _afterId;
+        List<StreamMetadata> page;
+        boolean first = true;
+
+        writeStart(output);
+
+        do
+        {
+            page = getPage(afterId);
+
+            for (final StreamMetadata metadata : page)
+            {
+                writeMetadata(output, metadata, first);
+                first = false;
+            }
+
+            output.flush();
+
+            if (!page.isEmpty())
+            {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        }
+        while (page.size() == _pageSize);
+
+        writeEnd(output);
+        output.flush();
+    }
+
+    /**
+     * Writes whatever comes before the first {@link StreamMetadata}, if anything. Does nothing by default.
+     *
+     * @param output The {@link OutputStream} to write to. Must not be null, and must not be closed.
+     */
+    protected void writeStart(final OutputStream output) throws IOException
+    {
+    }
+
+    /**
+     * Writes a single {@link StreamMetadata}.
+     *
+     * @param output The {@link OutputStream} to write to. Must not be null, and must not be closed.
+     * @param metadata The {@link StreamMetadata} to write. Must not be null.
+     * @param first Whether or not this is the first {@link StreamMetadata} we've written, IE: for separators.
+     */
+    protected abstract void writeMetadata(final OutputStream output, final StreamMetadata metadata, final boolean first) throws IOException;
+
+    /**
+     * Writes whatever comes after the last {@link StreamMetadata}, if anything. Does nothing by default.
+     *
+     * @param output The {@link OutputStream} to write to. Must not be null, and must not be closed.
+     */
+    protected void writeEnd(final OutputStream output) throws IOException
+    {
+    }
+
+    /**
+     * Provides a convenience method to fetch a single page of {@link StreamMetadata}.
+     *
+     * @param afterId The ID of the stream to start after. May be null, in which case we start at the beginning.
+     *
+     * @return Up to {@link #_pageSize} {@link StreamMetadata}, sorted by ID. May be empty, but never null.
+     */
+    List<StreamMetadata> getPage(final String afterId) throws IOException
+    {
+        try
+        {
+            return _streamService.getMetadataForStreams(_criteria, afterId, _pageSize);
+        }
+        catch (final IOException ex)
+        {
+            throw ex;
+        }
+        catch (final Exception ex)
+        {
+            throw new IOException("Failed to page through stream metadata.", ex);
+        }
+    }
+}
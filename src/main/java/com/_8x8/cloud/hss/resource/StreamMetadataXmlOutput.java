@@ -0,0 +1,110 @@
+package com._8x8.cloud.hss.resource;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCollection;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
+import com._8x8.cloud.hss.service.IStreamService;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.namespace.QName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Provides a {@link StreamMetadataOutput} that writes a {@link StreamMetadataCollection} as XML, just as JAXB would, but
+ * an entry at a time rather than all at once. There's never a cursor, since this is everything.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamMetadataXmlOutput extends StreamMetadataOutput
+{
+    /**
+     * Holds what comes before the first entry.
+     */
+    private static final byte[] START = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><streamMetadataCollection>"
+            .getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Holds what comes after the last entry.
+     */
+    private static final byte[] END = "</streamMetadataCollection>".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Holds the name each entry is written under, as in {@link StreamMetadataCollection#getMetadata()}.
+     */
+    private static final QName METADATA = new QName("metadata");
+
+    /**
+     * Holds our {@link JAXBContext}, which is expensive to create but thread safe.
+     */
+    private static final JAXBContext JAXB_CONTEXT;
+
+    static
+    {
+        try
+        {
+            JAXB_CONTEXT = JAXBContext.newInstance(StreamMetadata.class);
+        }
+        catch (final JAXBException ex)
+        {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    /**
+     * Holds the {@link Marshaller} we write entries with. These aren't thread safe, so we have one per listing.
+     */
+    private Marshaller _marshaller;
+
+    /**
+     * Creates a new instance of the {@link StreamMetadataXmlOutput}.
+     *
+     * @param streamService The {@link IStreamService} to page through. Must not be null.
+     * @param criteria The {@link StreamMetadataCriteria} streams must match. May be null, in which case we list everything.
+     * @param pageSize The number of {@link StreamMetadata} to fetch at a time. Must be positive.
+     */
+    public StreamMetadataXmlOutput(final IStreamService streamService, final StreamMetadataCriteria criteria, final int pageSize)
+    {
+        super(streamService, criteria, null, pageSize);
+    }
+
+    @Override
+    protected void writeStart(final OutputStream output) throws IOException
+    {
+        try
+        {
+            _marshaller = JAXB_CONTEXT.createMarshaller();
+            _marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+        }
+        catch (final JAXBException ex)
+        {
+            throw new IOException("Failed to create a marshaller for stream metadata.", ex);
+        }
+
+        output.write(START);
+    }
+
+    @Override
+    protected void writeMetadata(final OutputStream output, final StreamMetadata metadata, final boolean first) throws IOException
+    {
+        try
+        {
+            _marshaller.marshal(new JAXBElement<>(METADATA, StreamMetadata.class, metadata), output);
+        }
+        catch (final JAXBException ex)
+        {
+            throw new IOException(String.format("Failed to write metadata for %s.", metadata.getId()), ex);
+        }
+    }
+
+    @Override
+    protected void writeEnd(final OutputStream output) throws IOException
+    {
+        output.write(END);
+    }
+}
@@ -1,9 +1,15 @@
 package com._8x8.cloud.hss.resource;
 
+import com._8x8.cloud.hss.model.StreamIdCollection;
 import com._8x8.cloud.hss.model.StreamMetadata;
 import com._8x8.cloud.hss.model.StreamMetadataCollection;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
+import com._8x8.cloud.hss.model.StreamStatistics;
 import com._8x8.cloud.hss.model.StreamStatus;
+import com._8x8.cloud.hss.model.StreamStatusCollection;
 import com._8x8.cloud.hss.service.IStreamService;
+import com._8x8.cloud.hss.service.StreamChangeFeed;
+import com._8x8.cloud.hss.service.StreamVersion;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
@@ -11,11 +17,15 @@ import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import io.swagger.annotations.ResponseHeader;
 import org.apache.commons.io.IOUtils;
+import org.glassfish.jersey.media.sse.EventOutput;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import javax.ws.rs.BeanParam;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HEAD;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
@@ -23,12 +33,30 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.core.Variant;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 // TODO [kog@epiphanic.org - 6/16/2015]: Looks like there's an issue between Swagger 1.3 and 2.x with allowableTypes.
@@ -50,8 +78,8 @@ import java.util.regex.Pattern;
  * problem in a production environment. The goal here is to solve the problem with a good balance between not being crap
  * code, and not taking too long to do so...<p/>
  *
- * You'd usually expect to see things like proper exception handling, localization, pagination (for multi-status), maybe
- * E-tag support for some of the operations, auth/auth etc.<p/>
+ * You'd usually expect to see things like proper exception handling, localization, maybe E-tag support for some of the
+ * operations, auth/auth etc.<p/>
  *
  * With respect to filters: please note that these are handled via a "soft failure:" if you ask for a filter that does
  * not exist, nothing will occur.
@@ -71,9 +99,101 @@ public class StreamResource
     private IStreamService _streamService;
 
     /**
-     * Holds the regex {@link Pattern} we use to validate ID strings.
+     * Holds the regex {@link Pattern} we use to validate ID strings. IDs are capped at 255 characters, since that's all
+     * our <code>STREAM_ID</code> column will hold: anything longer would fail in the database instead, taking whatever
+     * else shared its batch (see {@link com._8x8.cloud.hss.persistence.GroupCommitStreamStateDao}) down with it.
      */
-    private static final Pattern VALID_ID_PATTERN = Pattern.compile("^[\\w!\\-_\\.\\*'\\(\\)]+$");
+    private static final Pattern VALID_ID_PATTERN = Pattern.compile("^[\\w!\\-_\\.\\*'\\(\\)]{1,255}$");
+
+    /**
+     * Holds the name of the <code>Accept-Ranges</code> header, which {@link HttpHeaders} doesn't know about.
+     */
+    static final String ACCEPT_RANGES = "Accept-Ranges";
+
+    /**
+     * Holds the name of the <code>Content-Range</code> header, which {@link HttpHeaders} also doesn't know about.
+     */
+    static final String CONTENT_RANGE = "Content-Range";
+
+    /**
+     * Holds the name of the <code>Connection</code> header.
+     */
+    private static final String CONNECTION = "Connection";
+
+    /**
+     * Holds the <code>Connection</code> value that asks for the connection to be closed after the response.
+     */
+    private static final String CONNECTION_CLOSE = "close";
+
+    /**
+     * Holds the only range unit we support.
+     */
+    private static final String BYTES_RANGE_UNIT = "bytes";
+
+    /**
+     * Holds the "no encoding at all" content encoding.
+     */
+    private static final String IDENTITY_ENCODING = "identity";
+
+    /**
+     * Holds the media type for newline-delimited JSON.
+     */
+    static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    /**
+     * Holds the media type for Server-Sent Events.
+     */
+    static final String TEXT_EVENT_STREAM = "text/event-stream";
+
+    /**
+     * Holds the name of the header a Server-Sent Events client reconnects with.
+     */
+    static final String LAST_EVENT_ID = "Last-Event-ID";
+
+    /**
+     * Holds the pattern a change feed event ID has to match, IE: the feed's epoch and a sequence number.
+     */
+    private static final Pattern EVENT_ID_PATTERN = Pattern.compile("([0-9a-z]+)-([0-9]+)");
+
+    /**
+     * Holds how long we'll leave a change feed idle before we send a heartbeat, in milliseconds.
+     */
+    static final long CHANGE_FEED_HEARTBEAT_MILLIS = 15000;
+
+    /**
+     * Holds how long we'll wait for a stream to settle, unless asked otherwise, in milliseconds.
+     */
+    static final long DEFAULT_WAIT_MILLIS = 30000;
+
+    /**
+     * Holds the longest we're willing to wait for a stream to settle, in milliseconds.
+     */
+    static final long MAX_WAIT_MILLIS = 300000;
+
+    /**
+     * Holds the regex {@link Pattern} for how long to wait: a number of seconds, optionally with a unit (IE: 30s, 500ms, 2m).
+     */
+    private static final Pattern WAIT_TIMEOUT_PATTERN = Pattern.compile("^(\\d{1,9})(ms|s|m)?$");
+
+    /**
+     * Holds the number of streams we list per page, unless asked otherwise.
+     */
+    static final int DEFAULT_PAGE_SIZE = 1000;
+
+    /**
+     * Holds the most streams we're willing to list on a single page.
+     */
+    static final int MAX_PAGE_SIZE = 10000;
+
+    /**
+     * Holds the representations we can list every stream in, in the same order as we declare them.
+     */
+    static final List<Variant> LISTING_VARIANTS = Variant.mediaTypes(MediaType.APPLICATION_XML_TYPE, MediaType.APPLICATION_JSON_TYPE).build();
+
+    /**
+     * Holds the most streams we're willing to look up the status of in a single request.
+     */
+    static final int MAX_BATCH_IDS = 10000;
 
     /**
      * Gets the {@link IStreamService} to use for servicing our streams.
@@ -95,40 +215,311 @@ public class StreamResource
         _streamService = streamService;
     }
 
-    // TODO [kog@epiphanic.org - 6/2/15]: Pagination, query criteria etc.
-
     /**
-     * Returns a {@link com._8x8.cloud.hss.model.StreamMetadataCollection} with metadata for all known collections.
+     * Returns a {@link com._8x8.cloud.hss.model.StreamMetadataCollection} with metadata for a page of known streams, in
+     * ID order. If there are more, the collection carries a cursor to pass back as <code>after</code> for the next page,
+     * along with the same criteria.<p/>
+     *
+     * Clients from before we paged don't know to look for a cursor, so unless a <code>limit</code> or <code>after</code>
+     * is given, we return every matching stream in one go, as we always did. That's written a page at a time as it's
+     * read (see {@link StreamMetadataOutput}), so it's only the client that has to hold the lot - for a lot of streams,
+     * page or use {@link #getStreamMetadataAsNdjson(StreamMetadataCriteria, String)} instead.<p/>
+     *
+     * Each of the criteria is backed by an index, so narrowing things down (IE: everything that failed in the last
+     * hour) is cheap, however many streams there are.
+     *
+     * @param request The {@link Request} we're serving, so we know which representation to write. Must not be null.
+     * @param criteria The {@link StreamMetadataCriteria} streams must match. Must not be null, but may be empty.
+     * @param limit The maximum number of streams to return, if any. Must be a positive number, and is capped at
+     *              {@link #MAX_PAGE_SIZE}. May be null, in which case we use {@link #DEFAULT_PAGE_SIZE} if paging.
+     * @param after The cursor from the previous page, if any. May be null, in which case we start at the beginning.
      *
-     * @return A 200/OK with metadata regarding zero or more streams. May be empty, but never null.
+     * @return A 200/OK with metadata regarding zero or more streams. May be empty, but never null,
+     *         400/BAD REQUEST if the limit, cursor or prefix is invalid.
      */
-    @ApiOperation(value = "List all streams known to the system", response = StreamMetadataCollection.class)
+    @ApiOperation(value = "List the streams known to the system, optionally matching some criteria, a page at a time if asked", response = StreamMetadataCollection.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "If the limit, cursor or prefix is invalid.")
+    })
     @GET
-    public Response getStreamMetadata() throws Exception
+    @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    public Response getStreamMetadata(final @Context Request request,
+                                      @BeanParam final StreamMetadataCriteria criteria,
+                                      @ApiParam(value = "The maximum number of streams to return. Without this or a cursor, every stream is returned.", required = false)
+                                        @QueryParam("limit") final String limit,
+                                      @ApiParam(value = "The cursor for the next page, as returned with the previous one.", required = false)
+                                        @QueryParam("after") final String after) throws Exception
     {
+        // We take this as a string, since Jersey would answer a bad number with a 404/NOT FOUND.
+        final int pageSize;
+
+        try
+        {
+            pageSize = null == limit ? DEFAULT_PAGE_SIZE : Math.min(Integer.parseInt(limit.trim()), MAX_PAGE_SIZE);
+        }
+        catch (final NumberFormatException ex)
+        {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+
+        if (pageSize < 1)
+        {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+
+        validateCriteria(criteria);
+
+        // Nobody asked for a page, so they get the lot - written as we go, rather than held on our heap.
+        if (null == limit && null == after)
+        {
+            final Variant variant = request.selectVariant(LISTING_VARIANTS);
+
+            return MediaType.APPLICATION_JSON_TYPE.equals(variant.getMediaType())
+                   ? Response.ok(new StreamMetadataJsonOutput(getStreamService(), criteria, DEFAULT_PAGE_SIZE), variant).build()
+                   : Response.ok(new StreamMetadataXmlOutput(getStreamService(), criteria, DEFAULT_PAGE_SIZE), variant).build();
+        }
+
         final StreamMetadataCollection metadata = new StreamMetadataCollection();
-        metadata.getMetadata().addAll(getStreamService().getMetadataForStreams());
+
+        // Ask for one more than we need, so we know whether there's another page without having to go and look.
+        final List<StreamMetadata> page = getStreamService().getMetadataForStreams(criteria, decodeCursor(after), pageSize + 1);
+
+        if (page.size() > pageSize)
+        {
+            metadata.getMetadata().addAll(page.subList(0, pageSize));
+            metadata.setNext(encodeCursor(page.get(pageSize - 1).getId()));
+        }
+        else
+        {
+            metadata.getMetadata().addAll(page);
+        }
 
         return Response.ok(metadata).build();
     }
 
     /**
-     * Returns the {@link com._8x8.cloud.hss.model.StreamMetadata} associated with the stream ID, if the ID is valid.
+     * Returns the metadata for every known stream (or just those matching some criteria) as newline-delimited JSON, in
+     * ID order, written as it's read. Unlike {@link #getStreamMetadata(Request, StreamMetadataCriteria, String, String)} this isn't
+     * paged, and heap use doesn't depend on how many streams there are. You'll need to ask for it explicitly via the
+     * <code>Accept</code> header (or a <code>.ndjson</code> suffix).
+     *
+     * @param criteria The {@link StreamMetadataCriteria} streams must match. Must not be null, but may be empty.
+     * @param after A cursor from {@link #getStreamMetadata(Request, StreamMetadataCriteria, String, String)}, if any. May be null,
+     *              in which case we start at the beginning.
+     *
+     * @return A 200/OK with one line of metadata per stream,
+     *         400/BAD REQUEST if the cursor or prefix is invalid.
+     */
+    @ApiOperation(value = "Streams all streams known to the system, optionally matching some criteria, as newline-delimited JSON, one per line")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "If the cursor or prefix is invalid.")
+    })
+    @GET
+    @Produces(APPLICATION_NDJSON + ";qs=0.5")
+    public Response getStreamMetadataAsNdjson(@BeanParam final StreamMetadataCriteria criteria,
+                                              @ApiParam(value = "A cursor to start after, as returned with a page of streams.", required = false)
+                                                @QueryParam("after") final String after) throws Exception
+    {
+        validateCriteria(criteria);
+
+        return Response.ok(new StreamMetadataNdjsonOutput(getStreamService(), criteria, decodeCursor(after), DEFAULT_PAGE_SIZE))
+                       .type(APPLICATION_NDJSON)
+                       .build();
+    }
+
+    /**
+     * Returns aggregate statistics over every stream known to the system: how many there are in each
+     * {@link StreamStatus}, and how many bytes they take up. These are kept up to date as streams move along, so this
+     * doesn't touch the metadata at all.<p/>
+     *
+     * Please note that this shadows GETs for a stream named <code>stats</code>, though its status is still available.
+     *
+     * @return A 200/OK with a {@link StreamStatistics}.
+     */
+    @ApiOperation(value = "Gets counts of the streams known to the system by status, and their total size", response = StreamStatistics.class)
+    @Path("/stats")
+    @GET
+    @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    public Response getStatistics()
+    {
+        return Response.ok(getStreamService().getStatistics()).build();
+    }
+
+    /**
+     * Follows every state transition of every stream (including deletes) as Server-Sent Events, as they happen, so that
+     * there's no need to poll the status of a stream to find out when it's done. See
+     * {@link StreamChangeFeedSubscription} for what the events look like. No thread is held between events.<p/>
+     *
+     * By default we start with whatever happens next. A client that reconnects with a <code>Last-Event-ID</code> (or
+     * passes the ID of the last event it saw as <code>after</code>) picks up from there, as long as we still have the
+     * changes it missed; otherwise (IE: it's from before a restart) it's sent a <code>reset</code> event first.<p/>
+     *
+     * Please note that this shadows GETs for a stream named <code>changes</code>, though its status is still available.
+     * Events are never gzipped, as the encoder would sit on them until it had a block's worth.
+     *
+     * @param lastEventId The <code>Last-Event-ID</code> header, if any. May be null.
+     * @param after The ID of the last event the client saw, if any. May be null.
+     *
+     * @return A 200/OK with a never-ending <code>text/event-stream</code>,
+     *         400/BAD REQUEST if the event ID isn't one.
+     */
+    @ApiOperation(value = "Follows every state transition of every stream as Server-Sent Events")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "If the sequence number to resume after is invalid.")
+    })
+    @Path("/changes")
+    @GET
+    @Produces(TEXT_EVENT_STREAM)
+    public Response getChanges(@ApiParam(value = "The ID of the last event seen, when reconnecting.", required = false)
+                                 @HeaderParam(LAST_EVENT_ID) final String lastEventId,
+                               @ApiParam(value = "The ID of the last event seen.", required = false)
+                                 @QueryParam("after") final String after)
+    {
+        final StreamChangeFeed changeFeed = getStreamService().getChangeFeed();
+        final String resumeAfter = null != lastEventId ? lastEventId : after;
+        final EventOutput output = new EventOutput();
+
+        if (null == resumeAfter)
+        {
+            subscribeToChanges(changeFeed, output, changeFeed.getLatestSequence(), false);
+        }
+        else
+        {
+            final Matcher matcher = EVENT_ID_PATTERN.matcher(resumeAfter.trim());
+
+            if (!matcher.matches())
+            {
+                throw new WebApplicationException(Response.Status.BAD_REQUEST);
+            }
+
+            final long sequence;
+
+            try
+            {
+                sequence = Long.parseLong(matcher.group(2));
+            }
+            catch (final NumberFormatException ex)
+            {
+                throw new WebApplicationException(Response.Status.BAD_REQUEST);
+            }
+
+            // Sequence numbers start again on a restart, so one from before then tells us nothing about what was missed.
+            if (changeFeed.getEpoch().equals(matcher.group(1)))
+            {
+                subscribeToChanges(changeFeed, output, sequence, false);
+            }
+            else
+            {
+                subscribeToChanges(changeFeed, output, 0, true);
+            }
+        }
+
+        return Response.ok(output)
+                       .type(TEXT_EVENT_STREAM)
+                       .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                       .header(HttpHeaders.CONTENT_ENCODING, IDENTITY_ENCODING)
+                       .build();
+    }
+
+    /**
+     * Provides a convenience method to start following a {@link StreamChangeFeed} on behalf of a client.
+     *
+     * @param changeFeed The {@link StreamChangeFeed} to follow. Must not be null.
+     * @param output The {@link EventOutput} to write to. Must not be null.
+     * @param afterSequence The sequence number of the last change the client saw.
+     * @param reset Whether or not the client has missed changes we can't tell it about.
+     */
+    void subscribeToChanges(final StreamChangeFeed changeFeed, final EventOutput output, final long afterSequence, final boolean reset)
+    {
+        new StreamChangeFeedSubscription(changeFeed, output, afterSequence, reset, CHANGE_FEED_HEARTBEAT_MILLIS).start();
+    }
+
+    /**
+     * Returns the status of each of a set of streams in a single request, for clients keeping an eye on a lot of them at
+     * once. Rather than a lookup per stream, the service looks them up together (which the database does a few hundred
+     * at a time), so checking on thousands of streams is a handful of round trips. Streams we don't know about are
+     * included, as {@link StreamStatus#NOT_FOUND}, so that every ID gets an answer.<p/>
+     *
+     * Please note that this shadows POSTs for a stream named <code>status:batch</code>, though that isn't a valid ID anyway.
+     *
+     * @param ids The {@link StreamIdCollection} of IDs to look up. Must hold between one and {@link #MAX_BATCH_IDS} IDs,
+     *            all of which must be valid. Duplicates are only answered once.
+     *
+     * @return 200/OK with a {@link StreamStatusCollection}, with an entry for each distinct ID in the order given,
+     *         400/BAD REQUEST if there are no IDs, or too many,
+     *         403/FORBIDDEN if any of the IDs is invalid.
+     */
+    @ApiOperation(value = "Finds the status of each of a list of streams, by ID, in one go.", response = StreamStatusCollection.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "If no IDs are given, or too many."),
+            @ApiResponse(code = 403, message = "If any of the stream IDs is considered invalid.")
+    })
+    @Path("/status:batch")
+    @POST
+    @Consumes({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    @Produces({MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON})
+    public Response getStreamStatusesForIds(@ApiParam(value = "The IDs of the streams to look up", required = true) final StreamIdCollection ids) throws Exception
+    {
+        if (null == ids || ids.getIds().isEmpty() || MAX_BATCH_IDS < ids.getIds().size() || ids.getIds().contains(null))
+        {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+
+        ids.getIds().forEach(this::validateId);
+
+        final StreamStatusCollection statuses = new StreamStatusCollection();
+
+        for (final StreamMetadata metadata : getStreamService().getMetadataForStreamsByIds(ids.getIds()))
+        {
+            statuses.getStatuses().add(new StreamStatusCollection.Entry(metadata.getId(), metadata.getStatus()));
+        }
+
+        return Response.ok(statuses).build();
+    }
+
+    /**
+     * Returns the {@link com._8x8.cloud.hss.model.StreamMetadata} associated with the stream ID, if the ID is valid. If
+     * asked to, and the stream is {@link StreamStatus#IN_PROGRESS}, we wait for it to get where it's going first (see
+     * {@link #waitForStream(AsyncResponse, String, String, String, Callable)}).
      *
+     * @param asyncResponse Passed by Jersey, the {@link AsyncResponse} to resume once we're done. Must not be null.
      * @param id The ID to use for the stream. Must not be blank, must be valid.
+     * @param waitFor The {@link StreamStatus} to wait for, if any. May be null, in which case we answer straight away.
+     * @param timeout How long to wait, if we're waiting. May be null, in which case we wait {@link #DEFAULT_WAIT_MILLIS}.
      *
-     * @return 200/OK with the {@link com._8x8.cloud.hss.model.StreamMetadata},
+     * @return 200/OK with the {@link com._8x8.cloud.hss.model.StreamMetadata}, which may still be in progress if we timed out,
+     *         400/BAD REQUEST if the status or timeout to wait for is invalid,
      *         403/FORBIDDEN if the stream ID is invalid,
      *         404/NOT FOUND if the stream ID is unknown.
      */
     @ApiOperation(value = "Finds the metadata associated with a given stream, by ID.", response = StreamMetadata.class)
     @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "If the status or timeout to wait for is invalid."),
             @ApiResponse(code = 403, message = "If the stream ID is considered invalid."),
             @ApiResponse(code = 404, message = "If the stream ID is unknown to the system.")
     })
     @Path("/{id}/status")
     @GET
-    public Response getStreamMetadataForId(@ApiParam(value = "ID of the stream to fetch", required = true) final @PathParam("id") String id) throws Exception
+    public void getStreamMetadataForId(@Suspended final AsyncResponse asyncResponse,
+                                       @ApiParam(value = "ID of the stream to fetch", required = true) final @PathParam("id") String id,
+                                       @ApiParam(value = "A status to wait for, if the stream is in progress.", required = false, allowableValues = "SUCCESSFUL,FAILED")
+                                         @QueryParam("waitFor") final String waitFor,
+                                       @ApiParam(value = "How long to wait, in seconds or with a unit (IE: 30s, 500ms, 2m).", required = false, defaultValue = "30s")
+                                         @QueryParam("timeout") final String timeout)
+    {
+        waitForStream(asyncResponse, id, waitFor, timeout, () -> getStreamMetadataForId(id));
+    }
+
+    /**
+     * Returns the {@link com._8x8.cloud.hss.model.StreamMetadata} associated with the stream ID, if the ID is valid.
+     *
+     * @param id The ID to use for the stream. Must not be blank, must be valid.
+     *
+     * @return 200/OK with the {@link com._8x8.cloud.hss.model.StreamMetadata},
+     *         403/FORBIDDEN if the stream ID is invalid,
+     *         404/NOT FOUND if the stream ID is unknown.
+     */
+    Response getStreamMetadataForId(final String id) throws Exception
     {
         validateId(id);
 
@@ -143,53 +534,246 @@ public class StreamResource
     }
 
     /**
-     * Attempts to gets a stream by a given ID.
+     * Attempts to get a stream by a given ID (see {@link #getStreamById(String, List, String, String, String, String)}). If asked to, and
+     * the stream is {@link StreamStatus#IN_PROGRESS}, we wait for it to get where it's going first (see
+     * {@link #waitForStream(AsyncResponse, String, String, String, Callable)}), rather than answering with a 409/CONFLICT
+     * that'll just be retried.
      *
+     * @param asyncResponse Passed by Jersey, the {@link AsyncResponse} to resume once we're done. Must not be null.
      * @param id The ID to use for the stream. Must not be blank, must be valid.
      * @param filters A collection of zero or more filters to apply to the given stream. May be empty, but must not be null.
-     *
-     * @return 200/OK with the stream if known,
-     *         403/FORBIDDEN if the ID is invalid,
-     *         404/NOT FOUND if the ID is valid but unknown
-     *         409/CONFLICT if the ID is known, but {@link StreamStatus#IN_PROGRESS} or {@link StreamStatus#FAILED}.
+     * @param range The value of the <code>Range</code> header, if any. May be null.
+     * @param ifRange The value of the <code>If-Range</code> header, if any. May be null.
+     * @param ifNoneMatch The value of the <code>If-None-Match</code> header, if any. May be null.
+     * @param ifModifiedSince The value of the <code>If-Modified-Since</code> header, if any. May be null.
+     * @param waitFor The {@link StreamStatus} to wait for, if any. May be null, in which case we answer straight away.
+     * @param timeout How long to wait, if we're waiting. May be null, in which case we wait {@link #DEFAULT_WAIT_MILLIS}.
      */
     @ApiOperation(value = "Gets a stream, by ID. Please note that this is an application/octet-stream.", response = InputStream.class)
     @ApiResponses(value = {
+            @ApiResponse(code = 206, message = "If one or more byte ranges of an unfiltered stream were requested."),
+            @ApiResponse(code = 304, message = "If an unfiltered stream hasn't changed since the client last fetched it."),
+            @ApiResponse(code = 400, message = "If the status or timeout to wait for is invalid."),
             @ApiResponse(code = 403, message = "If the stream ID is considered invalid."),
             @ApiResponse(code = 404, message = "If the stream ID is unknown to the system."),
-            @ApiResponse(code = 409, message = "If the ID is known, but the stream is in progress or failed.")
+            @ApiResponse(code = 409, message = "If the ID is known, but the stream failed or is still being created (after waiting, if asked to)."),
+            @ApiResponse(code = 416, message = "If none of the requested byte ranges can be satisfied.")
     })
     @Path("/{id}")
     @GET
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
-    public Response getStreamById(@ApiParam(value = "ID of the stream to fetch", required = true) final @PathParam("id") String id,
-                                  @ApiParam(value = "A list of zero or more filters to apply to the stream, on the server side. May be empty.", required = false, allowableValues = "zip,encrypt,base64", allowMultiple = true)
-                                    @QueryParam("filters") final List<String> filters) throws Exception
+    public void getStreamById(@Suspended final AsyncResponse asyncResponse,
+                              @ApiParam(value = "ID of the stream to fetch", required = true) final @PathParam("id") String id,
+                              @ApiParam(value = "A list of zero or more filters to apply to the stream, on the server side. May be empty.", required = false, allowableValues = "zip,encrypt,base64", allowMultiple = true)
+                                @QueryParam("filters") final List<String> filters,
+                              @ApiParam(value = "One or more byte ranges to fetch. Ignored if filters are requested.", required = false)
+                                @HeaderParam("Range") final String range,
+                              @ApiParam(value = "Only honor the Range header if the stream has not changed since this date.", required = false)
+                                @HeaderParam("If-Range") final String ifRange,
+                              @ApiParam(value = "Only send the stream if it doesn't have one of these entity tags. Ignored if filters are requested.", required = false)
+                                @HeaderParam("If-None-Match") final String ifNoneMatch,
+                              @ApiParam(value = "Only send the stream if it has changed since this date. Ignored if filters are requested.", required = false)
+                                @HeaderParam("If-Modified-Since") final String ifModifiedSince,
+                              @ApiParam(value = "A status to wait for, if the stream is in progress.", required = false, allowableValues = "SUCCESSFUL,FAILED")
+                                @QueryParam("waitFor") final String waitFor,
+                              @ApiParam(value = "How long to wait, in seconds or with a unit (IE: 30s, 500ms, 2m).", required = false, defaultValue = "30s")
+                                @QueryParam("timeout") final String timeout)
+    {
+        waitForStream(asyncResponse, id, waitFor, timeout, () -> getStreamById(id, filters, range, ifRange, ifNoneMatch, ifModifiedSince));
+    }
+
+    /**
+     * Attempts to gets a stream by a given ID.<p/>
+     *
+     * If no filters are requested, we'll serve the stored bytes as-is via a {@link FileChannelStreamingOutput}, along
+     * with a <code>Content-Length</code> from the version we're serving, or straight from memory via a
+     * {@link ByteBufferStreamingOutput} if the stream is small enough to cache. In this case we also honor <code>Range</code>
+     * requests (single or multiple), guarded by <code>If-Range</code>, so that clients can resume or parallelize large
+     * downloads. Otherwise we'll have to run the stream through our filter chain, the length is anybody's guess, and
+     * any <code>Range</code> header is ignored.<p/>
+     *
+     * Unfiltered streams also carry a strong <code>ETag</code> (the SHA-256 of the stored bytes, if we have it), and we
+     * answer <code>If-None-Match</code> and <code>If-Modified-Since</code> with a 304/NOT MODIFIED before opening
+     * anything (see {@link #isNotModified(String, String, StreamMetadata)}), so a client with a copy already doesn't
+     * have to download it again.
+     *
+     * @param id The ID to use for the stream. Must not be blank, must be valid.
+     * @param filters A collection of zero or more filters to apply to the given stream. May be empty, but must not be null.
+     * @param range The value of the <code>Range</code> header, if any. May be null.
+     * @param ifRange The value of the <code>If-Range</code> header, if any. May be null.
+     * @param ifNoneMatch The value of the <code>If-None-Match</code> header, if any. May be null.
+     * @param ifModifiedSince The value of the <code>If-Modified-Since</code> header, if any. May be null.
+     *
+     * @return 200/OK with the stream if known,
+     *         206/PARTIAL CONTENT with the requested range(s) of the stream, if known,
+     *         304/NOT MODIFIED if no filters are requested and the client's copy is current,
+     *         403/FORBIDDEN if the ID is invalid,
+     *         404/NOT FOUND if the ID is valid but unknown
+     *         409/CONFLICT if the ID is known, but {@link StreamStatus#FAILED} or {@link StreamStatus#IN_PROGRESS} for the first time,
+     *         416/REQUESTED RANGE NOT SATISFIABLE if none of the requested ranges overlap the stream.
+     */
+    Response getStreamById(final String id, final List<String> filters, final String range, final String ifRange,
+                           final String ifNoneMatch, final String ifModifiedSince) throws Exception
     {
         validateId(id);
 
-        // Make sure that this is neither currently in use, nor failed.
-        final StreamStatus status = getStreamService().getStatusForStreamById(id);
+        // Make sure that we've got a complete version to hand out: a stream that's being updated is fine, since readers get
+        // the previous version, but one that's being written for the first time (or failed) isn't. We'll need the
+        // modification time later, so grab the whole thing. This is also what the service serves from, so it's our only lookup.
+        final StreamMetadata metadata = getStreamService().getMetadataForStreamById(id);
+        final StreamStatus status = metadata.getStatus();
 
-        if (StreamStatus.IN_PROGRESS.equals(status) || StreamStatus.FAILED.equals(status))
+        if (StreamStatus.FAILED.equals(status) || (StreamStatus.IN_PROGRESS.equals(status) && !metadata.isReadable()))
         {
             return Response.status(Response.Status.CONFLICT).build();
         }
 
         // If we've got it, return it.
-        if (StreamStatus.SUCCESSFUL.equals(status))
+        if (metadata.isReadable())
         {
+            // No filters means no transformation: hand the file straight to the container.
+            if (filters.isEmpty())
+            {
+                if (isNotModified(ifNoneMatch, ifModifiedSince, metadata))
+                {
+                    return createNotModifiedResponse(metadata);
+                }
+
+                // Small streams read whole come out of memory, if we're caching them. Ranges are for the big ones.
+                if (null == range || !isRangeApplicable(ifRange, metadata))
+                {
+                    final StreamVersion<ByteBuffer> cached = getStreamService().getCachedContentsForStream(metadata);
+
+                    if (null != cached)
+                    {
+                        // A write may have beaten us to the stream, so describe what we've actually got. A client that
+                        // asked for a range gets the whole thing, which is always allowed.
+                        final StreamMetadata current = cached.getMetadata();
+
+                        if (current != metadata && isNotModified(ifNoneMatch, ifModifiedSince, current))
+                        {
+                            return createNotModifiedResponse(current);
+                        }
+
+                        final ByteBufferStreamingOutput output = new ByteBufferStreamingOutput(cached.getContents());
+
+                        return Response.ok(output)
+                                       .header(HttpHeaders.CONTENT_LENGTH, output.getContentLength())
+                                       .header(ACCEPT_RANGES, BYTES_RANGE_UNIT)
+                                       .lastModified(new Date(current.getLastModified()))
+                                       .tag(createEntityTag(current))
+                                       .build();
+                    }
+                }
+
+                final StreamVersion<FileChannel> version = getStreamService().getChannelForStream(metadata);
+
+                // We may have lost a race with a delete between looking at the status and opening the file.
+                if (null == version)
+                {
+                    return Response.status(Response.Status.NOT_FOUND).build();
+                }
+
+                // Likewise a write, in which case our validators have to be checked against the version we're sending,
+                // or we'd hand out its bytes under the old version's tag (or cut a range from it for an old If-Range).
+                final StreamMetadata current = version.getMetadata();
+
+                if (current != metadata && isNotModified(ifNoneMatch, ifModifiedSince, current))
+                {
+                    IOUtils.closeQuietly(version.getContents());
+                    return createNotModifiedResponse(current);
+                }
+
+                return createRawStreamResponse(version.getContents(), current, isRangeApplicable(ifRange, current) ? range : null);
+            }
+
             // It may seem strange to return a naked stream, but the MessageBodyWriter (InputStreamProvider) will call close on this.
             // Note that any exceptions with the filters are caught at a lower level, and those streams are closed accordingly.
-            return Response.ok(getStreamService().getStreamById(id, filters)).build();
+            return Response.ok(getStreamService().getStream(metadata, filters)).build();
         }
 
         return Response.status(Response.Status.NOT_FOUND).build();
     }
 
+    /**
+     * Answers a HEAD for a stream with the headers a GET would have (see
+     * {@link #getStreamById(String, List, String, String, String, String)}), straight from its metadata. Without this
+     * Jersey would run the GET and throw the body away, which means opening the stream just to find out how big it is,
+     * whereas we don't touch the filesystem at all.<p/>
+     *
+     * Please note that if filters are requested, a GET can't tell how long the result will be (or tag it, or answer
+     * a conditional request for it), so we've nothing useful to say from metadata alone. Rather than a bare 200 that
+     * would suggest otherwise, we refuse those outright.
+     *
+     * @param id The ID to use for the stream. Must not be blank, must be valid.
+     * @param filters A collection of zero or more filters to apply to the given stream. Must be empty, but must not be null.
+     * @param ifNoneMatch The value of the <code>If-None-Match</code> header, if any. May be null.
+     * @param ifModifiedSince The value of the <code>If-Modified-Since</code> header, if any. May be null.
+     *
+     * @return 200/OK with the Content-Length, ETag and Last-Modified of the stream if known,
+     *         304/NOT MODIFIED if the client's copy is current,
+     *         400/BAD REQUEST if filters are requested,
+     *         403/FORBIDDEN if the ID is invalid,
+     *         404/NOT FOUND if the ID is valid but unknown
+     *         409/CONFLICT if the ID is known, but {@link StreamStatus#FAILED} or {@link StreamStatus#IN_PROGRESS} for the first time.
+     */
+    @ApiOperation(value = "Gets the headers for a stream, by ID, without the stream itself.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 304, message = "If the stream hasn't changed since the client last fetched it."),
+            @ApiResponse(code = 400, message = "If filters are requested, since we can't describe a filtered stream without filtering it."),
+            @ApiResponse(code = 403, message = "If the stream ID is considered invalid."),
+            @ApiResponse(code = 404, message = "If the stream ID is unknown to the system."),
+            @ApiResponse(code = 409, message = "If the ID is known, but the stream failed or is still being created.")
+    })
+    @Path("/{id}")
+    @HEAD
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public Response headStreamById(@ApiParam(value = "ID of the stream to fetch", required = true) final @PathParam("id") String id,
+                                   @ApiParam(value = "Not supported for HEAD: a GET is the only way to find out about a filtered stream.", required = false, allowableValues = "zip,encrypt,base64", allowMultiple = true)
+                                     @QueryParam("filters") final List<String> filters,
+                                   @ApiParam(value = "Only succeed if the stream doesn't have one of these entity tags.", required = false)
+                                     @HeaderParam("If-None-Match") final String ifNoneMatch,
+                                   @ApiParam(value = "Only succeed if the stream has changed since this date.", required = false)
+                                     @HeaderParam("If-Modified-Since") final String ifModifiedSince) throws Exception
+    {
+        validateId(id);
+
+        if (!filters.isEmpty())
+        {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+
+        // This is exactly the check a GET makes, minus actually opening anything.
+        final StreamMetadata metadata = getStreamService().getMetadataForStreamById(id);
+        final StreamStatus status = metadata.getStatus();
+
+        if (StreamStatus.FAILED.equals(status) || (StreamStatus.IN_PROGRESS.equals(status) && !metadata.isReadable()))
+        {
+            return Response.status(Response.Status.CONFLICT).build();
+        }
+
+        if (!metadata.isReadable())
+        {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+
+        if (isNotModified(ifNoneMatch, ifModifiedSince, metadata))
+        {
+            return createNotModifiedResponse(metadata);
+        }
+
+        return Response.ok()
+                       .header(HttpHeaders.CONTENT_LENGTH, metadata.getFileSize())
+                       .header(ACCEPT_RANGES, BYTES_RANGE_UNIT)
+                       .lastModified(new Date(metadata.getLastModified()))
+                       .tag(createEntityTag(metadata))
+                       .build();
+    }
+
     /**
      * Attempts to create a stream for a given ID. Please note that this is not an upsert call, and if a stream already
      * exists for a given ID, a 409/CONFLICT will be returned. Please see {@link #updateStream(String, List, InputStream)} for updates.
+     * A stream whose first write was abandoned (see {@link IStreamService#isAbandoned(StreamMetadata)}) doesn't count.
      *
      * @param uriInfo Passed by Jersey, allows us to create our Location header. Must not be null.
      * @param id The ID to use for the stream. Must not be blank, must be valid.
@@ -220,12 +804,21 @@ public class StreamResource
         {
             validateId(id);
 
-            if (!StreamStatus.NOT_FOUND.equals(getStreamService().getStatusForStreamById(id)))
+            // We hand this on to the service, which only creates the stream if it's still as we found it when it gets
+            // there (IE: by inserting it, which fails if somebody else already has).
+            final StreamMetadata metadata = getStreamService().getMetadataForStreamById(id);
+
+            // A stream whose first write was abandoned was never really created, so we may as well have another go.
+            if (!StreamStatus.NOT_FOUND.equals(metadata.getStatus()) && (metadata.isReadable() || !getStreamService().isAbandoned(metadata)))
             {
                 return Response.status(Response.Status.CONFLICT).build();
             }
 
-            getStreamService().saveStream(id, stream, filters);
+            // Somebody else may have beaten us to it in the meantime.
+            if (!getStreamService().saveStream(metadata, stream, filters))
+            {
+                return Response.status(Response.Status.CONFLICT).build();
+            }
         }
         finally
         {
@@ -239,6 +832,9 @@ public class StreamResource
      * Attempts to update a stream for a given ID, using the given filters. Please note that if a stream for a given ID
      * does not already exists, an error will be thrown. If you wish to create the stream for the ID, please call {@link #createStream(UriInfo, String, List, InputStream)}.<p/>
      *
+     * A stream that's {@link StreamStatus#IN_PROGRESS} is busy, unless its writer has gone away (see
+     * {@link IStreamService#isAbandoned(StreamMetadata)}), in which case we take it over.
+     *
      * @param id The ID to use for the stream. Must not be blank, must be valid.
      * @param filters A collection of zero or more filters to apply to the given stream. May be empty, but must not be null.
      * @param stream The stream to store. Must not be null or empty.
@@ -246,14 +842,14 @@ public class StreamResource
      * @return 204/NO CONTENT if the update was successful,
      *         403/FORBIDDEN if the ID is invalid,
      *         404/NOT FOUND if the ID is valid but not known,
-     *         409/CONFLICT if the ID is known, but the stream is in a state such that it cannot be updated.
+     *         409/CONFLICT if the ID is known, but the stream is being written by somebody else.
      */
     @ApiOperation(value = "Attempts to persist a given application/octet-stream in an update operation, with optionally applied filters.")
     @ApiResponses(value = {
             @ApiResponse(code = 204, message = "No content if the update was successful."),
             @ApiResponse(code = 403, message = "If the stream ID is considered invalid."),
             @ApiResponse(code = 404, message = "If the ID is valid, but not known"),
-            @ApiResponse(code = 409, message = "If the ID is already in use.")
+            @ApiResponse(code = 409, message = "If the stream is being written by somebody else.")
     })
     @Path("/{id}")
     @PUT
@@ -267,7 +863,9 @@ public class StreamResource
         {
             validateId(id);
 
-            final StreamStatus status = getStreamService().getStatusForStreamById(id);
+            // As with creates, the service will only update the stream if it's still as we found it.
+            final StreamMetadata metadata = getStreamService().getMetadataForStreamById(id);
+            final StreamStatus status = metadata.getStatus();
 
             // If this stream is unknown, we can't update it.
             if (StreamStatus.NOT_FOUND.equals(status))
@@ -275,14 +873,17 @@ public class StreamResource
                 return Response.status(Response.Status.NOT_FOUND).build();
             }
 
-            // Likewise, it may be "busy".
-            if (StreamStatus.IN_PROGRESS.equals(status))
+            // Likewise, it may be "busy". Unless whoever was writing it has gone away, in which case we take over.
+            if (StreamStatus.IN_PROGRESS.equals(status) && !getStreamService().isAbandoned(metadata))
             {
                 return Response.status(Response.Status.CONFLICT).build();
             }
 
-            // If it's not busy, and we know what it is, try and update...
-            getStreamService().saveStream(id, stream, filters);
+            // If it's not busy, and we know what it is, try and update. It may have gotten busy in the meantime...
+            if (!getStreamService().saveStream(metadata, stream, filters))
+            {
+                return Response.status(Response.Status.CONFLICT).build();
+            }
         }
         finally
         {
@@ -317,6 +918,387 @@ public class StreamResource
         return Response.status(Response.Status.ACCEPTED).build();
     }
 
+    /**
+     * Provides a convenience method to build the response for an unfiltered stream, honoring a <code>Range</code>
+     * header if we were given one.<p/>
+     *
+     * Please note that partial responses are explicitly marked with an identity <code>Content-Encoding</code>. The byte
+     * offsets in a Content-Range refer to the stored stream, and it would be a bit rude for the gzip encoder to come
+     * along afterwards and change what they mean.
+     *
+     * @param channel An open {@link FileChannel} to the stream. Must not be null. Ownership passes to the response,
+     *                unless we're returning a 416, in which case it's closed here.
+     * @param metadata The {@link StreamMetadata} for the version the channel points to, used for the modification time
+     *                 and entity tag. Must not be null.
+     * @param range The value of the <code>Range</code> header to honor. May be null, in which case we send the whole thing.
+     *
+     * @return A 200/OK, 206/PARTIAL CONTENT or 416/REQUESTED RANGE NOT SATISFIABLE {@link Response}. Will not be null.
+     */
+    Response createRawStreamResponse(final FileChannel channel, final StreamMetadata metadata, final String range) throws Exception
+    {
+        final long length = channel.size();
+        final List<ByteRange> ranges = ByteRange.parse(range, length);
+
+        // Either we weren't asked for a range, or we were asked for something we're going to ignore.
+        if (null == ranges)
+        {
+            return Response.ok(new FileChannelStreamingOutput(channel))
+                           .header(HttpHeaders.CONTENT_LENGTH, length)
+                           .header(ACCEPT_RANGES, BYTES_RANGE_UNIT)
+                           .lastModified(new Date(metadata.getLastModified()))
+                           .tag(createEntityTag(metadata))
+                           .build();
+        }
+
+        // We were asked for something, but none of it exists.
+        if (ranges.isEmpty())
+        {
+            IOUtils.closeQuietly(channel);
+
+            return Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                           .header(CONTENT_RANGE, ByteRange.toUnsatisfiableContentRange(length))
+                           .build();
+        }
+
+        final Response.ResponseBuilder builder = Response.status(Response.Status.PARTIAL_CONTENT)
+                                                         .header(ACCEPT_RANGES, BYTES_RANGE_UNIT)
+                                                         .header(HttpHeaders.CONTENT_ENCODING, IDENTITY_ENCODING)
+                                                         .lastModified(new Date(metadata.getLastModified()))
+                                                         .tag(createEntityTag(metadata));
+
+        // A single range goes out as-is...
+        if (1 == ranges.size())
+        {
+            final ByteRange byteRange = ranges.get(0);
+
+            return builder.entity(new FileChannelStreamingOutput(channel, byteRange))
+                          .header(HttpHeaders.CONTENT_LENGTH, byteRange.getLength())
+                          .header(CONTENT_RANGE, byteRange.toContentRange(length))
+                          .build();
+        }
+
+        // ... whereas multiple ranges need to be wrapped up in a multipart/byteranges. Some containers (Jetty, for one)
+        // consider this self-delimiting and drop our Content-Length, which leaves clients that don't parse multipart
+        // waiting on a keep-alive connection forever. Closing the connection gives everybody an unambiguous end.
+        final ByteRangesStreamingOutput output = new ByteRangesStreamingOutput(channel, ranges, length);
+
+        return builder.entity(output)
+                      .type(output.getMediaType())
+                      .header(HttpHeaders.CONTENT_LENGTH, output.getContentLength())
+                      .header(CONNECTION, CONNECTION_CLOSE)
+                      .build();
+    }
+
+    /**
+     * Answers a request once the stream it's about has settled, if the caller asked us to wait. A stream that's
+     * {@link StreamStatus#IN_PROGRESS} is only going to stop being so when an upload finishes (or fails), so rather than
+     * have the caller poll until then, we park the request (holding no thread) and watch the stream on the
+     * {@link StreamChangeFeed}. The request is answered as if it had just come in when the stream reaches the status asked
+     * for, or any other that isn't {@link StreamStatus#IN_PROGRESS}, or when we run out of time. A stream in any other
+     * status isn't going anywhere, so we answer straight away.<p/>
+     *
+     * Please note that we only hear about uploads to this node. An upload to another node is waited out to the timeout.
+     *
+     * @param asyncResponse The {@link AsyncResponse} to resume once we're done. Must not be null.
+     * @param id The ID of the stream. Must not be null.
+     * @param waitFor The {@link StreamStatus} to wait for, if any. May be null, in which case we answer straight away.
+     * @param timeout How long to wait, if we're waiting (see {@link #parseWaitTimeout(String)}). May be null.
+     * @param responder The {@link Callable} that answers the request. Must not be null.
+     */
+    void waitForStream(final AsyncResponse asyncResponse, final String id, final String waitFor, final String timeout, final Callable<Response> responder)
+    {
+        final StreamStatus status;
+        final long timeoutMillis;
+
+        try
+        {
+            validateId(id);
+            status = parseWaitFor(waitFor);
+            timeoutMillis = parseWaitTimeout(timeout);
+        }
+        catch (final WebApplicationException ex)
+        {
+            asyncResponse.resume(ex);
+            return;
+        }
+
+        if (null == status)
+        {
+            resume(asyncResponse, responder);
+            return;
+        }
+
+        final StreamWaiter waiter = new StreamWaiter(asyncResponse, id, status, responder);
+
+        // Jersey calls us back on one of its own threads, which we'd rather not hold up with writing a stream.
+        asyncResponse.setTimeoutHandler(response -> waiter.timeout());
+        asyncResponse.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+
+        waiter.run();
+    }
+
+    /**
+     * Provides a convenience method to parse the status a caller would like to wait for.
+     *
+     * @param waitFor The name of a {@link StreamStatus}, in any case. May be null.
+     *
+     * @return The {@link StreamStatus}, or null if we weren't given one.
+     *
+     * @throws WebApplicationException With a 400/BAD REQUEST if it isn't a {@link StreamStatus}.
+     */
+    static StreamStatus parseWaitFor(final String waitFor)
+    {
+        if (null == waitFor)
+        {
+            return null;
+        }
+
+        try
+        {
+            return StreamStatus.valueOf(waitFor.trim().toUpperCase());
+        }
+        catch (final IllegalArgumentException ex)
+        {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Provides a convenience method to parse how long a caller is willing to wait. This is a number of seconds, or a
+     * number with a unit of <code>ms</code>, <code>s</code> or <code>m</code>, and anything over {@link #MAX_WAIT_MILLIS}
+     * is quietly capped.
+     *
+     * @param timeout How long to wait. May be null, in which case we wait {@link #DEFAULT_WAIT_MILLIS}.
+     *
+     * @return How long to wait, in milliseconds.
+     *
+     * @throws WebApplicationException With a 400/BAD REQUEST if it isn't a timeout.
+     */
+    static long parseWaitTimeout(final String timeout)
+    {
+        if (null == timeout)
+        {
+            return DEFAULT_WAIT_MILLIS;
+        }
+
+        final Matcher matcher = WAIT_TIMEOUT_PATTERN.matcher(timeout.trim());
+
+        if (!matcher.matches())
+        {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+
+        final long value = Long.parseLong(matcher.group(1));
+        final String unit = null == matcher.group(2) ? "s" : matcher.group(2);
+        final long millis = "ms".equals(unit) ? value : "s".equals(unit) ? TimeUnit.SECONDS.toMillis(value) : TimeUnit.MINUTES.toMillis(value);
+
+        return Math.min(millis, MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * Provides a convenience method to answer a suspended request, including when answering it fails (IE: with a
+     * {@link WebApplicationException}, which Jersey will map for us).
+     *
+     * @param asyncResponse The {@link AsyncResponse} to resume. Must not be null.
+     * @param responder The {@link Callable} that answers the request. Must not be null.
+     */
+    static void resume(final AsyncResponse asyncResponse, final Callable<Response> responder)
+    {
+        try
+        {
+            asyncResponse.resume(responder.call());
+        }
+        catch (final Exception ex)
+        {
+            asyncResponse.resume(ex);
+        }
+    }
+
+    /**
+     * Provides a convenience method to evaluate an <code>If-Range</code> header against a given stream. If there's no
+     * header, any <code>Range</code> applies. If there is, we only apply the range if the stream hasn't changed.<p/>
+     *
+     * The header may be an entity tag, which has to match ours exactly (weak tags never do, and nor does anything if we
+     * haven't got a tag), or a date. HTTP dates only have a resolution of a second, so we compare at that granularity.
+     *
+     * @param ifRange The value of the <code>If-Range</code> header. May be null.
+     * @param metadata The {@link StreamMetadata} for the stream in question. Must not be null.
+     *
+     * @return <code>True</code> if any <code>Range</code> header should be honored, else <code>false</code>.
+     */
+    boolean isRangeApplicable(final String ifRange, final StreamMetadata metadata)
+    {
+        if (null == ifRange)
+        {
+            return true;
+        }
+
+        if (ifRange.trim().startsWith("\"") || ifRange.trim().startsWith("W/"))
+        {
+            final EntityTag entityTag = createEntityTag(metadata);
+            return null != entityTag && ifRange.trim().equals(toHeaderValue(entityTag));
+        }
+
+        try
+        {
+            final long validator = ZonedDateTime.parse(ifRange.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+            return validator == TimeUnit.MILLISECONDS.toSeconds(metadata.getLastModified());
+        }
+        catch (final DateTimeParseException ex)
+        {
+            // Garbage doesn't match anything.
+            return false;
+        }
+    }
+
+    /**
+     * Provides a convenience method to evaluate the conditional headers of a GET against a given stream, to see if the
+     * client's copy is still current. As per RFC 7232, <code>If-None-Match</code> wins if both are present: it matches
+     * if any of its entity tags (compared weakly, so <code>W/</code> is ignored) is ours, or it's <code>*</code>.
+     * Otherwise, <code>If-Modified-Since</code> matches if the stream hasn't changed since (to the second). Garbage
+     * dates are ignored, as the RFC asks.
+     *
+     * @param ifNoneMatch The value of the <code>If-None-Match</code> header. May be null.
+     * @param ifModifiedSince The value of the <code>If-Modified-Since</code> header. May be null.
+     * @param metadata The {@link StreamMetadata} for the stream in question. Must not be null.
+     *
+     * @return <code>True</code> if we should answer with a 304/NOT MODIFIED, else <code>false</code>.
+     */
+    boolean isNotModified(final String ifNoneMatch, final String ifModifiedSince, final StreamMetadata metadata)
+    {
+        if (null != ifNoneMatch)
+        {
+            final EntityTag entityTag = createEntityTag(metadata);
+
+            for (final String candidate : ifNoneMatch.split(","))
+            {
+                final String value = candidate.trim();
+
+                if ("*".equals(value)
+                    || (null != entityTag && (value.startsWith("W/") ? value.substring(2) : value).equals(toHeaderValue(entityTag))))
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        if (null == ifModifiedSince)
+        {
+            return false;
+        }
+
+        try
+        {
+            final long validator = ZonedDateTime.parse(ifModifiedSince.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+            return TimeUnit.MILLISECONDS.toSeconds(metadata.getLastModified()) <= validator;
+        }
+        catch (final DateTimeParseException ex)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Provides a convenience method to answer a conditional request for a stream whose copy the client already has.
+     *
+     * @param metadata The {@link StreamMetadata} for the version the client has. Must not be null.
+     *
+     * @return A 304/NOT MODIFIED {@link Response}, with the entity tag and modification time of the version. Will not be null.
+     */
+    static Response createNotModifiedResponse(final StreamMetadata metadata)
+    {
+        return Response.notModified()
+                       .tag(createEntityTag(metadata))
+                       .lastModified(new Date(metadata.getLastModified()))
+                       .build();
+    }
+
+    /**
+     * Provides a convenience method to get the entity tag for a stream, which is the SHA-256 of what we've stored. It's a
+     * strong tag, since the same digest means the same bytes.
+     *
+     * @param metadata The {@link StreamMetadata} for the stream. Must not be null.
+     *
+     * @return The {@link EntityTag} for the stream, or <code>null</code> if it was stored before we took digests.
+     */
+    static EntityTag createEntityTag(final StreamMetadata metadata)
+    {
+        return null == metadata.getSha256() ? null : new EntityTag(metadata.getSha256());
+    }
+
+    /**
+     * Provides a convenience method to render an {@link EntityTag} the way it would appear in a header.
+     *
+     * @param entityTag The {@link EntityTag} to render. Must not be null.
+     *
+     * @return The quoted tag, prefixed with <code>W/</code> if it's weak. Will not be null.
+     */
+    private static String toHeaderValue(final EntityTag entityTag)
+    {
+        return (entityTag.isWeak() ? "W/" : "") + "\"" + entityTag.getValue() + "\"";
+    }
+
+    /**
+     * Provides a convenience method to turn the ID of the last stream on a page into a cursor for the next one. Cursors
+     * are opaque to clients, so we're free to change what's in them later.
+     *
+     * @param id The ID of the last stream on the page. Must not be null.
+     *
+     * @return A URL-safe cursor. Will not be null.
+     */
+    static String encodeCursor(final String id)
+    {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Provides a convenience method to turn a cursor from {@link #encodeCursor(String)} back into a stream ID. For now
+     * will throw a 400/BAD REQUEST if the cursor is garbage.
+     *
+     * @param cursor The cursor to decode. May be null.
+     *
+     * @return The ID of the stream to start after, or <code>null</code> if there's no cursor.
+     */
+    String decodeCursor(final String cursor)
+    {
+        if (null == cursor)
+        {
+            return null;
+        }
+
+        try
+        {
+            final String id = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+
+            if (VALID_ID_PATTERN.matcher(id).matches())
+            {
+                return id;
+            }
+        }
+        catch (final IllegalArgumentException ex)
+        {
+            // Fall through: it's garbage either way.
+        }
+
+        throw new WebApplicationException(Response.Status.BAD_REQUEST);
+    }
+
+    /**
+     * Provides a convenience method to check that a set of {@link StreamMetadataCriteria} makes sense. For now, that's
+     * just that any prefix is made up of valid ID characters. Will throw a 400/BAD REQUEST if violated.
+     *
+     * @param criteria The {@link StreamMetadataCriteria} to validate. Must not be null.
+     */
+    void validateCriteria(final StreamMetadataCriteria criteria)
+    {
+        if (null != criteria.getPrefix() && !VALID_ID_PATTERN.matcher(criteria.getPrefix()).matches())
+        {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+    }
+
     // TODO [kog@epiphanic.org - 5/28/15]: Move this to a @Constraint.
 
     /**
@@ -331,4 +1313,103 @@ public class StreamResource
             throw new WebApplicationException(Response.Status.FORBIDDEN);
         }
     }
+
+    /**
+     * Provides a single request waiting on a stream that's {@link StreamStatus#IN_PROGRESS} (see
+     * {@link #waitForStream(AsyncResponse, String, String, String, Callable)}). Each time it's run it watches the stream
+     * again, and then looks at it: if it's still in progress we leave it be until the next change, otherwise (or once it's
+     * timed out) we answer the request. Watching before looking means we can't miss a change in between, and whichever
+     * of a change and the timeout gets there first is the only one to answer.
+     */
+    class StreamWaiter implements Runnable
+    {
+        /**
+         * Holds the {@link AsyncResponse} to resume.
+         */
+        private final AsyncResponse _asyncResponse;
+
+        /**
+         * Holds the ID of the stream we're waiting on.
+         */
+        private final String _id;
+
+        /**
+         * Holds the {@link StreamStatus} we're waiting for.
+         */
+        private final StreamStatus _status;
+
+        /**
+         * Holds the {@link Callable} that answers the request.
+         */
+        private final Callable<Response> _responder;
+
+        /**
+         * Holds the {@link StreamChangeFeed} we watch the stream on.
+         */
+        private final StreamChangeFeed _changeFeed;
+
+        /**
+         * Holds whether we've answered (or are answering) the request.
+         */
+        private final AtomicBoolean _done = new AtomicBoolean();
+
+        StreamWaiter(final AsyncResponse asyncResponse, final String id, final StreamStatus status, final Callable<Response> responder)
+        {
+            _asyncResponse = asyncResponse;
+            _id = id;
+            _status = status;
+            _responder = responder;
+            _changeFeed = getStreamService().getChangeFeed();
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                if (!_done.get() && _changeFeed.watch(_id, this) && isWaiting() && !_done.get())
+                {
+                    return;
+                }
+            }
+            catch (final Exception ex)
+            {
+                // Looking at the stream failed, so answering will probably fail the same way. Either way, we're done.
+            }
+
+            finish();
+        }
+
+        /**
+         * Gives up on waiting, and answers the request with the stream as it is now.
+         */
+        void timeout()
+        {
+            _changeFeed.unwatch(_id, this);
+            _changeFeed.dispatch(this::finish);
+        }
+
+        /**
+         * Provides a convenience method to check whether the stream still has some way to go.
+         *
+         * @return True if the stream is in progress, and that isn't what we're waiting for.
+         */
+        private boolean isWaiting() throws Exception
+        {
+            return StreamStatus.IN_PROGRESS != _status && StreamStatus.IN_PROGRESS == getStreamService().getMetadataForStreamById(_id).getStatus();
+        }
+
+        /**
+         * Answers the request, unless somebody already has.
+         */
+        private void finish()
+        {
+            _changeFeed.unwatch(_id, this);
+
+            if (_done.compareAndSet(false, true))
+            {
+                resume(_asyncResponse, _responder);
+            }
+        }
+    }
 }
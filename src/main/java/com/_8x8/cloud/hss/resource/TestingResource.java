@@ -112,4 +112,20 @@ public class TestingResource
     {
         return getStreamService().getStreamStorageDirectory().getAbsolutePath();
     }
+
+    /**
+     * Gets the location the current version of a given stream is stored at. Since we bucket streams into subdirectories,
+     * and every write goes to a new version, tests can't just assume a stream lives at a fixed location.
+     *
+     * @param streamId The ID of the stream to get the location for.
+     *
+     * @return The location the stream is, or would be, stored at.
+     */
+    @Produces("text/plain")
+    @Path("storage/{id}")
+    @GET
+    public String getStorageLocationForStream(final @PathParam("id") String streamId) throws Exception
+    {
+        return getStreamService().resolveFileForStream(getStreamService().getMetadataForStreamById(streamId)).getAbsolutePath();
+    }
 }
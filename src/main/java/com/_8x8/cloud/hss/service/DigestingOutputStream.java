@@ -0,0 +1,92 @@
+package com._8x8.cloud.hss.service;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.output.ProxyOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * Provides an {@link OutputStream} that delegates to another, and computes the CRC32C and SHA-256 of everything that
+ * goes through it on the way. This lets us digest a stream as we store it, rather than reading it back afterwards.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+class DigestingOutputStream extends ProxyOutputStream
+{
+    /**
+     * Holds the {@link Crc32c} of what we've written.
+     */
+    private final Crc32c _crc32c = new Crc32c();
+
+    /**
+     * Holds the SHA-256 {@link MessageDigest} of what we've written.
+     */
+    private final MessageDigest _sha256 = DigestUtils.getSha256Digest();
+
+    /**
+     * Holds our SHA-256 in hex, once we've finished it. A {@link MessageDigest} can only be finished once.
+     */
+    private String _sha256Hex;
+
+    /**
+     * Creates a new instance of the {@link DigestingOutputStream}.
+     *
+     * @param stream The {@link OutputStream} to delegate to. Must not be null.
+     */
+    DigestingOutputStream(final OutputStream stream)
+    {
+        super(stream);
+    }
+
+    @Override
+    public void write(final int b) throws IOException
+    {
+        super.write(b);
+        _crc32c.update(b);
+        _sha256.update((byte) b);
+    }
+
+    @Override
+    public void write(final byte[] bytes) throws IOException
+    {
+        write(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length) throws IOException
+    {
+        super.write(bytes, offset, length);
+        _crc32c.update(bytes, offset, length);
+        _sha256.update(bytes, offset, length);
+    }
+
+    /**
+     * Gets the CRC32C of everything written so far.
+     *
+     * @return The CRC32C, as 8 lower case hex digits. Will not be null.
+     */
+    public String getCrc32c()
+    {
+        return String.format("%08x", _crc32c.getValue());
+    }
+
+    /**
+     * Gets the SHA-256 of everything written. Please note that this finishes the digest, so should only be called once
+     * we're done writing.
+     *
+     * @return The SHA-256, as 64 lower case hex digits. Will not be null.
+     */
+    public String getSha256()
+    {
+        if (null == _sha256Hex)
+        {
+            _sha256Hex = Hex.encodeHexString(_sha256.digest());
+        }
+
+        return _sha256Hex;
+    }
+}
@@ -0,0 +1,406 @@
+package com._8x8.cloud.hss.service;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Provides a disk-backed cache of filtered stream variants: the output of running a given version of a stream through a
+ * given, ordered, list of input filters. Once something like <code>?filters=zip&amp;filters=base64</code> has been
+ * materialized, repeat downloads are a plain file read rather than a trip through the filter chain.<p/>
+ *
+ * Entries are evicted least recently used first, against a byte quota. The index lives in memory, so we clear out any
+ * variants left in the cache directory on startup rather than trying to trust them. Anything else in there is left
+ * alone, in case the directory is shared (or was misconfigured).<p/>
+ *
+ * Please note that since the key includes the version of the stream, a stale variant can never be served for new
+ * contents. {@link #invalidate(String)} is about reclaiming disk as soon as possible, rather than correctness.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class FilteredStreamCache
+{
+    /**
+     * Holds the {@link Logger} for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(FilteredStreamCache.class);
+
+    /**
+     * Holds a {@link Pattern} matching the names of the files we create: a temp file while materializing, and the
+     * finished variant after (see {@link #materialize(String, FilteredSource)}).
+     */
+    static final Pattern VARIANT_FILE = Pattern.compile("([0-9a-f]{40}-)?variant\\d+(\\.tmp)?");
+
+    /**
+     * Holds a {@link File} pointing to where we keep our materialized variants. Defaults to <code>/tmp/hss-filtered</code>.
+     */
+    private File _cacheDirectory = new File("/tmp/hss-filtered");
+
+    /**
+     * Holds the total number of bytes of variants we're willing to keep on disk. Defaults to 1GB.
+     */
+    private long _maximumBytes = 1024L * 1024 * 1024;
+
+    /**
+     * Holds our entries by key, in access order (IE: least recently used first). Guarded by <code>this</code>.
+     */
+    private final LinkedHashMap<String, Entry> _entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Holds the keys of the variants we have for each stream ID, so we can invalidate them. Guarded by <code>this</code>.
+     */
+    private final Map<String, Set<String>> _keysById = new HashMap<>();
+
+    /**
+     * Holds the number of bytes we've currently got on disk. Guarded by <code>this</code>.
+     */
+    private long _cachedBytes = 0;
+
+    /**
+     * Holds the streams we're materializing variants of, by ID. Each carries a counter that's bumped whenever the stream
+     * is invalidated, and a variant is only added if its stream wasn't invalidated while it was being materialized, so
+     * a reader racing a writer can't put back what the writer just took out. A write to one stream leaves variants of
+     * every other stream alone. Entries only live as long as there's a materialization in flight. Guarded by
+     * <code>this</code>.
+     */
+    private final Map<String, Materializing> _materializing = new HashMap<>();
+
+    public File getCacheDirectory() { return _cacheDirectory; }
+    public void setCacheDirectory(final String cacheDirectory) { _cacheDirectory = new File(cacheDirectory); }
+
+    public long getMaximumBytes() { return _maximumBytes; }
+    public void setMaximumBytes(final long maximumBytes) { _maximumBytes = maximumBytes; }
+
+    /**
+     * Gets the number of bytes of variants we've currently got on disk.
+     *
+     * @return The total size of all cached variants, in bytes.
+     */
+    public synchronized long getCachedBytes()
+    {
+        return _cachedBytes;
+    }
+
+    /**
+     * Takes care of making sure we've got a cache directory to work with, without any variants left over from before.
+     */
+    public void init() throws Exception
+    {
+        FileUtils.forceMkdir(getCacheDirectory());
+
+        final File[] files = getCacheDirectory().listFiles();
+
+        if (null == files)
+        {
+            throw new IOException(String.format("Failed to list the contents of %s.", getCacheDirectory()));
+        }
+
+        for (final File file : files)
+        {
+            if (!file.isFile() || !VARIANT_FILE.matcher(file.getName()).matches())
+            {
+                LOGGER.warn("Leaving {} alone, as it isn't one of our variants.", file);
+            }
+            else if (!FileUtils.deleteQuietly(file))
+            {
+                LOGGER.warn("Failed to delete stale variant {}.", file);
+            }
+        }
+    }
+
+    /**
+     * Gets an {@link InputStream} over a filtered variant of a stream, materializing it first if we don't already have it.
+     *
+     * @param id The ID of the stream. Must not be blank, must be valid.
+     * @param version An opaque value that changes whenever the contents of the stream do. Must not be blank.
+     * @param filters The ordered list of filters applied to produce the variant. Must not be null or empty.
+     * @param source Something to produce the filtered contents of the stream, if we need to materialize it.
+     *
+     * @return An {@link InputStream} over the filtered variant. Will not be null.
+     *
+     * @throws Exception If we fail to materialize the variant.
+     */
+    public InputStream getStream(final String id, final String version, final List<String> filters, final FilteredSource source) throws Exception
+    {
+        final String key = createKey(id, version, filters);
+        final Materializing materializing;
+        final long generation;
+
+        synchronized (this)
+        {
+            final Entry entry = _entries.get(key);
+
+            if (null != entry)
+            {
+                try
+                {
+                    return FileUtils.openInputStream(entry._file);
+                }
+                catch (final IOException ex)
+                {
+                    // Somebody cleaned up our directory out from under us. Forget about it, and build it again.
+                    remove(key);
+                }
+            }
+
+            materializing = _materializing.computeIfAbsent(id, ignored -> new Materializing());
+            materializing._count++;
+            generation = materializing._generation;
+        }
+
+        final File file;
+        final InputStream stream;
+
+        try
+        {
+            file = materialize(key, source);
+
+            // Open this before we publish it, so eviction can't pull it out from under us.
+            stream = FileUtils.openInputStream(file);
+        }
+        catch (final Exception ex)
+        {
+            synchronized (this)
+            {
+                doneMaterializing(id, materializing);
+            }
+
+            throw ex;
+        }
+
+        synchronized (this)
+        {
+            doneMaterializing(id, materializing);
+
+            // Please note that a variant bigger than our whole quota would just flush everything else, so we don't keep it.
+            if (generation == materializing._generation && !_entries.containsKey(key) && file.length() <= getMaximumBytes())
+            {
+                _entries.put(key, new Entry(id, file));
+                _keysById.computeIfAbsent(id, ignored -> new HashSet<>()).add(key);
+                _cachedBytes += file.length();
+
+                evict();
+            }
+            else
+            {
+                // Either we raced another reader for this variant, the stream changed while we were working, or it's just
+                // too big. We can still serve what we read (the file is open, so unlinking it is fine), but we're not
+                // keeping it.
+                FileUtils.deleteQuietly(file);
+            }
+        }
+
+        return stream;
+    }
+
+    /**
+     * Drops all variants of a given stream. Must be called whenever a stream is modified or deleted.
+     *
+     * @param id The ID of the stream to invalidate. Must not be blank, must be valid.
+     */
+    public synchronized void invalidate(final String id)
+    {
+        final Materializing materializing = _materializing.get(id);
+
+        if (null != materializing)
+        {
+            materializing._generation++;
+        }
+
+        final Set<String> keys = _keysById.get(id);
+
+        if (null != keys)
+        {
+            // Copy, since remove() modifies the set underneath us.
+            for (final String key : keys.toArray(new String[keys.size()]))
+            {
+                remove(key);
+            }
+        }
+    }
+
+    /**
+     * Provides a convenience method to write a variant to a temp file in our cache directory. This happens outside of
+     * our lock, since it's the expensive part.
+     *
+     * @param key The key of the variant to materialize. Must not be blank.
+     * @param source Something to produce the filtered contents of the stream. Must not be null.
+     *
+     * @return A {@link File} holding the complete variant. Will not be null.
+     *
+     * @throws Exception If we fail to produce or write the variant.
+     */
+    File materialize(final String key, final FilteredSource source) throws Exception
+    {
+        final File temp = File.createTempFile("variant", ".tmp", getCacheDirectory());
+
+        try
+        {
+            try (final InputStream filtered = source.open();
+                 final OutputStream output = FileUtils.openOutputStream(temp))
+            {
+                IOUtils.copyLarge(filtered, output);
+            }
+
+            // Every concurrent miss gets its own temp file, so give this one a unique final name as well. Renaming means
+            // nobody can ever open a half-written variant.
+            final File file = new File(getCacheDirectory(), String.format("%s-%s", DigestUtils.sha1Hex(key), temp.getName().replace(".tmp", "")));
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+            return file;
+        }
+        catch (final Exception ex)
+        {
+            FileUtils.deleteQuietly(temp);
+            throw ex;
+        }
+    }
+
+    /**
+     * Provides a convenience method to note that a materialization has finished, one way or another. Must be called while
+     * holding our lock.
+     *
+     * @param id The ID of the stream. Must not be blank.
+     * @param materializing The {@link Materializing} we registered for it. Must not be null.
+     */
+    private void doneMaterializing(final String id, final Materializing materializing)
+    {
+        if (0 == --materializing._count)
+        {
+            _materializing.remove(id);
+        }
+    }
+
+    /**
+     * Provides a convenience method to evict least recently used variants until we're within our quota. Must be called
+     * while holding our lock. Please note that anybody already reading an evicted variant can finish, since we only
+     * unlink the file.
+     */
+    void evict()
+    {
+        final Iterator<Map.Entry<String, Entry>> iterator = _entries.entrySet().iterator();
+
+        while (_cachedBytes > getMaximumBytes() && iterator.hasNext())
+        {
+            final Map.Entry<String, Entry> eldest = iterator.next();
+            iterator.remove();
+
+            forget(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    /**
+     * Provides a convenience method to remove a single variant. Must be called while holding our lock.
+     *
+     * @param key The key of the variant to remove. Must not be blank.
+     */
+    private void remove(final String key)
+    {
+        final Entry entry = _entries.remove(key);
+
+        if (null != entry)
+        {
+            forget(key, entry);
+        }
+    }
+
+    /**
+     * Provides a convenience method to clean up after a variant that has already been taken out of our entries. Must be
+     * called while holding our lock.
+     *
+     * @param key The key of the variant. Must not be blank.
+     * @param entry The {@link Entry} for the variant. Must not be null.
+     */
+    private void forget(final String key, final Entry entry)
+    {
+        final Set<String> keys = _keysById.get(entry._id);
+
+        if (null != keys && keys.remove(key) && keys.isEmpty())
+        {
+            _keysById.remove(entry._id);
+        }
+
+        _cachedBytes -= entry._length;
+
+        if (!FileUtils.deleteQuietly(entry._file))
+        {
+            LOGGER.warn("Failed to delete cached variant {}.", entry._file);
+        }
+    }
+
+    /**
+     * Provides a convenience method to create the key for a given variant. Filter order matters (zip then base64 is not
+     * base64 then zip), so we keep it.
+     *
+     * @param id The ID of the stream. Must not be blank.
+     * @param version The version of the stream. Must not be blank.
+     * @param filters The ordered list of filters. Must not be null.
+     *
+     * @return A key for the variant. Will not be null.
+     */
+    static String createKey(final String id, final String version, final List<String> filters)
+    {
+        return String.format("%s\u0000%s\u0000%s", id, version, String.join("\u0000", filters));
+    }
+
+    /**
+     * Provides a callback to produce the filtered contents of a stream, for when we need to materialize a variant.
+     */
+    @FunctionalInterface
+    public interface FilteredSource
+    {
+        /**
+         * Opens the filtered contents of the stream. The caller is responsible for closing it.
+         *
+         * @return An {@link InputStream} over the filtered contents. Must not be null.
+         *
+         * @throws Exception If we fail to open or filter the stream.
+         */
+        InputStream open() throws Exception;
+    }
+
+    /**
+     * Holds what we know about the variants of a single stream being materialized: how many are in flight, and how many
+     * times the stream has been invalidated since the first of them started.
+     */
+    private static class Materializing
+    {
+        private int _count;
+        private long _generation;
+    }
+
+    /**
+     * Holds what we know about a single materialized variant.
+     */
+    private static class Entry
+    {
+        private final String _id;
+        private final File _file;
+        private final long _length;
+
+        Entry(final String id, final File file)
+        {
+            _id = id;
+            _file = file;
+            _length = file.length();
+        }
+    }
+}
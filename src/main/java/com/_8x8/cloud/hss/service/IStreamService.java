@@ -1,9 +1,13 @@
 package com._8x8.cloud.hss.service;
 
 import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
+import com._8x8.cloud.hss.model.StreamStatistics;
 import com._8x8.cloud.hss.model.StreamStatus;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Collection;
 import java.util.List;
 
@@ -27,12 +31,76 @@ public interface IStreamService
      * @param filters A list of zero or more filters to apply to the stream. May be empty, but must not be null.
      *
      * @return An {@link InputStream} pointing to the resource, if known, else <code>null</code>. If the stream is known,
-     * but in {@link StreamStatus#IN_PROGRESS}, will also be <code>null.</code>
+     * but has no complete version (IE: it's {@link StreamStatus#FAILED}, or {@link StreamStatus#IN_PROGRESS} for the
+     * first time), will also be <code>null.</code> Streams being updated yield the previous version.
      *
      * @throws Exception If we fail to return the stream for the given ID. This must be handled up the call stack.
      */
     InputStream getStreamById(String id, List<String> filters) throws Exception;
 
+    /**
+     * Obtains an {@link InputStream} to a given stream object, as described by {@link StreamMetadata} the caller has
+     * already read (IE: to decide how to respond). This saves us looking it up again. Otherwise this is the same as
+     * {@link #getStreamById(String, List)}.
+     *
+     * @param metadata The {@link StreamMetadata} of the stream to fetch, as read by {@link #getMetadataForStreamById(String)}.
+     *                 Must not be null.
+     * @param filters A list of zero or more filters to apply to the stream. May be empty, but must not be null.
+     *
+     * @return An {@link InputStream} pointing to the resource, if it has a complete version, else <code>null</code>.
+     * If the metadata has gone stale in the meantime, this will be for the current version.
+     *
+     * @throws Exception If we fail to return the stream. This must be handled up the call stack.
+     */
+    InputStream getStream(StreamMetadata metadata, List<String> filters) throws Exception;
+
+    /**
+     * Obtains a read-only {@link FileChannel} to the stored bytes of a given stream object, by ID. This bypasses the
+     * filter chain entirely, and is intended for raw downloads, where we know the length up front and can read whatever
+     * region of the file we've been asked for.<p/>
+     *
+     * Please note that callers are responsible for closing the returned {@link FileChannel}.
+     *
+     * @param id The ID of the stream to fetch. Must not be blank, must be valid.
+     *
+     * @return A {@link FileChannel} pointing to the resource, if known, else <code>null</code>. As with
+     * {@link #getStreamById(String, List)}, this will also be <code>null</code> if there's no complete version.
+     *
+     * @throws Exception If we fail to open the stream for the given ID. This must be handled up the call stack.
+     */
+    FileChannel getChannelForStreamById(String id) throws Exception;
+
+    /**
+     * Obtains a read-only {@link FileChannel} to the stored bytes of a given stream object, as described by
+     * {@link StreamMetadata} the caller has already read. Otherwise this is the same as {@link #getChannelForStreamById(String)}.
+     *
+     * @param metadata The {@link StreamMetadata} of the stream to fetch, as read by {@link #getMetadataForStreamById(String)}.
+     *                 Must not be null.
+     *
+     * @return A {@link FileChannel} pointing to the resource, along with the {@link StreamMetadata} of the version it
+     * points to (which may be newer than what we were given), if it has a complete version, else <code>null</code>.
+     *
+     * @throws Exception If we fail to open the stream. This must be handled up the call stack.
+     */
+    StreamVersion<FileChannel> getChannelForStream(StreamMetadata metadata) throws Exception;
+
+    /**
+     * Obtains the stored bytes of a given stream object from memory, if we're caching and the stream is small enough to
+     * cache, loading them if need be. This is for whole, unfiltered downloads of small streams, which make up the bulk of
+     * our reads: once cached, they don't touch the filesystem at all. Otherwise callers should fall back to
+     * {@link #getChannelForStream(StreamMetadata)}.
+     *
+     * @param metadata The {@link StreamMetadata} of the stream to fetch, as read by {@link #getMetadataForStreamById(String)}.
+     *                 Must not be null.
+     *
+     * @return A read-only {@link ByteBuffer} over the stored bytes of the current version, along with the
+     * {@link StreamMetadata} describing that version (which may be newer than what we were given), or <code>null</code>
+     * if we're not caching, the stream is too large, or it has no complete version.
+     *
+     * @throws Exception If we fail to read the stream. This must be handled up the call stack.
+     */
+    StreamVersion<ByteBuffer> getCachedContentsForStream(StreamMetadata metadata) throws Exception;
+
     /**
      * Obtains the {@link StreamStatus} for a given stream object, by ID.<p/>
      *
@@ -42,6 +110,20 @@ public interface IStreamService
      */
     StreamStatus getStatusForStreamById(String id) throws Exception;
 
+    /**
+     * Determines whether or not a stream that's {@link StreamStatus#IN_PROGRESS} has been abandoned by its writer (IE: a
+     * node went down mid-write), in which case a new write may take it over. That's the case if we aren't writing it
+     * ourselves, and it hasn't moved in a while. Taking it over is still conditional on nobody having touched it
+     * since it was read (see {@link #saveStream(StreamMetadata, InputStream, List)}), so a writer that turns out to be
+     * alive after all simply fails to finish.
+     *
+     * @param metadata The {@link StreamMetadata} of the stream, as read by {@link #getMetadataForStreamById(String)}.
+     *                 Must not be null.
+     *
+     * @return True if the stream is in progress, but nobody is actually writing it, else false.
+     */
+    boolean isAbandoned(StreamMetadata metadata);
+
     /**
      * Attempts to persist the given stream to a backing store.</p>
      *
@@ -51,12 +133,36 @@ public interface IStreamService
      * @param stream An {@link InputStream} to the resource to save. Must not be null, must be valid.
      * @param filters A list of zero or more filters to apply to the stream. May be empty, but must not be null.
      *
+     * @return True if we saved the stream, false if somebody else is already writing (or deleting) it, or changed it
+     * while we were writing, in which case the stream is left as they left it.
+     *
      * @throws Exception If we fail to return the stream for the given ID. This must be handled up the call stack.
      */
-    void saveStream(String id, InputStream stream, List<String> filters) throws Exception;
+    boolean saveStream(String id, InputStream stream, List<String> filters) throws Exception;
 
     /**
-     * Attempts to delete a stream by ID. If the ID is not known, this results in a no-op.
+     * Attempts to persist the given stream to a backing store, replacing whatever is described by {@link StreamMetadata}
+     * the caller has already read (IE: to check that it's there, or not). The write only goes through if the stream
+     * hasn't changed since, so stale metadata is safe: we just return false. Otherwise this is the same as
+     * {@link #saveStream(String, InputStream, List)}.<p/>
+     *
+     * Please note that the metadata is updated in place as the stream moves along, so callers shouldn't reuse it.
+     *
+     * @param metadata The {@link StreamMetadata} of the stream to save, as read by {@link #getMetadataForStreamById(String)}.
+     *                 Must not be null. May be {@link StreamStatus#NOT_FOUND}, in which case we're creating the stream.
+     * @param stream An {@link InputStream} to the resource to save. Must not be null, must be valid.
+     * @param filters A list of zero or more filters to apply to the stream. May be empty, but must not be null.
+     *
+     * @return True if we saved the stream, false if somebody else is already writing (or deleting) it, or changed it
+     * since the metadata was read.
+     *
+     * @throws Exception If we fail to save the stream. This must be handled up the call stack.
+     */
+    boolean saveStream(StreamMetadata metadata, InputStream stream, List<String> filters) throws Exception;
+
+    /**
+     * Attempts to delete a stream by ID. If the ID is not known, or somebody is currently writing the stream, this
+     * results in a no-op.
      *
      * @param id The ID of the stream to delete. Must not be blank, must be valid. Should exist.
      *
@@ -71,6 +177,19 @@ public interface IStreamService
      */
     Collection<StreamMetadata> getMetadataForStreams() throws Exception;
 
+    /**
+     * Attempts to find a page of {@link StreamMetadata} matching some criteria, in stream ID order. To get the next page,
+     * pass the ID of the last stream on this one.
+     *
+     * @param criteria The {@link StreamMetadataCriteria} to match. May be null, in which case everything matches.
+     * @param afterId The ID of the last stream on the previous page. May be null, in which case we start at the beginning.
+     * @param limit The maximum number of {@link StreamMetadata} to return. Must be positive.
+     *
+     * @return A list of up to <code>limit</code> {@link StreamMetadata}, sorted by ID. May be empty, in which case
+     * there's nothing left, but never null.
+     */
+    List<StreamMetadata> getMetadataForStreams(StreamMetadataCriteria criteria, String afterId, int limit) throws Exception;
+
     /**
      * Attempts to return the {@link StreamMetadata} associated with a given stream.
      *
@@ -81,4 +200,31 @@ public interface IStreamService
      * useful if the given stream does not actually exist.
      */
     StreamMetadata getMetadataForStreamById(String id) throws Exception;
+
+    /**
+     * Attempts to return the {@link StreamMetadata} associated with each of a set of streams, in as few round trips as
+     * we can manage. This is what a client checking up on a lot of streams at once should use.
+     *
+     * @param ids The IDs of the streams to retrieve {@link StreamMetadata} for. Must not be null or empty, must be valid.
+     *
+     * @return A list with one {@link StreamMetadata} per distinct ID, in the order given. As with
+     * {@link #getMetadataForStreamById(String)}, streams that don't exist are included, as {@link StreamStatus#NOT_FOUND}.
+     */
+    List<StreamMetadata> getMetadataForStreamsByIds(Collection<String> ids) throws Exception;
+
+    /**
+     * Gets aggregate statistics over every stream known to the system. These are kept up to date as streams move
+     * along, so this is cheap however many streams there are.
+     *
+     * @return A non-null {@link StreamStatistics} snapshot.
+     */
+    StreamStatistics getStatistics();
+
+    /**
+     * Gets the feed every transition of a stream (including deletes) is published to, so callers can wait on a stream
+     * rather than polling its status.
+     *
+     * @return A non-null {@link StreamChangeFeed}.
+     */
+    StreamChangeFeed getChangeFeed();
 }
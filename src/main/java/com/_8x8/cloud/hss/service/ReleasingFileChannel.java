@@ -0,0 +1,157 @@
+package com._8x8.cloud.hss.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Provides a {@link FileChannel} that delegates to another, and runs a callback once it's closed. We use this to hand
+ * out channels to versions of streams, and give back our reference to the version (see {@link StreamVersionTracker})
+ * once the caller is done with it.<p/>
+ *
+ * Please note that everything, including {@link #transferTo(long, long, WritableByteChannel)}, goes straight to the
+ * underlying channel, so wrapping it costs nothing beyond a call.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+class ReleasingFileChannel extends FileChannel
+{
+    /**
+     * Holds the {@link FileChannel} we're delegating to.
+     */
+    private final FileChannel _channel;
+
+    /**
+     * Holds the callback to run once we're closed.
+     */
+    private final Runnable _release;
+
+    /**
+     * Creates a new instance of the {@link ReleasingFileChannel}.
+     *
+     * @param channel The {@link FileChannel} to delegate to. Must not be null, must be open.
+     * @param release The callback to run, once, when we're closed. Must not be null.
+     */
+    ReleasingFileChannel(final FileChannel channel, final Runnable release)
+    {
+        _channel = channel;
+        _release = release;
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException
+    {
+        return _channel.read(dst);
+    }
+
+    @Override
+    public long read(final ByteBuffer[] dsts, final int offset, final int length) throws IOException
+    {
+        return _channel.read(dsts, offset, length);
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException
+    {
+        return _channel.write(src);
+    }
+
+    @Override
+    public long write(final ByteBuffer[] srcs, final int offset, final int length) throws IOException
+    {
+        return _channel.write(srcs, offset, length);
+    }
+
+    @Override
+    public long position() throws IOException
+    {
+        return _channel.position();
+    }
+
+    @Override
+    public FileChannel position(final long newPosition) throws IOException
+    {
+        _channel.position(newPosition);
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException
+    {
+        return _channel.size();
+    }
+
+    @Override
+    public FileChannel truncate(final long size) throws IOException
+    {
+        _channel.truncate(size);
+        return this;
+    }
+
+    @Override
+    public void force(final boolean metaData) throws IOException
+    {
+        _channel.force(metaData);
+    }
+
+    @Override
+    public long transferTo(final long position, final long count, final WritableByteChannel target) throws IOException
+    {
+        return _channel.transferTo(position, count, target);
+    }
+
+    @Override
+    public long transferFrom(final ReadableByteChannel src, final long position, final long count) throws IOException
+    {
+        return _channel.transferFrom(src, position, count);
+    }
+
+    @Override
+    public int read(final ByteBuffer dst, final long position) throws IOException
+    {
+        return _channel.read(dst, position);
+    }
+
+    @Override
+    public int write(final ByteBuffer src, final long position) throws IOException
+    {
+        return _channel.write(src, position);
+    }
+
+    @Override
+    public MappedByteBuffer map(final MapMode mode, final long position, final long size) throws IOException
+    {
+        return _channel.map(mode, position, size);
+    }
+
+    @Override
+    public FileLock lock(final long position, final long size, final boolean shared) throws IOException
+    {
+        return _channel.lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(final long position, final long size, final boolean shared) throws IOException
+    {
+        return _channel.tryLock(position, size, shared);
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException
+    {
+        // AbstractInterruptibleChannel makes sure this only happens once.
+        try
+        {
+            _channel.close();
+        }
+        finally
+        {
+            _release.run();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com._8x8.cloud.hss.service;
+
+import org.apache.commons.io.input.ProxyInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Provides an {@link InputStream} that delegates to another, and runs a callback once it's closed. This is the stream
+ * counterpart to {@link ReleasingFileChannel}.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+class ReleasingInputStream extends ProxyInputStream
+{
+    /**
+     * Holds the callback to run once we're closed.
+     */
+    private final Runnable _release;
+
+    /**
+     * Holds whether or not we've already been closed, since people love to close things twice.
+     */
+    private final AtomicBoolean _closed = new AtomicBoolean();
+
+    /**
+     * Creates a new instance of the {@link ReleasingInputStream}.
+     *
+     * @param stream The {@link InputStream} to delegate to. Must not be null.
+     * @param release The callback to run, once, when we're closed. Must not be null.
+     */
+    ReleasingInputStream(final InputStream stream, final Runnable release)
+    {
+        super(stream);
+        _release = release;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            super.close();
+        }
+        finally
+        {
+            if (_closed.compareAndSet(false, true))
+            {
+                _release.run();
+            }
+        }
+    }
+}
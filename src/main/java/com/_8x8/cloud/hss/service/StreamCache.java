@@ -0,0 +1,264 @@
+package com._8x8.cloud.hss.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+/**
+ * Provides a size-bounded cache of the raw (IE: as stored, before any input filters) contents of small streams. The bulk
+ * of our GET traffic tends to be for the same handful of small streams, and there's no reason to hit the filesystem for
+ * those every time.<p/>
+ *
+ * Under the hood this is a Caffeine cache, which gives us frequency-aware (W-TinyLFU) eviction against a byte budget:
+ * a one-off read of a cold stream won't push out something that's being read constantly. Contents can either live on the
+ * heap, or in direct buffers (see {@link #setOffHeap(boolean)}) if you'd rather keep a large budget away from the GC.
+ * Please note that for the latter you'll want to make sure <code>-XX:MaxDirectMemorySize</code> has room for the budget.<p/>
+ *
+ * Hit, miss and eviction counts are exposed via getters, so they can be published over JMX and used to size the cache.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamCache
+{
+    /**
+     * Holds the total number of bytes we're willing to cache. Defaults to 64MB.
+     */
+    private long _maximumBytes = 64L * 1024 * 1024;
+
+    /**
+     * Holds the largest stream we're willing to cache, in bytes. Defaults to 1MB.
+     */
+    private long _maximumEntryBytes = 1024L * 1024;
+
+    /**
+     * Holds whether or not we keep cached contents in direct (off-heap) buffers. Defaults to false.
+     */
+    private boolean _offHeap = false;
+
+    /**
+     * Holds the actual {@link Cache}, keyed by stream ID and version (see {@link #createKey(String, File)}). Created by
+     * {@link #init()}.
+     */
+    private Cache<String, ByteBuffer> _cache;
+
+    public long getMaximumBytes() { return _maximumBytes; }
+    public void setMaximumBytes(final long maximumBytes) { _maximumBytes = maximumBytes; }
+
+    public long getMaximumEntryBytes() { return _maximumEntryBytes; }
+    public void setMaximumEntryBytes(final long maximumEntryBytes) { _maximumEntryBytes = maximumEntryBytes; }
+
+    public boolean isOffHeap() { return _offHeap; }
+    public void setOffHeap(final boolean offHeap) { _offHeap = offHeap; }
+
+    /**
+     * Builds our underlying cache from our configuration. Must be called before anything else.
+     */
+    public void init()
+    {
+        _cache = Caffeine.newBuilder()
+                         .maximumWeight(getMaximumBytes())
+                         .weigher((final String id, final ByteBuffer contents) -> contents.capacity())
+                         .recordStats()
+                         .build();
+    }
+
+    /**
+     * Gets an {@link InputStream} over the cached contents of a given version of a stream, loading them from the given
+     * {@link File} if we don't have them yet. Since every version lives in its own file, we can't end up serving stale
+     * contents: a new version is simply a miss.
+     *
+     * @param id The ID of the stream to get the contents of. Must not be blank, must be valid.
+     * @param file The {@link File} the version of the stream is stored in. Must not be null.
+     *
+     * @return An {@link InputStream} over the cached contents, or <code>null</code> if the stream is too large to cache,
+     * in which case the caller should read it from disk as usual.
+     *
+     * @throws IOException If we fail to load the contents of the stream.
+     */
+    public InputStream getStream(final String id, final File file) throws IOException
+    {
+        final ByteBuffer contents = getContents(id, file);
+        return null == contents ? null : new ByteBufferInputStream(contents);
+    }
+
+    /**
+     * Gets the cached contents of a given version of a stream, loading them from the given {@link File} if we don't have
+     * them yet. This is the same as {@link #getStream(String, File)}, for callers that would rather write a buffer than
+     * read a stream.
+     *
+     * @param id The ID of the stream to get the contents of. Must not be blank, must be valid.
+     * @param file The {@link File} the version of the stream is stored in. Must not be null.
+     *
+     * @return A read-only {@link ByteBuffer} over the cached contents, with its own position, or <code>null</code> if the
+     * stream is too large to cache.
+     *
+     * @throws IOException If we fail to load the contents of the stream.
+     */
+    public ByteBuffer getContents(final String id, final File file) throws IOException
+    {
+        final ByteBuffer contents;
+
+        try
+        {
+            contents = _cache.get(createKey(id, file), key -> load(file));
+        }
+        catch (final UncheckedIOException ex)
+        {
+            throw ex.getCause();
+        }
+
+        // Hand out a view, so concurrent readers each get their own position.
+        return null == contents ? null : contents.duplicate();
+    }
+
+    /**
+     * Drops any cached contents for any version of a given stream. Should be called whenever a stream is modified or
+     * deleted, so we don't hold on to versions nobody can read any more until they're evicted.
+     *
+     * @param id The ID of the stream to invalidate. Must not be blank, must be valid.
+     */
+    public void invalidate(final String id)
+    {
+        // We only cache small streams, so there aren't all that many keys to look through.
+        final String prefix = createKey(id, null);
+        _cache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    public long getHitCount() { return _cache.stats().hitCount(); }
+    public long getMissCount() { return _cache.stats().missCount(); }
+    public long getEvictionCount() { return _cache.stats().evictionCount(); }
+    public double getHitRate() { return _cache.stats().hitRate(); }
+
+    /**
+     * Gets the number of bytes currently being held by the cache.
+     *
+     * @return The total size of all cached streams, in bytes.
+     */
+    public long getCachedBytes()
+    {
+        // Caffeine applies writes to its bookkeeping lazily, so catch up first or we may under-report.
+        _cache.cleanUp();
+        return _cache.policy().eviction().get().weightedSize().orElse(0L);
+    }
+
+    /**
+     * Gets a snapshot of the statistics for our cache.
+     *
+     * @return A {@link CacheStats} snapshot. Will not be null.
+     */
+    CacheStats getStats()
+    {
+        return _cache.stats();
+    }
+
+    /**
+     * Provides a convenience method to read the contents of a stream into a buffer, if it's small enough to cache.
+     *
+     * @param file The {@link File} the stream is stored in. Must not be null.
+     *
+     * @return A read-only {@link ByteBuffer} with the contents of the stream, or <code>null</code> if it's too large.
+     */
+    ByteBuffer load(final File file)
+    {
+        if (file.length() > getMaximumEntryBytes())
+        {
+            return null;
+        }
+
+        try
+        {
+            final byte[] bytes = Files.readAllBytes(file.toPath());
+
+            if (!isOffHeap())
+            {
+                return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+            }
+
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+            buffer.put(bytes).flip();
+
+            return buffer.asReadOnlyBuffer();
+        }
+        catch (final IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Provides a convenience method to create the key for a given version of a stream.
+     *
+     * @param id The ID of the stream. Must not be blank.
+     * @param file The {@link File} the version is stored in, or null to get the prefix shared by every version.
+     *
+     * @return A key for the version. Will not be null.
+     */
+    static String createKey(final String id, final File file)
+    {
+        return String.format("%s\u0000%s", id, null == file ? "" : file.getName());
+    }
+
+    /**
+     * Provides a simple {@link InputStream} over a {@link ByteBuffer}, since neither the JDK nor commons-io give us one.
+     */
+    static class ByteBufferInputStream extends InputStream
+    {
+        /**
+         * Holds the {@link ByteBuffer} we're reading from. We own the position, but not the contents.
+         */
+        private final ByteBuffer _buffer;
+
+        ByteBufferInputStream(final ByteBuffer buffer)
+        {
+            _buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return _buffer.hasRemaining() ? _buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length)
+        {
+            if (0 == length)
+            {
+                return 0;
+            }
+
+            if (!_buffer.hasRemaining())
+            {
+                return -1;
+            }
+
+            final int count = Math.min(length, _buffer.remaining());
+            _buffer.get(bytes, offset, count);
+
+            return count;
+        }
+
+        @Override
+        public long skip(final long count)
+        {
+            final int skipped = (int) Math.max(0, Math.min(count, _buffer.remaining()));
+            _buffer.position(_buffer.position() + skipped);
+
+            return skipped;
+        }
+
+        @Override
+        public int available()
+        {
+            return _buffer.remaining();
+        }
+    }
+}
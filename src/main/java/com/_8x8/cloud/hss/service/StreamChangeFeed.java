@@ -0,0 +1,460 @@
+package com._8x8.cloud.hss.service;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides a feed of the state transitions of our streams, so that anybody waiting on an upload can be told when it's
+ * done rather than asking over and over. Every transition is {@link #publish(StreamMetadata, StreamStatus)}ed with the
+ * next sequence number, into a ring buffer holding the last {@link #getCapacity()} of them.<p/>
+ *
+ * Subscribers keep their own place in the feed (IE: the last sequence number they saw) and {@link #read(long, int, long)}
+ * whatever's been published since, waiting for more if there isn't any. Publishing never waits on a subscriber: if one
+ * falls so far behind that what it hasn't seen has been overwritten, it picks up from the oldest change we still have,
+ * and can tell that it's missed some from the gap in the sequence numbers. Our sequence numbers start again from zero
+ * on every restart, so each run of the feed has its own {@link #getEpoch()}, and a subscriber resuming with a sequence
+ * number from a different one has to assume it's missed everything.<p/>
+ *
+ * Subscribers that would rather not hold a thread while they wait can {@link #subscribe(Runnable)} instead, and are
+ * called back (on the publishing thread, so they'd best be quick about it) every time something is published. Anything
+ * that needs doing on a regular basis (IE: heartbeats) can be {@link #schedule(Runnable, long)}d on a single shared
+ * thread.<p/>
+ *
+ * Anybody waiting on a single stream can {@link #watch(String, Runnable)} it instead, and is called back (once) on one
+ * of our threads the next time it changes. Whoever we wake may have a whole stream to write, so there are only ever so
+ * many of these threads (and none while nobody's being woken): if a lot of watchers are woken at once, the rest queue
+ * up for them rather than each getting a thread of their own.<p/>
+ *
+ * Please note that we only see the transitions made through this node.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamChangeFeed
+{
+    /**
+     * Holds the {@link Logger} for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamChangeFeed.class);
+
+    /**
+     * Holds the number of changes we keep, unless told otherwise.
+     */
+    static final int DEFAULT_CAPACITY = 65536;
+
+    /**
+     * Holds the most threads we call watchers back on at once, unless told otherwise.
+     */
+    static final int DEFAULT_WATCHER_THREADS = 32;
+
+    /**
+     * Holds how long a thread we call watchers back on hangs around with nothing to do, in seconds.
+     */
+    private static final long WATCHER_KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * Holds what distinguishes this run of the feed from any other, IE: before a restart.
+     */
+    private final String _epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+    /**
+     * Holds our ring buffer. The change with a given sequence number lives at that number modulo our capacity. Guarded by
+     * <code>this</code>.
+     */
+    private final Change[] _changes;
+
+    /**
+     * Holds the sequence number of the last change we published, or zero if there hasn't been one. Guarded by
+     * <code>this</code>.
+     */
+    private long _sequence;
+
+    /**
+     * Holds whether we've been closed, after which nobody waits for anything. Guarded by <code>this</code>.
+     */
+    private boolean _closed;
+
+    /**
+     * Holds the callbacks waiting on the next change to each stream, by stream ID. Guarded by <code>this</code>.
+     */
+    private final Map<String, Set<Runnable>> _watchers = new HashMap<>();
+
+    /**
+     * Holds the callbacks to make whenever anything is published.
+     */
+    private final Set<Runnable> _subscribers = new CopyOnWriteArraySet<>();
+
+    /**
+     * Holds the {@link ScheduledExecutorService} we run anything scheduled on.
+     */
+    private final ScheduledExecutorService _scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "hss-change-feed-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Holds the {@link ThreadPoolExecutor} we call watchers back on, which holds no threads while nobody's being woken,
+     * and never more than we were told to. Anything beyond that waits its turn.
+     */
+    private final ThreadPoolExecutor _executor;
+
+    /**
+     * Creates a new, empty feed holding up to {@link #DEFAULT_CAPACITY} changes.
+     */
+    public StreamChangeFeed()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new, empty feed calling watchers back on up to {@link #DEFAULT_WATCHER_THREADS} threads.
+     *
+     * @param capacity The number of changes to keep for subscribers that fall behind (or reconnect). Must be positive.
+     */
+    public StreamChangeFeed(final int capacity)
+    {
+        this(capacity, DEFAULT_WATCHER_THREADS);
+    }
+
+    /**
+     * Creates a new, empty feed.
+     *
+     * @param capacity The number of changes to keep for subscribers that fall behind (or reconnect). Must be positive.
+     * @param watcherThreads The most threads to call watchers back on at once. Must be positive.
+     */
+    public StreamChangeFeed(final int capacity, final int watcherThreads)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("A change feed needs room for at least one change.");
+        }
+
+        if (watcherThreads < 1)
+        {
+            throw new IllegalArgumentException("A change feed needs at least one thread to call watchers back on.");
+        }
+
+        _changes = new Change[capacity];
+        _executor = new ThreadPoolExecutor(watcherThreads, watcherThreads, WATCHER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                           new LinkedBlockingQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "hss-stream-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Otherwise we'd hang on to every thread we ever started, whether or not anybody's being woken.
+        _executor.allowCoreThreadTimeOut(true);
+    }
+
+    public int getCapacity() { return _changes.length; }
+    public int getWatcherThreads() { return _executor.getMaximumPoolSize(); }
+    public String getEpoch() { return _epoch; }
+
+    /**
+     * Gets the sequence number of the last change we published.
+     *
+     * @return The last sequence number handed out, or zero if we haven't published anything.
+     */
+    public synchronized long getLatestSequence()
+    {
+        return _sequence;
+    }
+
+    /**
+     * Publishes a transition of a single stream, and wakes anybody waiting on one (or watching the stream).
+     *
+     * @param metadata The {@link StreamMetadata} of the stream. Must not be null. We take a copy.
+     * @param status The {@link StreamStatus} the stream moved to, which is {@link StreamStatus#NOT_FOUND} for a delete.
+     *               Must not be null.
+     *
+     * @return The sequence number of the change.
+     */
+    public long publish(final StreamMetadata metadata, final StreamStatus status)
+    {
+        final StreamMetadata copy = new StreamMetadata();
+
+        copy.setId(metadata.getId());
+        copy.setStatus(status);
+        copy.setFileSize(metadata.getFileSize());
+        copy.setCrc32c(metadata.getCrc32c());
+        copy.setSha256(metadata.getSha256());
+        copy.setCreatedTime(metadata.getCreatedTime());
+        copy.setLastModified(System.currentTimeMillis());
+
+        final long sequence;
+        final Set<Runnable> watchers;
+
+        synchronized (this)
+        {
+            sequence = ++_sequence;
+
+            _changes[(int) (sequence % _changes.length)] = new Change(sequence, copy);
+            watchers = _watchers.remove(copy.getId());
+            notifyAll();
+        }
+
+        if (null != watchers)
+        {
+            watchers.forEach(this::dispatch);
+        }
+
+        _subscribers.forEach(Runnable::run);
+
+        return sequence;
+    }
+
+    /**
+     * Subscribes to the feed, calling back on the publishing thread every time anything is published, and once more when
+     * we're closed. The callback should hand off anything more than noting that there's something to read.
+     *
+     * @param callback The {@link Runnable} to call back. Must not be null.
+     *
+     * @return True if we're subscribed, false if we've been closed (in which case nothing will be called back).
+     */
+    public synchronized boolean subscribe(final Runnable callback)
+    {
+        if (_closed)
+        {
+            return false;
+        }
+
+        _subscribers.add(callback);
+        return true;
+    }
+
+    /**
+     * Unsubscribes from the feed.
+     *
+     * @param callback The {@link Runnable} that was subscribed. Must not be null.
+     */
+    public void unsubscribe(final Runnable callback)
+    {
+        _subscribers.remove(callback);
+    }
+
+    /**
+     * Gets the number of callbacks subscribed to the feed.
+     *
+     * @return The number of subscribers.
+     */
+    public int getSubscriberCount()
+    {
+        return _subscribers.size();
+    }
+
+    /**
+     * Runs something on a regular basis, on a thread shared by everything we schedule, until it's cancelled or we're
+     * closed. Like a subscriber callback, it should hand off anything that might take a while.
+     *
+     * @param task The {@link Runnable} to run. Must not be null.
+     * @param periodMillis How often to run it, in milliseconds. Must be positive.
+     *
+     * @return A {@link ScheduledFuture} to cancel it with, or null if we've been closed.
+     */
+    public ScheduledFuture<?> schedule(final Runnable task, final long periodMillis)
+    {
+        try
+        {
+            return _scheduler.scheduleAtFixedRate(task, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (final RejectedExecutionException ex)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Watches a single stream, calling back on one of our threads the next time it changes. Watching is once only: a
+     * caller that wants to hear about the change after that has to watch again.
+     *
+     * @param id The ID of the stream to watch. Must not be null.
+     * @param callback The {@link Runnable} to call back. Must not be null. Watching with the same one twice is the same
+     *                 as watching with it once.
+     *
+     * @return True if we're watching, false if we've been closed (in which case nothing will be called back).
+     */
+    public synchronized boolean watch(final String id, final Runnable callback)
+    {
+        if (_closed)
+        {
+            return false;
+        }
+
+        _watchers.computeIfAbsent(id, key -> new HashSet<>()).add(callback);
+        return true;
+    }
+
+    /**
+     * Stops watching a single stream.
+     *
+     * @param id The ID of the stream being watched. Must not be null.
+     * @param callback The {@link Runnable} that was to be called back. Must not be null.
+     *
+     * @return True if we were still watching, false if it's already been (or is about to be) called back.
+     */
+    public synchronized boolean unwatch(final String id, final Runnable callback)
+    {
+        final Set<Runnable> watchers = _watchers.get(id);
+
+        if (null == watchers || !watchers.remove(callback))
+        {
+            return false;
+        }
+
+        if (watchers.isEmpty())
+        {
+            _watchers.remove(id);
+        }
+
+        return true;
+    }
+
+    /**
+     * Runs something on the threads we call watchers back on, for a watcher that's given up waiting (IE: timed out) but
+     * still has work to do. Does nothing once we've been closed.
+     *
+     * @param task The {@link Runnable} to run. Must not be null.
+     */
+    public void dispatch(final Runnable task)
+    {
+        try
+        {
+            _executor.execute(task);
+        }
+        catch (final RejectedExecutionException ex)
+        {
+            LOGGER.debug("Dropping a stream watcher, as we've been closed.");
+        }
+    }
+
+    /**
+     * Gets the number of callbacks waiting on a change to a stream.
+     *
+     * @return The number of watchers we'd call back, across every stream.
+     */
+    public synchronized int getWatcherCount()
+    {
+        return _watchers.values().stream().mapToInt(Set::size).sum();
+    }
+
+    /**
+     * Reads the changes published after a given sequence number, waiting for one if there aren't any yet. If some of
+     * them are no longer in our buffer (or the sequence number is one we haven't got to), we start at the oldest change
+     * we have, and the caller will see a gap.
+     *
+     * @param afterSequence The sequence number of the last change the caller saw, or zero for everything we have.
+     * @param limit The most changes to return. Must be positive.
+     * @param timeoutMillis The longest to wait for a change, in milliseconds.
+     *
+     * @return Up to <code>limit</code> changes, in order. Empty if none were published in time, or we've been closed.
+     *
+     * @throws InterruptedException If we're interrupted while waiting.
+     */
+    public synchronized List<Change> read(final long afterSequence, final int limit, final long timeoutMillis) throws InterruptedException
+    {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        final long after = afterSequence > _sequence ? 0 : afterSequence;
+
+        while (!_closed && _sequence <= after)
+        {
+            final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+            if (remaining <= 0)
+            {
+                return Collections.emptyList();
+            }
+
+            wait(remaining);
+        }
+
+        if (_closed)
+        {
+            return Collections.emptyList();
+        }
+
+        final long first = Math.max(after + 1, _sequence - _changes.length + 1);
+        final long last = Math.min(_sequence, first + limit - 1);
+        final List<Change> changes = new ArrayList<>((int) (last - first + 1));
+
+        for (long sequence = first; sequence <= last; sequence++)
+        {
+            changes.add(_changes[(int) (sequence % _changes.length)]);
+        }
+
+        return changes;
+    }
+
+    /**
+     * Closes the feed, sending anybody waiting on it away empty-handed. Subscribers are called back one last time, so
+     * they can see we're closed. Anybody watching a stream is dropped, since there's nobody left to answer them.
+     */
+    public void close()
+    {
+        synchronized (this)
+        {
+            _closed = true;
+            _watchers.clear();
+            notifyAll();
+        }
+
+        _subscribers.forEach(Runnable::run);
+        _subscribers.clear();
+
+        _scheduler.shutdownNow();
+        _executor.shutdownNow();
+    }
+
+    /**
+     * Checks whether we've been closed.
+     *
+     * @return True if {@link #close()} has been called, else false.
+     */
+    public synchronized boolean isClosed()
+    {
+        return _closed;
+    }
+
+    /**
+     * Provides a single published transition.
+     */
+    public static class Change
+    {
+        /**
+         * Holds the sequence number of the change.
+         */
+        private final long _sequence;
+
+        /**
+         * Holds the {@link StreamMetadata} of the stream once it had changed.
+         */
+        private final StreamMetadata _metadata;
+
+        Change(final long sequence, final StreamMetadata metadata)
+        {
+            _sequence = sequence;
+            _metadata = metadata;
+        }
+
+        public long getSequence() { return _sequence; }
+        public StreamMetadata getMetadata() { return _metadata; }
+    }
+}
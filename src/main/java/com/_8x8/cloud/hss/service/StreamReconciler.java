@@ -0,0 +1,565 @@
+package com._8x8.cloud.hss.service;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamStatus;
+import com._8x8.cloud.hss.persistence.IStreamStateDao;
+import com._8x8.cloud.hss.service.StreamTransitionManager.Transition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Provides a way to bring our stream metadata back in line with what's actually in storage, IE: after a restart. The two
+ * can drift apart when we go down at the wrong moment, leaving us with:
+ *
+ * <ul>
+ *     <li>Streams in storage we have no metadata for. We recover these, using the newest version we can find.</li>
+ *     <li>Versions in storage nobody points at (IE: from a write that never finished). We delete these.</li>
+ *     <li>Streams stuck {@link StreamStatus#IN_PROGRESS}, or whose current version has gone missing. We mark these
+ *         {@link StreamStatus#FAILED}, same as a write that fails while we're up.</li>
+ * </ul>
+ *
+ * Storage is walked in parallel, with a fork/join task per directory. Every version of a stream lives in the same
+ * bucket, so each directory can be reconciled on its own: one query for the metadata of everything in it, and one
+ * batched insert for whatever we recover. Then we page through the metadata for anything storage couldn't tell us
+ * about.<p/>
+ *
+ * This all happens in the background (see {@link #init()}), so we can serve while it runs. Anything we repair is claimed
+ * through the {@link StreamTransitionManager} first, and anybody already writing or deleting a stream knows better than
+ * we do, so we leave those alone. Progress is exposed via getters, so it can be published over JMX.<p/>
+ *
+ * Please note that if we're bucketing, anything still in the top level of storage belongs to the legacy migrator (see
+ * {@link StreamService#migrateLegacyStorage()}), so we skip it.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamReconciler
+{
+    /**
+     * Holds the {@link Logger} for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamReconciler.class);
+
+    /**
+     * Holds the number of {@link StreamMetadata} we look at at a time, once we're done with storage.
+     */
+    static final int METADATA_PAGE_SIZE = 1000;
+
+    /**
+     * Holds the {@link StreamService} whose storage and metadata we're reconciling.
+     */
+    private StreamService _streamService;
+
+    /**
+     * Holds the number of threads to walk storage with. Defaults to the number of processors.
+     */
+    private int _parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Holds where we're at.
+     */
+    private volatile State _state = State.PENDING;
+
+    /**
+     * Holds whether or not we've been asked to stop, IE: because we're shutting down.
+     */
+    private volatile boolean _stopped;
+
+    /**
+     * Holds whether we've lost track of what we've done to the stream statistics, and need to reseed them when we're done.
+     */
+    private volatile boolean _reseedStatistics;
+
+    /**
+     * Holds the thread we're reconciling on, if we were started with {@link #init()}.
+     */
+    private Thread _thread;
+
+    /**
+     * Holds the number of directories we've scanned.
+     */
+    private final AtomicLong _directoriesScanned = new AtomicLong();
+
+    /**
+     * Holds the number of files we've scanned.
+     */
+    private final AtomicLong _filesScanned = new AtomicLong();
+
+    /**
+     * Holds the number of streams we've recovered metadata for.
+     */
+    private final AtomicLong _streamsRecovered = new AtomicLong();
+
+    /**
+     * Holds the number of streams we've marked as failed.
+     */
+    private final AtomicLong _streamsFailed = new AtomicLong();
+
+    /**
+     * Holds the number of orphaned versions we've deleted.
+     */
+    private final AtomicLong _orphansDeleted = new AtomicLong();
+
+    public StreamService getStreamService() { return _streamService; }
+    public void setStreamService(final StreamService streamService) { _streamService = streamService; }
+
+    public int getParallelism() { return _parallelism; }
+    public void setParallelism(final int parallelism) { _parallelism = parallelism; }
+
+    public String getState() { return _state.name(); }
+    public long getDirectoriesScanned() { return _directoriesScanned.get(); }
+    public long getFilesScanned() { return _filesScanned.get(); }
+    public long getStreamsRecovered() { return _streamsRecovered.get(); }
+    public long getStreamsFailed() { return _streamsFailed.get(); }
+    public long getOrphansDeleted() { return _orphansDeleted.get(); }
+
+    /**
+     * Kicks off reconciliation in the background, so we don't hold up startup.
+     */
+    public void init()
+    {
+        _thread = new Thread(this::reconcile, "hss-reconciler");
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    /**
+     * Stops any reconciliation in progress, and waits for whatever directories or streams it's working on to be done, so
+     * that we're not left using our metadata while it's being shut down. Whatever we didn't get to will be picked up on
+     * restart.
+     */
+    public void destroy() throws InterruptedException
+    {
+        _stopped = true;
+
+        if (null != _thread)
+        {
+            _thread.join();
+        }
+    }
+
+    /**
+     * Reconciles storage with our metadata. See the class documentation for what that entails.
+     */
+    public void reconcile()
+    {
+        final long start = System.currentTimeMillis();
+        final ForkJoinPool pool = new ForkJoinPool(getParallelism());
+
+        try
+        {
+            _state = State.SCANNING_STORAGE;
+            pool.invoke(new DirectoryTask(getStreamService().getStreamStorageDirectory().toPath(), 0));
+
+            if (!_stopped)
+            {
+                _state = State.SCANNING_METADATA;
+                String afterId = null;
+                List<StreamMetadata> page;
+
+                do
+                {
+                    page = getStreamService().getStreamStateDao().findStreamMetadata(null, afterId, METADATA_PAGE_SIZE);
+                    final List<StreamMetadata> metadata = page;
+
+                    // Parallel streams run in whichever pool they're started from, so make sure that's ours.
+                    pool.submit(() -> metadata.parallelStream().forEach(this::reconcileMetadata)).get();
+
+                    afterId = page.isEmpty() ? null : page.get(page.size() - 1).getId();
+                }
+                while (METADATA_PAGE_SIZE == page.size() && !_stopped);
+            }
+
+            if (_stopped)
+            {
+                _state = State.STOPPED;
+                LOGGER.info("Stopped reconciling after {} files.", getFilesScanned());
+                return;
+            }
+
+            if (_reseedStatistics)
+            {
+                getStreamService().getStatisticsTracker().seed(getStreamService().getStreamStateDao());
+            }
+
+            _state = State.COMPLETE;
+            LOGGER.info("Reconciled {} files in {} directories in {}ms: recovered {}, failed {}, deleted {} orphaned versions.",
+                        getFilesScanned(), getDirectoriesScanned(), System.currentTimeMillis() - start,
+                        getStreamsRecovered(), getStreamsFailed(), getOrphansDeleted());
+        }
+        catch (final Exception ex)
+        {
+            // Not the end of the world: we can still serve, and we'll try again on restart.
+            _state = State.FAILED;
+            LOGGER.error(String.format("Failed to reconcile storage after %d files.", getFilesScanned()), ex);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Reconciles the contents of a single storage directory with our metadata.
+     *
+     * @param filesById Every file in the directory, keyed by the ID of the stream it belongs to. Must not be null.
+     */
+    void reconcileDirectory(final Map<String, List<File>> filesById) throws Exception
+    {
+        if (filesById.isEmpty())
+        {
+            return;
+        }
+
+        final IStreamStateDao streamStateDao = getStreamService().getStreamStateDao();
+        final StreamTransitionManager transitionManager = getStreamService().getTransitionManager();
+
+        final Map<String, StreamMetadata> metadataById = streamStateDao.findStreamMetadataByIds(filesById.keySet()).stream()
+                                                                       .collect(toMap(StreamMetadata::getId, Function.identity()));
+
+        final List<String> claimed = new ArrayList<>();
+        final Map<String, File> currentById = new HashMap<>();
+        final List<StreamMetadata> recovered = new ArrayList<>();
+
+        try
+        {
+            for (final Map.Entry<String, List<File>> entry : filesById.entrySet())
+            {
+                final String id = entry.getKey();
+
+                if (!transitionManager.begin(id, Transition.RECONCILE))
+                {
+                    continue;
+                }
+
+                claimed.add(id);
+
+                final StreamMetadata metadata = metadataById.get(id);
+                final File current = null == metadata
+                        // We've lost track of this one, so the best we can do is the newest version.
+                        ? entry.getValue().stream().max(Comparator.comparingLong(File::lastModified)).get()
+                        : getStreamService().resolveFileForStream(metadata);
+
+                // Nearly every stream is just its current version, and there's nothing to do for those.
+                if (null == metadata || entry.getValue().stream().anyMatch(file -> !file.equals(current)))
+                {
+                    currentById.put(id, current);
+                }
+            }
+
+            if (currentById.isEmpty())
+            {
+                return;
+            }
+
+            // Somebody may have finished a write between our read and our claim, in which case what looks like an
+            // orphan may well be the current version. So check again now that nobody else can change it - in one go, and
+            // around any cache, since that's exactly the read that could be stale.
+            final Map<String, StreamMetadata> latestById = streamStateDao.findStreamMetadataByIds(currentById.keySet()).stream()
+                                                                         .collect(toMap(StreamMetadata::getId, Function.identity()));
+
+            for (final Map.Entry<String, File> entry : currentById.entrySet())
+            {
+                final String id = entry.getKey();
+                final StreamMetadata metadata = metadataById.get(id);
+                final File current = entry.getValue();
+
+                if (!isUnchanged(metadata, latestById.get(id)))
+                {
+                    continue;
+                }
+
+                if (null == metadata)
+                {
+                    recovered.add(createRecoveredMetadata(id, current));
+                }
+
+                for (final File file : filesById.get(id))
+                {
+                    if (!file.equals(current))
+                    {
+                        getStreamService().getVersionTracker().retire(file);
+                        _orphansDeleted.incrementAndGet();
+                    }
+                }
+            }
+
+            if (!recovered.isEmpty())
+            {
+                final int inserted = streamStateDao.insertStreamMetadata(recovered);
+                _streamsRecovered.addAndGet(inserted);
+
+                // If somebody else beat us to some of these we can't tell which, so we'll reseed once we're done.
+                if (inserted == recovered.size())
+                {
+                    recovered.forEach(streamMetadata -> getStreamService().getStatisticsTracker().record(
+                            StreamStatus.NOT_FOUND, 0, StreamStatus.SUCCESSFUL, streamMetadata.getFileSize()));
+                }
+                else
+                {
+                    _reseedStatistics = true;
+                }
+            }
+        }
+        finally
+        {
+            claimed.forEach(id -> transitionManager.end(id, Transition.RECONCILE));
+        }
+    }
+
+    /**
+     * Reconciles a single stream's metadata with storage, marking it as failed if there's no complete version of it.
+     *
+     * @param metadata The {@link StreamMetadata} to reconcile. Must not be null.
+     */
+    void reconcileMetadata(final StreamMetadata metadata)
+    {
+        if (_stopped)
+        {
+            return;
+        }
+
+        final boolean stuck = StreamStatus.IN_PROGRESS.equals(metadata.getStatus());
+        final boolean missing = StreamStatus.SUCCESSFUL.equals(metadata.getStatus()) && !getStreamService().resolveFileForStream(metadata).exists();
+
+        if (!stuck && !missing)
+        {
+            return;
+        }
+
+        final String id = metadata.getId();
+        final StreamTransitionManager transitionManager = getStreamService().getTransitionManager();
+
+        // If somebody is writing this right now, it's not stuck.
+        if (!transitionManager.begin(id, Transition.RECONCILE))
+        {
+            return;
+        }
+
+        try
+        {
+            // And if somebody has touched it since we read it, it's not ours to fail.
+            if (getStreamService().markStreamFailure(metadata))
+            {
+                _streamsFailed.incrementAndGet();
+                getStreamService().invalidateCachedStream(id);
+
+                // Storage skips anything in progress, so whatever was being written when we went down is still there.
+                retireOrphans(metadata);
+            }
+        }
+        catch (final Exception ex)
+        {
+            LOGGER.warn(String.format("Failed to reconcile metadata for %s.", id), ex);
+        }
+        finally
+        {
+            transitionManager.end(id, Transition.RECONCILE);
+        }
+    }
+
+    /**
+     * Determines whether or not a stream's {@link StreamMetadata} is still what we read when we scanned its directory,
+     * and is settled enough for us to act on. Anything {@link StreamStatus#IN_PROGRESS} is left to
+     * {@link #reconcileMetadata(StreamMetadata)}.
+     *
+     * @param scanned The {@link StreamMetadata} we read when we scanned the directory. May be null if there was none.
+     * @param latest The {@link StreamMetadata} as it stands now. May be null if there is none.
+     *
+     * @return True if the stream hasn't changed since we scanned it, and isn't in progress.
+     */
+    boolean isUnchanged(final StreamMetadata scanned, final StreamMetadata latest)
+    {
+        if (null == latest || StreamStatus.NOT_FOUND.equals(latest.getStatus()))
+        {
+            return null == scanned;
+        }
+
+        return null != scanned && !StreamStatus.IN_PROGRESS.equals(latest.getStatus())
+               && Objects.equals(scanned.getContentVersion(), latest.getContentVersion());
+    }
+
+    /**
+     * Retires every version of a stream other than its current one. The caller must have claimed the stream.
+     *
+     * @param metadata The current {@link StreamMetadata} for the stream. Must not be null.
+     */
+    void retireOrphans(final StreamMetadata metadata)
+    {
+        final String id = metadata.getId();
+        final File current = getStreamService().resolveFileForStream(metadata);
+        final File[] versions = current.getParentFile().listFiles((directory, name) ->
+                name.equals(id) || name.startsWith(id + StreamService.VERSION_SEPARATOR));
+
+        if (null == versions)
+        {
+            return;
+        }
+
+        for (final File file : versions)
+        {
+            if (!file.equals(current))
+            {
+                getStreamService().getVersionTracker().retire(file);
+                _orphansDeleted.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Provides a convenience method to create {@link StreamMetadata} for a stream we've found in storage, but have no
+     * record of.
+     *
+     * @param id The ID of the stream. Must not be blank, must be valid.
+     * @param file The {@link File} holding the version of the stream we're recovering. Must not be null, must exist.
+     *
+     * @return {@link StreamMetadata} describing the stream as {@link StreamStatus#SUCCESSFUL}. Will not be null.
+     */
+    StreamMetadata createRecoveredMetadata(final String id, final File file)
+    {
+        final StreamMetadata metadata = getStreamService().getStreamStateDao().createStreamMetadata(id, StreamStatus.SUCCESSFUL);
+        final String name = file.getName();
+
+        // Streams from before we versioned them live in a file named for the ID alone.
+        metadata.setContentVersion(name.length() > id.length() ? name.substring(id.length() + 1) : null);
+        metadata.setFileSize(file.length());
+
+        return metadata;
+    }
+
+    /**
+     * Provides a fork/join task that reconciles a single storage directory, forking a task for each directory beneath it.
+     */
+    class DirectoryTask extends RecursiveAction
+    {
+        /**
+         * Holds our serialization version. We never serialize these, but {@link RecursiveAction} is serializable.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Holds the directory to reconcile.
+         */
+        private final Path _directory;
+
+        /**
+         * Holds how far beneath the root of our storage we are, IE: 0 for the root itself.
+         */
+        private final int _depth;
+
+        /**
+         * Creates a new task.
+         *
+         * @param directory The directory to reconcile. Must not be null, must exist.
+         * @param depth How far beneath the root of our storage we are.
+         */
+        DirectoryTask(final Path directory, final int depth)
+        {
+            _directory = directory;
+            _depth = depth;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (_stopped)
+            {
+                return;
+            }
+
+            final int levels = getStreamService().getStorageFanOutLevels();
+            final List<DirectoryTask> subtasks = new ArrayList<>();
+            final Map<String, List<File>> filesById = new HashMap<>();
+
+            try
+            {
+                try (final DirectoryStream<Path> entries = Files.newDirectoryStream(_directory))
+                {
+                    for (final Path entry : entries)
+                    {
+                        if (Files.isDirectory(entry))
+                        {
+                            if (_depth < levels)
+                            {
+                                final DirectoryTask subtask = new DirectoryTask(entry, _depth + 1);
+                                subtask.fork();
+                                subtasks.add(subtask);
+                            }
+                        }
+                        else if (_depth == levels)
+                        {
+                            final String name = entry.getFileName().toString();
+                            final int separator = name.indexOf(StreamService.VERSION_SEPARATOR);
+
+                            filesById.computeIfAbsent(separator < 0 ? name : name.substring(0, separator), id -> new ArrayList<>()).add(entry.toFile());
+                            _filesScanned.incrementAndGet();
+                        }
+                    }
+                }
+
+                reconcileDirectory(filesById);
+                _directoriesScanned.incrementAndGet();
+            }
+            catch (final Exception ex)
+            {
+                // One bad directory shouldn't stop us reconciling the rest.
+                LOGGER.warn(String.format("Failed to reconcile %s.", _directory), ex);
+            }
+
+            subtasks.forEach(DirectoryTask::join);
+        }
+    }
+
+    /**
+     * Provides an enumeration of where a reconciliation is at.
+     */
+    public enum State
+    {
+        /**
+         * We haven't started yet.
+         */
+        PENDING,
+
+        /**
+         * We're walking storage. Streams we've lost track of may not be readable yet.
+         */
+        SCANNING_STORAGE,
+
+        /**
+         * We're checking metadata against storage.
+         */
+        SCANNING_METADATA,
+
+        /**
+         * We're done.
+         */
+        COMPLETE,
+
+        /**
+         * We were stopped part way through. Whatever we didn't get to will be picked up on restart.
+         */
+        STOPPED,
+
+        /**
+         * We gave up part way through. Whatever we didn't get to will be picked up on restart.
+         */
+        FAILED
+    }
+}
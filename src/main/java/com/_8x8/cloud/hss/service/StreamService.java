@@ -2,36 +2,131 @@ package com._8x8.cloud.hss.service;
 
 import com._8x8.cloud.hss.filter.FilterManager;
 import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
+import com._8x8.cloud.hss.model.StreamStatistics;
 import com._8x8.cloud.hss.model.StreamStatus;
 import com._8x8.cloud.hss.persistence.IStreamStateDao;
+import com._8x8.cloud.hss.service.StreamTransitionManager.Transition;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides a concrete implementation of {@link IStreamService}.<p/>
  *
- * Please note that this is a naive implementation, and does not do a lot of things you would in the real world, most
- * crucially bucketing. In a system where you expect to have a lot of files you wouldn't want to stick them all in the
- * same directory, because this will wreck most filesystems. You'd also probably want to shard the data, though that can
- * get a little rough since files may not be regularly sized. Lastly, you'd expect some sort of replication mechanism
- * (IE: make N copies to hosts within the ring).
+ * Please note that this is a naive implementation, and does not do a lot of things you would in the real world. In a
+ * system where you expect to have a lot of files you wouldn't want to stick them all in the same directory, because this
+ * will wreck most filesystems. To that end, we can bucket streams into one or more levels of hash-prefixed directories
+ * (see {@link #setStorageFanOutLevels(int)}), and migrate an existing flat directory into that layout in the background.
+ * You'd also probably want to shard the data, though that can get a little rough since files may not be regularly sized.
+ * Lastly, you'd expect some sort of replication mechanism (IE: make N copies to hosts within the ring).<p/>
+ *
+ * Each write goes to a brand new version file, and the stream's metadata is only pointed at it once the write is
+ * complete. Readers always see a complete version, and anybody reading the previous version gets to finish: we reference
+ * count versions (see {@link StreamVersionTracker}) and only remove a replaced one once its last reader is done.
  *
  * @author kog@epiphanic.org
  * @since 05/28/2015
  */
 public class StreamService implements IStreamService
 {
+    /**
+     * Holds the deepest fan out we'll allow. An MD5 only has 16 bytes, and anything past three levels is silly anyway.
+     */
+    static final int MAX_FAN_OUT_LEVELS = 4;
+
+    /**
+     * Holds the number of times we'll go back to the metadata when the version of a stream we found is retired out from
+     * under us. Each retry means a write completed in the meantime, so running out means something is very wrong.
+     */
+    static final int MAX_VERSION_ATTEMPTS = 8;
+
+    /**
+     * Holds the character separating a stream ID from a version in the name of a version file, IE: <code>foo@1234</code>.
+     * This can't appear in a valid stream ID, so version files can't collide with streams.
+     */
+    static final char VERSION_SEPARATOR = '@';
+
+    /**
+     * Holds the {@link Logger} for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamService.class);
+
     /**
      * Holds a {@link File} pointing to where we're going to store our streams. Defaults to <code>/tmp/foo</code>.
      */
     private File _streamStorageDirectory = new File("/tmp/foo");
 
+    /**
+     * Holds the number of levels of hash-prefixed directories to bucket our streams into. Each level fans out 256 ways,
+     * so two levels gives us 65,536 buckets. Defaults to zero, which is the old flat layout.
+     */
+    private int _storageFanOutLevels = 0;
+
+    /**
+     * Holds how long a stream can sit {@link StreamStatus#IN_PROGRESS} without a transition, in seconds, before we
+     * consider its writer gone (IE: a node that went down mid-write). Defaults to 600.
+     */
+    private long _staleInProgressSeconds = 600;
+
+    /**
+     * Holds the optional {@link StreamCache} we use to keep small, popular streams in memory. If null, we always read
+     * from disk.
+     */
+    private StreamCache _streamCache;
+
+    /**
+     * Holds the optional {@link FilteredStreamCache} we use to keep materialized filtered variants of streams on disk.
+     * If null, we always run the filter chain.
+     */
+    private FilteredStreamCache _filteredStreamCache;
+
+    /**
+     * Holds the {@link StreamVersionTracker} we use to keep replaced versions of streams around until their last reader
+     * is done with them.
+     */
+    private StreamVersionTracker _versionTracker = new StreamVersionTracker();
+
+    /**
+     * Holds the {@link StreamTransitionManager} we use to make sure only one writer (or deleter) works on a stream at a
+     * time.
+     */
+    private StreamTransitionManager _transitionManager = new StreamTransitionManager();
+
+    /**
+     * Holds the {@link StreamStatisticsTracker} we keep our aggregate counts in, updated on every transition.
+     */
+    private StreamStatisticsTracker _statisticsTracker = new StreamStatisticsTracker();
+
+    /**
+     * Holds the {@link StreamChangeFeed} we publish every transition to, for anybody waiting on one.
+     */
+    private StreamChangeFeed _changeFeed = new StreamChangeFeed();
+
     /**
      * Holds the {@link FilterManager} we use for applying filters to streams.
      */
@@ -63,6 +158,172 @@ public class StreamService implements IStreamService
         _streamStorageDirectory = new File(streamStorageDirectory);
     }
 
+    /**
+     * Gets the number of levels of hash-prefixed directories we bucket our streams into.
+     *
+     * @return The number of levels of directories between our storage directory and a stream. Zero means flat.
+     */
+    public int getStorageFanOutLevels()
+    {
+        return _storageFanOutLevels;
+    }
+
+    /**
+     * Sets the number of levels of hash-prefixed directories we bucket our streams into. Each level is named for the
+     * next two hex characters of the MD5 of the stream ID, IE: with two levels <code>foo</code> lives at
+     * <code>ac/bd/foo</code>.
+     *
+     * @param storageFanOutLevels The number of levels to use. Must be between zero (flat) and {@link #MAX_FAN_OUT_LEVELS}.
+     */
+    public void setStorageFanOutLevels(final int storageFanOutLevels)
+    {
+        if (storageFanOutLevels < 0 || storageFanOutLevels > MAX_FAN_OUT_LEVELS)
+        {
+            throw new IllegalArgumentException(String.format("Fan out levels must be between 0 and %d, got %d.", MAX_FAN_OUT_LEVELS, storageFanOutLevels));
+        }
+
+        _storageFanOutLevels = storageFanOutLevels;
+    }
+
+    /**
+     * Gets how long a stream can sit {@link StreamStatus#IN_PROGRESS} before we consider its writer gone.
+     *
+     * @return The number of seconds since its last transition after which an in progress stream may be taken over.
+     */
+    public long getStaleInProgressSeconds()
+    {
+        return _staleInProgressSeconds;
+    }
+
+    /**
+     * Sets how long a stream can sit {@link StreamStatus#IN_PROGRESS} before we consider its writer gone. Please note that
+     * this only matters for writers on other nodes, since we know exactly which streams we're writing ourselves. Set it
+     * comfortably above the time the longest upload takes.
+     *
+     * @param staleInProgressSeconds The number of seconds to use. Must not be negative.
+     */
+    public void setStaleInProgressSeconds(final long staleInProgressSeconds)
+    {
+        _staleInProgressSeconds = staleInProgressSeconds;
+    }
+
+    /**
+     * Gets the {@link StreamCache} we use to keep small, popular streams in memory.
+     *
+     * @return The {@link StreamCache} to use, or <code>null</code> if caching is disabled.
+     */
+    public StreamCache getStreamCache()
+    {
+        return _streamCache;
+    }
+
+    /**
+     * Sets the {@link StreamCache} we use to keep small, popular streams in memory.
+     *
+     * @param streamCache A fully initialized {@link StreamCache} to use, or <code>null</code> to disable caching.
+     */
+    public void setStreamCache(final StreamCache streamCache)
+    {
+        _streamCache = streamCache;
+    }
+
+    /**
+     * Gets the {@link FilteredStreamCache} we use to keep materialized filtered variants of streams on disk.
+     *
+     * @return The {@link FilteredStreamCache} to use, or <code>null</code> if caching is disabled.
+     */
+    public FilteredStreamCache getFilteredStreamCache()
+    {
+        return _filteredStreamCache;
+    }
+
+    /**
+     * Sets the {@link FilteredStreamCache} we use to keep materialized filtered variants of streams on disk.
+     *
+     * @param filteredStreamCache A fully initialized {@link FilteredStreamCache} to use, or <code>null</code> to disable
+     *                            caching.
+     */
+    public void setFilteredStreamCache(final FilteredStreamCache filteredStreamCache)
+    {
+        _filteredStreamCache = filteredStreamCache;
+    }
+
+    /**
+     * Gets the {@link StreamVersionTracker} we use to reference count versions of streams.
+     *
+     * @return A non-null {@link StreamVersionTracker}.
+     */
+    public StreamVersionTracker getVersionTracker()
+    {
+        return _versionTracker;
+    }
+
+    /**
+     * Sets the {@link StreamVersionTracker} we use to reference count versions of streams.
+     *
+     * @param versionTracker A non-null {@link StreamVersionTracker} to use.
+     */
+    public void setVersionTracker(final StreamVersionTracker versionTracker)
+    {
+        _versionTracker = versionTracker;
+    }
+
+    /**
+     * Gets the {@link StreamTransitionManager} we use to serialize writes and deletes per stream.
+     *
+     * @return A non-null {@link StreamTransitionManager}.
+     */
+    public StreamTransitionManager getTransitionManager()
+    {
+        return _transitionManager;
+    }
+
+    /**
+     * Sets the {@link StreamTransitionManager} we use to serialize writes and deletes per stream.
+     *
+     * @param transitionManager A non-null {@link StreamTransitionManager} to use.
+     */
+    public void setTransitionManager(final StreamTransitionManager transitionManager)
+    {
+        _transitionManager = transitionManager;
+    }
+
+    /**
+     * Gets the {@link StreamStatisticsTracker} we keep our aggregate counts in.
+     *
+     * @return A non-null {@link StreamStatisticsTracker}.
+     */
+    public StreamStatisticsTracker getStatisticsTracker()
+    {
+        return _statisticsTracker;
+    }
+
+    /**
+     * Sets the {@link StreamStatisticsTracker} we keep our aggregate counts in.
+     *
+     * @param statisticsTracker A non-null {@link StreamStatisticsTracker} to use.
+     */
+    public void setStatisticsTracker(final StreamStatisticsTracker statisticsTracker)
+    {
+        _statisticsTracker = statisticsTracker;
+    }
+
+    @Override
+    public StreamChangeFeed getChangeFeed()
+    {
+        return _changeFeed;
+    }
+
+    /**
+     * Sets the {@link StreamChangeFeed} we publish every transition to.
+     *
+     * @param changeFeed A non-null {@link StreamChangeFeed} to use.
+     */
+    public void setChangeFeed(final StreamChangeFeed changeFeed)
+    {
+        _changeFeed = changeFeed;
+    }
+
     /**
      * Gets the {@link FilterManager} to use for applying filters to streams.
      *
@@ -114,42 +375,130 @@ public class StreamService implements IStreamService
         {
             FileUtils.forceMkdir(getStreamStorageDirectory());
         }
+
+        // Count what we've got before we take any traffic, after which every transition keeps the counts up to date.
+        getStatisticsTracker().seed(getStreamStateDao());
+
+        // If we're bucketing, anything still sitting in the top level is from the old flat layout. We can still serve it
+        // (see resolveFileForId), so move it over in the background rather than holding up startup.
+        if (getStorageFanOutLevels() > 0)
+        {
+            final Thread migrator = new Thread(this::migrateLegacyStorage, "hss-storage-migrator");
+            migrator.setDaemon(true);
+            migrator.start();
+        }
     }
 
-    // TODO [kog@epiphanic.org - 6/14/2015]: So, if someone tries to do a write while we're in the middle of a get, it'd probably break (depending on things like OS).
     // TODO [kog@epiphanic.org - 6/14/2015]: It might be worth adding cluster-wide read/write locking: reads are idempotent, writes are definitely not.
-    // TODO [kog@epiphanic.org - 6/14/2015]: Likewise, you might want some sort of caching mechanism or key/value store, which would need invalidation.
-
-    // TODO [kog@epiphanic.org - 6/14/2015]: Alternatively there could be a stronger versioning system: each stream has a UUID, and the stream ID points to a
-    // TODO [kog@epiphanic.org - 6/14/2015]: UUID that gets swapped when the write is complete. Again, this is way outside the scope of the project.
 
     @Override
     public InputStream getStreamById(final String id, final List<String> filters) throws Exception
     {
-        // We can only grab this file if it was successfully uploaded...
-        final StreamStatus streamStatus = getStatusForStreamById(id);
+        return getStream(getStreamStateDao().findStreamMetadataById(id), filters);
+    }
+
+    @Override
+    public InputStream getStream(final StreamMetadata metadata, final List<String> filters) throws Exception
+    {
+        final String id = metadata.getId();
+
+        // We can only grab this file if there's a complete version of it...
+        final StreamVersion<File> version = acquireFileForStream(metadata);
 
-        if (StreamStatus.SUCCESSFUL.equals(streamStatus))
+        if (null == version)
         {
-            InputStream stream = null;
+            return null;
+        }
 
-            try
+        final File file = version.getContents();
+
+        try
+        {
+            final FilteredStreamCache filteredStreamCache = getFilteredStreamCache();
+            final InputStream stream;
+
+            // If we've already run this version of the stream through these filters, just hand back the result.
+            if (null != filteredStreamCache && !filters.isEmpty())
             {
-                stream = FileUtils.openInputStream(createFileForId(id));
-                return getFilterManager().prepareInputFilters(stream, filters);
+                stream = filteredStreamCache.getStream(id, getVersionForStream(file), filters, () -> openFilteredStream(id, file, filters));
             }
-            catch(final Exception ex)
+            else
             {
-                // If we fail to apply filters, we're going to need to clean up after ourselves. If we put this in a try-with-resources
-                // we will instead close the stream before we return up the call stack.
-                IOUtils.closeQuietly(stream);
-
-                // We're not doing much with exceptions though, so throw this back up the stack.
-                throw ex;
+                stream = openFilteredStream(id, file, filters);
             }
+
+            // Hold on to this version until the caller is done with it, even if somebody writes a new one in the meantime.
+            return new ReleasingInputStream(stream, () -> getVersionTracker().release(file));
+        }
+        catch (final Exception ex)
+        {
+            getVersionTracker().release(file);
+            throw ex;
+        }
+    }
+
+    @Override
+    public FileChannel getChannelForStreamById(final String id) throws Exception
+    {
+        final StreamVersion<FileChannel> version = getChannelForStream(getStreamStateDao().findStreamMetadataById(id));
+        return null == version ? null : version.getContents();
+    }
+
+    @Override
+    public StreamVersion<FileChannel> getChannelForStream(final StreamMetadata metadata) throws Exception
+    {
+        // Same rules as our filtered variant: only hand out complete versions of streams.
+        final StreamVersion<File> version = acquireFileForStream(metadata);
+
+        if (null == version)
+        {
+            return null;
+        }
+
+        final File file = version.getContents();
+
+        try
+        {
+            return new StreamVersion<>(version.getMetadata(),
+                                       new ReleasingFileChannel(FileChannel.open(file.toPath(), StandardOpenOption.READ), () -> getVersionTracker().release(file)));
+        }
+        catch (final Exception ex)
+        {
+            getVersionTracker().release(file);
+            throw ex;
         }
+    }
+
+    @Override
+    public StreamVersion<ByteBuffer> getCachedContentsForStream(final StreamMetadata metadata) throws Exception
+    {
+        final StreamCache streamCache = getStreamCache();
+
+        // No sense in taking out a version of something we're not going to cache anyway.
+        if (null == streamCache || metadata.getFileSize() > streamCache.getMaximumEntryBytes())
+        {
+            return null;
+        }
+
+        final StreamVersion<File> version = acquireFileForStream(metadata);
+
+        if (null == version)
+        {
+            return null;
+        }
+
+        final File file = version.getContents();
 
-        return null;
+        // Once the bytes are in memory, we don't need the file to stay put.
+        try
+        {
+            final ByteBuffer contents = streamCache.getContents(metadata.getId(), file);
+            return null == contents ? null : new StreamVersion<>(version.getMetadata(), contents);
+        }
+        finally
+        {
+            getVersionTracker().release(file);
+        }
     }
 
     @Override
@@ -160,57 +509,158 @@ public class StreamService implements IStreamService
         return getStreamStateDao().findStreamMetadataById(id).getStatus();
     }
 
-    // TODO [kog@epiphanic.org - 6/14/2015]: We also have an issue where multiple nodes could try and write here. Again,
-    // TODO [kog@epiphanic.org - 6/14/2015]: pessimistic locking would be a good thing. Or versioning.
+    @Override
+    public boolean isAbandoned(final StreamMetadata metadata)
+    {
+        if (!StreamStatus.IN_PROGRESS.equals(metadata.getStatus()))
+        {
+            return false;
+        }
+
+        // If it's us, we know for sure. Otherwise the best we can do is notice that nothing's happened in a while.
+        if (null != getTransitionManager().getTransition(metadata.getId()))
+        {
+            return false;
+        }
+
+        return System.currentTimeMillis() - metadata.getLastModified() >= TimeUnit.SECONDS.toMillis(getStaleInProgressSeconds());
+    }
+
+    @Override
+    public boolean saveStream(final String id, final InputStream stream, final List<String> filters) throws Exception
+    {
+        return saveStream(getStreamStateDao().findStreamMetadataById(id), stream, filters);
+    }
 
     @Override
-    public void saveStream(final String id, final InputStream stream, final List<String> filters) throws Exception
+    public boolean saveStream(final StreamMetadata metadata, final InputStream stream, final List<String> filters) throws Exception
     {
-        final StreamMetadata metadata = getStreamStateDao().findStreamMetadataById(id);
+        final String id = metadata.getId();
 
-        // If we're not currently doing something to this stream...
-        if (!StreamStatus.IN_PROGRESS.equals(metadata.getStatus()))
+        // Only one writer (or deleter) per stream at a time on this node. This is cheap, and keeps us from bothering
+        // the database with a transition we already know we'd lose.
+        if (!getTransitionManager().begin(id, Transition.WRITE))
         {
-            // Mark this file in progress. Again, token effort here...
-            markStreamInProgress(metadata);
+            return false;
+        }
+
+        try
+        {
+            // Hang on to whatever we're replacing, if anything. Readers can keep using it until we're done.
+            final String previousVersion = metadata.getContentVersion();
+            final String previousCrc32c = metadata.getCrc32c();
+            final String previousSha256 = metadata.getSha256();
+            final File previousFile = StreamStatus.NOT_FOUND.equals(metadata.getStatus()) ? null : resolveFileForStream(metadata);
+
+            // Mark this file in progress. This is conditional on nobody having touched the stream since it was read, which
+            // is what keeps writers on other nodes out (as well as anybody who got in since our caller looked).
+            if (!markStreamInProgress(metadata))
+            {
+                return false;
+            }
+
+            // Every write goes to a brand new version, so nobody can ever see one half written.
+            final String version = UUID.randomUUID().toString();
+            final File outputFile = createFileForVersion(id, version);
 
             try
             {
-                final File outputFile = createFileForId(id);
+                // We digest what we store (IE: after filters), as we store it, since that's what we'll be serving.
+                final DigestingOutputStream digestingOutputStream;
 
-                try (final OutputStream outputStream = FileUtils.openOutputStream(outputFile);
+                try (final OutputStream outputStream = digestingOutputStream = new DigestingOutputStream(FileUtils.openOutputStream(outputFile));
                      final OutputStream filteredOutputStream = getFilterManager().prepareOutputFilters(outputStream, filters))
                 {
-                    // Finish the job, mark it as a success. While we're at it, get the latest size...
                     IOUtils.copyLarge(stream, filteredOutputStream);
-                    markStreamSuccessful(metadata, outputFile);
+                }
+
+                // Finish the job, mark it as a success. This is the swap: once the metadata points at our version, that's
+                // what new readers get. Please note that we do this after closing, so our filters have flushed everything.
+                metadata.setContentVersion(version);
+                metadata.setCrc32c(digestingOutputStream.getCrc32c());
+                metadata.setSha256(digestingOutputStream.getSha256());
+
+                if (!markStreamSuccessful(metadata, outputFile))
+                {
+                    // Somebody took the stream out from under us (IE: another node deleted it). Our version never became
+                    // visible, and whatever we were replacing isn't ours to retire anymore.
+                    FileUtils.deleteQuietly(outputFile);
+                    return false;
                 }
             }
             catch (final Exception ex)
             {
-                // Unless, of course, we fail.
+                // Unless, of course, we fail. Nobody could have found our version, so it can just go. Whatever we were
+                // replacing is still intact, so leave the metadata pointing at it.
+                FileUtils.deleteQuietly(outputFile);
+
+                metadata.setContentVersion(previousVersion);
+                metadata.setCrc32c(previousCrc32c);
+                metadata.setSha256(previousSha256);
                 markStreamFailure(metadata);
 
                 // And then re-throw...
                 throw ex;
             }
+            finally
+            {
+                // Whatever happened, the current version has changed. Since cache keys include the version this is mostly
+                // about freeing up space early.
+                invalidateCachedStream(id);
+            }
+
+            // Nobody new can find the previous version now, so it can go as soon as its last reader is done with it.
+            if (null != previousFile)
+            {
+                getVersionTracker().retire(previousFile);
+            }
+
+            // If there was a copy of this in the old flat layout that hadn't been migrated yet, it's stale now.
+            deleteLegacyFileForId(id);
+
+            return true;
+        }
+        finally
+        {
+            getTransitionManager().end(id, Transition.WRITE);
         }
     }
 
     @Override
     public void deleteStream(final String id) throws Exception
     {
-        // We can delete anything that exists, and is not currently in use.
-        final StreamStatus streamStatus = getStatusForStreamById(id);
+        // If somebody is writing (or deleting) this stream, leave them to it.
+        if (!getTransitionManager().begin(id, Transition.DELETE))
+        {
+            return;
+        }
 
-        if (StreamStatus.SUCCESSFUL.equals(streamStatus) || StreamStatus.FAILED.equals(streamStatus))
+        try
         {
-            // Delete the status first. With this gone, even if our force delete fails, people can still do whatever operation.
-            getStreamStateDao().deleteStreamMetadataById(id);
+            // We can delete anything that exists. Nobody else is working on it, so if the metadata says it's in progress
+            // that's left over from a write that never finished (IE: we went down in the middle of it).
+            final StreamMetadata metadata = getStreamStateDao().findStreamMetadataById(id);
+
+            if (!StreamStatus.NOT_FOUND.equals(metadata.getStatus()))
+            {
+                // Delete the status first. With this gone, even if our force delete fails, people can still do whatever operation.
+                getStreamStateDao().deleteStreamMetadataById(id);
+                getStatisticsTracker().record(metadata.getStatus(), metadata.getFileSize(), StreamStatus.NOT_FOUND, 0);
+                getChangeFeed().publish(metadata, StreamStatus.NOT_FOUND);
 
-            // Wipe the actual file. Even if this fails, the file is more or less useless. We'd probably have a background job to
-            // purge things in the FS not in the persistence store.
-            FileUtils.deleteQuietly(createFileForId(id));
+                // Wipe the actual file. Even if this fails, the file is more or less useless. We'd probably have a background job to
+                // purge things in the FS not in the persistence store. Please note that we get rid of any copy in the old flat
+                // layout first: that way the migrator can't link it back into place after we're done. Anybody already reading
+                // the stream gets to finish.
+                deleteLegacyFileForId(id);
+                getVersionTracker().retire(resolveFileForStream(metadata));
+
+                invalidateCachedStream(id);
+            }
+        }
+        finally
+        {
+            getTransitionManager().end(id, Transition.DELETE);
         }
     }
 
@@ -220,12 +670,47 @@ public class StreamService implements IStreamService
         return getStreamStateDao().findStreamMetadata();
     }
 
+    @Override
+    public List<StreamMetadata> getMetadataForStreams(final StreamMetadataCriteria criteria, final String afterId, final int limit) throws Exception
+    {
+        return getStreamStateDao().findStreamMetadata(criteria, afterId, limit);
+    }
+
     @Override
     public StreamMetadata getMetadataForStreamById(final String id) throws Exception
     {
         return getStreamStateDao().findStreamMetadataById(id);
     }
 
+    @Override
+    public List<StreamMetadata> getMetadataForStreamsByIds(final Collection<String> ids) throws Exception
+    {
+        final IStreamStateDao streamStateDao = getStreamStateDao();
+        final Set<String> distinctIds = new LinkedHashSet<>(ids);
+        final Map<String, StreamMetadata> metadataById = new HashMap<>();
+
+        for (final StreamMetadata metadata : streamStateDao.findStreamMetadataByIds(distinctIds))
+        {
+            metadataById.put(metadata.getId(), metadata);
+        }
+
+        // Anything the DAO didn't find doesn't exist, so fill in the gaps the same way a single lookup would.
+        final List<StreamMetadata> metadata = new ArrayList<>(distinctIds.size());
+
+        for (final String id : distinctIds)
+        {
+            metadata.add(metadataById.containsKey(id) ? metadataById.get(id) : streamStateDao.createStreamMetadata(id, StreamStatus.NOT_FOUND));
+        }
+
+        return metadata;
+    }
+
+    @Override
+    public StreamStatistics getStatistics()
+    {
+        return getStatisticsTracker().getStatistics();
+    }
+
     // TODO [kog@epiphanic.org - 6/14/2015]: Would probably refactor these state callbacks into a separate mechanism in
     // TODO [kog@epiphanic.org - 6/14/2015]: the real world. Depending on complexity.
 
@@ -235,11 +720,12 @@ public class StreamService implements IStreamService
      * etc).
      *
      * @param metadata The {@link StreamMetadata} to mark as failed. Must not be null.
+     *
+     * @return True if the stream was marked, false if somebody else got to it first.
      */
-    void markStreamFailure(final StreamMetadata metadata) throws Exception
+    boolean markStreamFailure(final StreamMetadata metadata) throws Exception
     {
-        metadata.setStatus(StreamStatus.FAILED);
-        getStreamStateDao().saveOrUpdateStreamMetadata(metadata);
+        return transitionStream(metadata, StreamStatus.FAILED, metadata.getFileSize());
     }
 
     /**
@@ -249,29 +735,207 @@ public class StreamService implements IStreamService
      *
      * @param metadata The {@link StreamMetadata} to mark as successful. Must not be null.
      * @param outputFile The {@link File} pointing to our output file. Used to do any post-upload actions.
+     *
+     * @return True if the stream was marked, false if somebody else got to it first.
      */
-    void markStreamSuccessful(final StreamMetadata metadata, final File outputFile) throws Exception
+    boolean markStreamSuccessful(final StreamMetadata metadata, final File outputFile) throws Exception
     {
-        metadata.setStatus(StreamStatus.SUCCESSFUL);
-        metadata.setFileSize(outputFile.length());
-
-        getStreamStateDao().saveOrUpdateStreamMetadata(metadata);
+        return transitionStream(metadata, StreamStatus.SUCCESSFUL, outputFile.length());
     }
 
     /**
      * Provides a callback for the case where we're starting process a given stream. All we're doing at present is
-     * marking the status as {@link StreamStatus#IN_PROGRESS}.
+     * marking the status as {@link StreamStatus#IN_PROGRESS}, provided nobody has changed the stream since we read it.
      *
      * @param metadata The {@link StreamMetadata} to mark as in progress. Must not be null.
+     *
+     * @return True if the stream was marked, false if somebody else got to it first.
      */
-    void markStreamInProgress(final StreamMetadata metadata) throws Exception
+    boolean markStreamInProgress(final StreamMetadata metadata) throws Exception
     {
-        metadata.setStatus(StreamStatus.IN_PROGRESS);
-        getStreamStateDao().saveOrUpdateStreamMetadata(metadata);
+        return transitionStream(metadata, StreamStatus.IN_PROGRESS, metadata.getFileSize());
     }
 
     /**
-     * Provides a convenience method to turn a given stream ID into a {@link File} denoting storage location.
+     * Provides a convenience method to move a stream to a given status and size, provided nobody has changed it since
+     * it was read. If we make the move, we count it and publish it.
+     *
+     * @param metadata The {@link StreamMetadata} of the stream, as last read. Must not be null.
+     * @param status The {@link StreamStatus} to move the stream to. Must not be null.
+     * @param fileSize The size of the stream once it's moved.
+     *
+     * @return True if the stream was moved, false if somebody else got to it first.
+     */
+    boolean transitionStream(final StreamMetadata metadata, final StreamStatus status, final long fileSize) throws Exception
+    {
+        final StreamStatus previousStatus = metadata.getStatus();
+        final long previousFileSize = metadata.getFileSize();
+
+        metadata.setFileSize(fileSize);
+
+        if (!getStreamStateDao().transitionStreamMetadata(metadata, status))
+        {
+            return false;
+        }
+
+        getStatisticsTracker().record(previousStatus, previousFileSize, status, fileSize);
+        getChangeFeed().publish(metadata, status);
+
+        return true;
+    }
+
+    /**
+     * Provides a convenience method to open the contents of a stream, run through a given set of filters.
+     *
+     * @param id The ID of the stream to open. Must not be blank, must be valid, must be successfully uploaded.
+     * @param file The {@link File} holding the version of the stream to open. Must not be null, must exist.
+     * @param filters A list of zero or more filters to apply. May be empty, but must not be null.
+     *
+     * @return An {@link InputStream} over the filtered contents of the stream. Will not be null.
+     *
+     * @throws Exception If we fail to read the stream, or apply our filters.
+     */
+    InputStream openFilteredStream(final String id, final File file, final List<String> filters) throws Exception
+    {
+        InputStream stream = null;
+
+        try
+        {
+            stream = openStoredStream(id, file);
+            return getFilterManager().prepareInputFilters(stream, filters);
+        }
+        catch(final Exception ex)
+        {
+            // If we fail to apply filters, we're going to need to clean up after ourselves. If we put this in a try-with-resources
+            // we will instead close the stream before we return up the call stack.
+            IOUtils.closeQuietly(stream);
+
+            // We're not doing much with exceptions though, so throw this back up the stack.
+            throw ex;
+        }
+    }
+
+    /**
+     * Provides a convenience method to get an opaque version for the contents of a given file. Most streams are written
+     * to a file per version, so the name alone would do, but streams written before that are overwritten in place. We
+     * throw in the size and modification time to cover those.
+     *
+     * @param file The {@link File} holding the version of the stream. Must not be null, must exist.
+     *
+     * @return A version for the stream, which will change whenever its contents do. Will not be null.
+     *
+     * @throws Exception If we fail to read the attributes of the stream.
+     */
+    String getVersionForStream(final File file) throws Exception
+    {
+        final BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        return String.format("%s-%d-%d", file.getName(), attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Provides a convenience method to open the raw, unfiltered, contents of a stream for reading. If we've got a
+     * {@link StreamCache} this will come from memory where possible, otherwise we'll go to disk.
+     *
+     * @param id The ID of the stream to open. Must not be blank, must be valid, must be successfully uploaded.
+     * @param file The {@link File} holding the version of the stream to open. Must not be null, must exist.
+     *
+     * @return An {@link InputStream} over the stored contents of the stream. Will not be null.
+     *
+     * @throws Exception If we fail to read the stream.
+     */
+    InputStream openStoredStream(final String id, final File file) throws Exception
+    {
+        final StreamCache streamCache = getStreamCache();
+
+        if (null != streamCache)
+        {
+            final InputStream cachedStream = streamCache.getStream(id, file);
+
+            // Too big to cache, so fall through to reading it from disk.
+            if (null != cachedStream)
+            {
+                return cachedStream;
+            }
+        }
+
+        return FileUtils.openInputStream(file);
+    }
+
+    /**
+     * Provides a convenience method to find the current version of a stream, and take out a reference to it so that it
+     * stays put until we release it (see {@link StreamVersionTracker}). If a write swaps in a new version and retires
+     * the one we found before we get our reference, we just go back to the metadata and try again.<p/>
+     *
+     * We start from whatever metadata our caller already has, so in the usual case (IE: nobody's writing) this doesn't
+     * touch the database at all. When we do have to go back, the metadata we hand back is the one we ended up with, so
+     * callers describe the version they're actually serving.
+     *
+     * @param metadata The {@link StreamMetadata} of the stream to acquire, as last read. Must not be null.
+     *
+     * @return The {@link File} holding the current version of the stream, which the caller must release, and the
+     * {@link StreamMetadata} describing it, or <code>null</code> if there's no complete version to read.
+     *
+     * @throws Exception If we fail to look up the stream, or keep losing races with writers.
+     */
+    StreamVersion<File> acquireFileForStream(final StreamMetadata metadata) throws Exception
+    {
+        StreamMetadata current = metadata;
+
+        for (int attempt = 0; attempt < MAX_VERSION_ATTEMPTS; attempt++)
+        {
+            if (attempt > 0)
+            {
+                current = getStreamStateDao().findStreamMetadataById(metadata.getId());
+            }
+
+            if (!current.isReadable())
+            {
+                return null;
+            }
+
+            final File file = resolveFileForStream(current);
+
+            if (getVersionTracker().acquire(file))
+            {
+                if (file.exists())
+                {
+                    return new StreamVersion<>(current, file);
+                }
+
+                // We got our reference just after the last one went away, and it's already gone.
+                getVersionTracker().release(file);
+            }
+        }
+
+        throw new IllegalStateException(String.format("Gave up finding a current version of %s after %d attempts.", metadata.getId(), MAX_VERSION_ATTEMPTS));
+    }
+
+    /**
+     * Provides a convenience method to drop any cached contents, or filtered variants, for a given stream, if we're
+     * caching.
+     *
+     * @param id The ID of the stream to invalidate. Must not be blank, must be valid.
+     */
+    void invalidateCachedStream(final String id)
+    {
+        final StreamCache streamCache = getStreamCache();
+
+        if (null != streamCache)
+        {
+            streamCache.invalidate(id);
+        }
+
+        final FilteredStreamCache filteredStreamCache = getFilteredStreamCache();
+
+        if (null != filteredStreamCache)
+        {
+            filteredStreamCache.invalidate(id);
+        }
+    }
+
+    /**
+     * Provides a convenience method to turn a given stream ID into a {@link File} denoting storage location. This is
+     * where new streams are written, and where we expect to find existing ones.
      *
      * @param id The ID of the stream to create a {@link File} for. Must not be blank, must be valid.
      *
@@ -279,6 +943,170 @@ public class StreamService implements IStreamService
      */
     File createFileForId(final String id)
     {
-        return new File(getStreamStorageDirectory(), id);
+        final int levels = getStorageFanOutLevels();
+
+        if (0 == levels)
+        {
+            return new File(getStreamStorageDirectory(), id);
+        }
+
+        // Each level gets the next two hex characters of the hash, IE: ac/bd/foo.
+        final String hash = DigestUtils.md5Hex(id);
+        File directory = getStreamStorageDirectory();
+
+        for (int level = 0; level < levels; level++)
+        {
+            directory = new File(directory, hash.substring(level * 2, level * 2 + 2));
+        }
+
+        return new File(directory, id);
+    }
+
+    /**
+     * Provides a convenience method to find the {@link File} an existing stream lives in. Usually this is just
+     * {@link #createFileForId(String)}, but if we're bucketing and the stream hasn't been migrated out of the old flat
+     * layout yet, it'll still be sitting in the top level directory.
+     *
+     * @param id The ID of the stream to find a {@link File} for. Must not be blank, must be valid.
+     *
+     * @return A {@link File} pointing to where the stream is stored. Will not be null, but may not exist.
+     */
+    public File resolveFileForId(final String id)
+    {
+        return resolveFile(createFileForId(id));
+    }
+
+    /**
+     * Provides a convenience method to turn a given version of a stream into a {@link File} denoting storage location.
+     * Versions live alongside the stream they belong to, IE: in the same bucket.
+     *
+     * @param id The ID of the stream. Must not be blank, must be valid.
+     * @param version The version of the stream. Must not be blank.
+     *
+     * @return A {@link File} pointing to a storage location for the given version. Will not be null.
+     */
+    File createFileForVersion(final String id, final String version)
+    {
+        return new File(createFileForId(id).getParentFile(), id + VERSION_SEPARATOR + version);
+    }
+
+    /**
+     * Provides a convenience method to find the {@link File} holding the current version of a stream, according to its
+     * metadata. Streams written before we versioned them don't have a version, and live in a file named for the ID.
+     *
+     * @param metadata The {@link StreamMetadata} for the stream. Must not be null.
+     *
+     * @return A {@link File} pointing to where the current version of the stream is stored. Will not be null, but may not
+     * exist.
+     */
+    public File resolveFileForStream(final StreamMetadata metadata)
+    {
+        final String version = metadata.getContentVersion();
+        return null == version ? resolveFileForId(metadata.getId()) : resolveFile(createFileForVersion(metadata.getId(), version));
+    }
+
+    /**
+     * Provides a convenience method to fall back to the old flat layout for a given bucketed {@link File}, if it hasn't
+     * been migrated yet.
+     *
+     * @param file The bucketed {@link File} we'd expect to find. Must not be null.
+     *
+     * @return Either the given {@link File}, or its location in the old flat layout if that's where it currently lives.
+     */
+    File resolveFile(final File file)
+    {
+        if (0 == getStorageFanOutLevels() || file.exists())
+        {
+            return file;
+        }
+
+        final File legacyFile = new File(getStreamStorageDirectory(), file.getName());
+        return legacyFile.exists() ? legacyFile : file;
+    }
+
+    /**
+     * Provides a convenience method to remove any copy of a stream left in the old flat layout. If we're not bucketing
+     * this is a no-op, since the flat location is the only location.
+     *
+     * @param id The ID of the stream to remove the legacy copy of. Must not be blank, must be valid.
+     */
+    void deleteLegacyFileForId(final String id)
+    {
+        if (getStorageFanOutLevels() > 0)
+        {
+            FileUtils.deleteQuietly(new File(getStreamStorageDirectory(), id));
+        }
+    }
+
+    /**
+     * Moves any streams sitting in the top level of our storage directory (IE: from the old flat layout) into their
+     * bucketed location. This is safe to run while we're serving requests:
+     *
+     * <ul>
+     *     <li>Readers fall back to the flat location until the stream is moved (see {@link #resolveFileForId(String)}),
+     *         and anybody who already has the file open keeps reading the same inode.</li>
+     *     <li>We hard link rather than rename, which fails if the target exists. If a writer has already put a newer copy
+     *         in the bucketed location, we just drop the old one.</li>
+     *     <li>Deletes remove the flat copy first, so we can't resurrect a deleted stream.</li>
+     * </ul>
+     *
+     * Please note that we stream the directory listing, rather than using {@link File#listFiles()}, since the whole
+     * reason we're here is that this directory may have millions of entries.
+     */
+    void migrateLegacyStorage()
+    {
+        final Path root = getStreamStorageDirectory().toPath();
+        final long start = System.currentTimeMillis();
+        long migrated = 0;
+
+        try (final DirectoryStream<Path> legacyFiles = Files.newDirectoryStream(root, Files::isRegularFile))
+        {
+            for (final Path legacyFile : legacyFiles)
+            {
+                // Versions go wherever the stream they belong to goes, IE: foo@1234 lands next to foo.
+                final String name = legacyFile.getFileName().toString();
+                final int separator = name.indexOf(VERSION_SEPARATOR);
+                final Path target = new File(createFileForId(separator < 0 ? name : name.substring(0, separator)).getParentFile(), name).toPath();
+
+                try
+                {
+                    Files.createDirectories(target.getParent());
+
+                    try
+                    {
+                        Files.createLink(target, legacyFile);
+                    }
+                    catch (final UnsupportedOperationException ex)
+                    {
+                        // No hard links on this filesystem, so fall back to a (non-replacing) move.
+                        Files.move(legacyFile, target);
+                    }
+
+                    migrated++;
+                }
+                catch (final FileAlreadyExistsException ex)
+                {
+                    // Somebody wrote a newer copy in the meantime. Ours is stale, so it goes away below.
+                }
+                catch (final NoSuchFileException ex)
+                {
+                    // Somebody deleted it out from under us. Nothing to do.
+                }
+
+                Files.deleteIfExists(legacyFile);
+
+                if (migrated > 0 && 0 == migrated % 100000)
+                {
+                    LOGGER.info("Migrated {} streams to a {} level layout so far...", migrated, getStorageFanOutLevels());
+                }
+            }
+
+            LOGGER.info("Migrated {} streams to a {} level layout in {}ms.", migrated, getStorageFanOutLevels(), System.currentTimeMillis() - start);
+        }
+        catch (final Exception ex)
+        {
+            // Not the end of the world: we can still serve anything we didn't get to, and we'll try again on restart.
+            LOGGER.error(String.format("Failed to migrate legacy storage after %d streams.", migrated), ex);
+        }
     }
 }
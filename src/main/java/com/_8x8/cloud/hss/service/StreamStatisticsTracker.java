@@ -0,0 +1,158 @@
+package com._8x8.cloud.hss.service;
+
+import com._8x8.cloud.hss.model.StreamStatistics;
+import com._8x8.cloud.hss.model.StreamStatus;
+import com._8x8.cloud.hss.persistence.IStreamStateDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps running counts of our streams by {@link StreamStatus}, and the total size of them, so that we can answer for
+ * them without listing every stream. We're seeded from the metadata once (see {@link #seed(IStreamStateDao)}), and from
+ * then on every transition {@link #record(StreamStatus, long, StreamStatus, long)}s how it moved the numbers. Each count
+ * is a {@link LongAdder}, so concurrent uploads don't contend on updating them.<p/>
+ *
+ * Please note that these are only as good as the transitions we're told about: writes made by other nodes (or straight
+ * to the database) aren't counted until we're seeded again, and a transition that throws may or may not have happened.
+ * Reading several counts isn't atomic either, so a snapshot taken mid-transition can be off by one stream.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamStatisticsTracker
+{
+    /**
+     * Holds the {@link Logger} for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamStatisticsTracker.class);
+
+    /**
+     * Holds the number of streams in each {@link StreamStatus}, by ordinal. We never count
+     * {@link StreamStatus#NOT_FOUND}, but it's simpler to have a slot for it.
+     */
+    private final LongAdder[] _counts = new LongAdder[StreamStatus.values().length];
+
+    /**
+     * Holds the total size of our streams.
+     */
+    private final LongAdder _totalBytes = new LongAdder();
+
+    public StreamStatisticsTracker()
+    {
+        for (int i = 0; i < _counts.length; i++)
+        {
+            _counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Resets our counts to what's in the metadata right now, with a single aggregate query (see
+     * {@link IStreamStateDao#getStreamStatistics()}) rather than by reading every stream. Anything recorded while the
+     * query runs may be counted twice (or not at all), so this is best done before we take any traffic.
+     *
+     * @param streamStateDao The {@link IStreamStateDao} to read our metadata from. Must not be null.
+     *
+     * @return The number of streams we counted.
+     *
+     * @throws Exception If we fail to read the metadata, in which case our counts are left as they were.
+     */
+    public synchronized long seed(final IStreamStateDao streamStateDao) throws Exception
+    {
+        final long start = System.nanoTime();
+        final StreamStatistics statistics = streamStateDao.getStreamStatistics();
+
+        reset();
+
+        _counts[StreamStatus.SUCCESSFUL.ordinal()].add(statistics.getSuccessfulCount());
+        _counts[StreamStatus.IN_PROGRESS.ordinal()].add(statistics.getInProgressCount());
+        _counts[StreamStatus.FAILED.ordinal()].add(statistics.getFailedCount());
+        _totalBytes.add(statistics.getTotalBytes());
+
+        LOGGER.info("Seeded stream statistics with {} streams ({} bytes) in {}ms.", statistics.getStreamCount(), statistics.getTotalBytes(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        return statistics.getStreamCount();
+    }
+
+    /**
+     * Records a transition of a single stream. Creating a stream is a transition from {@link StreamStatus#NOT_FOUND},
+     * and deleting one is a transition to it.
+     *
+     * @param from The {@link StreamStatus} the stream was in. Must not be null.
+     * @param fromSize The size of the stream before the transition.
+     * @param to The {@link StreamStatus} the stream is in now. Must not be null.
+     * @param toSize The size of the stream after the transition.
+     */
+    public void record(final StreamStatus from, final long fromSize, final StreamStatus to, final long toSize)
+    {
+        if (from != to)
+        {
+            if (StreamStatus.NOT_FOUND != from)
+            {
+                _counts[from.ordinal()].decrement();
+            }
+
+            if (StreamStatus.NOT_FOUND != to)
+            {
+                _counts[to.ordinal()].increment();
+            }
+        }
+
+        _totalBytes.add((StreamStatus.NOT_FOUND == to ? 0 : toSize) - (StreamStatus.NOT_FOUND == from ? 0 : fromSize));
+    }
+
+    /**
+     * Gets the number of streams in a given {@link StreamStatus}.
+     *
+     * @param status The {@link StreamStatus} to count. Must not be null.
+     *
+     * @return The number of streams we know of in that status, or zero for {@link StreamStatus#NOT_FOUND}.
+     */
+    public long getCount(final StreamStatus status)
+    {
+        return _counts[status.ordinal()].sum();
+    }
+
+    /**
+     * Gets the total size of our streams.
+     *
+     * @return The sum of the sizes of every stream we know of, after filters have been applied.
+     */
+    public long getTotalBytes()
+    {
+        return _totalBytes.sum();
+    }
+
+    /**
+     * Takes a snapshot of our counts, for handing out.
+     *
+     * @return A new {@link StreamStatistics} with our current counts. Will not be null.
+     */
+    public StreamStatistics getStatistics()
+    {
+        final StreamStatistics statistics = new StreamStatistics();
+
+        statistics.setSuccessfulCount(getCount(StreamStatus.SUCCESSFUL));
+        statistics.setInProgressCount(getCount(StreamStatus.IN_PROGRESS));
+        statistics.setFailedCount(getCount(StreamStatus.FAILED));
+        statistics.setTotalBytes(getTotalBytes());
+
+        return statistics;
+    }
+
+    /**
+     * Provides a convenience method to zero all of our counts.
+     */
+    private void reset()
+    {
+        for (final LongAdder count : _counts)
+        {
+            count.reset();
+        }
+
+        _totalBytes.reset();
+    }
+}
@@ -0,0 +1,101 @@
+package com._8x8.cloud.hss.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Provides a per-stream state machine for the transitions that modify a stream: writes, deletes and repairs. A stream is either
+ * idle (IE: not in our map), or in exactly one {@link Transition}, and only the caller that won the transition may move
+ * it back to idle.<p/>
+ *
+ * Claims are made with a single compare-and-set against a {@link ConcurrentHashMap}, so writers to the same stream are
+ * serialized without ever blocking, and writers to different streams never contend on anything wider than a hash bin.
+ * The map only ever holds streams that are mid-transition, so it doesn't grow with the number of streams we know about.<p/>
+ *
+ * Please note that this only covers a single node. Across nodes, the transitions we persist are conditional on nobody
+ * else having touched the stream (see {@link com._8x8.cloud.hss.persistence.IStreamStateDao#transitionStreamMetadata}),
+ * so this is mostly a cheap way to avoid a round trip we already know we'd lose.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamTransitionManager
+{
+    /**
+     * Holds the transition each stream is currently in. Streams that are idle aren't present.
+     */
+    private final Map<String, Transition> _transitions = new ConcurrentHashMap<>();
+
+    /**
+     * Attempts to move a given stream from idle into a given transition.
+     *
+     * @param id The ID of the stream. Must not be blank, must be valid.
+     * @param transition The {@link Transition} to begin. Must not be null.
+     *
+     * @return True if the caller now owns the transition, and must {@link #end(String, Transition)} it. False if the
+     * stream is already in a transition.
+     */
+    public boolean begin(final String id, final Transition transition)
+    {
+        return null == _transitions.putIfAbsent(id, transition);
+    }
+
+    /**
+     * Moves a given stream back to idle. Must only be called by the owner of the transition.
+     *
+     * @param id The ID of the stream. Must not be blank, must be valid.
+     * @param transition The {@link Transition} to end. Must be the one we began.
+     *
+     * @throws IllegalStateException If the stream isn't in the given transition, which means somebody has a bug.
+     */
+    public void end(final String id, final Transition transition)
+    {
+        if (!_transitions.remove(id, transition))
+        {
+            throw new IllegalStateException(String.format("Stream %s is not in a %s transition.", id, transition));
+        }
+    }
+
+    /**
+     * Gets the transition a given stream is currently in.
+     *
+     * @param id The ID of the stream. Must not be blank, must be valid.
+     *
+     * @return The {@link Transition} the stream is in, or <code>null</code> if it's idle.
+     */
+    public Transition getTransition(final String id)
+    {
+        return _transitions.get(id);
+    }
+
+    /**
+     * Gets the number of streams currently mid-transition.
+     *
+     * @return The number of streams currently being written or deleted.
+     */
+    public int getActiveTransitionCount()
+    {
+        return _transitions.size();
+    }
+
+    /**
+     * Provides an enumeration of the transitions a stream can be in.
+     */
+    public enum Transition
+    {
+        /**
+         * The stream is being written, IE: created or updated.
+         */
+        WRITE,
+
+        /**
+         * The stream is being deleted.
+         */
+        DELETE,
+
+        /**
+         * The stream's metadata is being repaired to match what's in storage (see {@link StreamReconciler}).
+         */
+        RECONCILE
+    }
+}
@@ -0,0 +1,43 @@
+package com._8x8.cloud.hss.service;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+
+/**
+ * Provides a particular version of a stream (IE: a {@link java.io.File}, a {@link java.nio.channels.FileChannel} or its
+ * bytes in memory), along with the {@link StreamMetadata} that describes that version. If a write lands between reading
+ * the metadata and acquiring the stream, we serve whichever version is current by then, so anything that describes what
+ * we're sending (IE: an entity tag, or a modification time) must come from here rather than from the metadata we
+ * started with.
+ *
+ * @param <T> The type of the contents.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamVersion<T>
+{
+    /**
+     * Holds the {@link StreamMetadata} describing the version we acquired.
+     */
+    private final StreamMetadata _metadata;
+
+    /**
+     * Holds the contents of the version we acquired.
+     */
+    private final T _contents;
+
+    /**
+     * Creates a new instance of the {@link StreamVersion}.
+     *
+     * @param metadata The {@link StreamMetadata} describing the version. Must not be null.
+     * @param contents The contents of the version. Must not be null.
+     */
+    public StreamVersion(final StreamMetadata metadata, final T contents)
+    {
+        _metadata = metadata;
+        _contents = contents;
+    }
+
+    public StreamMetadata getMetadata() { return _metadata; }
+    public T getContents() { return _contents; }
+}
@@ -0,0 +1,143 @@
+package com._8x8.cloud.hss.service;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Provides reference counting for the files holding versions of our streams, so that a version that's been replaced (or
+ * deleted) is only removed from disk once the last reader is done with it.<p/>
+ *
+ * The lifecycle of a version goes something like this:
+ *
+ * <ul>
+ *     <li>Readers {@link #acquire(File)} the version they found in the metadata before opening it, and
+ *         {@link #release(File)} it once they close it.</li>
+ *     <li>Once a writer has swapped the metadata over to a new version, nobody new can find the old one, so the writer
+ *         {@link #retire(File)}s it. If nobody is reading it, it goes away immediately. Otherwise, it goes away on the
+ *         last release.</li>
+ * </ul>
+ *
+ * Please note that a reader can still find a version in the metadata just before it's retired, and try to acquire it
+ * just after it's been deleted. In that case {@link #acquire(File)} succeeds, the file won't exist, and the reader should
+ * release it and look at the metadata again.<p/>
+ *
+ * Most filesystems we care about would let an open file outlive its unlinking anyway, but not all of them do, and this
+ * way we never have to think about it.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamVersionTracker
+{
+    /**
+     * Holds the {@link Logger} for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamVersionTracker.class);
+
+    /**
+     * Holds the number of readers for each version that has at least one. Every GET acquires and releases a version, so
+     * rather than a lock of our own we lean on the map's, which is only ever held for one version at a time. Changes to
+     * a version's entry (and deleting it from disk) happen atomically in its compute.
+     */
+    private final ConcurrentMap<File, Reference> _references = new ConcurrentHashMap<>();
+
+    /**
+     * Takes out a reference to a given version, so it won't be deleted out from under us.
+     *
+     * @param file The {@link File} holding the version. Must not be null.
+     *
+     * @return True if we got a reference, false if the version has already been retired and the caller should look again.
+     */
+    public boolean acquire(final File file)
+    {
+        final Reference reference = _references.compute(file, (key, current) ->
+                null == current ? new Reference(1, false) : current._retired ? current : new Reference(current._count + 1, false));
+
+        return !reference._retired;
+    }
+
+    /**
+     * Gives back a reference to a given version, deleting it if it's been retired and we were the last reader.
+     *
+     * @param file The {@link File} holding the version. Must not be null, must have been successfully acquired.
+     */
+    public void release(final File file)
+    {
+        final AtomicBoolean released = new AtomicBoolean();
+
+        _references.computeIfPresent(file, (key, current) -> {
+            released.set(true);
+
+            if (current._count > 1)
+            {
+                return new Reference(current._count - 1, current._retired);
+            }
+
+            if (current._retired)
+            {
+                FileUtils.deleteQuietly(file);
+            }
+
+            return null;
+        });
+
+        if (!released.get())
+        {
+            LOGGER.warn("Released {} without a matching acquire.", file);
+        }
+    }
+
+    /**
+     * Marks a given version as no longer current, deleting it as soon as nobody is reading it.
+     *
+     * @param file The {@link File} holding the version. Must not be null.
+     */
+    public void retire(final File file)
+    {
+        _references.compute(file, (key, current) -> {
+            if (null == current)
+            {
+                // Nobody's reading it, and nobody can start to until we're done.
+                FileUtils.deleteQuietly(file);
+                return null;
+            }
+
+            return new Reference(current._count, true);
+        });
+    }
+
+    /**
+     * Gets the number of readers for a given version.
+     *
+     * @param file The {@link File} holding the version. Must not be null.
+     *
+     * @return The number of readers currently holding a reference to the version.
+     */
+    public int getReferenceCount(final File file)
+    {
+        final Reference reference = _references.get(file);
+        return null == reference ? 0 : reference._count;
+    }
+
+    /**
+     * Holds the reference count, and retirement status, for a single version. These are never changed, only replaced,
+     * so they can be read without holding anything.
+     */
+    private static class Reference
+    {
+        private final int _count;
+        private final boolean _retired;
+
+        Reference(final int count, final boolean retired)
+        {
+            _count = count;
+            _retired = retired;
+        }
+    }
+}
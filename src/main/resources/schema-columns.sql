@@ -0,0 +1,4 @@
+-- Provides the columns added to STREAM_STATUS since schema-durable.sql was first run, for the "durable" profile. A
+-- database created since then already has them, so like schema-indexes.sql each is only added if it isn't there.
+ALTER TABLE STREAM_STATUS ADD COLUMN IF NOT EXISTS CRC32C VARCHAR(8) BEFORE VERSION;
+ALTER TABLE STREAM_STATUS ADD COLUMN IF NOT EXISTS SHA256 VARCHAR(64) BEFORE VERSION;
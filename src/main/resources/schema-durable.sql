@@ -0,0 +1,21 @@
+-- Provides a file-backed variant of schema.sql, for the "durable" profile. This runs on every start, so it has to be
+-- safe to run against a database that already exists.
+
+-- Only the index roots of a CACHED table are read on open, rows are paged in as needed. A MEMORY table gets loaded in
+-- full, which for millions of rows takes long enough to notice.
+CREATE CACHED TABLE IF NOT EXISTS STREAM_STATUS(STREAM_ID VARCHAR(255) NOT NULL PRIMARY KEY, STATUS VARCHAR(30) NOT NULL, SIZE BIGINT DEFAULT 0 NOT NULL, CREATED TIMESTAMP, LAST_UPDATED TIMESTAMP, CONTENT_VERSION VARCHAR(64), CRC32C VARCHAR(8), SHA256 VARCHAR(64), VERSION BIGINT DEFAULT 0 NOT NULL);
+
+-- Sync the log on every commit, so that a stream we've said is there survives a crash. Group commit (see
+-- GroupCommitStreamStateDao) means a burst of transitions pays for one sync per batch, not one each.
+SET FILES WRITE DELAY FALSE;
+
+-- Checkpoint once the log hits 64MB. This caps how much we replay on open after a crash, at the cost of more frequent
+-- (but shorter) checkpoints.
+SET FILES LOG SIZE 64;
+
+-- Keep up to 100k rows (or 64MB) of our table in memory.
+SET FILES CACHE ROWS 100000;
+SET FILES CACHE SIZE 65536;
+
+-- Compact the data file during a checkpoint once 30% of it is wasted space.
+SET FILES DEFRAG 30;
@@ -0,0 +1,6 @@
+-- Provides the indexes from schema.sql for the "durable" profile. Like schema-durable.sql this runs on every start, so
+-- each index is only created if it isn't there already.
+CREATE INDEX IF NOT EXISTS IDX_STREAM_STATUS_STATUS ON STREAM_STATUS(STATUS, LAST_UPDATED);
+CREATE INDEX IF NOT EXISTS IDX_STREAM_STATUS_LAST_UPDATED ON STREAM_STATUS(LAST_UPDATED);
+CREATE INDEX IF NOT EXISTS IDX_STREAM_STATUS_CREATED ON STREAM_STATUS(CREATED);
+CREATE INDEX IF NOT EXISTS IDX_STREAM_STATUS_SIZE ON STREAM_STATUS(SIZE);
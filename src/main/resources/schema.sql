@@ -1 +1,9 @@
-CREATE MEMORY TABLE STREAM_STATUS(STREAM_ID VARCHAR(255) NOT NULL PRIMARY KEY, STATUS VARCHAR(30) NOT NULL, SIZE BIGINT DEFAULT 0 NOT NULL, CREATED TIMESTAMP, LAST_UPDATED TIMESTAMP);
\ No newline at end of file
+CREATE MEMORY TABLE STREAM_STATUS(STREAM_ID VARCHAR(255) NOT NULL PRIMARY KEY, STATUS VARCHAR(30) NOT NULL, SIZE BIGINT DEFAULT 0 NOT NULL, CREATED TIMESTAMP, LAST_UPDATED TIMESTAMP, CONTENT_VERSION VARCHAR(64), CRC32C VARCHAR(8), SHA256 VARCHAR(64), VERSION BIGINT DEFAULT 0 NOT NULL);
+
+-- Back each of our listing criteria with an index, so that narrowing things down doesn't mean scanning every row. Our
+-- dashboards ask for everything with a given status over the last little while, so that one gets an index to itself.
+-- Please note that schema-indexes.sql has to match.
+CREATE INDEX IDX_STREAM_STATUS_STATUS ON STREAM_STATUS(STATUS, LAST_UPDATED);
+CREATE INDEX IDX_STREAM_STATUS_LAST_UPDATED ON STREAM_STATUS(LAST_UPDATED);
+CREATE INDEX IDX_STREAM_STATUS_CREATED ON STREAM_STATUS(CREATED);
+CREATE INDEX IDX_STREAM_STATUS_SIZE ON STREAM_STATUS(SIZE);
@@ -0,0 +1,49 @@
+package com._8x8.cloud.hss.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests the {@link StreamMetadata} at the unit level.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamMetadataTestCase
+{
+    /**
+     * Tests {@link StreamMetadata#isReadable()} to make sure readers can see anything with a complete version.
+     */
+    @Test
+    public void testIsReadable() throws Exception
+    {
+        Assert.assertThat(createMetadata(StreamStatus.SUCCESSFUL, null).isReadable(), is(true));
+        Assert.assertThat(createMetadata(StreamStatus.SUCCESSFUL, "v1").isReadable(), is(true));
+        Assert.assertThat(createMetadata(StreamStatus.IN_PROGRESS, "v1").isReadable(), is(true));
+
+        Assert.assertThat(createMetadata(StreamStatus.IN_PROGRESS, null).isReadable(), is(false));
+        Assert.assertThat(createMetadata(StreamStatus.FAILED, "v1").isReadable(), is(false));
+        Assert.assertThat(createMetadata(StreamStatus.NOT_FOUND, null).isReadable(), is(false));
+    }
+
+    /**
+     * Provides a convenience method to create a {@link StreamMetadata}.
+     *
+     * @param status The {@link StreamStatus} of the stream.
+     * @param contentVersion The content version of the stream. May be null.
+     *
+     * @return A new {@link StreamMetadata}. Will not be null.
+     */
+    private static StreamMetadata createMetadata(final StreamStatus status, final String contentVersion)
+    {
+        final StreamMetadata metadata = new StreamMetadata();
+
+        metadata.setId("test");
+        metadata.setStatus(status);
+        metadata.setContentVersion(contentVersion);
+
+        return metadata;
+    }
+}
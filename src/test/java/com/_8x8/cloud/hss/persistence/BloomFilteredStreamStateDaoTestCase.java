@@ -0,0 +1,251 @@
+package com._8x8.cloud.hss.persistence;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
+import com._8x8.cloud.hss.model.StreamStatus;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+/**
+ * Tests the {@link BloomFilteredStreamStateDao} at the unit level, in front of a mock DAO.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class BloomFilteredStreamStateDaoTestCase
+{
+    /**
+     * Holds an instance of the class under test.
+     */
+    private BloomFilteredStreamStateDao _bloomFilteredStreamStateDao;
+
+    /**
+     * Holds a collaborating {@link IStreamStateDao} we can mock, standing in for the database.
+     */
+    private IStreamStateDao _streamStateDao;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _streamStateDao = mock(IStreamStateDao.class);
+        doAnswer(invocation -> createMetadata((String) invocation.getArguments()[0], (StreamStatus) invocation.getArguments()[1]))
+                .when(_streamStateDao).createStreamMetadata(anyString(), any(StreamStatus.class));
+
+        _bloomFilteredStreamStateDao = new BloomFilteredStreamStateDao();
+        _bloomFilteredStreamStateDao.setStreamStateDao(_streamStateDao);
+        _bloomFilteredStreamStateDao.setExpectedStreams(100);
+    }
+
+    /**
+     * Tests {@link BloomFilteredStreamStateDao#findStreamMetadataById(String)} before we've built our filter. We don't
+     * know anything yet, so everything should go to the database.
+     */
+    @Test
+    public void testFindStreamMetadataByIdForNoFilter() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata("foo", StreamStatus.SUCCESSFUL);
+        doReturn(metadata).when(_streamStateDao).findStreamMetadataById("foo");
+
+        Assert.assertThat(_bloomFilteredStreamStateDao.findStreamMetadataById("foo"), is(metadata));
+        Assert.assertThat(_bloomFilteredStreamStateDao.getFilterSize(), is(-1L));
+        Assert.assertThat(_bloomFilteredStreamStateDao.getLookupsPassed(), is(1L));
+
+        verify(_streamStateDao).findStreamMetadataById("foo");
+        verifyNoMoreInteractions(_streamStateDao);
+    }
+
+    /**
+     * Tests {@link BloomFilteredStreamStateDao#findStreamMetadataById(String)} once we've built our filter. Streams we
+     * know about should go to the database, and streams we don't should come back as not found on the spot.
+     */
+    @Test
+    public void testFindStreamMetadataById() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata("foo", StreamStatus.SUCCESSFUL);
+
+        doReturn(Collections.singletonList(metadata)).when(_streamStateDao).findStreamMetadata(null, null, BloomFilteredStreamStateDao.REBUILD_PAGE_SIZE);
+        doReturn(metadata).when(_streamStateDao).findStreamMetadataById("foo");
+
+        Assert.assertThat(_bloomFilteredStreamStateDao.rebuild(), is(1L));
+
+        Assert.assertThat(_bloomFilteredStreamStateDao.findStreamMetadataById("foo"), is(metadata));
+        Assert.assertThat(_bloomFilteredStreamStateDao.findStreamMetadataById("bar").getStatus(), is(StreamStatus.NOT_FOUND));
+
+        Assert.assertThat(_bloomFilteredStreamStateDao.getLookupsPassed(), is(1L));
+        Assert.assertThat(_bloomFilteredStreamStateDao.getLookupsSkipped(), is(1L));
+
+        verify(_streamStateDao).findStreamMetadata(null, null, BloomFilteredStreamStateDao.REBUILD_PAGE_SIZE);
+        verify(_streamStateDao).findStreamMetadataById("foo");
+        verify(_streamStateDao).createStreamMetadata("bar", StreamStatus.NOT_FOUND);
+        verifyNoMoreInteractions(_streamStateDao);
+    }
+
+    /**
+     * Tests {@link BloomFilteredStreamStateDao#findStreamMetadataByIds(java.util.Collection)}. Only the streams that might
+     * exist should go to the database, and if there are none we shouldn't go at all.
+     */
+    @Test
+    public void testFindStreamMetadataByIds() throws Exception
+    {
+        final List<StreamMetadata> metadata = Collections.singletonList(createMetadata("foo", StreamStatus.SUCCESSFUL));
+
+        doReturn(metadata).when(_streamStateDao).findStreamMetadata(null, null, BloomFilteredStreamStateDao.REBUILD_PAGE_SIZE);
+        doReturn(metadata).when(_streamStateDao).findStreamMetadataByIds(Collections.singletonList("foo"));
+
+        _bloomFilteredStreamStateDao.rebuild();
+
+        Assert.assertThat(_bloomFilteredStreamStateDao.findStreamMetadataByIds(Arrays.asList("foo", "bar")), is(metadata));
+        Assert.assertThat(_bloomFilteredStreamStateDao.findStreamMetadataByIds(Arrays.asList("bar", "baz")).isEmpty(), is(true));
+
+        verify(_streamStateDao).findStreamMetadata(null, null, BloomFilteredStreamStateDao.REBUILD_PAGE_SIZE);
+        verify(_streamStateDao).findStreamMetadataByIds(Collections.singletonList("foo"));
+        verifyNoMoreInteractions(_streamStateDao);
+    }
+
+    /**
+     * Tests that every kind of write adds its stream to our filter, even if the write fails (we can't be sure it
+     * didn't make it), and that deletes leave it in there until we rebuild.
+     */
+    @Test
+    public void testWrites() throws Exception
+    {
+        final StreamMetadata saved = createMetadata("saved", StreamStatus.SUCCESSFUL);
+        final StreamMetadata transitioned = createMetadata("transitioned", StreamStatus.NOT_FOUND);
+        final StreamMetadata inserted = createMetadata("inserted", StreamStatus.FAILED);
+        final StreamMetadata failed = createMetadata("failed", StreamStatus.SUCCESSFUL);
+
+        doReturn(Collections.emptyList()).when(_streamStateDao).findStreamMetadata(null, null, BloomFilteredStreamStateDao.REBUILD_PAGE_SIZE);
+        doReturn(true).when(_streamStateDao).transitionStreamMetadata(transitioned, StreamStatus.IN_PROGRESS);
+        doReturn(1).when(_streamStateDao).insertStreamMetadata(Collections.singletonList(inserted));
+        doThrow(new SQLException("Boom")).when(_streamStateDao).saveOrUpdateStreamMetadata(failed);
+
+        _bloomFilteredStreamStateDao.rebuild();
+
+        _bloomFilteredStreamStateDao.saveOrUpdateStreamMetadata(saved);
+        Assert.assertThat(_bloomFilteredStreamStateDao.transitionStreamMetadata(transitioned, StreamStatus.IN_PROGRESS), is(true));
+        Assert.assertThat(_bloomFilteredStreamStateDao.insertStreamMetadata(Collections.singletonList(inserted)), is(1));
+
+        try
+        {
+            _bloomFilteredStreamStateDao.saveOrUpdateStreamMetadata(failed);
+            Assert.fail("Should have thrown.");
+        }
+        catch (final SQLException ex)
+        {
+            // Expected.
+        }
+
+        _bloomFilteredStreamStateDao.deleteStreamMetadataById("saved");
+
+        for (final String id : Arrays.asList("saved", "transitioned", "inserted", "failed"))
+        {
+            Assert.assertThat(_bloomFilteredStreamStateDao.mightExist(id), is(true));
+        }
+
+        Assert.assertThat(_bloomFilteredStreamStateDao.getFilterSize(), is(4L));
+
+        verify(_streamStateDao).findStreamMetadata(null, null, BloomFilteredStreamStateDao.REBUILD_PAGE_SIZE);
+        verify(_streamStateDao).saveOrUpdateStreamMetadata(saved);
+        verify(_streamStateDao).transitionStreamMetadata(transitioned, StreamStatus.IN_PROGRESS);
+        verify(_streamStateDao).insertStreamMetadata(Collections.singletonList(inserted));
+        verify(_streamStateDao).saveOrUpdateStreamMetadata(failed);
+        verify(_streamStateDao).deleteStreamMetadataById("saved");
+        verifyNoMoreInteractions(_streamStateDao);
+    }
+
+    /**
+     * Tests {@link BloomFilteredStreamStateDao#rebuild()} across several pages, with a write landing in the middle. We
+     * should pick up every page, purge the streams that have since been deleted, and keep the write even though the
+     * page it would have been on has already gone by.
+     */
+    @Test
+    public void testRebuild() throws Exception
+    {
+        _bloomFilteredStreamStateDao.setExpectedStreams(10000);
+
+        final List<StreamMetadata> first = IntStream.range(0, BloomFilteredStreamStateDao.REBUILD_PAGE_SIZE)
+                                                    .mapToObj(i -> createMetadata(String.format("a%04d", i), StreamStatus.SUCCESSFUL))
+                                                    .collect(Collectors.toList());
+        final String lastId = first.get(first.size() - 1).getId();
+
+        doReturn(Collections.singletonList(createMetadata("deleted", StreamStatus.SUCCESSFUL)))
+                .doReturn(first)
+                .when(_streamStateDao).findStreamMetadata(null, null, BloomFilteredStreamStateDao.REBUILD_PAGE_SIZE);
+
+        doAnswer(invocation -> {
+            _bloomFilteredStreamStateDao.saveOrUpdateStreamMetadata(createMetadata("a0000-late", StreamStatus.SUCCESSFUL));
+            return Collections.singletonList(createMetadata("b", StreamStatus.SUCCESSFUL));
+        }).when(_streamStateDao).findStreamMetadata(null, lastId, BloomFilteredStreamStateDao.REBUILD_PAGE_SIZE);
+
+        _bloomFilteredStreamStateDao.rebuild();
+        Assert.assertThat(_bloomFilteredStreamStateDao.mightExist("deleted"), is(true));
+
+        Assert.assertThat(_bloomFilteredStreamStateDao.rebuild(), is(BloomFilteredStreamStateDao.REBUILD_PAGE_SIZE + 2L));
+        Assert.assertThat(_bloomFilteredStreamStateDao.getRebuildCount(), is(2L));
+
+        Assert.assertThat(_bloomFilteredStreamStateDao.mightExist("a0000"), is(true));
+        Assert.assertThat(_bloomFilteredStreamStateDao.mightExist("a0000-late"), is(true));
+        Assert.assertThat(_bloomFilteredStreamStateDao.mightExist("b"), is(true));
+        Assert.assertThat(_bloomFilteredStreamStateDao.mightExist("deleted"), is(false));
+    }
+
+    /**
+     * Tests {@link BloomFilteredStreamStateDao#rebuildQuietly()} for the case where the database blows up. We should keep
+     * the filter we have, and stop sending writes to the one we were building.
+     */
+    @Test
+    public void testRebuildForFailure() throws Exception
+    {
+        doReturn(Collections.singletonList(createMetadata("foo", StreamStatus.SUCCESSFUL)))
+                .doThrow(new SQLException("Boom"))
+                .when(_streamStateDao).findStreamMetadata(isNull(StreamMetadataCriteria.class), isNull(String.class), anyInt());
+
+        _bloomFilteredStreamStateDao.rebuildQuietly();
+        _bloomFilteredStreamStateDao.rebuildQuietly();
+
+        Assert.assertThat(_bloomFilteredStreamStateDao.getRebuildCount(), is(1L));
+        Assert.assertThat(_bloomFilteredStreamStateDao.mightExist("foo"), is(true));
+        Assert.assertThat(_bloomFilteredStreamStateDao.mightExist("bar"), is(false));
+
+        _bloomFilteredStreamStateDao.add("bar");
+        Assert.assertThat(_bloomFilteredStreamStateDao.getFilterSize(), is(2L));
+    }
+
+    /**
+     * Provides a convenience method to create a {@link StreamMetadata} as a one-liner.
+     *
+     * @param id The ID of the stream. Must be valid.
+     * @param status The {@link StreamStatus} of the stream. Must not be null.
+     *
+     * @return A {@link StreamMetadata} with the given values. Will not be null.
+     */
+    private static StreamMetadata createMetadata(final String id, final StreamStatus status)
+    {
+        final StreamMetadata metadata = new StreamMetadata();
+
+        metadata.setId(id);
+        metadata.setStatus(status);
+
+        return metadata;
+    }
+}
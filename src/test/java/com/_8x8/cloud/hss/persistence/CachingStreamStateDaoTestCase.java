@@ -0,0 +1,361 @@
+package com._8x8.cloud.hss.persistence;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamStatus;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+/**
+ * Tests the {@link CachingStreamStateDao} at the unit level. As with the {@link com._8x8.cloud.hss.service.StreamCache}
+ * we use a real Caffeine cache, in front of a mock DAO, and drive expiry off a fake clock.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class CachingStreamStateDaoTestCase
+{
+    /**
+     * Holds an instance of the class under test.
+     */
+    private CachingStreamStateDao _cachingStreamStateDao;
+
+    /**
+     * Holds a collaborating {@link IStreamStateDao} we can mock, standing in for the database.
+     */
+    private IStreamStateDao _streamStateDao;
+
+    /**
+     * Holds the current time for our cache, in nanoseconds.
+     */
+    private AtomicLong _time;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _streamStateDao = mock(IStreamStateDao.class);
+        _time = new AtomicLong();
+
+        _cachingStreamStateDao = new CachingStreamStateDao();
+        _cachingStreamStateDao.setStreamStateDao(_streamStateDao);
+        _cachingStreamStateDao.setMaximumSize(16);
+        _cachingStreamStateDao.setExpireAfterSeconds(30);
+        _cachingStreamStateDao.setTicker(_time::get);
+        _cachingStreamStateDao.init();
+    }
+
+    /**
+     * Tests {@link CachingStreamStateDao#findStreamMetadataById(String)} for the happy path. Only the first lookup should
+     * go to the database, and each caller should get a copy of its own to do with as it pleases.
+     */
+    @Test
+    public void testFindStreamMetadataById() throws Exception
+    {
+        doReturn(createMetadata("foo", StreamStatus.SUCCESSFUL, 1L)).when(_streamStateDao).findStreamMetadataById("foo");
+
+        final StreamMetadata first = _cachingStreamStateDao.findStreamMetadataById("foo");
+        first.setStatus(StreamStatus.FAILED);
+        first.setVersion(42L);
+
+        final StreamMetadata second = _cachingStreamStateDao.findStreamMetadataById("foo");
+
+        assertMetadata(second, "foo", StreamStatus.SUCCESSFUL, 1L);
+        Assert.assertThat(second, is(not(sameInstance(first))));
+
+        Assert.assertThat(_cachingStreamStateDao.getMissCount(), is(1L));
+        Assert.assertThat(_cachingStreamStateDao.getHitCount(), is(1L));
+        Assert.assertThat(_cachingStreamStateDao.getSize(), is(1L));
+
+        verify(_streamStateDao).findStreamMetadataById("foo");
+        verifyNoMoreInteractions(_streamStateDao);
+    }
+
+    /**
+     * Tests {@link CachingStreamStateDao#findStreamMetadataById(String)} for a stream we've held on to for too long. We
+     * should go back to the database, so that writes by other nodes eventually show up.
+     */
+    @Test
+    public void testFindStreamMetadataByIdForExpiry() throws Exception
+    {
+        doReturn(createMetadata("foo", StreamStatus.NOT_FOUND, 0L)).doReturn(createMetadata("foo", StreamStatus.SUCCESSFUL, 1L))
+                .when(_streamStateDao).findStreamMetadataById("foo");
+
+        assertMetadata(_cachingStreamStateDao.findStreamMetadataById("foo"), "foo", StreamStatus.NOT_FOUND, 0L);
+
+        _time.addAndGet(TimeUnit.SECONDS.toNanos(29));
+        assertMetadata(_cachingStreamStateDao.findStreamMetadataById("foo"), "foo", StreamStatus.NOT_FOUND, 0L);
+
+        _time.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertMetadata(_cachingStreamStateDao.findStreamMetadataById("foo"), "foo", StreamStatus.SUCCESSFUL, 1L);
+
+        verify(_streamStateDao, times(2)).findStreamMetadataById("foo");
+        verifyNoMoreInteractions(_streamStateDao);
+    }
+
+    /**
+     * Tests {@link CachingStreamStateDao#findStreamMetadataById(String)} for the case where the database blows up. We
+     * should get the original exception, and cache nothing.
+     */
+    @Test
+    public void testFindStreamMetadataByIdForFailure() throws Exception
+    {
+        final SQLException exception = new SQLException("Boom");
+        doThrow(exception).doReturn(createMetadata("foo", StreamStatus.SUCCESSFUL, 1L)).when(_streamStateDao).findStreamMetadataById("foo");
+
+        try
+        {
+            _cachingStreamStateDao.findStreamMetadataById("foo");
+            Assert.fail("Should have thrown.");
+        }
+        catch (final SQLException ex)
+        {
+            Assert.assertThat(ex, is(sameInstance(exception)));
+        }
+
+        assertMetadata(_cachingStreamStateDao.findStreamMetadataById("foo"), "foo", StreamStatus.SUCCESSFUL, 1L);
+
+        verify(_streamStateDao, times(2)).findStreamMetadataById("foo");
+        verifyNoMoreInteractions(_streamStateDao);
+    }
+
+    /**
+     * Tests {@link CachingStreamStateDao#saveOrUpdateStreamMetadata(StreamMetadata)} for the happy path. We should write
+     * through, drop our entry without going back to the database, and pick up what the database made of it (IE: the new
+     * version) on the next read.
+     */
+    @Test
+    public void testSaveOrUpdateStreamMetadata() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata("foo", StreamStatus.SUCCESSFUL, 0L);
+
+        doReturn(createMetadata("foo", StreamStatus.NOT_FOUND, 0L)).doReturn(createMetadata("foo", StreamStatus.SUCCESSFUL, 1L))
+                .when(_streamStateDao).findStreamMetadataById("foo");
+
+        assertMetadata(_cachingStreamStateDao.findStreamMetadataById("foo"), "foo", StreamStatus.NOT_FOUND, 0L);
+        _cachingStreamStateDao.saveOrUpdateStreamMetadata(metadata);
+
+        Assert.assertThat(_cachingStreamStateDao.getSize(), is(0L));
+        verify(_streamStateDao).findStreamMetadataById("foo");
+
+        assertMetadata(_cachingStreamStateDao.findStreamMetadataById("foo"), "foo", StreamStatus.SUCCESSFUL, 1L);
+
+        verify(_streamStateDao, times(2)).findStreamMetadataById("foo");
+        verify(_streamStateDao).saveOrUpdateStreamMetadata(metadata);
+        verifyNoMoreInteractions(_streamStateDao);
+    }
+
+    /**
+     * Tests {@link CachingStreamStateDao#saveOrUpdateStreamMetadata(StreamMetadata)} for the case where the write fails.
+     * We have no idea what state the stream is in, so we should drop our entry and let the next read find out.
+     */
+    @Test
+    public void testSaveOrUpdateStreamMetadataForFailure() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata("foo", StreamStatus.SUCCESSFUL, 0L);
+        final SQLException exception = new SQLException("Boom");
+
+        doReturn(createMetadata("foo", StreamStatus.NOT_FOUND, 0L)).when(_streamStateDao).findStreamMetadataById("foo");
+        doThrow(exception).when(_streamStateDao).saveOrUpdateStreamMetadata(metadata);
+
+        _cachingStreamStateDao.findStreamMetadataById("foo");
+
+        try
+        {
+            _cachingStreamStateDao.saveOrUpdateStreamMetadata(metadata);
+            Assert.fail("Should have thrown.");
+        }
+        catch (final SQLException ex)
+        {
+            Assert.assertThat(ex, is(sameInstance(exception)));
+        }
+
+        Assert.assertThat(_cachingStreamStateDao.getSize(), is(0L));
+
+        verify(_streamStateDao).findStreamMetadataById("foo");
+        verify(_streamStateDao).saveOrUpdateStreamMetadata(metadata);
+        verifyNoMoreInteractions(_streamStateDao);
+    }
+
+    /**
+     * Tests {@link CachingStreamStateDao#transitionStreamMetadata(StreamMetadata, StreamStatus)} for the case where our
+     * metadata was stale (IE: another node got there first). The transition should fail as usual, and our next read
+     * should see what the other node did.
+     */
+    @Test
+    public void testTransitionStreamMetadataForStaleEntry() throws Exception
+    {
+        doReturn(createMetadata("foo", StreamStatus.SUCCESSFUL, 1L)).doReturn(createMetadata("foo", StreamStatus.IN_PROGRESS, 2L))
+                .when(_streamStateDao).findStreamMetadataById("foo");
+
+        final StreamMetadata metadata = _cachingStreamStateDao.findStreamMetadataById("foo");
+        doReturn(false).when(_streamStateDao).transitionStreamMetadata(metadata, StreamStatus.IN_PROGRESS);
+
+        Assert.assertThat(_cachingStreamStateDao.transitionStreamMetadata(metadata, StreamStatus.IN_PROGRESS), is(false));
+        assertMetadata(_cachingStreamStateDao.findStreamMetadataById("foo"), "foo", StreamStatus.IN_PROGRESS, 2L);
+
+        verify(_streamStateDao, times(2)).findStreamMetadataById("foo");
+        verify(_streamStateDao).transitionStreamMetadata(metadata, StreamStatus.IN_PROGRESS);
+        verifyNoMoreInteractions(_streamStateDao);
+    }
+
+    /**
+     * Tests {@link CachingStreamStateDao#deleteStreamMetadataById(String)} for the happy path. We should write through,
+     * and find out the stream is gone on the next read, after which we should know.
+     */
+    @Test
+    public void testDeleteStreamMetadataById() throws Exception
+    {
+        doReturn(createMetadata("foo", StreamStatus.SUCCESSFUL, 1L)).doReturn(createMetadata("foo", StreamStatus.NOT_FOUND, 0L))
+                .when(_streamStateDao).findStreamMetadataById("foo");
+
+        _cachingStreamStateDao.findStreamMetadataById("foo");
+        _cachingStreamStateDao.deleteStreamMetadataById("foo");
+
+        assertMetadata(_cachingStreamStateDao.findStreamMetadataById("foo"), "foo", StreamStatus.NOT_FOUND, 0L);
+        assertMetadata(_cachingStreamStateDao.findStreamMetadataById("foo"), "foo", StreamStatus.NOT_FOUND, 0L);
+
+        verify(_streamStateDao, times(2)).findStreamMetadataById("foo");
+        verify(_streamStateDao).deleteStreamMetadataById("foo");
+        verifyNoMoreInteractions(_streamStateDao);
+    }
+
+    /**
+     * Tests {@link CachingStreamStateDao#transitionStreamMetadata(StreamMetadata, StreamStatus)} for the happy path. We
+     * should drop our entry, rather than going back to the database for it on the spot.
+     */
+    @Test
+    public void testTransitionStreamMetadata() throws Exception
+    {
+        doReturn(createMetadata("foo", StreamStatus.IN_PROGRESS, 1L)).when(_streamStateDao).findStreamMetadataById("foo");
+
+        final StreamMetadata metadata = _cachingStreamStateDao.findStreamMetadataById("foo");
+        doReturn(true).when(_streamStateDao).transitionStreamMetadata(metadata, StreamStatus.SUCCESSFUL);
+
+        Assert.assertThat(_cachingStreamStateDao.transitionStreamMetadata(metadata, StreamStatus.SUCCESSFUL), is(true));
+        Assert.assertThat(_cachingStreamStateDao.getSize(), is(0L));
+
+        verify(_streamStateDao).findStreamMetadataById("foo");
+        verify(_streamStateDao).transitionStreamMetadata(metadata, StreamStatus.SUCCESSFUL);
+        verifyNoMoreInteractions(_streamStateDao);
+    }
+
+    /**
+     * Tests {@link CachingStreamStateDao#insertStreamMetadata(java.util.Collection)}. We should drop whatever we had for
+     * the batch (IE: that they were unknown), and leave everything else alone.
+     */
+    @Test
+    public void testInsertStreamMetadata() throws Exception
+    {
+        final StreamMetadata foo = createMetadata("foo", StreamStatus.SUCCESSFUL, 0L);
+
+        doReturn(createMetadata("foo", StreamStatus.NOT_FOUND, 0L)).when(_streamStateDao).findStreamMetadataById("foo");
+        doReturn(createMetadata("bar", StreamStatus.NOT_FOUND, 0L)).when(_streamStateDao).findStreamMetadataById("bar");
+        doReturn(1).when(_streamStateDao).insertStreamMetadata(Arrays.asList(foo));
+
+        _cachingStreamStateDao.findStreamMetadataById("foo");
+        _cachingStreamStateDao.findStreamMetadataById("bar");
+
+        Assert.assertThat(_cachingStreamStateDao.insertStreamMetadata(Arrays.asList(foo)), is(1));
+        Assert.assertThat(_cachingStreamStateDao.getSize(), is(1L));
+
+        verify(_streamStateDao).findStreamMetadataById("foo");
+        verify(_streamStateDao).findStreamMetadataById("bar");
+        verify(_streamStateDao).insertStreamMetadata(Arrays.asList(foo));
+        verifyNoMoreInteractions(_streamStateDao);
+    }
+
+    /**
+     * Tests {@link CachingStreamStateDao#invalidate(String)} and {@link CachingStreamStateDao#invalidateAll()}, which
+     * are how somebody else tells us a stream has changed underneath us.
+     */
+    @Test
+    public void testInvalidate() throws Exception
+    {
+        doReturn(createMetadata("foo", StreamStatus.SUCCESSFUL, 1L)).when(_streamStateDao).findStreamMetadataById("foo");
+        doReturn(createMetadata("bar", StreamStatus.SUCCESSFUL, 1L)).when(_streamStateDao).findStreamMetadataById("bar");
+
+        _cachingStreamStateDao.findStreamMetadataById("foo");
+        _cachingStreamStateDao.findStreamMetadataById("bar");
+
+        _cachingStreamStateDao.invalidate("foo");
+        Assert.assertThat(_cachingStreamStateDao.getSize(), is(1L));
+
+        _cachingStreamStateDao.findStreamMetadataById("foo");
+        _cachingStreamStateDao.invalidateAll();
+        Assert.assertThat(_cachingStreamStateDao.getSize(), is(0L));
+
+        verify(_streamStateDao, times(2)).findStreamMetadataById("foo");
+        verify(_streamStateDao).findStreamMetadataById("bar");
+        verifyNoMoreInteractions(_streamStateDao);
+    }
+
+    /**
+     * Tests that the listing methods go straight to the database, since we don't cache them.
+     */
+    @Test
+    public void testFindStreamMetadata() throws Exception
+    {
+        _cachingStreamStateDao.findStreamMetadata();
+        _cachingStreamStateDao.findStreamMetadata(null, "foo", 10);
+        _cachingStreamStateDao.findStreamMetadataByIds(Arrays.asList("foo", "bar"));
+        _cachingStreamStateDao.getStreamStatistics();
+
+        verify(_streamStateDao).findStreamMetadata();
+        verify(_streamStateDao).findStreamMetadata(null, "foo", 10);
+        verify(_streamStateDao).findStreamMetadataByIds(Arrays.asList("foo", "bar"));
+        verify(_streamStateDao).getStreamStatistics();
+        verifyNoMoreInteractions(_streamStateDao);
+
+        Assert.assertThat(_cachingStreamStateDao.getSize(), is(0L));
+    }
+
+    /**
+     * Provides a convenience method to assert that a {@link StreamMetadata} is what we expect.
+     *
+     * @param metadata The {@link StreamMetadata} to check. Must not be null.
+     * @param id The ID we expect.
+     * @param status The {@link StreamStatus} we expect.
+     * @param version The version we expect.
+     */
+    private void assertMetadata(final StreamMetadata metadata, final String id, final StreamStatus status, final long version)
+    {
+        Assert.assertThat(metadata.getId(), is(id));
+        Assert.assertThat(metadata.getStatus(), is(status));
+        Assert.assertThat(metadata.getVersion(), is(version));
+    }
+
+    /**
+     * Provides a convenience method to create a {@link StreamMetadata} as a one-liner.
+     *
+     * @param id The ID of the stream. Must be valid.
+     * @param status The {@link StreamStatus} of the stream. Must not be null.
+     * @param version The version of the metadata.
+     *
+     * @return A {@link StreamMetadata} with the given values. Will not be null.
+     */
+    private StreamMetadata createMetadata(final String id, final StreamStatus status, final long version)
+    {
+        final StreamMetadata metadata = new StreamMetadata();
+
+        metadata.setId(id);
+        metadata.setStatus(status);
+        metadata.setVersion(version);
+
+        return metadata;
+    }
+}
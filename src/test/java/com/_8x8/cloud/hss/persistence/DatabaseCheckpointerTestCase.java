@@ -0,0 +1,90 @@
+package com._8x8.cloud.hss.persistence;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+/**
+ * Tests {@link DatabaseCheckpointer} at the unit level.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class DatabaseCheckpointerTestCase
+{
+    /**
+     * Holds an instance of the class under test.
+     */
+    private DatabaseCheckpointer _databaseCheckpointer;
+
+    /**
+     * Holds a collaborating {@link JdbcTemplate} we can mock.
+     */
+    private JdbcTemplate _jdbcTemplate;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _databaseCheckpointer = spy(new DatabaseCheckpointer());
+
+        _jdbcTemplate = mock(JdbcTemplate.class);
+        doReturn(_jdbcTemplate).when(_databaseCheckpointer).getJdbcTemplate();
+    }
+
+    /**
+     * Tests {@link DatabaseCheckpointer#init()} to make sure we open the database by grabbing a connection.
+     **/
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testInit() throws Exception
+    {
+        _databaseCheckpointer.init();
+
+        verify(_databaseCheckpointer).init();
+        verify(_databaseCheckpointer).getJdbcTemplate();
+        verify(_jdbcTemplate).execute(any(ConnectionCallback.class));
+
+        verifyNoMoreCollaboratingInteractions();
+
+        Assert.assertThat(_databaseCheckpointer.getOpenMillis(), is(greaterThanOrEqualTo(0L)));
+    }
+
+    /**
+     * Tests {@link DatabaseCheckpointer#checkpoint()} to make sure we checkpoint, and keep score.
+     **/
+    @Test
+    public void testCheckpoint() throws Exception
+    {
+        _databaseCheckpointer.checkpoint();
+        _databaseCheckpointer.checkpoint();
+
+        verify(_databaseCheckpointer, times(2)).checkpoint();
+        verify(_databaseCheckpointer, times(2)).getJdbcTemplate();
+        verify(_jdbcTemplate, times(2)).execute("CHECKPOINT");
+
+        verifyNoMoreCollaboratingInteractions();
+
+        Assert.assertThat(_databaseCheckpointer.getCheckpointCount(), is(2L));
+        Assert.assertThat(_databaseCheckpointer.getTotalCheckpointMillis(), is(greaterThanOrEqualTo(_databaseCheckpointer.getLastCheckpointMillis())));
+    }
+
+    /**
+     * Provides a convenience method for making sure no more interactions have occurred between our collaborators.
+     */
+    private void verifyNoMoreCollaboratingInteractions()
+    {
+        verifyNoMoreInteractions(_databaseCheckpointer, _jdbcTemplate);
+    }
+}
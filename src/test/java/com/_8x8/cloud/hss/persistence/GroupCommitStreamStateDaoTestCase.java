@@ -0,0 +1,289 @@
+package com._8x8.cloud.hss.persistence;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamStatus;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+/**
+ * Tests the {@link GroupCommitStreamStateDao} at the unit level, in front of a mock DAO.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class GroupCommitStreamStateDaoTestCase
+{
+    /**
+     * Holds an instance of the class under test.
+     */
+    private GroupCommitStreamStateDao _groupCommitStreamStateDao;
+
+    /**
+     * Holds a collaborating {@link StreamStateDao} we can mock, standing in for the database.
+     */
+    private StreamStateDao _streamStateDao;
+
+    /**
+     * Holds the batches our mock DAO has been given, in order.
+     */
+    private List<List<StreamTransition>> _batches;
+
+    /**
+     * Holds an {@link ExecutorService} for our concurrent callers.
+     */
+    private ExecutorService _executor;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _batches = new ArrayList<>();
+        _executor = Executors.newCachedThreadPool();
+
+        // Every transition succeeds, unless it's for a stream called "loser".
+        _streamStateDao = mock(StreamStateDao.class);
+        doAnswer(invocation -> record(invocation.getArguments()[0])).when(_streamStateDao).transitionStreamMetadata(anyListOf(StreamTransition.class));
+
+        _groupCommitStreamStateDao = new GroupCommitStreamStateDao();
+        _groupCommitStreamStateDao.setStreamStateDao(_streamStateDao);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        _groupCommitStreamStateDao.destroy();
+        _executor.shutdownNow();
+    }
+
+    /**
+     * Tests {@link GroupCommitStreamStateDao#transitionStreamMetadata(StreamMetadata, StreamStatus)} before we've been
+     * started. Every write should go to the database on its own, on the caller's thread.
+     */
+    @Test
+    public void testTransitionStreamMetadataForNotStarted() throws Exception
+    {
+        final StreamMetadata winner = createMetadata("winner", StreamStatus.IN_PROGRESS);
+        final StreamMetadata loser = createMetadata("loser", StreamStatus.IN_PROGRESS);
+
+        Assert.assertThat(_groupCommitStreamStateDao.transitionStreamMetadata(winner, StreamStatus.SUCCESSFUL), is(true));
+        Assert.assertThat(_groupCommitStreamStateDao.transitionStreamMetadata(loser, StreamStatus.SUCCESSFUL), is(false));
+
+        Assert.assertThat(_batches.size(), is(2));
+        Assert.assertThat(_batches.get(0).get(0).getMetadata(), is(winner));
+        Assert.assertThat(_batches.get(0).get(0).getStatus(), is(StreamStatus.SUCCESSFUL));
+        Assert.assertThat(_groupCommitStreamStateDao.getBatchCount(), is(2L));
+        Assert.assertThat(_groupCommitStreamStateDao.getAverageBatchSize(), is(1.0));
+    }
+
+    /**
+     * Tests {@link GroupCommitStreamStateDao#deleteStreamMetadataById(String)}, which should be queued up as a
+     * transition to {@link StreamStatus#NOT_FOUND}.
+     */
+    @Test
+    public void testDeleteStreamMetadataById() throws Exception
+    {
+        doReturn(createMetadata("foo", StreamStatus.NOT_FOUND)).when(_streamStateDao).createStreamMetadata("foo", StreamStatus.NOT_FOUND);
+
+        _groupCommitStreamStateDao.init();
+        _groupCommitStreamStateDao.deleteStreamMetadataById("foo");
+
+        Assert.assertThat(_batches.size(), is(1));
+        Assert.assertThat(_batches.get(0).get(0).getMetadata().getId(), is("foo"));
+        Assert.assertThat(_batches.get(0).get(0).isDelete(), is(true));
+
+        verify(_streamStateDao).createStreamMetadata("foo", StreamStatus.NOT_FOUND);
+        verify(_streamStateDao).transitionStreamMetadata(anyListOf(StreamTransition.class));
+        verifyNoMoreInteractions(_streamStateDao);
+    }
+
+    /**
+     * Tests that writes from concurrent callers are committed together. We hold up the first batch, and everything that
+     * queues up behind it should go in as few batches as our maximum batch size allows, with each caller getting its own
+     * answer.
+     */
+    @Test
+    public void testTransitionStreamMetadataForConcurrentCallers() throws Exception
+    {
+        final CountDownLatch committing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        doAnswer(invocation -> {
+            committing.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return record(invocation.getArguments()[0]);
+        }).doAnswer(invocation -> record(invocation.getArguments()[0]))
+          .when(_streamStateDao).transitionStreamMetadata(anyListOf(StreamTransition.class));
+
+        _groupCommitStreamStateDao.setMaxBatchSize(6);
+        _groupCommitStreamStateDao.init();
+
+        final Future<Boolean> first = _executor.submit(() -> _groupCommitStreamStateDao.transitionStreamMetadata(createMetadata("first", StreamStatus.IN_PROGRESS), StreamStatus.SUCCESSFUL));
+        Assert.assertThat(committing.await(10, TimeUnit.SECONDS), is(true));
+
+        final List<Future<Boolean>> others = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++)
+        {
+            final StreamMetadata metadata = createMetadata(0 == i % 2 ? "loser" : "winner" + i, StreamStatus.IN_PROGRESS);
+            others.add(_executor.submit(() -> _groupCommitStreamStateDao.transitionStreamMetadata(metadata, StreamStatus.SUCCESSFUL)));
+        }
+
+        while (_groupCommitStreamStateDao.getQueueSize() < 10)
+        {
+            Thread.sleep(1);
+        }
+
+        release.countDown();
+
+        Assert.assertThat(first.get(10, TimeUnit.SECONDS), is(true));
+
+        for (int i = 0; i < others.size(); i++)
+        {
+            Assert.assertThat(others.get(i).get(10, TimeUnit.SECONDS), is(0 != i % 2));
+        }
+
+        Assert.assertThat(_batches.size(), is(3));
+        Assert.assertThat(_batches.get(1).size(), is(6));
+        Assert.assertThat(_batches.get(2).size(), is(4));
+        Assert.assertThat(_groupCommitStreamStateDao.getBatchCount(), is(3L));
+        Assert.assertThat(_groupCommitStreamStateDao.getTransitionCount(), is(11L));
+        Assert.assertThat(_groupCommitStreamStateDao.getLargestBatchSize(), is(6));
+    }
+
+    /**
+     * Tests that when a batch fails, everybody in it gets the exception.
+     */
+    @Test
+    public void testTransitionStreamMetadataForFailure() throws Exception
+    {
+        final DataAccessResourceFailureException failure = new DataAccessResourceFailureException("Boom");
+        doThrow(failure).when(_streamStateDao).transitionStreamMetadata(anyListOf(StreamTransition.class));
+
+        _groupCommitStreamStateDao.init();
+
+        try
+        {
+            _groupCommitStreamStateDao.transitionStreamMetadata(createMetadata("foo", StreamStatus.IN_PROGRESS), StreamStatus.SUCCESSFUL);
+            Assert.fail("Should have thrown.");
+        }
+        catch (final DataAccessResourceFailureException ex)
+        {
+            Assert.assertThat(ex, is(failure));
+        }
+
+        Assert.assertThat(_groupCommitStreamStateDao.getBatchCount(), is(0L));
+    }
+
+    /**
+     * Tests {@link GroupCommitStreamStateDao#commit(List)} for a batch with one write the database won't take. Only its
+     * caller should get the exception: everybody else should be committed one at a time, and get their own answer.
+     */
+    @Test
+    public void testCommitForPoisonedBatch() throws Exception
+    {
+        final DataAccessResourceFailureException failure = new DataAccessResourceFailureException("Boom");
+
+        doAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            final List<StreamTransition> transitions = (List<StreamTransition>) invocation.getArguments()[0];
+
+            if (transitions.stream().anyMatch(transition -> "poison".equals(transition.getMetadata().getId())))
+            {
+                throw failure;
+            }
+
+            return record(transitions);
+        }).when(_streamStateDao).transitionStreamMetadata(anyListOf(StreamTransition.class));
+
+        final List<GroupCommitStreamStateDao.PendingTransition> batch = new ArrayList<>();
+
+        for (final String id : Arrays.asList("winner", "poison", "loser"))
+        {
+            batch.add(new GroupCommitStreamStateDao.PendingTransition(new StreamTransition(createMetadata(id, StreamStatus.IN_PROGRESS), StreamStatus.SUCCESSFUL)));
+        }
+
+        _groupCommitStreamStateDao.commit(batch);
+
+        Assert.assertThat(batch.get(0).getResult().get(), is(true));
+        Assert.assertThat(batch.get(2).getResult().get(), is(false));
+
+        try
+        {
+            batch.get(1).getResult().get();
+            Assert.fail("Should have thrown.");
+        }
+        catch (final ExecutionException ex)
+        {
+            Assert.assertThat(ex.getCause(), is(failure));
+        }
+
+        verify(_streamStateDao, times(4)).transitionStreamMetadata(anyListOf(StreamTransition.class));
+        Assert.assertThat(_batches.size(), is(2));
+    }
+
+    /**
+     * Provides a convenience method to record a batch handed to our mock DAO, and answer it.
+     *
+     * @param batch The batch of {@link StreamTransition}s. Must not be null.
+     *
+     * @return Whether each transition succeeded: all of them do, except those for "loser". Will not be null.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean[] record(final Object batch)
+    {
+        final List<StreamTransition> transitions = (List<StreamTransition>) batch;
+        final boolean[] transitioned = new boolean[transitions.size()];
+
+        for (int i = 0; i < transitions.size(); i++)
+        {
+            transitioned[i] = !"loser".equals(transitions.get(i).getMetadata().getId());
+        }
+
+        synchronized (_batches)
+        {
+            _batches.add(new ArrayList<>(transitions));
+        }
+
+        return transitioned;
+    }
+
+    /**
+     * Provides a convenience method to create a {@link StreamMetadata} as a one-liner.
+     *
+     * @param id The ID of the stream. Must be valid.
+     * @param status The {@link StreamStatus} of the stream. Must not be null.
+     *
+     * @return A {@link StreamMetadata} with the given values. Will not be null.
+     */
+    private static StreamMetadata createMetadata(final String id, final StreamStatus status)
+    {
+        final StreamMetadata metadata = new StreamMetadata();
+
+        metadata.setId(id);
+        metadata.setStatus(status);
+
+        return metadata;
+    }
+}
@@ -0,0 +1,188 @@
+package com._8x8.cloud.hss.persistence;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamStatus;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import javax.annotation.Resource;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Benchmarks the {@link LogStreamStateDao} against the {@link StreamStateDao} from our context, on the same workload:
+ * the lifecycle of a burst of uploads and the reads that follow. We only assert that both get the right answers, since
+ * timings depend on the machine, and log the timings for comparison.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("classpath*:applicationContext.xml")
+public class LogStreamStateDaoITCase
+{
+    /**
+     * Holds the {@link Logger} for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogStreamStateDaoITCase.class);
+
+    /**
+     * Holds the number of concurrent clients in our workload.
+     */
+    private static final int CLIENTS = 16;
+
+    /**
+     * Holds the number of streams each client uploads.
+     */
+    private static final int STREAMS_PER_CLIENT = 250;
+
+    /**
+     * Holds the number of times each stream is read once it's been uploaded.
+     */
+    private static final int READS_PER_STREAM = 5;
+
+    /**
+     * Holds the {@link StreamStateDao} to compare against.
+     */
+    @Resource
+    private StreamStateDao _streamStateDao;
+
+    /**
+     * Holds an instance of the class under test.
+     */
+    private LogStreamStateDao _logStreamStateDao;
+
+    /**
+     * Holds the directory our log lives in.
+     */
+    private File _directory;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _directory = Files.createTempDirectory("hss-log").toFile();
+
+        _logStreamStateDao = new LogStreamStateDao();
+        _logStreamStateDao.setDirectory(_directory);
+        _logStreamStateDao.init();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        _logStreamStateDao.destroy();
+        FileUtils.deleteQuietly(_directory);
+    }
+
+    /**
+     * Runs our workload against each DAO, twice, so that the second run is against a warm JVM.
+     */
+    @Test
+    public void testBenchmark() throws Exception
+    {
+        for (int run = 0; run < 2; run++)
+        {
+            final long database = benchmark(_streamStateDao);
+            final long log = benchmark(_logStreamStateDao);
+
+            LOGGER.info("Run {}: {} streams from {} clients took {}ms against StreamStateDao, {}ms against LogStreamStateDao.",
+                        run, CLIENTS * STREAMS_PER_CLIENT, CLIENTS, database, log);
+        }
+
+        // Everything we created we deleted, and it should stay that way after a restart.
+        Assert.assertThat(_logStreamStateDao.getStreamCount(), is(0L));
+
+        _logStreamStateDao.destroy();
+        _logStreamStateDao.init();
+
+        Assert.assertThat(_logStreamStateDao.getStreamCount(), is(0L));
+        LOGGER.info("Reopened a {} byte log in {}ms.", _logStreamStateDao.getLogBytes(), _logStreamStateDao.getOpenMillis());
+    }
+
+    /**
+     * Provides a convenience method to run our workload against a given DAO: each client creates its streams, moves
+     * them to successful, reads them back a few times and deletes them, checking every answer along the way.
+     *
+     * @param streamStateDao The {@link IStreamStateDao} to run against. Must not be null.
+     *
+     * @return How long the workload took, in milliseconds.
+     */
+    private long benchmark(final IStreamStateDao streamStateDao) throws Exception
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(CLIENTS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<Void>> futures = new ArrayList<>();
+
+        try
+        {
+            for (int client = 0; client < CLIENTS; client++)
+            {
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    final List<String> streamIds = new ArrayList<>();
+                    start.await();
+
+                    for (int stream = 0; stream < STREAMS_PER_CLIENT; stream++)
+                    {
+                        final String streamId = UUID.randomUUID().toString();
+                        final StreamMetadata metadata = streamStateDao.findStreamMetadataById(streamId);
+
+                        Assert.assertThat(streamStateDao.transitionStreamMetadata(metadata, StreamStatus.IN_PROGRESS), is(true));
+
+                        metadata.setFileSize(stream);
+                        Assert.assertThat(streamStateDao.transitionStreamMetadata(metadata, StreamStatus.SUCCESSFUL), is(true));
+
+                        streamIds.add(streamId);
+                    }
+
+                    for (int read = 0; read < READS_PER_STREAM; read++)
+                    {
+                        for (final String streamId : streamIds)
+                        {
+                            Assert.assertThat(streamStateDao.findStreamMetadataById(streamId).getStatus(), is(StreamStatus.SUCCESSFUL));
+                        }
+                    }
+
+                    for (final String streamId : streamIds)
+                    {
+                        streamStateDao.deleteStreamMetadataById(streamId);
+                    }
+
+                    return null;
+                }));
+            }
+
+            final long begin = System.nanoTime();
+            start.countDown();
+
+            for (final Future<Void> future : futures)
+            {
+                future.get(2, TimeUnit.MINUTES);
+            }
+
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+}
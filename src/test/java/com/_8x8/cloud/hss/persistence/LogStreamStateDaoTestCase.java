@@ -0,0 +1,433 @@
+package com._8x8.cloud.hss.persistence;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
+import com._8x8.cloud.hss.model.StreamStatistics;
+import com._8x8.cloud.hss.model.StreamStatus;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests the {@link LogStreamStateDao} at the unit level, against a log in a temporary directory.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class LogStreamStateDaoTestCase
+{
+    /**
+     * Holds an instance of the class under test.
+     */
+    private LogStreamStateDao _logStreamStateDao;
+
+    /**
+     * Holds the directory our log lives in.
+     */
+    private File _directory;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _directory = Files.createTempDirectory("hss-log").toFile();
+        _logStreamStateDao = open();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        _logStreamStateDao.destroy();
+        FileUtils.deleteQuietly(_directory);
+    }
+
+    /**
+     * Tests {@link LogStreamStateDao#transitionStreamMetadata(StreamMetadata, StreamStatus)} through the lifecycle of a
+     * stream. This should behave exactly like the compare-and-set in {@link StreamStateDao}.
+     */
+    @Test
+    public void testTransitionStreamMetadata() throws Exception
+    {
+        final StreamMetadata metadata = _logStreamStateDao.findStreamMetadataById("foo");
+        final StreamMetadata competitor = _logStreamStateDao.findStreamMetadataById("foo");
+
+        Assert.assertThat(metadata.getStatus(), is(StreamStatus.NOT_FOUND));
+
+        // Only one of them gets to create it.
+        Assert.assertThat(_logStreamStateDao.transitionStreamMetadata(metadata, StreamStatus.IN_PROGRESS), is(true));
+        Assert.assertThat(_logStreamStateDao.transitionStreamMetadata(competitor, StreamStatus.IN_PROGRESS), is(false));
+        Assert.assertThat(metadata.getVersion(), is(0L));
+
+        // The winner can carry on, but anybody holding on to an older read can't.
+        final StreamMetadata stale = _logStreamStateDao.findStreamMetadataById("foo");
+
+        metadata.setFileSize(1024L);
+        metadata.setContentVersion("v1");
+        metadata.setCrc32c("e3069283");
+        metadata.setSha256("15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225");
+        Assert.assertThat(_logStreamStateDao.transitionStreamMetadata(metadata, StreamStatus.SUCCESSFUL), is(true));
+        Assert.assertThat(_logStreamStateDao.transitionStreamMetadata(stale, StreamStatus.FAILED), is(false));
+
+        final StreamMetadata persisted = _logStreamStateDao.findStreamMetadataById("foo");
+        Assert.assertThat(persisted.getStatus(), is(StreamStatus.SUCCESSFUL));
+        Assert.assertThat(persisted.getVersion(), is(1L));
+        Assert.assertThat(persisted.getFileSize(), is(1024L));
+        Assert.assertThat(persisted.getContentVersion(), is("v1"));
+        Assert.assertThat(persisted.getCrc32c(), is("e3069283"));
+        Assert.assertThat(persisted.getSha256(), is(metadata.getSha256()));
+        Assert.assertThat(metadata.getVersion(), is(1L));
+
+        // A blind save bumps the version too, and keeps our creation time.
+        _logStreamStateDao.saveOrUpdateStreamMetadata(createMetadata("foo", StreamStatus.FAILED, 0L));
+
+        final StreamMetadata saved = _logStreamStateDao.findStreamMetadataById("foo");
+        Assert.assertThat(saved.getVersion(), is(2L));
+        Assert.assertThat(saved.getCreatedTime(), is(persisted.getCreatedTime()));
+        Assert.assertThat(saved.getContentVersion(), is(nullValue()));
+        Assert.assertThat(saved.getSha256(), is(nullValue()));
+
+        _logStreamStateDao.deleteStreamMetadataById("foo");
+        Assert.assertThat(_logStreamStateDao.findStreamMetadataById("foo").getStatus(), is(StreamStatus.NOT_FOUND));
+        Assert.assertThat(_logStreamStateDao.getStreamCount(), is(0L));
+    }
+
+    /**
+     * Tests {@link LogStreamStateDao#insertStreamMetadata(java.util.Collection)} and
+     * {@link LogStreamStateDao#findStreamMetadataByIds(java.util.Collection)}. Anything that already exists should be
+     * left alone, and anything unknown left out.
+     */
+    @Test
+    public void testInsertStreamMetadata() throws Exception
+    {
+        _logStreamStateDao.saveOrUpdateStreamMetadata(createMetadata("existing", StreamStatus.IN_PROGRESS, 1L));
+
+        Assert.assertThat(_logStreamStateDao.insertStreamMetadata(Arrays.asList(createMetadata("first", StreamStatus.SUCCESSFUL, 2L),
+                                                                                createMetadata("existing", StreamStatus.SUCCESSFUL, 3L))), is(1));
+
+        final List<StreamMetadata> metadata = _logStreamStateDao.findStreamMetadataByIds(Arrays.asList("existing", "first", "nobody"));
+
+        Assert.assertThat(metadata.size(), is(2));
+        Assert.assertThat(metadata.get(0).getStatus(), is(StreamStatus.IN_PROGRESS));
+        Assert.assertThat(metadata.get(1).getFileSize(), is(2L));
+    }
+
+    /**
+     * Tests {@link LogStreamStateDao#getStreamStatistics()}. Deleted streams shouldn't count, and updated ones should only
+     * count as they are now.
+     */
+    @Test
+    public void testGetStreamStatistics() throws Exception
+    {
+        _logStreamStateDao.saveOrUpdateStreamMetadata(createMetadata("foo", StreamStatus.IN_PROGRESS, 1L));
+        _logStreamStateDao.saveOrUpdateStreamMetadata(createMetadata("foo", StreamStatus.SUCCESSFUL, 10L));
+        _logStreamStateDao.saveOrUpdateStreamMetadata(createMetadata("bar", StreamStatus.FAILED, 5L));
+        _logStreamStateDao.saveOrUpdateStreamMetadata(createMetadata("baz", StreamStatus.IN_PROGRESS, 2L));
+        _logStreamStateDao.saveOrUpdateStreamMetadata(createMetadata("gone", StreamStatus.SUCCESSFUL, 100L));
+        _logStreamStateDao.deleteStreamMetadataById("gone");
+
+        final StreamStatistics statistics = _logStreamStateDao.getStreamStatistics();
+
+        Assert.assertThat(statistics.getSuccessfulCount(), is(1L));
+        Assert.assertThat(statistics.getInProgressCount(), is(1L));
+        Assert.assertThat(statistics.getFailedCount(), is(1L));
+        Assert.assertThat(statistics.getTotalBytes(), is(17L));
+    }
+
+    /**
+     * Tests {@link LogStreamStateDao#findStreamMetadata(StreamMetadataCriteria, String, int)}, page by page, with and
+     * without criteria.
+     */
+    @Test
+    public void testFindStreamMetadataForCriteria() throws Exception
+    {
+        for (final String id : Arrays.asList("a1", "a2", "b1", "b2", "b3", "c1"))
+        {
+            _logStreamStateDao.saveOrUpdateStreamMetadata(createMetadata(id, id.endsWith("1") ? StreamStatus.SUCCESSFUL : StreamStatus.FAILED, id.length()));
+        }
+
+        Assert.assertThat(findStreamIds(null, null, 4), is(Arrays.asList("a1", "a2", "b1", "b2")));
+        Assert.assertThat(findStreamIds(null, "b2", 4), is(Arrays.asList("b3", "c1")));
+
+        final StreamMetadataCriteria prefix = new StreamMetadataCriteria();
+        prefix.setPrefix("b");
+
+        Assert.assertThat(findStreamIds(prefix, null, 2), is(Arrays.asList("b1", "b2")));
+        Assert.assertThat(findStreamIds(prefix, "b2", 2), is(Arrays.asList("b3")));
+        Assert.assertThat(findStreamIds(prefix, "a1", 2), is(Arrays.asList("b1", "b2")));
+        Assert.assertThat(findStreamIds(prefix, "b3", 2).isEmpty(), is(true));
+
+        final StreamMetadataCriteria status = new StreamMetadataCriteria();
+        status.setStatus(StreamStatus.SUCCESSFUL);
+
+        Assert.assertThat(findStreamIds(status, null, 10), is(Arrays.asList("a1", "b1", "c1")));
+
+        status.setMinSize(3L);
+        Assert.assertThat(findStreamIds(status, null, 10).isEmpty(), is(true));
+
+        Assert.assertThat(_logStreamStateDao.findStreamMetadata().size(), is(6));
+    }
+
+    /**
+     * Tests that everything we've written survives a restart, deletes included.
+     */
+    @Test
+    public void testReopen() throws Exception
+    {
+        _logStreamStateDao.saveOrUpdateStreamMetadata(createMetadata("kept", StreamStatus.SUCCESSFUL, 1L));
+        _logStreamStateDao.saveOrUpdateStreamMetadata(createMetadata("kept", StreamStatus.SUCCESSFUL, 2L));
+        _logStreamStateDao.saveOrUpdateStreamMetadata(createMetadata("deleted", StreamStatus.SUCCESSFUL, 3L));
+        _logStreamStateDao.deleteStreamMetadataById("deleted");
+
+        final long deadBytes = _logStreamStateDao.getDeadBytes();
+        _logStreamStateDao.destroy();
+
+        _logStreamStateDao = open();
+
+        Assert.assertThat(_logStreamStateDao.getStreamCount(), is(1L));
+        Assert.assertThat(_logStreamStateDao.getDeadBytes(), is(deadBytes));
+        Assert.assertThat(_logStreamStateDao.findStreamMetadataById("kept").getFileSize(), is(2L));
+        Assert.assertThat(_logStreamStateDao.findStreamMetadataById("kept").getVersion(), is(1L));
+        Assert.assertThat(_logStreamStateDao.findStreamMetadataById("deleted").getStatus(), is(StreamStatus.NOT_FOUND));
+    }
+
+    /**
+     * Tests that a restart after a crash in the middle of a write (IE: half a record at the end of our log), or with the
+     * last record corrupted, keeps everything up to the damage and carries on appending from there.
+     */
+    @Test
+    public void testReopenForDamagedLog() throws Exception
+    {
+        _logStreamStateDao.saveOrUpdateStreamMetadata(createMetadata("first", StreamStatus.SUCCESSFUL, 1L));
+        final long good = _logStreamStateDao.getLogBytes();
+        _logStreamStateDao.saveOrUpdateStreamMetadata(createMetadata("second", StreamStatus.SUCCESSFUL, 2L));
+        _logStreamStateDao.destroy();
+
+        final File log = new File(_directory, LogStreamStateDao.LOG_FILE_NAME);
+
+        // Cut the second record short.
+        try (final RandomAccessFile file = new RandomAccessFile(log, "rw"))
+        {
+            file.setLength(file.length() - 3);
+        }
+
+        _logStreamStateDao = open();
+
+        Assert.assertThat(_logStreamStateDao.getLogBytes(), is(good));
+        Assert.assertThat(log.length(), is(good));
+        Assert.assertThat(_logStreamStateDao.findStreamMetadataById("second").getStatus(), is(StreamStatus.NOT_FOUND));
+
+        // We should be able to carry on from there, and then survive a flipped bit.
+        _logStreamStateDao.saveOrUpdateStreamMetadata(createMetadata("third", StreamStatus.SUCCESSFUL, 3L));
+        _logStreamStateDao.destroy();
+
+        try (final RandomAccessFile file = new RandomAccessFile(log, "rw"))
+        {
+            file.seek(good + StreamLog.HEADER_BYTES + 2);
+            final int value = file.read();
+            file.seek(good + StreamLog.HEADER_BYTES + 2);
+            file.write(value ^ 1);
+        }
+
+        _logStreamStateDao = open();
+
+        Assert.assertThat(_logStreamStateDao.getStreamCount(), is(1L));
+        Assert.assertThat(_logStreamStateDao.findStreamMetadataById("first").getFileSize(), is(1L));
+    }
+
+    /**
+     * Tests that a restart with a corrupt record in the middle of our log, IE: with good records after it, fails rather
+     * than truncating them away. Once somebody's dealt with it by hand, we should open again.
+     */
+    @Test
+    public void testReopenForCorruptMiddle() throws Exception
+    {
+        _logStreamStateDao.saveOrUpdateStreamMetadata(createMetadata("first", StreamStatus.SUCCESSFUL, 1L));
+        final long good = _logStreamStateDao.getLogBytes();
+        _logStreamStateDao.saveOrUpdateStreamMetadata(createMetadata("second", StreamStatus.SUCCESSFUL, 2L));
+        _logStreamStateDao.saveOrUpdateStreamMetadata(createMetadata("third", StreamStatus.SUCCESSFUL, 3L));
+        _logStreamStateDao.destroy();
+
+        final File log = new File(_directory, LogStreamStateDao.LOG_FILE_NAME);
+        final long length = log.length();
+
+        try (final RandomAccessFile file = new RandomAccessFile(log, "rw"))
+        {
+            file.seek(good + StreamLog.HEADER_BYTES + 2);
+            final int value = file.read();
+            file.seek(good + StreamLog.HEADER_BYTES + 2);
+            file.write(value ^ 1);
+        }
+
+        try
+        {
+            open();
+            Assert.fail("Whoops, we should have caught an exception here...");
+        }
+        catch (final IOException ex)
+        {
+            // Expected.
+        }
+
+        Assert.assertThat(log.length(), is(length));
+
+        try (final RandomAccessFile file = new RandomAccessFile(log, "rw"))
+        {
+            file.setLength(good);
+        }
+
+        _logStreamStateDao = open();
+
+        Assert.assertThat(_logStreamStateDao.getStreamCount(), is(1L));
+        Assert.assertThat(_logStreamStateDao.findStreamMetadataById("first").getFileSize(), is(1L));
+    }
+
+    /**
+     * Tests {@link LogStreamStateDao#compact()}, with writes landing while we do. We should end up with a smaller log
+     * holding exactly the latest state of every stream, before and after a restart.
+     */
+    @Test
+    public void testCompact() throws Exception
+    {
+        _logStreamStateDao.setCompactionMinimumBytes(1);
+
+        for (int i = 0; i < 1000; i++)
+        {
+            _logStreamStateDao.saveOrUpdateStreamMetadata(createMetadata("stream" + (i % 100), StreamStatus.SUCCESSFUL, i));
+        }
+
+        for (int i = 0; i < 10; i++)
+        {
+            _logStreamStateDao.deleteStreamMetadataById("stream" + i);
+        }
+
+        Assert.assertThat(_logStreamStateDao.needsCompaction(), is(true));
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final AtomicBoolean compacting = new AtomicBoolean(true);
+
+        try
+        {
+            // Keep rewriting (and deleting) a handful of streams until we're done, but not so much that we outgrow the log we
+            // started with.
+            final Future<Integer> writer = executor.submit(() -> {
+                int writes = 0;
+
+                while (compacting.get() && writes < 300)
+                {
+                    final String id = "stream" + (writes % 20);
+
+                    if (0 == writes % 7)
+                    {
+                        _logStreamStateDao.deleteStreamMetadataById(id);
+                    }
+                    else
+                    {
+                        _logStreamStateDao.saveOrUpdateStreamMetadata(createMetadata(id, StreamStatus.SUCCESSFUL, 10000 + writes));
+                    }
+
+                    writes++;
+                }
+
+                return writes;
+            });
+
+            final long before = _logStreamStateDao.getLogBytes();
+            Assert.assertThat(_logStreamStateDao.compact(), is(greaterThan(0L)));
+
+            // Make sure the writer is done before we measure, or it might still be appending.
+            compacting.set(false);
+            Assert.assertThat(writer.get(10, TimeUnit.SECONDS), is(greaterThan(0)));
+            Assert.assertThat(_logStreamStateDao.getLogBytes(), is(lessThan(before)));
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        Assert.assertThat(_logStreamStateDao.getCompactionCount(), is(1L));
+        Assert.assertThat(new File(_directory, LogStreamStateDao.COMPACTION_FILE_NAME).exists(), is(false));
+
+        final List<StreamMetadata> expected = _logStreamStateDao.findStreamMetadata();
+        _logStreamStateDao.destroy();
+        _logStreamStateDao = open();
+
+        final List<StreamMetadata> actual = _logStreamStateDao.findStreamMetadata();
+        Assert.assertThat(actual.size(), is(expected.size()));
+
+        for (int i = 0; i < expected.size(); i++)
+        {
+            Assert.assertThat(actual.get(i).getId(), is(expected.get(i).getId()));
+            Assert.assertThat(actual.get(i).getFileSize(), is(expected.get(i).getFileSize()));
+            Assert.assertThat(actual.get(i).getVersion(), is(expected.get(i).getVersion()));
+        }
+
+        Assert.assertThat(_logStreamStateDao.findStreamMetadataById("stream50").getFileSize(), is(950L));
+    }
+
+    /**
+     * Provides a convenience method to open a {@link LogStreamStateDao} on our directory.
+     *
+     * @return A started {@link LogStreamStateDao}. Will not be null.
+     */
+    private LogStreamStateDao open() throws Exception
+    {
+        final LogStreamStateDao logStreamStateDao = new LogStreamStateDao();
+        logStreamStateDao.setDirectory(_directory);
+        logStreamStateDao.init();
+
+        return logStreamStateDao;
+    }
+
+    /**
+     * Provides a convenience method to find the IDs on a page of streams.
+     *
+     * @param criteria The {@link StreamMetadataCriteria} to match. May be null.
+     * @param afterStreamId The ID of the last stream on the previous page. May be null.
+     * @param limit The size of the page.
+     *
+     * @return The IDs on the page, in order. Will not be null.
+     */
+    private List<String> findStreamIds(final StreamMetadataCriteria criteria, final String afterStreamId, final int limit) throws Exception
+    {
+        return _logStreamStateDao.findStreamMetadata(criteria, afterStreamId, limit).stream().map(StreamMetadata::getId).collect(toList());
+    }
+
+    /**
+     * Provides a convenience method to create a {@link StreamMetadata} as a one-liner.
+     *
+     * @param id The ID of the stream. Must be valid.
+     * @param status The {@link StreamStatus} of the stream. Must not be null.
+     * @param fileSize The size of the stream.
+     *
+     * @return A {@link StreamMetadata} with the given values. Will not be null.
+     */
+    private static StreamMetadata createMetadata(final String id, final StreamStatus status, final long fileSize)
+    {
+        final StreamMetadata metadata = new StreamMetadata();
+
+        metadata.setId(id);
+        metadata.setStatus(status);
+        metadata.setFileSize(fileSize);
+
+        return metadata;
+    }
+}
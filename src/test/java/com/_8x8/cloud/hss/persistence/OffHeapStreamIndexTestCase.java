@@ -0,0 +1,213 @@
+package com._8x8.cloud.hss.persistence;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamStatus;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests the {@link OffHeapStreamIndex}.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class OffHeapStreamIndexTestCase
+{
+    /**
+     * Tests that what we put in comes back out, field for field, with and without a content version and digests.
+     */
+    @Test
+    public void testPutAndGet() throws Exception
+    {
+        final OffHeapStreamIndex index = new OffHeapStreamIndex(100, 4);
+        final StreamMetadata metadata = createMetadata("foo", StreamStatus.SUCCESSFUL, 1);
+        metadata.setContentVersion("abc123");
+        metadata.setCrc32c("e3069283");
+        metadata.setSha256("15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225");
+
+        index.put(metadata);
+        index.put(createMetadata("bar", StreamStatus.IN_PROGRESS, 2));
+
+        assertMetadata(index.get("foo"), metadata);
+        assertMetadata(index.get("bar"), createMetadata("bar", StreamStatus.IN_PROGRESS, 2));
+        Assert.assertThat(index.get("baz"), is(nullValue()));
+        Assert.assertThat(index.size(), is(2L));
+
+        // Replacing an entry shouldn't add one, or leave the old content version (or digests) behind.
+        final StreamMetadata replacement = createMetadata("foo", StreamStatus.FAILED, 3);
+        index.put(replacement);
+
+        assertMetadata(index.get("foo"), replacement);
+        Assert.assertThat(index.size(), is(2L));
+
+        Assert.assertThat(index.remove("foo"), is(true));
+        Assert.assertThat(index.remove("foo"), is(false));
+        Assert.assertThat(index.get("foo"), is(nullValue()));
+        Assert.assertThat(index.size(), is(1L));
+    }
+
+    /**
+     * Tests a long run of random puts and removes against a single, small segment (so there are plenty of collisions,
+     * resizes and arena compactions) and checks that we agree with a {@link HashMap} doing the same.
+     */
+    @Test
+    public void testAgainstHashMap() throws Exception
+    {
+        final OffHeapStreamIndex index = new OffHeapStreamIndex(1, 1);
+        final Map<String, StreamMetadata> expected = new HashMap<>();
+        final Random random = new Random(42);
+
+        for (int i = 0; i < 50000; i++)
+        {
+            final String streamId = "stream-" + random.nextInt(2000);
+
+            if (random.nextInt(3) == 0)
+            {
+                Assert.assertThat(index.remove(streamId), is(null != expected.remove(streamId)));
+            }
+            else
+            {
+                final StreamMetadata metadata = createMetadata(streamId, StreamStatus.SUCCESSFUL, i);
+                metadata.setContentVersion(random.nextBoolean() ? null : "version-" + i);
+
+                if (random.nextBoolean())
+                {
+                    metadata.setCrc32c(String.format("%08x", random.nextInt()));
+                    metadata.setSha256(String.format("%064x", i));
+                }
+
+                index.put(metadata);
+                expected.put(streamId, metadata);
+            }
+        }
+
+        Assert.assertThat(index.size(), is((long) expected.size()));
+
+        for (int i = 0; i < 2000; i++)
+        {
+            final String streamId = "stream-" + i;
+            final StreamMetadata metadata = expected.get(streamId);
+
+            if (null == metadata)
+            {
+                Assert.assertThat(index.get(streamId), is(nullValue()));
+            }
+            else
+            {
+                assertMetadata(index.get(streamId), metadata);
+            }
+        }
+    }
+
+    /**
+     * Tests readers racing a writer that keeps resizing and shifting the same segment. Readers should only ever see
+     * whole entries, and always find the streams the writer leaves alone.
+     */
+    @Test
+    public void testConcurrentReaders() throws Exception
+    {
+        final OffHeapStreamIndex index = new OffHeapStreamIndex(1, 1);
+        final List<Thread> readers = new ArrayList<>();
+        final List<Throwable> failures = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++)
+        {
+            index.put(createMetadata("stable-" + i, StreamStatus.SUCCESSFUL, i));
+        }
+
+        for (int i = 0; i < 4; i++)
+        {
+            final Thread reader = new Thread(() -> {
+                for (int j = 0; j < 20000; j++)
+                {
+                    final StreamMetadata metadata = index.get("stable-" + j % 100);
+
+                    if (null == metadata || metadata.getVersion() != j % 100 || metadata.getFileSize() != j % 100)
+                    {
+                        synchronized (failures)
+                        {
+                            failures.add(new AssertionError("Bad entry for stable-" + j % 100));
+                        }
+
+                        return;
+                    }
+                }
+            });
+
+            readers.add(reader);
+            reader.start();
+        }
+
+        for (int i = 0; i < 20000; i++)
+        {
+            index.put(createMetadata("churn-" + i, StreamStatus.IN_PROGRESS, i));
+
+            if (i >= 50)
+            {
+                index.remove("churn-" + (i - 50));
+            }
+        }
+
+        for (final Thread reader : readers)
+        {
+            reader.join();
+        }
+
+        Assert.assertThat(failures.isEmpty(), is(true));
+        Assert.assertThat(index.size(), is(150L));
+    }
+
+    /**
+     * Tests {@link OffHeapStreamIndex#nextPowerOfTwo(int)}.
+     */
+    @Test
+    public void testNextPowerOfTwo() throws Exception
+    {
+        Assert.assertThat(OffHeapStreamIndex.nextPowerOfTwo(1), is(1));
+        Assert.assertThat(OffHeapStreamIndex.nextPowerOfTwo(3), is(4));
+        Assert.assertThat(OffHeapStreamIndex.nextPowerOfTwo(64), is(64));
+        Assert.assertThat(OffHeapStreamIndex.nextPowerOfTwo(65), is(128));
+    }
+
+    /**
+     * Provides a convenience method to compare every field of two {@link StreamMetadata}.
+     */
+    private static void assertMetadata(final StreamMetadata actual, final StreamMetadata expected)
+    {
+        Assert.assertThat(actual.getId(), is(expected.getId()));
+        Assert.assertThat(actual.getStatus(), is(expected.getStatus()));
+        Assert.assertThat(actual.getFileSize(), is(expected.getFileSize()));
+        Assert.assertThat(actual.getCreatedTime(), is(expected.getCreatedTime()));
+        Assert.assertThat(actual.getLastModified(), is(expected.getLastModified()));
+        Assert.assertThat(actual.getVersion(), is(expected.getVersion()));
+        Assert.assertThat(actual.getContentVersion(), is(expected.getContentVersion()));
+        Assert.assertThat(actual.getCrc32c(), is(expected.getCrc32c()));
+        Assert.assertThat(actual.getSha256(), is(expected.getSha256()));
+    }
+
+    /**
+     * Provides a convenience method to create a {@link StreamMetadata} whose numbers are all based on a given seed.
+     */
+    private static StreamMetadata createMetadata(final String id, final StreamStatus status, final long seed)
+    {
+        final StreamMetadata metadata = new StreamMetadata();
+
+        metadata.setId(id);
+        metadata.setStatus(status);
+        metadata.setFileSize(seed);
+        metadata.setCreatedTime(1000 + seed);
+        metadata.setLastModified(2000 + seed);
+        metadata.setVersion(seed);
+
+        return metadata;
+    }
+}
@@ -0,0 +1,204 @@
+package com._8x8.cloud.hss.persistence;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamStatus;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+/**
+ * Tests the {@link OffHeapStreamStateDao} at the unit level, in front of a mock DAO.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class OffHeapStreamStateDaoTestCase
+{
+    /**
+     * Holds an instance of the class under test.
+     */
+    private OffHeapStreamStateDao _offHeapStreamStateDao;
+
+    /**
+     * Holds a collaborating {@link IStreamStateDao} we can mock, standing in for the database.
+     */
+    private IStreamStateDao _streamStateDao;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _streamStateDao = mock(IStreamStateDao.class);
+        doAnswer(invocation -> createMetadata((String) invocation.getArguments()[0], (StreamStatus) invocation.getArguments()[1]))
+                .when(_streamStateDao).createStreamMetadata(anyString(), any(StreamStatus.class));
+
+        _offHeapStreamStateDao = new OffHeapStreamStateDao();
+        _offHeapStreamStateDao.setStreamStateDao(_streamStateDao);
+        _offHeapStreamStateDao.setIndex(new OffHeapStreamIndex(100, 4));
+    }
+
+    /**
+     * Tests {@link OffHeapStreamStateDao#findStreamMetadataById(String)} before we've loaded. We don't know anything
+     * yet, so everything should go to the database.
+     */
+    @Test
+    public void testFindStreamMetadataByIdForNotLoaded() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata("foo", StreamStatus.SUCCESSFUL);
+        doReturn(metadata).when(_streamStateDao).findStreamMetadataById("foo");
+
+
+        Assert.assertThat(_offHeapStreamStateDao.findStreamMetadataById("foo"), is(metadata));
+        Assert.assertThat(_offHeapStreamStateDao.isLoaded(), is(false));
+        Assert.assertThat(_offHeapStreamStateDao.getMissCount(), is(1L));
+
+        verify(_streamStateDao).findStreamMetadataById("foo");
+        verifyNoMoreInteractions(_streamStateDao);
+    }
+
+    /**
+     * Tests {@link OffHeapStreamStateDao#findStreamMetadataById(String)} and
+     * {@link OffHeapStreamStateDao#findStreamMetadataByIds(java.util.Collection)} once we've loaded. Everything should
+     * come from our index, including streams that don't exist.
+     */
+    @Test
+    public void testFindStreamMetadataByIdForLoaded() throws Exception
+    {
+        final StreamMetadata foo = createMetadata("foo", StreamStatus.SUCCESSFUL);
+        foo.setFileSize(42);
+        foo.setContentVersion("abc");
+
+        doReturn(Arrays.asList(foo, createMetadata("bar", StreamStatus.IN_PROGRESS))).when(_streamStateDao).findStreamMetadata(null, null, OffHeapStreamStateDao.LOAD_PAGE_SIZE);
+
+        Assert.assertThat(_offHeapStreamStateDao.load(), is(2L));
+
+        final StreamMetadata found = _offHeapStreamStateDao.findStreamMetadataById("foo");
+        Assert.assertThat(found.getStatus(), is(StreamStatus.SUCCESSFUL));
+        Assert.assertThat(found.getFileSize(), is(42L));
+        Assert.assertThat(found.getContentVersion(), is("abc"));
+
+        Assert.assertThat(_offHeapStreamStateDao.findStreamMetadataById("baz").getStatus(), is(StreamStatus.NOT_FOUND));
+
+        final List<StreamMetadata> byIds = _offHeapStreamStateDao.findStreamMetadataByIds(Arrays.asList("bar", "baz"));
+        Assert.assertThat(byIds.size(), is(1));
+        Assert.assertThat(byIds.get(0).getId(), is("bar"));
+
+        Assert.assertThat(_offHeapStreamStateDao.getHitCount(), is(4L));
+        Assert.assertThat(_offHeapStreamStateDao.getMissCount(), is(0L));
+
+        verify(_streamStateDao).findStreamMetadata(null, null, OffHeapStreamStateDao.LOAD_PAGE_SIZE);
+        verify(_streamStateDao, times(2)).createStreamMetadata("baz", StreamStatus.NOT_FOUND);
+        verifyNoMoreInteractions(_streamStateDao);
+    }
+
+    /**
+     * Tests that writes refresh our index from the database, and that deletes take streams out of it.
+     */
+    @Test
+    public void testWrites() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata("foo", StreamStatus.NOT_FOUND);
+
+        doReturn(Collections.emptyList()).when(_streamStateDao).findStreamMetadata(null, null, OffHeapStreamStateDao.LOAD_PAGE_SIZE);
+        doReturn(true).when(_streamStateDao).transitionStreamMetadata(metadata, StreamStatus.IN_PROGRESS);
+        doReturn(createMetadata("foo", StreamStatus.IN_PROGRESS)).when(_streamStateDao).findStreamMetadataById("foo");
+
+        _offHeapStreamStateDao.load();
+
+        Assert.assertThat(_offHeapStreamStateDao.transitionStreamMetadata(metadata, StreamStatus.IN_PROGRESS), is(true));
+        Assert.assertThat(_offHeapStreamStateDao.findStreamMetadataById("foo").getStatus(), is(StreamStatus.IN_PROGRESS));
+        Assert.assertThat(_offHeapStreamStateDao.getSize(), is(1L));
+
+        doReturn(createMetadata("foo", StreamStatus.NOT_FOUND)).when(_streamStateDao).findStreamMetadataById("foo");
+
+        _offHeapStreamStateDao.deleteStreamMetadataById("foo");
+        Assert.assertThat(_offHeapStreamStateDao.findStreamMetadataById("foo").getStatus(), is(StreamStatus.NOT_FOUND));
+        Assert.assertThat(_offHeapStreamStateDao.getSize(), is(0L));
+
+        verify(_streamStateDao).findStreamMetadata(null, null, OffHeapStreamStateDao.LOAD_PAGE_SIZE);
+        verify(_streamStateDao).transitionStreamMetadata(metadata, StreamStatus.IN_PROGRESS);
+        verify(_streamStateDao).deleteStreamMetadataById("foo");
+        verify(_streamStateDao, times(2)).findStreamMetadataById("foo");
+        verify(_streamStateDao).createStreamMetadata("foo", StreamStatus.NOT_FOUND);
+        verifyNoMoreInteractions(_streamStateDao);
+    }
+
+    /**
+     * Tests a write that lands while we're loading, after the load has read the stream. The load shouldn't put back
+     * what it read.
+     */
+    @Test
+    public void testLoadForConcurrentWrite() throws Exception
+    {
+        final StreamMetadata stale = createMetadata("foo", StreamStatus.IN_PROGRESS);
+
+        doAnswer(invocation -> {
+            // Somebody finishes the upload between our read and our put.
+            _offHeapStreamStateDao.saveOrUpdateStreamMetadata(createMetadata("foo", StreamStatus.SUCCESSFUL));
+            return Collections.singletonList(stale);
+        }).when(_streamStateDao).findStreamMetadata(null, null, OffHeapStreamStateDao.LOAD_PAGE_SIZE);
+
+        doReturn(createMetadata("foo", StreamStatus.SUCCESSFUL)).when(_streamStateDao).findStreamMetadataById("foo");
+
+        _offHeapStreamStateDao.load();
+
+        Assert.assertThat(_offHeapStreamStateDao.findStreamMetadataById("foo").getStatus(), is(StreamStatus.SUCCESSFUL));
+    }
+
+    /**
+     * Tests a refresh that fails. We shouldn't trust our entry until a later one succeeds, and should pass lookups
+     * through to the database in the meantime.
+     */
+    @Test
+    public void testRefreshForFailure() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata("foo", StreamStatus.IN_PROGRESS);
+
+        doReturn(Collections.singletonList(metadata)).when(_streamStateDao).findStreamMetadata(null, null, OffHeapStreamStateDao.LOAD_PAGE_SIZE);
+        doThrow(new SQLException("Nope")).when(_streamStateDao).findStreamMetadataById("foo");
+
+        _offHeapStreamStateDao.load();
+
+        _offHeapStreamStateDao.saveOrUpdateStreamMetadata(metadata);
+        Assert.assertThat(_offHeapStreamStateDao.getUntrustedCount(), is(1));
+
+        // The database is back, so we should pick the stream back up.
+        doReturn(createMetadata("foo", StreamStatus.SUCCESSFUL)).when(_streamStateDao).findStreamMetadataById("foo");
+
+        Assert.assertThat(_offHeapStreamStateDao.findStreamMetadataById("foo").getStatus(), is(StreamStatus.SUCCESSFUL));
+        Assert.assertThat(_offHeapStreamStateDao.getUntrustedCount(), is(0));
+
+        verify(_streamStateDao).findStreamMetadata(null, null, OffHeapStreamStateDao.LOAD_PAGE_SIZE);
+        verify(_streamStateDao).saveOrUpdateStreamMetadata(metadata);
+        verify(_streamStateDao, times(2)).findStreamMetadataById("foo");
+        verifyNoMoreInteractions(_streamStateDao);
+    }
+
+    /**
+     * Provides a convenience method to create a {@link StreamMetadata}.
+     */
+    private static StreamMetadata createMetadata(final String id, final StreamStatus status)
+    {
+        final StreamMetadata metadata = new StreamMetadata();
+
+        metadata.setId(id);
+        metadata.setStatus(status);
+
+        return metadata;
+    }
+}
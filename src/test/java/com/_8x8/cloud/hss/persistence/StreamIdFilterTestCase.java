@@ -0,0 +1,75 @@
+package com._8x8.cloud.hss.persistence;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * Tests the {@link StreamIdFilter} at the unit level.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamIdFilterTestCase
+{
+    /**
+     * Tests {@link StreamIdFilter#StreamIdFilter(long, double)} to make sure we size ourselves the usual way: for 1%,
+     * that's a bit under 10 bits and 7 hashes per ID.
+     */
+    @Test
+    public void testSizing() throws Exception
+    {
+        final StreamIdFilter filter = new StreamIdFilter(1000, 0.01);
+
+        Assert.assertThat(filter.getBitCount(), is(9600L));
+        Assert.assertThat(filter.getHashCount(), is(7));
+        Assert.assertThat(filter.size(), is(0L));
+    }
+
+    /**
+     * Tests {@link StreamIdFilter#mightContain(String)} once we're full. Everything we put in should be there, and
+     * anything else should only show up at about the rate we were sized for.
+     */
+    @Test
+    public void testMightContain() throws Exception
+    {
+        final StreamIdFilter filter = new StreamIdFilter(10000, 0.01);
+        final String[] ids = IntStream.range(0, 10000).mapToObj(i -> UUID.randomUUID().toString()).toArray(String[]::new);
+
+        for (final String id : ids)
+        {
+            filter.put(id);
+        }
+
+        for (final String id : ids)
+        {
+            Assert.assertThat(filter.mightContain(id), is(true));
+        }
+
+        final long falsePositives = IntStream.range(0, 100000).filter(i -> filter.mightContain(UUID.randomUUID().toString())).count();
+
+        // We'd expect about 1000, leave some slack for bad luck.
+        Assert.assertThat(falsePositives, is(lessThan(1500L)));
+        Assert.assertThat(filter.size(), is(10000L));
+    }
+
+    /**
+     * Tests {@link StreamIdFilter#put(String)} from several threads at once, since the bits for different IDs share
+     * words. We shouldn't lose any of them.
+     */
+    @Test
+    public void testPutConcurrently() throws Exception
+    {
+        final StreamIdFilter filter = new StreamIdFilter(100, 0.01);
+
+        IntStream.range(0, 10000).parallel().forEach(i -> filter.put("stream-" + i));
+
+        Assert.assertThat(IntStream.range(0, 10000).allMatch(i -> filter.mightContain("stream-" + i)), is(true));
+        Assert.assertThat(filter.size(), is(10000L));
+    }
+}
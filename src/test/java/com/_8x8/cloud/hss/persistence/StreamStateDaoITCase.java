@@ -1,28 +1,56 @@
 package com._8x8.cloud.hss.persistence;
 
 import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
+import com._8x8.cloud.hss.model.StreamStatistics;
 import com._8x8.cloud.hss.model.StreamStatus;
 import com.fasterxml.jackson.databind.AnnotationIntrospector;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
 import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
+import com.mchange.v2.c3p0.PooledDataSource;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import javax.annotation.Resource;
+import javax.sql.DataSource;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
 
 /**
  * Tests the {@link StreamStateDao} at the integration level.
@@ -111,6 +139,35 @@ public class StreamStateDaoITCase
         _streamStateDao.deleteStreamMetadataById(uuid);
     }
 
+    /**
+     * Tests {@link StreamStateDao#saveOrUpdateStreamMetadata(StreamMetadata)} to make sure we round-trip the content
+     * version, including swapping it on update.
+     **/
+    @Test
+    public void testSaveOrUpdateStreamMetadataForContentVersion() throws Exception
+    {
+        final String uuid = UUID.randomUUID().toString();
+
+        // Streams from before versioning won't have one.
+        final StreamMetadata metadata = createMetadata(uuid, StreamStatus.SUCCESSFUL, 1024L, System.currentTimeMillis(), System.currentTimeMillis());
+        _streamStateDao.saveOrUpdateStreamMetadata(metadata);
+        assertMetadataSimilar(metadata, _streamStateDao.findStreamMetadataById(uuid));
+
+        // Swap it in, along with its digests...
+        metadata.setContentVersion(UUID.randomUUID().toString());
+        metadata.setCrc32c("e3069283");
+        metadata.setSha256("15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225");
+        _streamStateDao.saveOrUpdateStreamMetadata(metadata);
+        assertMetadataSimilar(metadata, _streamStateDao.findStreamMetadataById(uuid));
+
+        // And swap it again.
+        metadata.setContentVersion(UUID.randomUUID().toString());
+        _streamStateDao.saveOrUpdateStreamMetadata(metadata);
+        assertMetadataSimilar(metadata, _streamStateDao.findStreamMetadataById(uuid));
+
+        _streamStateDao.deleteStreamMetadataById(uuid);
+    }
+
     /**
      * Tests {@link StreamStateDao#saveOrUpdateStreamMetadata(StreamMetadata)} for the case where we're updating a record.
      **/
@@ -155,6 +212,143 @@ public class StreamStateDaoITCase
         _streamStateDao.deleteStreamMetadataById(uuid);
     }
 
+    /**
+     * Tests {@link StreamStateDao#transitionStreamMetadata(StreamMetadata, StreamStatus)} through the lifecycle of a
+     * stream, including somebody trying to transition from a copy of the metadata that's gone stale.
+     **/
+    @Test
+    public void testTransitionStreamMetadata() throws Exception
+    {
+        final String uuid = UUID.randomUUID().toString();
+
+        // Two writers read the same, unknown, stream...
+        final StreamMetadata metadata = _streamStateDao.findStreamMetadataById(uuid);
+        final StreamMetadata competitor = _streamStateDao.findStreamMetadataById(uuid);
+
+        // Only one of them gets to create it.
+        Assert.assertThat(_streamStateDao.transitionStreamMetadata(metadata, StreamStatus.IN_PROGRESS), is(true));
+        Assert.assertThat(_streamStateDao.transitionStreamMetadata(competitor, StreamStatus.IN_PROGRESS), is(false));
+        assertMetadataSimilar(metadata, _streamStateDao.findStreamMetadataById(uuid));
+
+        // The winner can carry on.
+        final StreamMetadata stale = _streamStateDao.findStreamMetadataById(uuid);
+
+        metadata.setFileSize(1024L);
+        metadata.setContentVersion(UUID.randomUUID().toString());
+        metadata.setCrc32c("e3069283");
+        metadata.setSha256("15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225");
+        Assert.assertThat(_streamStateDao.transitionStreamMetadata(metadata, StreamStatus.SUCCESSFUL), is(true));
+        assertMetadataSimilar(metadata, _streamStateDao.findStreamMetadataById(uuid));
+        Assert.assertThat(_streamStateDao.findStreamMetadataById(uuid).getVersion(), is(1L));
+
+        // But anybody holding on to an older read can't.
+        Assert.assertThat(_streamStateDao.transitionStreamMetadata(stale, StreamStatus.FAILED), is(false));
+        assertMetadataSimilar(metadata, _streamStateDao.findStreamMetadataById(uuid));
+
+        // Nor can anybody whose version matches, but whose status doesn't.
+        final StreamMetadata mismatched = _streamStateDao.findStreamMetadataById(uuid);
+        mismatched.setStatus(StreamStatus.IN_PROGRESS);
+        Assert.assertThat(_streamStateDao.transitionStreamMetadata(mismatched, StreamStatus.FAILED), is(false));
+
+        // A blind save bumps the version too, so it also counts as a change.
+        final StreamMetadata beforeSave = _streamStateDao.findStreamMetadataById(uuid);
+        _streamStateDao.saveOrUpdateStreamMetadata(metadata);
+        Assert.assertThat(_streamStateDao.transitionStreamMetadata(beforeSave, StreamStatus.IN_PROGRESS), is(false));
+
+        _streamStateDao.deleteStreamMetadataById(uuid);
+    }
+
+    /**
+     * Tests {@link StreamStateDao#transitionStreamMetadata(List)}, with every kind of transition in a single batch. Each
+     * should succeed or fail on its own, exactly as it would have outside of a batch.
+     **/
+    @Test
+    public void testTransitionStreamMetadataForBatch() throws Exception
+    {
+        final String created = UUID.randomUUID().toString();
+        final String updated = UUID.randomUUID().toString();
+        final String deleted = UUID.randomUUID().toString();
+
+        _streamStateDao.saveOrUpdateStreamMetadata(createMetadata(updated, StreamStatus.IN_PROGRESS, 0L, 0L, 0L));
+        _streamStateDao.saveOrUpdateStreamMetadata(createMetadata(deleted, StreamStatus.SUCCESSFUL, 0L, 0L, 0L));
+
+        final StreamMetadata create = _streamStateDao.findStreamMetadataById(created);
+        final StreamMetadata update = _streamStateDao.findStreamMetadataById(updated);
+        final StreamMetadata stale = _streamStateDao.findStreamMetadataById(updated);
+        final StreamMetadata duplicate = _streamStateDao.findStreamMetadataById("BusyFile");
+        duplicate.setStatus(StreamStatus.NOT_FOUND);
+
+        update.setFileSize(1024L);
+
+        final boolean[] transitioned = _streamStateDao.transitionStreamMetadata(Arrays.asList(new StreamTransition(create, StreamStatus.IN_PROGRESS),
+                                                                                              new StreamTransition(update, StreamStatus.SUCCESSFUL),
+                                                                                              new StreamTransition(duplicate, StreamStatus.IN_PROGRESS),
+                                                                                              new StreamTransition(stale, StreamStatus.FAILED),
+                                                                                              new StreamTransition(_streamStateDao.createStreamMetadata(deleted, StreamStatus.NOT_FOUND), StreamStatus.NOT_FOUND)));
+
+        // Creating BusyFile, and the stale update, should have lost. Everything else should have gone through.
+        Assert.assertThat(transitioned[0], is(true));
+        Assert.assertThat(transitioned[1], is(true));
+        Assert.assertThat(transitioned[2], is(false));
+        Assert.assertThat(transitioned[3], is(false));
+        Assert.assertThat(transitioned[4], is(true));
+
+        // Winners should have their metadata brought up to date, and losers should be left as they were.
+        Assert.assertThat(create.getStatus(), is(StreamStatus.IN_PROGRESS));
+        Assert.assertThat(create.getVersion(), is(0L));
+        Assert.assertThat(update.getStatus(), is(StreamStatus.SUCCESSFUL));
+        Assert.assertThat(update.getVersion(), is(stale.getVersion() + 1));
+        Assert.assertThat(stale.getStatus(), is(StreamStatus.IN_PROGRESS));
+        Assert.assertThat(duplicate.getStatus(), is(StreamStatus.NOT_FOUND));
+
+        assertMetadataSimilar(create, _streamStateDao.findStreamMetadataById(created));
+        assertMetadataSimilar(update, _streamStateDao.findStreamMetadataById(updated));
+        Assert.assertThat(_streamStateDao.findStreamMetadataById("BusyFile").getStatus(), is(StreamStatus.IN_PROGRESS));
+        assertMetadataUnknown(_streamStateDao.findStreamMetadataById(deleted), deleted);
+
+        _streamStateDao.deleteStreamMetadataById(created);
+        _streamStateDao.deleteStreamMetadataById(updated);
+    }
+
+    /**
+     * Tests {@link StreamStateDao#insertStreamMetadata(Collection)} and {@link StreamStateDao#findStreamMetadataByIds(Collection)}
+     * together. Anything that already exists should be left alone, and lookups should find everything however many
+     * queries they're split across.
+     **/
+    @Test
+    public void testInsertStreamMetadata() throws Exception
+    {
+        final String first = UUID.randomUUID().toString();
+        final String second = UUID.randomUUID().toString();
+
+        final StreamMetadata busy = _streamStateDao.findStreamMetadataById("BusyFile");
+        final StreamMetadata clobber = createMetadata("BusyFile", StreamStatus.SUCCESSFUL, 1L, 0L, 0L);
+
+        Assert.assertThat(_streamStateDao.insertStreamMetadata(Arrays.asList(createMetadata(first, StreamStatus.SUCCESSFUL, 512L, 0L, 0L),
+                                                                             createMetadata(second, StreamStatus.SUCCESSFUL, 4096L, 0L, 0L),
+                                                                             clobber)), is(2));
+
+        // Put plenty of nobodies between our streams, so they're looked up by different queries.
+        final List<String> ids = new ArrayList<>(Arrays.asList(first, "BusyFile"));
+        ids.addAll(Collections.nCopies(StreamStateDao.MAX_IDS_PER_QUERY, "Nobody"));
+        ids.add(second);
+
+        final List<StreamMetadata> metadata = _streamStateDao.findStreamMetadataByIds(ids).stream()
+                                                             .sorted((lhs, rhs) -> Long.compare(lhs.getFileSize(), rhs.getFileSize()))
+                                                             .collect(toList());
+
+        // Nobody doesn't exist, and BusyFile shouldn't have been touched.
+        Assert.assertThat(metadata.size(), is(3));
+        Assert.assertThat(metadata.get(0).getId(), is(first));
+        Assert.assertThat(metadata.get(1).getId(), is(busy.getId()));
+        Assert.assertThat(metadata.get(1).getStatus(), is(busy.getStatus()));
+        Assert.assertThat(metadata.get(1).getVersion(), is(busy.getVersion()));
+        Assert.assertThat(metadata.get(2).getId(), is(second));
+
+        _streamStateDao.deleteStreamMetadataById(first);
+        _streamStateDao.deleteStreamMetadataById(second);
+    }
+
     /**
      * Tests {@link StreamStateDao#deleteStreamMetadataById(String)} for the case where we're deleting a known stream.
      **/
@@ -226,6 +420,28 @@ public class StreamStateDaoITCase
         Assert.assertThat(_objectMapper.writeValueAsString(metadata), is(knownGoodData));
     }
 
+    /**
+     * Tests {@link StreamStateDao#getStreamStatistics()}, which should add up to the same thing as going through the
+     * listing ourselves.
+     **/
+    @Test
+    public void testGetStreamStatistics() throws Exception
+    {
+        final String uuid = UUID.randomUUID().toString();
+        _streamStateDao.saveOrUpdateStreamMetadata(createMetadata(uuid, StreamStatus.FAILED, 1024L, 0L, 0L));
+
+        final List<StreamMetadata> metadata = _streamStateDao.findStreamMetadata();
+        final StreamStatistics statistics = _streamStateDao.getStreamStatistics();
+
+        Assert.assertThat(statistics.getStreamCount(), is((long) metadata.size()));
+        Assert.assertThat(statistics.getFailedCount(), is(metadata.stream().filter(streamMetadata -> StreamStatus.FAILED == streamMetadata.getStatus()).count()));
+        Assert.assertThat(statistics.getSuccessfulCount(), is(metadata.stream().filter(streamMetadata -> StreamStatus.SUCCESSFUL == streamMetadata.getStatus()).count()));
+        Assert.assertThat(statistics.getTotalBytes(), is(metadata.stream().mapToLong(StreamMetadata::getFileSize).sum()));
+        Assert.assertThat(statistics.getFailedCount(), is(greaterThanOrEqualTo(1L)));
+
+        _streamStateDao.deleteStreamMetadataById(uuid);
+    }
+
     /**
      * Tests {@link StreamStateDao#findStreamMetadata()} for the case where no metadata is known to the system.
      **/
@@ -251,6 +467,333 @@ public class StreamStateDaoITCase
         Assert.assertThat(2, is(_streamStateDao.findStreamMetadata().size()));
     }
 
+    /**
+     * Tests {@link StreamStateDao#findStreamMetadata(StreamMetadataCriteria, String, int)} by paging through the system one stream at a time.
+     * We should see each stream exactly once, in ID order, and then run out.
+     **/
+    @Test
+    public void testFindStreamMetadataForPages() throws Exception
+    {
+        final List<StreamMetadata> first = _streamStateDao.findStreamMetadata(null, null, 1);
+        Assert.assertThat(first.size(), is(1));
+        Assert.assertThat(first.get(0).getId(), is("BusyFile"));
+
+        final List<StreamMetadata> second = _streamStateDao.findStreamMetadata(null, "BusyFile", 1);
+        Assert.assertThat(second.size(), is(1));
+        Assert.assertThat(second.get(0).getId(), is("DoneFile"));
+
+        Assert.assertThat(_streamStateDao.findStreamMetadata(null, "DoneFile", 1).size(), is(0));
+
+        // A bigger page should just give us everything.
+        Assert.assertThat(_streamStateDao.findStreamMetadata(null, null, 10).size(), is(2));
+    }
+
+    /**
+     * Tests {@link StreamStateDao#findStreamMetadata(StreamMetadataCriteria, String, int)} for each of our criteria, on
+     * its own and in combination.
+     **/
+    @Test
+    public void testFindStreamMetadataForCriteria() throws Exception
+    {
+        final long now = System.currentTimeMillis();
+        final long anHourAgo = now - TimeUnit.HOURS.toMillis(1);
+
+        final StreamMetadataCriteria criteria = new StreamMetadataCriteria();
+        Assert.assertThat(findStreamIds(criteria), is(Arrays.asList("BusyFile", "DoneFile")));
+
+        criteria.setStatus(StreamStatus.SUCCESSFUL);
+        Assert.assertThat(findStreamIds(criteria), is(Collections.singletonList("DoneFile")));
+
+        // Our dashboard query: everything in a given state, over the last hour.
+        criteria.setStatus(StreamStatus.IN_PROGRESS);
+        criteria.setModifiedAfter(anHourAgo);
+        Assert.assertThat(findStreamIds(criteria), is(Collections.singletonList("BusyFile")));
+
+        criteria.setModifiedAfter(null);
+        criteria.setModifiedBefore(anHourAgo);
+        Assert.assertThat(findStreamIds(criteria).isEmpty(), is(true));
+
+        // Sizes are inclusive at the bottom, and exclusive at the top.
+        final StreamMetadataCriteria size = new StreamMetadataCriteria();
+        size.setMinSize(1024L);
+        size.setMaxSize(2048L);
+        Assert.assertThat(findStreamIds(size), is(Collections.singletonList("BusyFile")));
+
+        size.setMaxSize(null);
+        size.setMinSize(1025L);
+        Assert.assertThat(findStreamIds(size), is(Collections.singletonList("DoneFile")));
+
+        final StreamMetadataCriteria created = new StreamMetadataCriteria();
+        created.setCreatedAfter(anHourAgo);
+        created.setCreatedBefore(now + TimeUnit.HOURS.toMillis(1));
+        Assert.assertThat(findStreamIds(created), is(Arrays.asList("BusyFile", "DoneFile")));
+
+        created.setCreatedAfter(now + TimeUnit.HOURS.toMillis(1));
+        created.setCreatedBefore(null);
+        Assert.assertThat(findStreamIds(created).isEmpty(), is(true));
+
+        final StreamMetadataCriteria prefix = new StreamMetadataCriteria();
+        prefix.setPrefix("Busy");
+        Assert.assertThat(findStreamIds(prefix), is(Collections.singletonList("BusyFile")));
+
+        prefix.setPrefix("File");
+        Assert.assertThat(findStreamIds(prefix).isEmpty(), is(true));
+
+        // And our criteria should still hold when paging.
+        final StreamMetadataCriteria failed = new StreamMetadataCriteria();
+        failed.setModifiedAfter(anHourAgo);
+        Assert.assertThat(_streamStateDao.findStreamMetadata(failed, "BusyFile", 10).stream().map(StreamMetadata::getId).collect(toList()),
+                          is(Collections.singletonList("DoneFile")));
+    }
+
+    /**
+     * Tests {@link StreamStateDao#findStreamMetadata(StreamMetadataCriteria, String, int)} by asking HSQL how it would
+     * run the query for each of our criteria. None of them should involve a full scan.
+     **/
+    @Test
+    public void testFindStreamMetadataForQueryPlans() throws Exception
+    {
+        final StreamMetadataCriteria status = new StreamMetadataCriteria();
+        status.setStatus(StreamStatus.FAILED);
+        assertIndexed(status, "IDX_STREAM_STATUS_STATUS");
+
+        status.setModifiedAfter(System.currentTimeMillis());
+        assertIndexed(status, "IDX_STREAM_STATUS_STATUS");
+
+        final StreamMetadataCriteria modified = new StreamMetadataCriteria();
+        modified.setModifiedAfter(System.currentTimeMillis());
+        modified.setModifiedBefore(System.currentTimeMillis());
+        assertIndexed(modified, "IDX_STREAM_STATUS_LAST_UPDATED");
+
+        final StreamMetadataCriteria created = new StreamMetadataCriteria();
+        created.setCreatedAfter(System.currentTimeMillis());
+        assertIndexed(created, "IDX_STREAM_STATUS_CREATED");
+
+        final StreamMetadataCriteria size = new StreamMetadataCriteria();
+        size.setMinSize(1024L);
+        size.setMaxSize(2048L);
+        assertIndexed(size, "IDX_STREAM_STATUS_SIZE");
+
+        // The prefix is a range on our primary key.
+        final StreamMetadataCriteria prefix = new StreamMetadataCriteria();
+        prefix.setPrefix("Busy");
+        assertIndexed(prefix, "SYS_IDX_SYS_PK");
+    }
+
+    /**
+     * Tests {@link StreamStateDao#findStreamMetadataById(String)} with a lot more concurrent callers than our pool has
+     * connections. Everybody should get the right answer, and the pool should stay within its bounds.
+     **/
+    @Test
+    public void testFindStreamMetadataByIdForConcurrentClients() throws Exception
+    {
+        final int clients = 64;
+        final ExecutorService executor = Executors.newFixedThreadPool(clients);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<Void>> futures = new ArrayList<>();
+
+        try
+        {
+            for (int client = 0; client < clients; client++)
+            {
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    start.await();
+
+                    for (int lookup = 0; lookup < 10; lookup++)
+                    {
+                        Assert.assertThat(_streamStateDao.findStreamMetadataById("DoneFile").getStatus(), is(StreamStatus.SUCCESSFUL));
+                    }
+
+                    return null;
+                }));
+            }
+
+            start.countDown();
+
+            for (final Future<Void> future : futures)
+            {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        final PooledDataSource dataSource = (PooledDataSource) _streamStateDao.getDataSource();
+
+        // c3p0 checks connections back in on its helper threads, so give it a moment to catch up.
+        final long deadline = System.currentTimeMillis() + 5000;
+
+        while (dataSource.getNumBusyConnectionsDefaultUser() > 0 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+
+        Assert.assertThat(dataSource.getNumConnectionsDefaultUser(), is(lessThanOrEqualTo(32)));
+        Assert.assertThat(dataSource.getNumBusyConnectionsDefaultUser(), is(0));
+        Assert.assertThat(dataSource.getNumThreadsAwaitingCheckoutDefaultUser(), is(0));
+    }
+
+    /**
+     * Tests our durable schema (see <code>schema-durable.sql</code>) across a restart. We stand up our own file-backed
+     * database for this, rather than the in-memory one our context uses.
+     **/
+    @Test
+    public void testDurableRestart() throws Exception
+    {
+        final File directory = Files.createTempDirectory("hss-db").toFile();
+        final String url = "jdbc:hsqldb:file:" + new File(directory, "hss").getPath();
+        final String uuid = UUID.randomUUID().toString();
+
+        try
+        {
+            // First start: create everything, write something, and go down cleanly.
+            final StreamStateDao before = createDurableStreamStateDao(url);
+            final StreamMetadata metadata = createMetadata(uuid, StreamStatus.SUCCESSFUL, 8675309L, System.currentTimeMillis(), System.currentTimeMillis());
+
+            before.saveOrUpdateStreamMetadata(metadata);
+
+            final DatabaseCheckpointer checkpointer = new DatabaseCheckpointer();
+            checkpointer.setDataSource(before.getDataSource());
+            checkpointer.checkpoint();
+            Assert.assertThat(checkpointer.getCheckpointCount(), is(1L));
+
+            before.getJdbcTemplate().execute("SHUTDOWN");
+
+            // Second start: our schema should be safe to run again, and our metadata should still be there.
+            final StreamStateDao after = createDurableStreamStateDao(url);
+            assertMetadataSimilar(metadata, after.findStreamMetadataById(uuid));
+
+            // Every commit should still be synced to disk, so that nothing we've acknowledged is lost in a crash.
+            Assert.assertThat(after.getJdbcTemplate().queryForObject("SELECT PROPERTY_VALUE FROM INFORMATION_SCHEMA.SYSTEM_PROPERTIES WHERE PROPERTY_NAME = 'hsqldb.write_delay'", String.class),
+                              is("false"));
+
+            // As should our indexes, without having picked up any extras.
+            final StreamMetadataCriteria criteria = new StreamMetadataCriteria();
+            criteria.setStatus(StreamStatus.FAILED);
+            criteria.setModifiedAfter(System.currentTimeMillis());
+
+            Assert.assertThat(explain(after, criteria), containsString("index=IDX_STREAM_STATUS_STATUS"));
+            Assert.assertThat(after.getJdbcTemplate().queryForObject("SELECT COUNT(DISTINCT INDEX_NAME) FROM INFORMATION_SCHEMA.SYSTEM_INDEXINFO WHERE TABLE_NAME = 'STREAM_STATUS' AND INDEX_NAME LIKE 'IDX_%'", Integer.class),
+                              is(4));
+
+            after.getJdbcTemplate().execute("SHUTDOWN");
+        }
+        finally
+        {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+
+    /**
+     * Tests our durable schema against a database from before we digested our streams. The columns we've added since
+     * should be added for us, and the metadata already there should survive.
+     **/
+    @Test
+    public void testDurableUpgrade() throws Exception
+    {
+        final File directory = Files.createTempDirectory("hss-db").toFile();
+        final String url = "jdbc:hsqldb:file:" + new File(directory, "hss").getPath();
+        final String uuid = UUID.randomUUID().toString();
+
+        try
+        {
+            final DataSource dataSource = new DriverManagerDataSource(url, "SA", "");
+            final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+            jdbcTemplate.execute("CREATE CACHED TABLE STREAM_STATUS(STREAM_ID VARCHAR(255) NOT NULL PRIMARY KEY, STATUS VARCHAR(30) NOT NULL, SIZE BIGINT DEFAULT 0 NOT NULL, " +
+                                 "CREATED TIMESTAMP, LAST_UPDATED TIMESTAMP, CONTENT_VERSION VARCHAR(64), VERSION BIGINT DEFAULT 0 NOT NULL)");
+            jdbcTemplate.update("INSERT INTO STREAM_STATUS(STREAM_ID, STATUS, SIZE, CREATED, LAST_UPDATED) VALUES(?, 'SUCCESSFUL', 1024, NOW(), NOW())", uuid);
+            jdbcTemplate.execute("SHUTDOWN");
+
+            final StreamStateDao streamStateDao = createDurableStreamStateDao(url);
+            final StreamMetadata metadata = streamStateDao.findStreamMetadataById(uuid);
+
+            Assert.assertThat(metadata.getFileSize(), is(1024L));
+            Assert.assertThat(metadata.getSha256(), is(nullValue()));
+
+            metadata.setCrc32c("e3069283");
+            metadata.setSha256("15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225");
+            streamStateDao.saveOrUpdateStreamMetadata(metadata);
+            assertMetadataSimilar(metadata, streamStateDao.findStreamMetadataById(uuid));
+
+            streamStateDao.getJdbcTemplate().execute("SHUTDOWN");
+        }
+        finally
+        {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+
+    /**
+     * Provides a convenience method to find the IDs of the streams matching some criteria, in order.
+     *
+     * @param criteria The {@link StreamMetadataCriteria} to match. Must not be null.
+     *
+     * @return The IDs of every stream that matched. May be empty, but never null.
+     */
+    private List<String> findStreamIds(final StreamMetadataCriteria criteria) throws Exception
+    {
+        return _streamStateDao.findStreamMetadata(criteria, null, 10).stream().map(StreamMetadata::getId).collect(toList());
+    }
+
+    /**
+     * Provides a convenience method to make sure that the query for some criteria uses a given index, and doesn't scan
+     * the whole table.
+     *
+     * @param criteria The {@link StreamMetadataCriteria} to check. Must not be null.
+     * @param index The name (or the start of the name) of the index we expect to be used. Must not be null.
+     */
+    private void assertIndexed(final StreamMetadataCriteria criteria, final String index)
+    {
+        final String plan = explain(_streamStateDao, criteria);
+
+        Assert.assertThat(plan, containsString("access=INDEX PRED"));
+        Assert.assertThat(plan, containsString("index=" + index));
+        Assert.assertThat(plan, not(containsString("FULL SCAN")));
+    }
+
+    /**
+     * Provides a convenience method to get HSQL's plan for the query a given {@link StreamStateDao} would run for some
+     * criteria.
+     *
+     * @param streamStateDao The {@link StreamStateDao} to ask. Must not be null.
+     * @param criteria The {@link StreamMetadataCriteria} to plan for. Must not be null.
+     *
+     * @return The plan, as HSQL describes it. Will not be null.
+     */
+    private String explain(final StreamStateDao streamStateDao, final StreamMetadataCriteria criteria)
+    {
+        final MapSqlParameterSource parameters = new MapSqlParameterSource("limit", 10);
+        final String query = NamedParameterUtils.substituteNamedParameters(streamStateDao.createQuery(criteria, null, parameters), parameters);
+
+        // HSQL plans the statement as prepared, so there's nothing to bind.
+        return String.join("\n", streamStateDao.getJdbcTemplate().queryForList("EXPLAIN PLAN FOR " + query, String.class));
+    }
+
+    /**
+     * Provides a convenience method to create a {@link StreamStateDao} against a file-backed database, with our durable
+     * schema applied.
+     *
+     * @param url The JDBC URL of the database. Must be a valid HSQL file URL.
+     *
+     * @return A {@link StreamStateDao} ready for use.
+     */
+    private StreamStateDao createDurableStreamStateDao(final String url)
+    {
+        final DataSource dataSource = new DriverManagerDataSource(url, "SA", "");
+        DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource("schema-durable.sql")), dataSource);
+
+        // Same as our context: our columns and indexes may well be there already.
+        DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource("schema-columns.sql"), new ClassPathResource("schema-indexes.sql")), dataSource);
+
+        final StreamStateDao streamStateDao = new StreamStateDao();
+        streamStateDao.setDataSource(dataSource);
+
+        return streamStateDao;
+    }
+
     /**
      * Provides a convenience method to create a {@link StreamMetadata} as a one-liner.
      *
@@ -286,6 +829,9 @@ public class StreamStateDaoITCase
         Assert.assertThat(metadata.getId(), is(persistedMetadata.getId()));
         Assert.assertThat(metadata.getStatus(), is(persistedMetadata.getStatus()));
         Assert.assertThat(metadata.getFileSize(), is(persistedMetadata.getFileSize()));
+        Assert.assertThat(metadata.getContentVersion(), is(persistedMetadata.getContentVersion()));
+        Assert.assertThat(metadata.getCrc32c(), is(persistedMetadata.getCrc32c()));
+        Assert.assertThat(metadata.getSha256(), is(persistedMetadata.getSha256()));
         Assert.assertThat(System.currentTimeMillis() - persistedMetadata.getLastModified(), lessThan(1000L));
         Assert.assertThat(System.currentTimeMillis() - persistedMetadata.getCreatedTime(), lessThan(1000L));
     }
@@ -1,27 +1,39 @@
 package com._8x8.cloud.hss.persistence;
 
 import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
 import com._8x8.cloud.hss.model.StreamStatus;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 
 import java.sql.ResultSet;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.doCallRealMethod;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
@@ -116,6 +128,101 @@ public class StreamStateDaoTestCase
         Assert.assertThat(queryCaptor.getValue(), is("SELECT * FROM STREAM_STATUS"));
     }
 
+    /**
+     * Tests {@link StreamStateDao#findStreamMetadata(StreamMetadataCriteria, String, int)} for the first page, where there's nothing to seek past.
+     **/
+    @Test
+    public void testFindStreamMetadataForFirstPage() throws Exception
+    {
+        _streamStateDao.findStreamMetadata(null, null, 10);
+
+        verify(_streamStateDao).findStreamMetadata(null, null, 10);
+        verify(_streamStateDao).createQuery(isNull(StreamMetadataCriteria.class), isNull(String.class), any(MapSqlParameterSource.class));
+        verify(_streamStateDao).getNamedParameterJdbcTemplate();
+
+        final ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        final ArgumentCaptor<SqlParameterSource> parameterCaptor = ArgumentCaptor.forClass(SqlParameterSource.class);
+        verify(_namedParameterJdbcTemplate).query(queryCaptor.capture(), parameterCaptor.capture(), any(StreamStateDao.StreamMetadataMapper.class));
+
+        verifyNoMoreCollaboratingInteractions();
+
+        Assert.assertThat(queryCaptor.getValue(), is("SELECT * FROM STREAM_STATUS ORDER BY STREAM_ID LIMIT :limit"));
+        Assert.assertThat(parameterCaptor.getValue().getValue("limit"), is(10));
+    }
+
+    /**
+     * Tests {@link StreamStateDao#findStreamMetadata(StreamMetadataCriteria, String, int)} for a subsequent page, which should seek past the
+     * last ID we handed out.
+     **/
+    @Test
+    public void testFindStreamMetadataForNextPage() throws Exception
+    {
+        _streamStateDao.findStreamMetadata(null, "foo", 10);
+
+        verify(_streamStateDao).findStreamMetadata(null, "foo", 10);
+        verify(_streamStateDao).createQuery(isNull(StreamMetadataCriteria.class), eq("foo"), any(MapSqlParameterSource.class));
+        verify(_streamStateDao).getNamedParameterJdbcTemplate();
+
+        final ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        final ArgumentCaptor<SqlParameterSource> parameterCaptor = ArgumentCaptor.forClass(SqlParameterSource.class);
+        verify(_namedParameterJdbcTemplate).query(queryCaptor.capture(), parameterCaptor.capture(), any(StreamStateDao.StreamMetadataMapper.class));
+
+        verifyNoMoreCollaboratingInteractions();
+
+        Assert.assertThat(queryCaptor.getValue(), is("SELECT * FROM STREAM_STATUS WHERE STREAM_ID > :afterStreamId ORDER BY STREAM_ID LIMIT :limit"));
+        Assert.assertThat(parameterCaptor.getValue().getValue("afterStreamId"), is("foo"));
+        Assert.assertThat(parameterCaptor.getValue().getValue("limit"), is(10));
+    }
+
+    /**
+     * Tests {@link StreamStateDao#findStreamMetadata(StreamMetadataCriteria, String, int)} with every criterion we've
+     * got. Each should show up as a condition, along with our cursor.
+     **/
+    @Test
+    public void testFindStreamMetadataForCriteria() throws Exception
+    {
+        final StreamMetadataCriteria criteria = new StreamMetadataCriteria();
+
+        criteria.setStatus(StreamStatus.FAILED);
+        criteria.setModifiedAfter(1000L);
+        criteria.setModifiedBefore(2000L);
+        criteria.setCreatedAfter(3000L);
+        criteria.setCreatedBefore(4000L);
+        criteria.setMinSize(1024L);
+        criteria.setMaxSize(2048L);
+        criteria.setPrefix("foo");
+
+        _streamStateDao.findStreamMetadata(criteria, "foo1", 10);
+
+        verify(_streamStateDao).findStreamMetadata(criteria, "foo1", 10);
+        verify(_streamStateDao).createQuery(eq(criteria), eq("foo1"), any(MapSqlParameterSource.class));
+        verify(_streamStateDao).getNamedParameterJdbcTemplate();
+
+        final ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        final ArgumentCaptor<SqlParameterSource> parameterCaptor = ArgumentCaptor.forClass(SqlParameterSource.class);
+        verify(_namedParameterJdbcTemplate).query(queryCaptor.capture(), parameterCaptor.capture(), any(StreamStateDao.StreamMetadataMapper.class));
+
+        verifyNoMoreCollaboratingInteractions();
+
+        Assert.assertThat(queryCaptor.getValue(), is("SELECT * FROM STREAM_STATUS WHERE STATUS = :status AND LAST_UPDATED >= :modifiedAfter AND LAST_UPDATED < :modifiedBefore " +
+                                                     "AND CREATED >= :createdAfter AND CREATED < :createdBefore AND SIZE >= :minSize AND SIZE < :maxSize " +
+                                                     "AND STREAM_ID >= :prefix AND STREAM_ID < :prefixEnd AND STREAM_ID > :afterStreamId ORDER BY STREAM_ID LIMIT :limit"));
+
+        final SqlParameterSource parameters = parameterCaptor.getValue();
+
+        Assert.assertThat(parameters.getValue("status"), is("FAILED"));
+        Assert.assertThat(parameters.getValue("modifiedAfter"), is(new Timestamp(1000L)));
+        Assert.assertThat(parameters.getValue("modifiedBefore"), is(new Timestamp(2000L)));
+        Assert.assertThat(parameters.getValue("createdAfter"), is(new Timestamp(3000L)));
+        Assert.assertThat(parameters.getValue("createdBefore"), is(new Timestamp(4000L)));
+        Assert.assertThat(parameters.getValue("minSize"), is(1024L));
+        Assert.assertThat(parameters.getValue("maxSize"), is(2048L));
+        Assert.assertThat(parameters.getValue("prefix"), is("foo"));
+        Assert.assertThat(parameters.getValue("prefixEnd"), is("foo" + Character.MAX_VALUE));
+        Assert.assertThat(parameters.getValue("afterStreamId"), is("foo1"));
+        Assert.assertThat(parameters.getValue("limit"), is(10));
+    }
+
     /**
      * Tests {@link StreamStateDao#findStreamMetadataById(String)} for the happy path.
      **/
@@ -168,6 +275,91 @@ public class StreamStateDaoTestCase
         verifyNoMoreCollaboratingInteractions();
     }
 
+    /**
+     * Tests {@link StreamStateDao#findStreamMetadataByIds(Collection)} to make sure it does what we expect.
+     **/
+    @Test
+    public void testFindStreamMetadataByIds() throws Exception
+    {
+        _streamStateDao.findStreamMetadataByIds(Arrays.asList("foo", "bar"));
+
+        verify(_streamStateDao).findStreamMetadataByIds(anyCollectionOf(String.class));
+        verify(_streamStateDao).getNamedParameterJdbcTemplate();
+
+        final ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        final ArgumentCaptor<SqlParameterSource> parameterCaptor = ArgumentCaptor.forClass(SqlParameterSource.class);
+        verify(_namedParameterJdbcTemplate).query(queryCaptor.capture(), parameterCaptor.capture(), any(StreamStateDao.StreamMetadataMapper.class));
+
+        verifyNoMoreCollaboratingInteractions();
+
+        // Make sure our query is what we expect.
+        Assert.assertThat(queryCaptor.getValue(), is("SELECT * FROM STREAM_STATUS WHERE STREAM_ID IN (:streamIds)"));
+        Assert.assertThat(parameterCaptor.getValue().getValue("streamIds"), is(Arrays.asList("foo", "bar")));
+    }
+
+    /**
+     * Tests {@link StreamStateDao#findStreamMetadataByIds(Collection)} for more IDs than we'll put in one query. We
+     * should split them up, in order, and hand back everything we found.
+     **/
+    @Test
+    public void testFindStreamMetadataByIdsForManyIds() throws Exception
+    {
+        final List<String> ids = new ArrayList<>();
+
+        for (int i = 0; i < 2 * StreamStateDao.MAX_IDS_PER_QUERY + 1; i++)
+        {
+            ids.add("stream-" + i);
+        }
+
+        doReturn(Collections.singletonList(createMetadata("stream-0", StreamStatus.SUCCESSFUL, 1024L, 0L, 0L)))
+                .when(_namedParameterJdbcTemplate).query(anyString(), any(SqlParameterSource.class), any(StreamStateDao.StreamMetadataMapper.class));
+
+        Assert.assertThat(_streamStateDao.findStreamMetadataByIds(ids).size(), is(3));
+
+        verify(_streamStateDao).findStreamMetadataByIds(anyCollectionOf(String.class));
+        verify(_streamStateDao, times(3)).getNamedParameterJdbcTemplate();
+
+        final ArgumentCaptor<SqlParameterSource> parameterCaptor = ArgumentCaptor.forClass(SqlParameterSource.class);
+        verify(_namedParameterJdbcTemplate, times(3)).query(eq("SELECT * FROM STREAM_STATUS WHERE STREAM_ID IN (:streamIds)"),
+                                                            parameterCaptor.capture(), any(StreamStateDao.StreamMetadataMapper.class));
+
+        verifyNoMoreCollaboratingInteractions();
+
+        final List<SqlParameterSource> parameters = parameterCaptor.getAllValues();
+        Assert.assertThat(parameters.get(0).getValue("streamIds"), is(ids.subList(0, StreamStateDao.MAX_IDS_PER_QUERY)));
+        Assert.assertThat(parameters.get(1).getValue("streamIds"), is(ids.subList(StreamStateDao.MAX_IDS_PER_QUERY, 2 * StreamStateDao.MAX_IDS_PER_QUERY)));
+        Assert.assertThat(parameters.get(2).getValue("streamIds"), is(Collections.singletonList(ids.get(ids.size() - 1))));
+    }
+
+    /**
+     * Tests {@link StreamStateDao#insertStreamMetadata(Collection)} to make sure we batch, and only count what we
+     * actually inserted.
+     **/
+    @Test
+    public void testInsertStreamMetadata() throws Exception
+    {
+        final List<StreamMetadata> metadata = Arrays.asList(createMetadata("foo", StreamStatus.SUCCESSFUL, 1024L, 0L, 0L),
+                                                            createMetadata("bar", StreamStatus.SUCCESSFUL, 2048L, 0L, 0L));
+
+        doReturn(new int[] { 1, 0 }).when(_namedParameterJdbcTemplate).batchUpdate(anyString(), any(SqlParameterSource[].class));
+
+        Assert.assertThat(_streamStateDao.insertStreamMetadata(metadata), is(1));
+
+        verify(_streamStateDao).insertStreamMetadata(metadata);
+        verify(_streamStateDao).getNamedParameterJdbcTemplate();
+
+        final ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        final ArgumentCaptor<SqlParameterSource[]> parameterCaptor = ArgumentCaptor.forClass(SqlParameterSource[].class);
+        verify(_namedParameterJdbcTemplate).batchUpdate(queryCaptor.capture(), parameterCaptor.capture());
+
+        verifyNoMoreCollaboratingInteractions();
+
+        // Make sure our query is what we expect.
+        Assert.assertThat(queryCaptor.getValue(), is("MERGE INTO STREAM_STATUS AS S USING (VALUES :streamId, :status, :size, CAST(:contentVersion AS VARCHAR(64)), CAST(:crc32c AS VARCHAR(8)), CAST(:sha256 AS VARCHAR(64))) I(STREAM_ID, STATUS, SIZE, CONTENT_VERSION, CRC32C, SHA256) ON (S.STREAM_ID = I.STREAM_ID) WHEN NOT MATCHED THEN INSERT(STREAM_ID, STATUS, SIZE, CONTENT_VERSION, CRC32C, SHA256, CREATED, LAST_UPDATED) VALUES(I.STREAM_ID, I.STATUS, I.SIZE, I.CONTENT_VERSION, I.CRC32C, I.SHA256, NOW(), NOW())"));
+        Assert.assertThat(parameterCaptor.getValue().length, is(2));
+        Assert.assertThat(parameterCaptor.getValue()[1].getValue("streamId"), is("bar"));
+    }
+
     /**
      * Tests {@link StreamStateDao#saveOrUpdateStreamMetadata(StreamMetadata)} to make sure it does what we expect.
      **/
@@ -188,7 +380,94 @@ public class StreamStateDaoTestCase
         verifyNoMoreCollaboratingInteractions();
 
         // Make sure our query is what we expect.
-        Assert.assertThat(queryCaptor.getValue(), is("MERGE INTO STREAM_STATUS AS S USING (VALUES :streamId, :status, :size) I(STREAM_ID, STATUS, SIZE) ON (S.STREAM_ID = I.STREAM_ID) WHEN MATCHED THEN UPDATE SET S.STREAM_ID = I.STREAM_ID, S.STATUS = I.STATUS, S.SIZE = I.SIZE, LAST_UPDATED = NOW() WHEN NOT MATCHED THEN INSERT(STREAM_ID, STATUS, SIZE, CREATED, LAST_UPDATED) VALUES(I.STREAM_ID, I.STATUS, I.SIZE, NOW(), NOW())"));
+        Assert.assertThat(queryCaptor.getValue(), is("MERGE INTO STREAM_STATUS AS S USING (VALUES :streamId, :status, :size, CAST(:contentVersion AS VARCHAR(64)), CAST(:crc32c AS VARCHAR(8)), CAST(:sha256 AS VARCHAR(64))) I(STREAM_ID, STATUS, SIZE, CONTENT_VERSION, CRC32C, SHA256) ON (S.STREAM_ID = I.STREAM_ID) WHEN MATCHED THEN UPDATE SET S.STREAM_ID = I.STREAM_ID, S.STATUS = I.STATUS, S.SIZE = I.SIZE, S.CONTENT_VERSION = I.CONTENT_VERSION, S.CRC32C = I.CRC32C, S.SHA256 = I.SHA256, S.VERSION = S.VERSION + 1, LAST_UPDATED = NOW() WHEN NOT MATCHED THEN INSERT(STREAM_ID, STATUS, SIZE, CONTENT_VERSION, CRC32C, SHA256, CREATED, LAST_UPDATED) VALUES(I.STREAM_ID, I.STATUS, I.SIZE, I.CONTENT_VERSION, I.CRC32C, I.SHA256, NOW(), NOW())"));
+    }
+
+    /**
+     * Tests {@link StreamStateDao#transitionStreamMetadata(StreamMetadata, StreamStatus)} for a stream we already know
+     * about. We should be making a conditional update against the status and version we read.
+     **/
+    @Test
+    public void testTransitionStreamMetadata() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata("foo", StreamStatus.SUCCESSFUL, 1024L, 0L, 0L);
+        metadata.setVersion(7L);
+
+        doReturn(1).when(_namedParameterJdbcTemplate).update(anyString(), any(SqlParameterSource.class));
+
+        Assert.assertThat(_streamStateDao.transitionStreamMetadata(metadata, StreamStatus.IN_PROGRESS), is(true));
+
+        verify(_streamStateDao).transitionStreamMetadata(metadata, StreamStatus.IN_PROGRESS);
+        verify(_streamStateDao).createParameters(metadata, StreamStatus.IN_PROGRESS);
+        verify(_streamStateDao).getNamedParameterJdbcTemplate();
+
+        final ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        final ArgumentCaptor<SqlParameterSource> parameterCaptor = ArgumentCaptor.forClass(SqlParameterSource.class);
+        verify(_namedParameterJdbcTemplate).update(queryCaptor.capture(), parameterCaptor.capture());
+
+        verifyNoMoreCollaboratingInteractions();
+
+        // Make sure our query is what we expect.
+        Assert.assertThat(queryCaptor.getValue(), is("UPDATE STREAM_STATUS SET STATUS = :status, SIZE = :size, CONTENT_VERSION = :contentVersion, CRC32C = :crc32c, SHA256 = :sha256, VERSION = VERSION + 1, LAST_UPDATED = NOW() WHERE STREAM_ID = :streamId AND STATUS = :expectedStatus AND VERSION = :version"));
+        Assert.assertThat(parameterCaptor.getValue().getValue("status"), is("IN_PROGRESS"));
+        Assert.assertThat(parameterCaptor.getValue().getValue("expectedStatus"), is("SUCCESSFUL"));
+        Assert.assertThat(parameterCaptor.getValue().getValue("version"), is(7L));
+
+        // Our metadata should now reflect what we persisted, so we can transition it again.
+        Assert.assertThat(metadata.getStatus(), is(StreamStatus.IN_PROGRESS));
+        Assert.assertThat(metadata.getVersion(), is(8L));
+    }
+
+    /**
+     * Tests {@link StreamStateDao#transitionStreamMetadata(StreamMetadata, StreamStatus)} for the case where somebody
+     * changed the stream since we read it. Nothing should match, and our metadata should be left alone.
+     **/
+    @Test
+    public void testTransitionStreamMetadataForStaleVersion() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata("foo", StreamStatus.SUCCESSFUL, 1024L, 0L, 0L);
+        metadata.setVersion(7L);
+
+        doReturn(0).when(_namedParameterJdbcTemplate).update(anyString(), any(SqlParameterSource.class));
+
+        Assert.assertThat(_streamStateDao.transitionStreamMetadata(metadata, StreamStatus.IN_PROGRESS), is(false));
+
+        Assert.assertThat(metadata.getStatus(), is(StreamStatus.SUCCESSFUL));
+        Assert.assertThat(metadata.getVersion(), is(7L));
+    }
+
+    /**
+     * Tests {@link StreamStateDao#transitionStreamMetadata(StreamMetadata, StreamStatus)} for a stream we've never seen.
+     * We should be inserting it.
+     **/
+    @Test
+    public void testTransitionStreamMetadataForNewStream() throws Exception
+    {
+        final StreamMetadata metadata = _streamStateDao.createStreamMetadata("foo", StreamStatus.NOT_FOUND);
+
+        Assert.assertThat(_streamStateDao.transitionStreamMetadata(metadata, StreamStatus.IN_PROGRESS), is(true));
+
+        final ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        verify(_namedParameterJdbcTemplate).update(queryCaptor.capture(), any(SqlParameterSource.class));
+
+        Assert.assertThat(queryCaptor.getValue(), is("INSERT INTO STREAM_STATUS(STREAM_ID, STATUS, SIZE, CONTENT_VERSION, CRC32C, SHA256, VERSION, CREATED, LAST_UPDATED) VALUES(:streamId, :status, :size, :contentVersion, :crc32c, :sha256, 0, NOW(), NOW())"));
+        Assert.assertThat(metadata.getStatus(), is(StreamStatus.IN_PROGRESS));
+        Assert.assertThat(metadata.getVersion(), is(0L));
+    }
+
+    /**
+     * Tests {@link StreamStateDao#transitionStreamMetadata(StreamMetadata, StreamStatus)} for a stream we've never seen,
+     * but that somebody else creates before we do.
+     **/
+    @Test
+    public void testTransitionStreamMetadataForNewStreamCreatedElsewhere() throws Exception
+    {
+        final StreamMetadata metadata = _streamStateDao.createStreamMetadata("foo", StreamStatus.NOT_FOUND);
+
+        doThrow(new DuplicateKeyException("moo")).when(_namedParameterJdbcTemplate).update(anyString(), any(SqlParameterSource.class));
+
+        Assert.assertThat(_streamStateDao.transitionStreamMetadata(metadata, StreamStatus.IN_PROGRESS), is(false));
+        Assert.assertThat(metadata.getStatus(), is(StreamStatus.NOT_FOUND));
     }
 
     /**
@@ -246,6 +525,10 @@ public class StreamStateDaoTestCase
         verify(_resultSet).getLong("SIZE");
         verify(_resultSet).getTimestamp("CREATED");
         verify(_resultSet).getTimestamp("LAST_UPDATED");
+        verify(_resultSet).getString("CONTENT_VERSION");
+        verify(_resultSet).getString("CRC32C");
+        verify(_resultSet).getString("SHA256");
+        verify(_resultSet).getLong("VERSION");
 
         // Make sure we're grabbing our enum...
         Assert.assertThat(metadata.getStatus(), is(StreamStatus.IN_PROGRESS));
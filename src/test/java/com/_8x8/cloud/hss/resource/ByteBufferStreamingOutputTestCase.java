@@ -0,0 +1,44 @@
+package com._8x8.cloud.hss.resource;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests the {@link ByteBufferStreamingOutput} at the unit level.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class ByteBufferStreamingOutputTestCase
+{
+    /**
+     * Tests {@link ByteBufferStreamingOutput#write(java.io.OutputStream)} for a view over part of a shared buffer. We
+     * should get everything from its position on, and leave the buffer it's a view of alone.
+     */
+    @Test
+    public void testWrite() throws Exception
+    {
+        final byte[] payload = new byte[64 * 1024 + 17];
+        new Random(42).nextBytes(payload);
+
+        final ByteBuffer shared = ByteBuffer.wrap(payload).asReadOnlyBuffer();
+        final ByteBuffer view = shared.duplicate();
+        view.position(17);
+
+        final ByteBufferStreamingOutput output = new ByteBufferStreamingOutput(view);
+        Assert.assertThat(output.getContentLength(), is(64L * 1024));
+
+        final ByteArrayOutputStream target = new ByteArrayOutputStream();
+        output.write(target);
+
+        Assert.assertThat(target.toByteArray(), is(Arrays.copyOfRange(payload, 17, payload.length)));
+        Assert.assertThat(shared.position(), is(0));
+    }
+}
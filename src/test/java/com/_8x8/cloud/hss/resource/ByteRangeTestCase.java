@@ -0,0 +1,126 @@
+package com._8x8.cloud.hss.resource;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests the {@link ByteRange} at the unit level. Most of the examples here are lifted from RFC 7233.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class ByteRangeTestCase
+{
+    /**
+     * Tests {@link ByteRange#parse(String, long)} for the simple cases: a closed range, an open range and a suffix.
+     */
+    @Test
+    public void testParse() throws Exception
+    {
+        Assert.assertThat(ByteRange.parse("bytes=0-499", 10000), is(ranges(0, 499)));
+        Assert.assertThat(ByteRange.parse("bytes=9500-", 10000), is(ranges(9500, 9999)));
+        Assert.assertThat(ByteRange.parse("bytes=-500", 10000), is(ranges(9500, 9999)));
+
+        // Units are case insensitive, and whitespace around specs is fine.
+        Assert.assertThat(ByteRange.parse("Bytes= 0-0 , -1", 10000), is(ranges(0, 0, 9999, 9999)));
+    }
+
+    /**
+     * Tests {@link ByteRange#parse(String, long)} to make sure we clamp ranges that run off the end of the stream.
+     */
+    @Test
+    public void testParseClampsToLength() throws Exception
+    {
+        Assert.assertThat(ByteRange.parse("bytes=500-99999", 1000), is(ranges(500, 999)));
+        Assert.assertThat(ByteRange.parse("bytes=-99999", 1000), is(ranges(0, 999)));
+    }
+
+    /**
+     * Tests {@link ByteRange#parse(String, long)} to make sure overlapping and adjacent ranges get merged, and that the
+     * result comes back in order.
+     */
+    @Test
+    public void testParseCoalesces() throws Exception
+    {
+        Assert.assertThat(ByteRange.parse("bytes=500-600,601-999", 10000), is(ranges(500, 999)));
+        Assert.assertThat(ByteRange.parse("bytes=500-700,601-999", 10000), is(ranges(500, 999)));
+        Assert.assertThat(ByteRange.parse("bytes=9000-9099,0-99", 10000), is(ranges(0, 99, 9000, 9099)));
+    }
+
+    /**
+     * Tests {@link ByteRange#parse(String, long)} for headers we should ignore outright.
+     */
+    @Test
+    public void testParseForIgnoredHeaders() throws Exception
+    {
+        Assert.assertThat(ByteRange.parse(null, 10000), is(nullValue()));
+        Assert.assertThat(ByteRange.parse("items=0-5", 10000), is(nullValue()));
+        Assert.assertThat(ByteRange.parse("bytes=5-0", 10000), is(nullValue()));
+        Assert.assertThat(ByteRange.parse("bytes=abc-", 10000), is(nullValue()));
+        Assert.assertThat(ByteRange.parse("bytes=42", 10000), is(nullValue()));
+
+        // Too many ranges.
+        final StringBuilder header = new StringBuilder("bytes=0-0");
+
+        for (int i = 1; i <= ByteRange.MAX_RANGES; i++)
+        {
+            header.append(',').append(i * 2).append('-').append(i * 2);
+        }
+
+        Assert.assertThat(ByteRange.parse(header.toString(), 10000), is(nullValue()));
+    }
+
+    /**
+     * Tests {@link ByteRange#parse(String, long)} for headers that are fine, but can't be satisfied.
+     */
+    @Test
+    public void testParseForUnsatisfiableHeaders() throws Exception
+    {
+        Assert.assertThat(ByteRange.parse("bytes=10000-", 10000), is(empty()));
+        Assert.assertThat(ByteRange.parse("bytes=-0", 10000), is(empty()));
+        Assert.assertThat(ByteRange.parse("bytes=0-10", 0), is(empty()));
+    }
+
+    /**
+     * Tests {@link ByteRange#toContentRange(long)} and {@link ByteRange#toUnsatisfiableContentRange(long)}.
+     */
+    @Test
+    public void testContentRange() throws Exception
+    {
+        Assert.assertThat(new ByteRange(0, 499).toContentRange(1234), is("bytes 0-499/1234"));
+        Assert.assertThat(ByteRange.toUnsatisfiableContentRange(1234), is("bytes */1234"));
+        Assert.assertThat(new ByteRange(0, 499).getLength(), is(500L));
+    }
+
+    /**
+     * Provides a convenience method to build an expected list of ranges.
+     *
+     * @param offsets Pairs of first/last offsets.
+     *
+     * @return A list of {@link ByteRange}s.
+     */
+    private List<ByteRange> ranges(final long... offsets)
+    {
+        if (2 == offsets.length)
+        {
+            return Collections.singletonList(new ByteRange(offsets[0], offsets[1]));
+        }
+
+        final ByteRange[] ranges = new ByteRange[offsets.length / 2];
+
+        for (int i = 0; i < ranges.length; i++)
+        {
+            ranges[i] = new ByteRange(offsets[i * 2], offsets[i * 2 + 1]);
+        }
+
+        return Arrays.asList(ranges);
+    }
+}
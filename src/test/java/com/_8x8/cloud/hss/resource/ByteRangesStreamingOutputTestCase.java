@@ -0,0 +1,79 @@
+package com._8x8.cloud.hss.resource;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests the {@link ByteRangesStreamingOutput} at the unit level.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class ByteRangesStreamingOutputTestCase
+{
+    /**
+     * Holds a temporary {@link File} we can stream from.
+     */
+    private File _file;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _file = File.createTempFile("hss", "ranges");
+        FileUtils.writeStringToFile(_file, "0123456789abcdefghij", StandardCharsets.US_ASCII);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        FileUtils.deleteQuietly(_file);
+    }
+
+    /**
+     * Tests {@link ByteRangesStreamingOutput#write(java.io.OutputStream)} to make sure we produce a well-formed
+     * multipart/byteranges body, and that our computed length matches what we actually write.
+     */
+    @Test
+    public void testWrite() throws Exception
+    {
+        final FileChannel channel = FileChannel.open(_file.toPath(), StandardOpenOption.READ);
+        final ByteRangesStreamingOutput output = new ByteRangesStreamingOutput(channel,
+                                                                               Arrays.asList(new ByteRange(0, 3), new ByteRange(15, 19)),
+                                                                               20,
+                                                                               "BOUNDARY");
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        output.write(stream);
+
+        final String expected = "\r\n--BOUNDARY\r\n" +
+                                "Content-Type: application/octet-stream\r\n" +
+                                "Content-Range: bytes 0-3/20\r\n" +
+                                "\r\n" +
+                                "0123" +
+                                "\r\n--BOUNDARY\r\n" +
+                                "Content-Type: application/octet-stream\r\n" +
+                                "Content-Range: bytes 15-19/20\r\n" +
+                                "\r\n" +
+                                "fghij" +
+                                "\r\n--BOUNDARY--\r\n";
+
+        Assert.assertThat(new String(stream.toByteArray(), StandardCharsets.US_ASCII), is(expected));
+        Assert.assertThat(output.getContentLength(), is((long) stream.size()));
+        Assert.assertThat(output.getMediaType().toString(), is("multipart/byteranges;boundary=BOUNDARY"));
+
+        // We own the channel, so we should have closed it.
+        Assert.assertThat(channel.isOpen(), is(false));
+    }
+}
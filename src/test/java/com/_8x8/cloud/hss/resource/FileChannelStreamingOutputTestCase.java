@@ -0,0 +1,109 @@
+package com._8x8.cloud.hss.resource;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests the {@link FileChannelStreamingOutput} at the unit level.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class FileChannelStreamingOutputTestCase
+{
+    /**
+     * Holds a temporary {@link File} we can stream from.
+     */
+    private File _file;
+
+    /**
+     * Holds the payload we wrote to our file.
+     */
+    private byte[] _payload;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        // Big enough that we're not going to get it all in one buffer.
+        _payload = new byte[1024 * 1024 + 17];
+        new Random(8675309L).nextBytes(_payload);
+
+        _file = File.createTempFile("hss", "streaming");
+        FileUtils.writeByteArrayToFile(_file, _payload);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        FileUtils.deleteQuietly(_file);
+    }
+
+    /**
+     * Tests {@link FileChannelStreamingOutput#write(java.io.OutputStream)} to make sure we get every byte of our file,
+     * and that we close our channel afterwards.
+     */
+    @Test
+    public void testWrite() throws Exception
+    {
+        final FileChannel channel = FileChannel.open(_file.toPath(), StandardOpenOption.READ);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        new FileChannelStreamingOutput(channel).write(output);
+
+        Assert.assertThat(output.toByteArray(), is(_payload));
+        Assert.assertThat(channel.isOpen(), is(false));
+    }
+
+    /**
+     * Tests {@link FileChannelStreamingOutput#write(java.io.OutputStream)} for the case where we're only streaming a
+     * single {@link ByteRange} of the file.
+     */
+    @Test
+    public void testWriteForRange() throws Exception
+    {
+        final FileChannel channel = FileChannel.open(_file.toPath(), StandardOpenOption.READ);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        new FileChannelStreamingOutput(channel, new ByteRange(1000, 524287)).write(output);
+
+        Assert.assertThat(output.toByteArray(), is(Arrays.copyOfRange(_payload, 1000, 524288)));
+        Assert.assertThat(channel.isOpen(), is(false));
+    }
+
+    /**
+     * Tests {@link FileChannelStreamingOutput#write(java.io.OutputStream)} for the case where the file is shorter than
+     * we were told. We've already promised a Content-Length, so we should fail rather than send less (or spin).
+     */
+    @Test
+    public void testWriteForTruncatedFile() throws Exception
+    {
+        final FileChannel channel = FileChannel.open(_file.toPath(), StandardOpenOption.READ);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        try
+        {
+            new FileChannelStreamingOutput(channel, new ByteRange(_payload.length - 10, _payload.length + 9)).write(output);
+            Assert.fail("Whoops, we should have caught an exception here.");
+        }
+        catch (final IOException ex)
+        {
+            Assert.assertThat(ex.getMessage(), is("Stream truncated after 10 of 20 bytes."));
+        }
+
+        Assert.assertThat(output.toByteArray(), is(Arrays.copyOfRange(_payload, _payload.length - 10, _payload.length)));
+        Assert.assertThat(channel.isOpen(), is(false));
+    }
+}
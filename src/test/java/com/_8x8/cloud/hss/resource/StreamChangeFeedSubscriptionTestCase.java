@@ -0,0 +1,218 @@
+package com._8x8.cloud.hss.resource;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamStatus;
+import com._8x8.cloud.hss.service.StreamChangeFeed;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+/**
+ * Tests the {@link StreamChangeFeedSubscription} at the unit level, against a real {@link StreamChangeFeed}.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamChangeFeedSubscriptionTestCase
+{
+    /**
+     * Tests {@link StreamChangeFeedSubscription#write()} for a client resuming part way through. We should get an event
+     * per change after the one it saw, and nothing else.
+     */
+    @Test
+    public void testWrite() throws Exception
+    {
+        final StreamChangeFeed changeFeed = new StreamChangeFeed(10);
+
+        changeFeed.publish(createMetadata("foo"), StreamStatus.IN_PROGRESS);
+        changeFeed.publish(createMetadata("foo"), StreamStatus.SUCCESSFUL);
+        changeFeed.publish(createMetadata("bar"), StreamStatus.NOT_FOUND);
+
+        final CapturingEventOutput output = new CapturingEventOutput();
+        new StreamChangeFeedSubscription(changeFeed, output, 1, false, 60000).write();
+
+        Assert.assertThat(output.describe(), is(Arrays.asList("2 change", "3 change")));
+        Assert.assertThat(output.peek().getId(), is(changeFeed.getEpoch() + "-2"));
+        Assert.assertThat((String) output.peek().getData(), startsWith("{\"id\":\"foo\",\"status\":\"SUCCESSFUL\""));
+    }
+
+    /**
+     * Tests {@link StreamChangeFeedSubscription#write()} for a client that's missed changes we no longer have. It should
+     * be told, before it gets what we do have.
+     */
+    @Test
+    public void testWriteForGap() throws Exception
+    {
+        final StreamChangeFeed changeFeed = new StreamChangeFeed(2);
+
+        for (int i = 0; i < 5; i++)
+        {
+            changeFeed.publish(createMetadata("stream-" + i), StreamStatus.SUCCESSFUL);
+        }
+
+        final CapturingEventOutput output = new CapturingEventOutput();
+        new StreamChangeFeedSubscription(changeFeed, output, 1, false, 60000).write();
+
+        Assert.assertThat(output.describe(), is(Arrays.asList("3 reset", "4 change", "5 change")));
+    }
+
+    /**
+     * Tests {@link StreamChangeFeedSubscription#write()} for a client resuming from before a restart. Its sequence number
+     * means nothing to us, so it should be told it's missed changes whether or not we have any for it.
+     */
+    @Test
+    public void testWriteForReset() throws Exception
+    {
+        final StreamChangeFeed changeFeed = new StreamChangeFeed(10);
+
+        final CapturingEventOutput empty = new CapturingEventOutput();
+        new StreamChangeFeedSubscription(changeFeed, empty, 0, true, 60000).write();
+        Assert.assertThat(empty.describe(), is(Arrays.asList("0 reset")));
+
+        changeFeed.publish(createMetadata("foo"), StreamStatus.IN_PROGRESS);
+        changeFeed.publish(createMetadata("foo"), StreamStatus.SUCCESSFUL);
+
+        final CapturingEventOutput output = new CapturingEventOutput();
+        new StreamChangeFeedSubscription(changeFeed, output, 0, true, 60000).write();
+        Assert.assertThat(output.describe(), is(Arrays.asList("0 reset", "1 change", "2 change")));
+    }
+
+    /**
+     * Tests {@link StreamChangeFeedSubscription#write()} when nothing is happening. We should send a comment if we've not
+     * written anything in a while, and otherwise keep quiet.
+     */
+    @Test
+    public void testWriteForHeartbeat() throws Exception
+    {
+        final StreamChangeFeed changeFeed = new StreamChangeFeed(10);
+        final CapturingEventOutput output = new CapturingEventOutput();
+        final StreamChangeFeedSubscription subscription = new StreamChangeFeedSubscription(changeFeed, output, 0, false, 60000);
+
+        subscription.write();
+        subscription.write();
+
+        Assert.assertThat(output.describe(), is(Arrays.asList("comment")));
+    }
+
+    /**
+     * Tests {@link StreamChangeFeedSubscription#write()} for a client that's gone away. We should stop following the feed
+     * as soon as we find out.
+     */
+    @Test
+    public void testWriteForClosedClient() throws Exception
+    {
+        final StreamChangeFeed changeFeed = new StreamChangeFeed(10);
+        final CapturingEventOutput output = new CapturingEventOutput()
+        {
+            @Override
+            public void write(final OutboundEvent event) throws IOException
+            {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        final StreamChangeFeedSubscription subscription = new StreamChangeFeedSubscription(changeFeed, output, 0, false, 60000);
+        subscription.start();
+
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+
+        while (!subscription.isClosed() && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+
+        Assert.assertThat(subscription.isClosed(), is(true));
+        Assert.assertThat(output.isClosed(), is(true));
+        Assert.assertThat(changeFeed.getSubscriberCount(), is(0));
+    }
+
+    /**
+     * Tests {@link StreamChangeFeedSubscription#start()} end to end. We should hear from it straight away, then for each
+     * change as it's published, and it should end the response once the feed is closed.
+     */
+    @Test
+    public void testStart() throws Exception
+    {
+        final StreamChangeFeed changeFeed = new StreamChangeFeed(10);
+        final CapturingEventOutput output = new CapturingEventOutput();
+
+        new StreamChangeFeedSubscription(changeFeed, output, 0, false, 60000).start();
+        Assert.assertThat(output.take().getComment(), is(""));
+
+        changeFeed.publish(createMetadata("foo"), StreamStatus.IN_PROGRESS);
+        Assert.assertThat(output.take().getId(), is(changeFeed.getEpoch() + "-1"));
+
+        changeFeed.close();
+        Assert.assertThat(output.isClosed(), is(true));
+    }
+
+    /**
+     * Provides a convenience method to create a {@link StreamMetadata}.
+     */
+    private static StreamMetadata createMetadata(final String id)
+    {
+        final StreamMetadata metadata = new StreamMetadata();
+        metadata.setId(id);
+
+        return metadata;
+    }
+
+    /**
+     * Provides an {@link EventOutput} that keeps hold of whatever is written to it, rather than sending it anywhere.
+     */
+    private static class CapturingEventOutput extends EventOutput
+    {
+        /**
+         * Holds what's been written, oldest first.
+         */
+        private final BlockingQueue<OutboundEvent> _events = new LinkedBlockingQueue<>();
+
+        @Override
+        public void write(final OutboundEvent event) throws IOException
+        {
+            _events.add(event);
+        }
+
+        /**
+         * Gets the oldest event written, without taking it.
+         */
+        OutboundEvent peek()
+        {
+            return _events.peek();
+        }
+
+        /**
+         * Takes the oldest event written, waiting for one if need be.
+         */
+        OutboundEvent take() throws InterruptedException
+        {
+            final OutboundEvent event = _events.poll(10, TimeUnit.SECONDS);
+            Assert.assertThat(null == event, is(false));
+
+            return event;
+        }
+
+        /**
+         * Describes what's been written, one entry per event: its sequence number and name, or just "comment".
+         */
+        List<String> describe()
+        {
+            return _events.stream()
+                          .map(event -> null != event.getComment() ? "comment"
+                                                                   : event.getId().substring(event.getId().indexOf('-') + 1) + " " + event.getName())
+                          .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com._8x8.cloud.hss.resource;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
+import com._8x8.cloud.hss.model.StreamStatus;
+import com._8x8.cloud.hss.service.IStreamService;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+/**
+ * Tests the {@link StreamMetadataNdjsonOutput} at the unit level.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamMetadataNdjsonOutputTestCase
+{
+    /**
+     * Holds a collaborating {@link IStreamService} we can mock.
+     */
+    private IStreamService _streamService;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _streamService = mock(IStreamService.class);
+    }
+
+    /**
+     * Tests {@link StreamMetadataNdjsonOutput#write(java.io.OutputStream)} across several pages. We should get a line
+     * per stream, in order, and stop once we get a page that isn't full.
+     */
+    @Test
+    public void testWrite() throws Exception
+    {
+        doReturn(Arrays.asList(createMetadata("a"), createMetadata("b"))).when(_streamService).getMetadataForStreams(null, null, 2);
+        doReturn(Collections.singletonList(createMetadata("c"))).when(_streamService).getMetadataForStreams(null, "b", 2);
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new StreamMetadataNdjsonOutput(_streamService, null, null, 2).write(output);
+
+        verify(_streamService).getMetadataForStreams(null, null, 2);
+        verify(_streamService).getMetadataForStreams(null, "b", 2);
+        verifyNoMoreInteractions(_streamService);
+
+        // Our internal versions should stay internal.
+        Assert.assertThat(new String(output.toByteArray(), StandardCharsets.UTF_8),
+                          is("{\"id\":\"a\",\"status\":\"SUCCESSFUL\",\"fileSize\":1024,\"lastModified\":0,\"createdTime\":0}\n" +
+                             "{\"id\":\"b\",\"status\":\"SUCCESSFUL\",\"fileSize\":1024,\"lastModified\":0,\"createdTime\":0}\n" +
+                             "{\"id\":\"c\",\"status\":\"SUCCESSFUL\",\"fileSize\":1024,\"lastModified\":0,\"createdTime\":0}\n"));
+    }
+
+    /**
+     * Tests {@link StreamMetadataNdjsonOutput#write(java.io.OutputStream)} for the case where the last page is exactly
+     * full. We'll have to ask for one more to find out there's nothing left.
+     */
+    @Test
+    public void testWriteForFullLastPage() throws Exception
+    {
+        doReturn(Arrays.asList(createMetadata("b"), createMetadata("c"))).when(_streamService).getMetadataForStreams(null, "a", 2);
+        doReturn(Collections.emptyList()).when(_streamService).getMetadataForStreams(null, "c", 2);
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new StreamMetadataNdjsonOutput(_streamService, null, "a", 2).write(output);
+
+        verify(_streamService).getMetadataForStreams(null, "a", 2);
+        verify(_streamService).getMetadataForStreams(null, "c", 2);
+        verifyNoMoreInteractions(_streamService);
+
+        Assert.assertThat(new String(output.toByteArray(), StandardCharsets.UTF_8).split("\n").length, is(2));
+    }
+
+    /**
+     * Tests {@link StreamMetadataNdjsonOutput#write(java.io.OutputStream)} for the case where our service blows up. We
+     * should surface that as an {@link IOException}, which is all a {@link javax.ws.rs.core.StreamingOutput} is allowed.
+     */
+    @Test(expected = IOException.class)
+    public void testWriteForFailure() throws Exception
+    {
+        doThrow(new IllegalStateException("Boom")).when(_streamService).getMetadataForStreams(any(StreamMetadataCriteria.class), anyString(), anyInt());
+
+        new StreamMetadataNdjsonOutput(_streamService, null, "a", 2).write(new ByteArrayOutputStream());
+    }
+
+    /**
+     * Provides a convenience method to create a {@link StreamMetadata} for a given ID.
+     *
+     * @param id The ID of the stream. Must not be null.
+     *
+     * @return A {@link StreamMetadata} for a successfully saved stream, with a version we shouldn't see. Will not be null.
+     */
+    private StreamMetadata createMetadata(final String id)
+    {
+        final StreamMetadata metadata = new StreamMetadata();
+
+        metadata.setId(id);
+        metadata.setStatus(StreamStatus.SUCCESSFUL);
+        metadata.setFileSize(1024L);
+        metadata.setContentVersion("v1");
+        metadata.setVersion(3L);
+
+        return metadata;
+    }
+}
@@ -0,0 +1,119 @@
+package com._8x8.cloud.hss.resource;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCollection;
+import com._8x8.cloud.hss.model.StreamStatus;
+import com._8x8.cloud.hss.service.IStreamService;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.bind.JAXBContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+/**
+ * Tests the {@link StreamMetadataXmlOutput} at the unit level.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamMetadataXmlOutputTestCase
+{
+    /**
+     * Holds a collaborating {@link IStreamService} we can mock.
+     */
+    private IStreamService _streamService;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _streamService = mock(IStreamService.class);
+    }
+
+    /**
+     * Tests {@link StreamMetadataXmlOutput#write(java.io.OutputStream)} across several pages. We should get exactly
+     * what our JAXB would have written for the whole collection at once.
+     */
+    @Test
+    public void testWrite() throws Exception
+    {
+        doReturn(Arrays.asList(createMetadata("a"), createMetadata("b"))).when(_streamService).getMetadataForStreams(null, null, 2);
+        doReturn(Collections.singletonList(createMetadata("c"))).when(_streamService).getMetadataForStreams(null, "b", 2);
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new StreamMetadataXmlOutput(_streamService, null, 2).write(output);
+
+        verify(_streamService).getMetadataForStreams(null, null, 2);
+        verify(_streamService).getMetadataForStreams(null, "b", 2);
+        verifyNoMoreInteractions(_streamService);
+
+        final StreamMetadataCollection collection = new StreamMetadataCollection();
+        collection.getMetadata().addAll(Arrays.asList(createMetadata("a"), createMetadata("b"), createMetadata("c")));
+
+        Assert.assertThat(new String(output.toByteArray(), StandardCharsets.UTF_8), is(writeWithJaxb(collection)));
+    }
+
+    /**
+     * Tests {@link StreamMetadataXmlOutput#write(java.io.OutputStream)} for the case where there's nothing to list. JAXB
+     * would write an empty element, but all that matters is that it reads back as an empty collection.
+     */
+    @Test
+    public void testWriteForNoStreams() throws Exception
+    {
+        doReturn(Collections.emptyList()).when(_streamService).getMetadataForStreams(null, null, 2);
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new StreamMetadataXmlOutput(_streamService, null, 2).write(output);
+
+        final StreamMetadataCollection collection = (StreamMetadataCollection) JAXBContext.newInstance(StreamMetadataCollection.class)
+                .createUnmarshaller().unmarshal(new ByteArrayInputStream(output.toByteArray()));
+
+        Assert.assertThat(collection.getMetadata().isEmpty(), is(true));
+    }
+
+    /**
+     * Provides a convenience method to write a {@link StreamMetadataCollection} the way JAXB does.
+     *
+     * @param collection The {@link StreamMetadataCollection} to write. Must not be null.
+     *
+     * @return The XML for the collection. Will not be null.
+     */
+    private String writeWithJaxb(final StreamMetadataCollection collection) throws Exception
+    {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        JAXBContext.newInstance(StreamMetadataCollection.class).createMarshaller().marshal(collection, output);
+
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Provides a convenience method to create a {@link StreamMetadata} for a given ID.
+     *
+     * @param id The ID of the stream. Must not be null.
+     *
+     * @return A {@link StreamMetadata} for a successfully saved stream, with a version we shouldn't see. Will not be null.
+     */
+    private StreamMetadata createMetadata(final String id)
+    {
+        final StreamMetadata metadata = new StreamMetadata();
+
+        metadata.setId(id);
+        metadata.setStatus(StreamStatus.SUCCESSFUL);
+        metadata.setFileSize(1024L);
+        metadata.setContentVersion("v1");
+        metadata.setVersion(3L);
+
+        return metadata;
+    }
+}
@@ -1,8 +1,14 @@
 package com._8x8.cloud.hss.resource;
 
+import com._8x8.cloud.hss.model.StreamIdCollection;
 import com._8x8.cloud.hss.model.StreamMetadata;
 import com._8x8.cloud.hss.model.StreamMetadataCollection;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
+import com._8x8.cloud.hss.model.StreamStatistics;
 import com._8x8.cloud.hss.model.StreamStatus;
+import com._8x8.cloud.hss.model.StreamStatusCollection;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
@@ -18,19 +24,31 @@ import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 
 import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
 import static org.hamcrest.core.Is.is;
 
 /**
@@ -93,24 +111,25 @@ public class StreamResourceITCase
         // Go grab the storage directory from the server.
         _storageDirectory = _testEndpoint.path("storage").request().get().readEntity(String.class);
 
-        _file = new File(_storageDirectory, _uuid);
+        _file = getFileForStream(_uuid);
     }
 
     @After
     public void tearDown() throws Exception
     {
+        // Writes through the API go to a new version of the stream, so find out where it ended up before we lose track.
+        final File file = getFileForStream(_uuid);
+
         // Make sure we wipe down the metadata for the file.
         deleteStreamStatus(_file.getName());
 
         // Try not to leave any dangling files around if our test fails...
-        if (_file.exists())
-        {
-            FileUtils.forceDelete(_file);
-        }
+        FileUtils.deleteQuietly(file);
+        FileUtils.deleteQuietly(_file);
     }
 
     /**
-     * Tests {@link StreamResource#getStreamById(String, List)} for the happy path. We should get a 200/OK with our input
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the happy path. We should get a 200/OK with our input
      * stream.
      */
     @Test
@@ -122,8 +141,9 @@ public class StreamResourceITCase
         // So... this should already be here.
         final Response response = _client.path(_uuid).request("application/octet-stream").get();
 
-        // We should get a 200/OK with what we wrote to the filesystem earlier.
+        // We should get a 200/OK with what we wrote to the filesystem earlier. Since this is unfiltered, we know the length.
         Assert.assertThat(Response.Status.OK.getStatusCode(), is(response.getStatus()));
+        Assert.assertThat(response.getLength(), is((int) _file.length()));
         Assert.assertThat(response.readEntity(String.class), is(_testPayload));
 
         // Clean up after ourselves. Hopefully.
@@ -131,7 +151,42 @@ public class StreamResourceITCase
     }
 
     /**
-     * Tests {@link StreamResource#getStreamById(String, List)} for the case where the ID is not know to the system. We should
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the case where we ask for a byte
+     * range. We should get a 206/PARTIAL CONTENT with just those bytes, even if we'd accept gzip.
+     */
+    @Test
+    public void testGetStreamByIdForRange() throws Exception
+    {
+        createStream(_file, IOUtils.toInputStream(_testPayload));
+
+        final Response response = _client.path(_uuid)
+                                         .request("application/octet-stream")
+                                         .header("Range", "bytes=5-14")
+                                         .header("Accept-Encoding", "gzip")
+                                         .get();
+
+        Assert.assertThat(Response.Status.PARTIAL_CONTENT.getStatusCode(), is(response.getStatus()));
+        Assert.assertThat(response.getHeaderString("Content-Range"), is(String.format("bytes 5-14/%d", _file.length())));
+        Assert.assertThat(response.readEntity(String.class), is(_testPayload.substring(5, 15)));
+
+        // And if we ask for two, we should get a multipart/byteranges body with both.
+        final Response multipartResponse = _client.path(_uuid)
+                                                  .request()
+                                                  .header("Range", "bytes=0-3,-7")
+                                                  .get();
+
+        Assert.assertThat(Response.Status.PARTIAL_CONTENT.getStatusCode(), is(multipartResponse.getStatus()));
+        Assert.assertThat(multipartResponse.getMediaType().toString(), startsWith("multipart/byteranges"));
+
+        final String body = multipartResponse.readEntity(String.class);
+        Assert.assertThat(body, containsString(String.format("Content-Range: bytes 0-3/%d\r\n\r\n%s", _file.length(), _testPayload.substring(0, 4))));
+        Assert.assertThat(body, containsString(_testPayload.substring(_testPayload.length() - 7)));
+
+        deleteStream(_file);
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the case where the ID is not know to the system. We should
      * get a 404/NOT FOUND here.
      */
     @Test
@@ -144,7 +199,7 @@ public class StreamResourceITCase
     }
 
     /**
-     * Tests {@link StreamResource#getStreamById(String, List)} for the case where the ID of the stream is considered invalid.
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the case where the ID of the stream is considered invalid.
      * This should return a 403/FORBIDDEN.
      */
     @Test
@@ -157,7 +212,7 @@ public class StreamResourceITCase
     }
 
     /**
-     * Tests {@link StreamResource#getStreamById(String, List)} for the case where the stream is known, but is listed as
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the case where the stream is known, but is listed as
      * {@link StreamStatus#IN_PROGRESS}.
      **/
     @Test
@@ -175,7 +230,7 @@ public class StreamResourceITCase
     }
 
     /**
-     * Tests {@link StreamResource#getStreamById(String, List)} for the case where the stream is known, but is listed as
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the case where the stream is known, but is listed as
      * {@link StreamStatus#FAILED}.
      **/
     @Test
@@ -291,7 +346,36 @@ public class StreamResourceITCase
         Assert.assertThat(response.getHeaders().containsKey("Location"), is(false));
 
         // And now make sure what's on our filesystem matches what we thought we updated to.
-        Assert.assertThat(updatedPayload, is(FileUtils.readFileToString(_file)));
+        Assert.assertThat(updatedPayload, is(FileUtils.readFileToString(getFileForStream(_uuid))));
+
+        // Clean up after ourselves. Hopefully.
+        deleteStream(_file);
+    }
+
+    /**
+     * Tests {@link StreamResource#updateStream(String, List, InputStream)} to make sure an update is written to a new
+     * version of the stream, and the previous version is cleaned up once nobody is reading it.
+     */
+    @Test
+    public void testUpdateStreamCreatesNewVersion() throws Exception
+    {
+        final Response creationResponse = _client.path(_uuid).request().post(Entity.entity(IOUtils.toInputStream(_testPayload), MediaType.APPLICATION_OCTET_STREAM_TYPE));
+        Assert.assertThat(Response.Status.CREATED.getStatusCode(), is(creationResponse.getStatus()));
+
+        final File firstVersion = getFileForStream(_uuid);
+        Assert.assertThat(FileUtils.readFileToString(firstVersion), is(_testPayload));
+
+        final String updatedPayload = UUID.randomUUID().toString() + " I AM TOTALLY UPDATED";
+        final Response response = _client.path(_uuid).request().put(Entity.entity(IOUtils.toInputStream(updatedPayload), MediaType.APPLICATION_OCTET_STREAM_TYPE));
+        Assert.assertThat(Response.Status.NO_CONTENT.getStatusCode(), is(response.getStatus()));
+
+        // We should have swapped over to a brand new file, and nobody was reading the old one so it should be gone.
+        final File secondVersion = getFileForStream(_uuid);
+
+        Assert.assertThat(secondVersion, is(not(equalTo(firstVersion))));
+        Assert.assertThat(firstVersion.exists(), is(false));
+        Assert.assertThat(FileUtils.readFileToString(secondVersion), is(updatedPayload));
+        Assert.assertThat(_client.path(_uuid).request("application/octet-stream").get().readEntity(String.class), is(updatedPayload));
 
         // Clean up after ourselves. Hopefully.
         deleteStream(_file);
@@ -356,7 +440,7 @@ public class StreamResourceITCase
 
     /**
      * Tests a round trip of {@link StreamResource#createStream(UriInfo, String, List, InputStream)},
-     * {@link StreamResource#getStreamById(String, List)} for a binary object, in this case, an image.
+     * {@link StreamResource#getStreamById(String, List, String, String, String, String)} for a binary object, in this case, an image.
      */
     @Test
     public void testBinaryRoundTrip() throws Exception
@@ -391,6 +475,87 @@ public class StreamResourceITCase
         deleteStream(_file);
     }
 
+    /**
+     * Tests that a stream uploaded through the API is digested on the way in, that we hand out its SHA-256 as a strong
+     * ETag, and that a client holding the current version gets a 304/NOT MODIFIED rather than the whole thing again.
+     */
+    @Test
+    public void testGetStreamByIdForConditionalGet() throws Exception
+    {
+        final Response creationResponse = _client.path(_uuid)
+                                                 .request()
+                                                 .post(Entity.entity(_testPayload, MediaType.APPLICATION_OCTET_STREAM_TYPE));
+        Assert.assertThat(Response.Status.CREATED.getStatusCode(), is(creationResponse.getStatus()));
+
+        // Our metadata should carry the digests of what we stored...
+        final StreamMetadata metadata = _client.path(_uuid).path("status").request(MediaType.APPLICATION_JSON).get(StreamMetadata.class);
+        final String etag = String.format("\"%s\"", DigestUtils.sha256Hex(_testPayload));
+
+        Assert.assertThat(metadata.getSha256(), is(DigestUtils.sha256Hex(_testPayload)));
+        Assert.assertThat(metadata.getCrc32c(), is(not(nullValue())));
+
+        // ... and the stream should be tagged with it.
+        final Response response = _client.path(_uuid).request("application/octet-stream").get();
+        final String lastModified = response.getHeaderString("Last-Modified");
+
+        Assert.assertThat(Response.Status.OK.getStatusCode(), is(response.getStatus()));
+        Assert.assertThat(response.getHeaderString("ETag"), is(etag));
+        Assert.assertThat(response.readEntity(String.class), is(_testPayload));
+
+        // Either of our validators should get us a 304, with no body.
+        final Response etagResponse = _client.path(_uuid).request("application/octet-stream").header("If-None-Match", etag).get();
+        Assert.assertThat(Response.Status.NOT_MODIFIED.getStatusCode(), is(etagResponse.getStatus()));
+        Assert.assertThat(etagResponse.getHeaderString("ETag"), is(etag));
+        Assert.assertThat(etagResponse.hasEntity(), is(false));
+
+        final Response dateResponse = _client.path(_uuid).request("application/octet-stream").header("If-Modified-Since", lastModified).get();
+        Assert.assertThat(Response.Status.NOT_MODIFIED.getStatusCode(), is(dateResponse.getStatus()));
+
+        // But a stale tag should get us the stream, even if the date would match.
+        final Response staleResponse = _client.path(_uuid)
+                                              .request("application/octet-stream")
+                                              .header("If-None-Match", "\"stale\"")
+                                              .header("If-Modified-Since", lastModified)
+                                              .get();
+
+        Assert.assertThat(Response.Status.OK.getStatusCode(), is(staleResponse.getStatus()));
+        Assert.assertThat(staleResponse.readEntity(String.class), is(_testPayload));
+
+        deleteStream(_file);
+    }
+
+    /**
+     * Tests {@link StreamResource#headStreamById(String, List, String, String)}. We should get the same headers as a
+     * GET, but no body, and a 404/NOT FOUND once the stream is gone.
+     */
+    @Test
+    public void testHeadStreamById() throws Exception
+    {
+        final Response creationResponse = _client.path(_uuid)
+                                                 .request()
+                                                 .post(Entity.entity(_testPayload, MediaType.APPLICATION_OCTET_STREAM_TYPE));
+        Assert.assertThat(Response.Status.CREATED.getStatusCode(), is(creationResponse.getStatus()));
+
+        final Response getResponse = _client.path(_uuid).request("application/octet-stream").get();
+        getResponse.close();
+
+        final Response response = _client.path(_uuid).request("application/octet-stream").header("Accept-Encoding", "gzip").head();
+
+        Assert.assertThat(Response.Status.OK.getStatusCode(), is(response.getStatus()));
+        Assert.assertThat(response.getLength(), is(_testPayload.length()));
+        Assert.assertThat(response.getHeaderString("ETag"), is(getResponse.getHeaderString("ETag")));
+        Assert.assertThat(response.getHeaderString("Last-Modified"), is(getResponse.getHeaderString("Last-Modified")));
+        Assert.assertThat(response.getHeaderString("Accept-Ranges"), is("bytes"));
+        Assert.assertThat(response.hasEntity(), is(false));
+
+        // We can't describe a filtered stream without filtering it, so we shouldn't pretend to.
+        Assert.assertThat(Response.Status.BAD_REQUEST.getStatusCode(), is(_client.path(_uuid).queryParam("filters", "zip").request().head().getStatus()));
+
+        deleteStream(_file);
+
+        Assert.assertThat(Response.Status.NOT_FOUND.getStatusCode(), is(_client.path(_uuid).request().head().getStatus()));
+    }
+
     /**
      * Tests a round trip where our filters match, and we expect the happy path.
      */
@@ -424,7 +589,7 @@ public class StreamResourceITCase
         Assert.assertThat(getResponse.readEntity(String.class), is(_testPayload));
 
         // Make sure we've actually done something with our filters...
-        Assert.assertThat(FileUtils.readFileToString(_file), is(not(equalTo(_testPayload))));
+        Assert.assertThat(FileUtils.readFileToString(getFileForStream(_uuid)), is(not(equalTo(_testPayload))));
 
         // Clean up after ourselves. Hopefully.
         deleteStream(_file);
@@ -468,7 +633,7 @@ public class StreamResourceITCase
         Assert.assertThat(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), is(getResponse.getStatus()));
 
         // Demonstrate that all we've done is Base64 encoded our value.
-        Assert.assertThat(FileUtils.readFileToString(_file).trim(), is((equalTo(Base64.encodeBase64String(_testPayload.getBytes())))));
+        Assert.assertThat(FileUtils.readFileToString(getFileForStream(_uuid)).trim(), is((equalTo(Base64.encodeBase64String(_testPayload.getBytes())))));
 
         // Clean up after ourselves. Hopefully.
         deleteStream(_file);
@@ -508,7 +673,7 @@ public class StreamResourceITCase
         Assert.assertThat(getResponse.readEntity(String.class), is(_testPayload));
 
         // And then demonstrate the file has had nothing done to it.
-        Assert.assertThat(FileUtils.readFileToString(_file), is(_testPayload));
+        Assert.assertThat(FileUtils.readFileToString(getFileForStream(_uuid)), is(_testPayload));
 
         // Clean up after ourselves. Hopefully.
         deleteStream(_file);
@@ -586,6 +751,196 @@ public class StreamResourceITCase
         Assert.assertThat(_file.exists(), is(false));
     }
 
+    /**
+     * Tests {@link StreamResource#getStatistics()} around the life of a stream written and deleted through the API.
+     * Other tests move the numbers too, so we only look at how ours moved them.
+     */
+    @Test
+    public void testGetStatistics() throws Exception
+    {
+        final StreamStatistics before = _client.path("/stats").request(MediaType.APPLICATION_JSON).get(StreamStatistics.class);
+
+        final Response created = _client.path(_uuid).request().post(Entity.entity(IOUtils.toInputStream(_testPayload), MediaType.APPLICATION_OCTET_STREAM_TYPE));
+        Assert.assertThat(created.getStatus(), is(Response.Status.CREATED.getStatusCode()));
+
+        final StreamStatistics during = _client.path("/stats").request(MediaType.APPLICATION_JSON).get(StreamStatistics.class);
+        Assert.assertThat(during.getSuccessfulCount(), is(before.getSuccessfulCount() + 1));
+        Assert.assertThat(during.getStreamCount(), is(before.getStreamCount() + 1));
+        Assert.assertThat(during.getTotalBytes(), is(before.getTotalBytes() + _testPayload.length()));
+
+        Assert.assertThat(_client.path(_uuid).request().delete().getStatus(), is(Response.Status.ACCEPTED.getStatusCode()));
+
+        final StreamStatistics after = _client.path("/stats").request(MediaType.APPLICATION_JSON).get(StreamStatistics.class);
+        Assert.assertThat(after.getSuccessfulCount(), is(before.getSuccessfulCount()));
+        Assert.assertThat(after.getTotalBytes(), is(before.getTotalBytes()));
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamStatusesForIds(StreamIdCollection)} for a mix of known and unknown streams, in
+     * both of the formats we speak. Every distinct ID should come back, in order, and the request shouldn't be mistaken
+     * for an upload to a stream called <code>status:batch</code>.
+     */
+    @Test
+    public void testGetStreamStatusesForIds() throws Exception
+    {
+        final Response created = _client.path(_uuid).request().post(Entity.entity(IOUtils.toInputStream(_testPayload), MediaType.APPLICATION_OCTET_STREAM_TYPE));
+        Assert.assertThat(created.getStatus(), is(Response.Status.CREATED.getStatusCode()));
+
+        final String unknown = UUID.randomUUID().toString();
+        final StreamIdCollection ids = new StreamIdCollection();
+        ids.setIds(Arrays.asList(unknown, _uuid, unknown));
+
+        for (final MediaType mediaType : Arrays.asList(MediaType.APPLICATION_JSON_TYPE, MediaType.APPLICATION_XML_TYPE))
+        {
+            final Response response = _client.path("/status:batch").request(mediaType).post(Entity.entity(ids, mediaType));
+            Assert.assertThat(response.getStatus(), is(Response.Status.OK.getStatusCode()));
+
+            final List<StreamStatusCollection.Entry> statuses = response.readEntity(StreamStatusCollection.class).getStatuses();
+            Assert.assertThat(statuses.stream().map(StreamStatusCollection.Entry::getId).collect(toList()), is(Arrays.asList(unknown, _uuid)));
+            Assert.assertThat(statuses.stream().map(StreamStatusCollection.Entry::getStatus).collect(toList()),
+                              is(Arrays.asList(StreamStatus.NOT_FOUND, StreamStatus.SUCCESSFUL)));
+        }
+
+        // And an invalid ID should spoil the whole batch.
+        ids.setIds(Arrays.asList(_uuid, "invalid@id"));
+        Assert.assertThat(_client.path("/status:batch").request(MediaType.APPLICATION_JSON).post(Entity.json(ids)).getStatus(),
+                          is(Response.Status.FORBIDDEN.getStatusCode()));
+
+        deleteStream(_file);
+    }
+
+    /**
+     * Tests {@link StreamResource#getChanges(String, String)} by following the feed while we write and delete a stream.
+     * We should see each transition of our stream go by, in order.
+     */
+    @Test
+    public void testGetChanges() throws Exception
+    {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(URL_PREFIX + "/changes").openConnection();
+        connection.setReadTimeout((int) TimeUnit.SECONDS.toMillis(30));
+
+        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)))
+        {
+            Assert.assertThat(connection.getResponseCode(), is(Response.Status.OK.getStatusCode()));
+            Assert.assertThat(connection.getContentType(), startsWith("text/event-stream"));
+
+            // We hear from the feed straight away (IE: a comment), by which point we're following it.
+            Assert.assertThat(reader.readLine(), startsWith(":"));
+
+            final Response created = _client.path(_uuid).request().post(Entity.entity(IOUtils.toInputStream(_testPayload), MediaType.APPLICATION_OCTET_STREAM_TYPE));
+            Assert.assertThat(created.getStatus(), is(Response.Status.CREATED.getStatusCode()));
+            Assert.assertThat(_client.path(_uuid).request().delete().getStatus(), is(Response.Status.ACCEPTED.getStatusCode()));
+
+            final ObjectMapper mapper = new ObjectMapper();
+            final List<String> statuses = new ArrayList<>();
+
+            while (statuses.size() < 3)
+            {
+                final String line = reader.readLine();
+                Assert.assertThat(line, is(not(nullValue())));
+
+                if (line.startsWith("data: "))
+                {
+                    final JsonNode change = mapper.readTree(line.substring("data: ".length()));
+
+                    if (_uuid.equals(change.path("id").asText()))
+                    {
+                        statuses.add(change.path("status").asText());
+                    }
+                }
+            }
+
+            Assert.assertThat(statuses, is(Arrays.asList("IN_PROGRESS", "SUCCESSFUL", "NOT_FOUND")));
+        }
+        finally
+        {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Tests {@link StreamResource#getChanges(String, String)} for a client reconnecting with an event ID from before a
+     * restart. It can't know what it missed, so the first thing it should hear about is a reset.
+     */
+    @Test
+    public void testGetChangesAfterRestart() throws Exception
+    {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(URL_PREFIX + "/changes").openConnection();
+        connection.setRequestProperty(StreamResource.LAST_EVENT_ID, "0-5");
+        connection.setReadTimeout((int) TimeUnit.SECONDS.toMillis(30));
+
+        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)))
+        {
+            Assert.assertThat(connection.getResponseCode(), is(Response.Status.OK.getStatusCode()));
+
+            String line;
+
+            do
+            {
+                line = reader.readLine();
+                Assert.assertThat(line, is(not(nullValue())));
+            }
+            while (!line.startsWith("event:"));
+
+            Assert.assertThat(line, is("event: reset"));
+        }
+        finally
+        {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Tests waiting on a stream while it's being uploaded, for both its status and its data. Neither should be answered
+     * until the upload is done (unless we run out of time), and then both should see the finished stream.
+     */
+    @Test
+    public void testGetStreamByIdWaitingForSuccess() throws Exception
+    {
+        final byte[] payload = _testPayload.getBytes(StandardCharsets.UTF_8);
+        final HttpURLConnection upload = (HttpURLConnection) new URL(URL_PREFIX + "/" + _uuid).openConnection();
+        upload.setDoOutput(true);
+        upload.setRequestMethod("POST");
+        upload.setRequestProperty("Content-Type", MediaType.APPLICATION_OCTET_STREAM);
+        upload.setChunkedStreamingMode(16);
+
+        // Send half of our stream, and wait for the upload to get under way.
+        final OutputStream body = upload.getOutputStream();
+        body.write(payload, 0, payload.length / 2);
+        body.flush();
+
+        final WebTarget status = _client.path(_uuid + "/status");
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+
+        while (status.request(MediaType.APPLICATION_JSON).get().getStatus() != Response.Status.OK.getStatusCode())
+        {
+            Assert.assertThat(System.currentTimeMillis(), is(lessThan(deadline)));
+            Thread.sleep(50);
+        }
+
+        // Running out of time should get us the stream as it is.
+        final StreamMetadata timedOut = status.queryParam("waitFor", "SUCCESSFUL").queryParam("timeout", "200ms").request(MediaType.APPLICATION_JSON).get(StreamMetadata.class);
+        Assert.assertThat(timedOut.getStatus(), is(StreamStatus.IN_PROGRESS));
+
+        final Future<Response> metadata = status.queryParam("waitFor", "SUCCESSFUL").queryParam("timeout", "30s").request(MediaType.APPLICATION_JSON).async().get();
+        final Future<Response> stream = _client.path(_uuid).queryParam("waitFor", "SUCCESSFUL").request().async().get();
+
+        Thread.sleep(500);
+        Assert.assertThat(metadata.isDone(), is(false));
+        Assert.assertThat(stream.isDone(), is(false));
+
+        // Finish up, and both should be answered.
+        body.write(payload, payload.length / 2, payload.length - payload.length / 2);
+        body.close();
+        Assert.assertThat(upload.getResponseCode(), is(Response.Status.CREATED.getStatusCode()));
+
+        Assert.assertThat(metadata.get(30, TimeUnit.SECONDS).readEntity(StreamMetadata.class).getStatus(), is(StreamStatus.SUCCESSFUL));
+
+        final Response streamResponse = stream.get(30, TimeUnit.SECONDS);
+        Assert.assertThat(streamResponse.getStatus(), is(Response.Status.OK.getStatusCode()));
+        Assert.assertThat(IOUtils.toString(streamResponse.readEntity(InputStream.class)), is(_testPayload));
+    }
+
     /**
      * Tests {@link StreamResource#getStreamMetadata()} for the happy path, where we have multiple streams.
      */
@@ -593,28 +948,33 @@ public class StreamResourceITCase
     public void testGetStreamMetadata() throws Exception
     {
         // Put some files on the filesystem.
-        final File firstFile = new File(_storageDirectory, "a"+_uuid);
+        final File firstFile = getFileForStream("a"+_uuid);
         createStream(firstFile, IOUtils.toInputStream(_testPayload));
 
-        final File secondFile = new File(_storageDirectory, "z"+UUID.randomUUID().toString());
+        final File secondFile = getFileForStream("z"+UUID.randomUUID().toString());
         createStream(secondFile, IOUtils.toInputStream("Totally awesomelyrandompayloaddddd " + secondFile.getName()));
 
-        // Go grab the statuses.
-        final Response response = _client.request().get();
+        // Go grab the statuses, in each of the representations we write as we go.
+        for (final MediaType mediaType : Arrays.asList(MediaType.APPLICATION_XML_TYPE, MediaType.APPLICATION_JSON_TYPE))
+        {
+            final Response response = _client.request(mediaType).get();
 
-        // We should grab a 200/OK back, and the entity should be our metadata collection.
-        Assert.assertThat(Response.Status.OK.getStatusCode(), is(response.getStatus()));
-        final StreamMetadataCollection metadataCollection = response.readEntity(StreamMetadataCollection.class);
+            // We should grab a 200/OK back, and the entity should be our metadata collection.
+            Assert.assertThat(Response.Status.OK.getStatusCode(), is(response.getStatus()));
+            Assert.assertThat(response.getMediaType(), is(mediaType));
+            final StreamMetadataCollection metadataCollection = response.readEntity(StreamMetadataCollection.class);
 
-        // Make sure we have the right number of items.
-        Assert.assertThat(2, is(metadataCollection.getMetadata().size()));
+            // Make sure we have the right number of items.
+            Assert.assertThat(2, is(metadataCollection.getMetadata().size()));
 
-        // Sort them for reproducible ordering
-        metadataCollection.setMetadata(metadataCollection.getMetadata().stream().sorted((lhs, rhs) -> lhs.getId().compareTo(rhs.getId())).collect(toList()));
+            // Sort them for reproducible ordering
+            metadataCollection.setMetadata(metadataCollection.getMetadata().stream().sorted((lhs, rhs) -> lhs.getId().compareTo(rhs.getId())).collect(toList()));
 
-        // Make sure the metadata matches the file.
-        assertMetadataMatchesFile(firstFile, metadataCollection.getMetadata().get(0));
-        assertMetadataMatchesFile(secondFile, metadataCollection.getMetadata().get(1));
+            // Make sure the metadata matches the file.
+            assertMetadataMatchesFile(firstFile, metadataCollection.getMetadata().get(0));
+            assertMetadataMatchesFile(secondFile, metadataCollection.getMetadata().get(1));
+            Assert.assertThat(metadataCollection.getNext(), is(nullValue()));
+        }
 
         // Clean up our temp files.
         deleteStream(firstFile);
@@ -628,13 +988,130 @@ public class StreamResourceITCase
     public void testGetStreamMetadataWithNoStreams() throws Exception
     {
         // We should have nothing on disk here.
-        final Response response = _client.request().get();
+        for (final MediaType mediaType : Arrays.asList(MediaType.APPLICATION_XML_TYPE, MediaType.APPLICATION_JSON_TYPE))
+        {
+            final Response response = _client.request(mediaType).get();
 
-        // We should get back a 200/OK with an empty collection.
-        Assert.assertThat(Response.Status.OK.getStatusCode(), is(response.getStatus()));
-        final StreamMetadataCollection metadataCollection = response.readEntity(StreamMetadataCollection.class);
+            // We should get back a 200/OK with an empty collection.
+            Assert.assertThat(Response.Status.OK.getStatusCode(), is(response.getStatus()));
+            final StreamMetadataCollection metadataCollection = response.readEntity(StreamMetadataCollection.class);
+
+            Assert.assertThat(0, is(metadataCollection.getMetadata().size()));
+        }
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamMetadata(StreamMetadataCriteria, int, String)} by paging through our streams one at a time. We should
+     * see each of them once, in order, with a cursor on every page but the last.
+     */
+    @Test
+    public void testGetStreamMetadataForPages() throws Exception
+    {
+        final File firstFile = getFileForStream("a"+_uuid);
+        createStream(firstFile, IOUtils.toInputStream(_testPayload));
+
+        final File secondFile = getFileForStream("z"+UUID.randomUUID().toString());
+        createStream(secondFile, IOUtils.toInputStream(_testPayload));
 
-        Assert.assertThat(0, is(metadataCollection.getMetadata().size()));
+        final StreamMetadataCollection firstPage = _client.queryParam("limit", 1).request(MediaType.APPLICATION_JSON).get(StreamMetadataCollection.class);
+
+        Assert.assertThat(firstPage.getMetadata().size(), is(1));
+        assertMetadataMatchesFile(firstFile, firstPage.getMetadata().get(0));
+        Assert.assertThat(firstPage.getNext(), is(not(nullValue())));
+
+        final StreamMetadataCollection secondPage = _client.queryParam("limit", 1)
+                                                           .queryParam("after", firstPage.getNext())
+                                                           .request(MediaType.APPLICATION_JSON)
+                                                           .get(StreamMetadataCollection.class);
+
+        Assert.assertThat(secondPage.getMetadata().size(), is(1));
+        assertMetadataMatchesFile(secondFile, secondPage.getMetadata().get(0));
+        Assert.assertThat(secondPage.getNext(), is(nullValue()));
+
+        // Somebody else's cursor is no good to us.
+        Assert.assertThat(_client.queryParam("after", "garbage!").request().get().getStatus(), is(Response.Status.BAD_REQUEST.getStatusCode()));
+
+        // Nor is a page size that isn't a number.
+        Assert.assertThat(_client.queryParam("limit", "ten").request().get().getStatus(), is(Response.Status.BAD_REQUEST.getStatusCode()));
+
+        deleteStream(firstFile);
+        deleteStream(secondFile);
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamMetadata(StreamMetadataCriteria, int, String)} with some criteria. We should
+     * only get back what matches.
+     */
+    @Test
+    public void testGetStreamMetadataForCriteria() throws Exception
+    {
+        final File firstFile = getFileForStream("a"+_uuid);
+        createStream(firstFile, IOUtils.toInputStream(_testPayload));
+
+        final File secondFile = getFileForStream("z"+UUID.randomUUID().toString());
+        createStream(secondFile, IOUtils.toInputStream(_testPayload + _testPayload));
+
+        final StreamMetadataCollection prefixed = _client.queryParam("prefix", "a")
+                                                         .queryParam("status", StreamStatus.SUCCESSFUL)
+                                                         .request(MediaType.APPLICATION_JSON)
+                                                         .get(StreamMetadataCollection.class);
+
+        Assert.assertThat(prefixed.getMetadata().size(), is(1));
+        assertMetadataMatchesFile(firstFile, prefixed.getMetadata().get(0));
+
+        final StreamMetadataCollection large = _client.queryParam("minSize", firstFile.length() + 1)
+                                                      .queryParam("modifiedAfter", System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1))
+                                                      .request(MediaType.APPLICATION_JSON)
+                                                      .get(StreamMetadataCollection.class);
+
+        Assert.assertThat(large.getMetadata().size(), is(1));
+        assertMetadataMatchesFile(secondFile, large.getMetadata().get(0));
+
+        // Nothing has failed.
+        Assert.assertThat(_client.queryParam("status", StreamStatus.FAILED).request(MediaType.APPLICATION_JSON).get(StreamMetadataCollection.class).getMetadata().size(),
+                          is(0));
+
+        // And no valid ID is going to start with this.
+        Assert.assertThat(_client.queryParam("prefix", "n/a").request().get().getStatus(), is(Response.Status.BAD_REQUEST.getStatusCode()));
+
+        deleteStream(firstFile);
+        deleteStream(secondFile);
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamMetadataAsNdjson(StreamMetadataCriteria, String)}, which we should get when we ask for NDJSON. We
+     * should get a line per stream, each of which looks just like it would in a JSON listing.
+     */
+    @Test
+    public void testGetStreamMetadataAsNdjson() throws Exception
+    {
+        final File firstFile = getFileForStream("a"+_uuid);
+        createStream(firstFile, IOUtils.toInputStream(_testPayload));
+
+        final File secondFile = getFileForStream("z"+UUID.randomUUID().toString());
+        createStream(secondFile, IOUtils.toInputStream(_testPayload));
+
+        final Response response = _client.request(StreamResource.APPLICATION_NDJSON).get();
+
+        Assert.assertThat(response.getStatus(), is(Response.Status.OK.getStatusCode()));
+        Assert.assertThat(response.getMediaType().toString(), startsWith(StreamResource.APPLICATION_NDJSON));
+
+        final String[] lines = response.readEntity(String.class).split("\n");
+        Assert.assertThat(lines.length, is(2));
+
+        final ObjectMapper objectMapper = new ObjectMapper();
+        final JsonNode listing = objectMapper.readTree(_client.request(MediaType.APPLICATION_JSON).get(String.class)).get("metadata");
+
+        for (int line = 0; line < lines.length; line++)
+        {
+            Assert.assertThat(objectMapper.readTree(lines[line]), is(listing.get(line)));
+        }
+
+        // Without asking, we should still get the listing we always did.
+        Assert.assertThat(_client.request().get().getMediaType().toString(), startsWith(MediaType.APPLICATION_XML));
+
+        deleteStream(firstFile);
+        deleteStream(secondFile);
     }
 
     /**
@@ -797,13 +1274,30 @@ public class StreamResourceITCase
      */
     private void deleteStream(final File file) throws Exception
     {
-        // Create the file on disk.
-        FileUtils.forceDelete(file);
+        // Delete the file on disk. If the stream was written through the API, it'll be in a newer version than the one
+        // we were handed.
+        FileUtils.forceDelete(getFileForStream(file.getName()));
 
         // Delete metadata.
         deleteStreamStatus(file.getName());
     }
 
+    /**
+     * Provides a convenience method to find where the server stores the current version of a given stream, since
+     * streams are bucketed into subdirectories of {@link #_storageDirectory}, and each write creates a new version.
+     *
+     * @param id The ID of the stream to get the {@link File} for.
+     *
+     * @return A {@link File} pointing to where the stream is, or would be, stored.
+     */
+    private File getFileForStream(final String id)
+    {
+        final String location = _testEndpoint.path("storage").path(id).request().get().readEntity(String.class);
+        Assert.assertThat(location, startsWith(_storageDirectory));
+
+        return new File(location);
+    }
+
     /**
      * Provides a mechanism to change the state of a stream in the tracking persistence layer.
      *
@@ -1,26 +1,50 @@
 package com._8x8.cloud.hss.resource;
 
+import com._8x8.cloud.hss.model.StreamIdCollection;
 import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCollection;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
+import com._8x8.cloud.hss.model.StreamStatistics;
 import com._8x8.cloud.hss.model.StreamStatus;
+import com._8x8.cloud.hss.model.StreamStatusCollection;
+import com._8x8.cloud.hss.service.StreamChangeFeed;
 import com._8x8.cloud.hss.service.StreamService;
+import com._8x8.cloud.hss.service.StreamVersion;
 import org.apache.commons.io.IOUtils;
+import org.glassfish.jersey.media.sse.EventOutput;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.core.Variant;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
+import static java.util.stream.Collectors.toList;
 import static org.hamcrest.Matchers.*;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
@@ -87,50 +111,368 @@ public class StreamResourceTestCase
         runValidateTestCase("aBcD@@taters", false);
         runValidateTestCase("8675309-jenny@$%", false);
         runValidateTestCase("blah41314[]!_-.*()stilvalid", false);
+
+        // Nor should anything too long for our database.
+        runValidateTestCase(String.join("", Collections.nCopies(255, "a")), true);
+        runValidateTestCase(String.join("", Collections.nCopies(256, "a")), false);
     }
 
     /**
-     * Tests {@link StreamResource#getStreamById(String, List)} for the happy path.
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the happy path.
      */
     @Test
     public void testGetStreamById() throws Exception
     {
         // We're going to pretend we have this stream.
-        doReturn(mock(InputStream.class)).when(_streamService).getStreamById(anyString(), anyListOf(String.class));
+        doReturn(mock(InputStream.class)).when(_streamService).getStream(any(StreamMetadata.class), anyListOf(String.class));
 
         // Likewise, it's successful.
-        doReturn(StreamStatus.SUCCESSFUL).when(_streamService).getStatusForStreamById(anyString());
+        doReturn(createMetadata(StreamStatus.SUCCESSFUL, 4096L)).when(_streamService).getMetadataForStreamById(anyString());
+
+        final Response response = _resource.getStreamById("testvendor", Arrays.asList("some", "filters"), null, null, null, null);
+
+        // Verify interactions.
+        verify(_resource).getStreamById(anyString(), anyListOf(String.class), anyString(), anyString(), anyString(), anyString());
+        verify(_resource).validateId("testvendor");
+        verify(_resource, times(2)).getStreamService();
+
+        verify(_streamService).getMetadataForStreamById(anyString());
+        verify(_streamService).getStream(any(StreamMetadata.class), anyListOf(String.class));
+
+        verifyNoMoreCollaborations();
+
+        // Make sure we got back our 200/OK. Since we're filtering, we have no idea how long this is.
+        Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.OK.getStatusCode())));
+        Assert.assertThat(response.getHeaderString(HttpHeaders.CONTENT_LENGTH), is(nullValue()));
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the case where no filters are requested. In this case
+     * we should be handing back the raw file via a {@link FileChannelStreamingOutput}, with a Content-Length and an ETag.
+     */
+    @Test
+    public void testGetStreamByIdWithNoFilters() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata(StreamStatus.SUCCESSFUL, 4096L);
+        metadata.setSha256("15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225");
+
+        stubChannelForStream(createChannel(4096L));
+        doReturn(metadata).when(_streamService).getMetadataForStreamById(anyString());
 
-        final Response response = _resource.getStreamById("testvendor", Arrays.asList("some", "filters"));
+        final Response response = _resource.getStreamById("testvendor", Collections.emptyList(), null, null, null, null);
 
         // Verify interactions.
-        verify(_resource).getStreamById(anyString(), anyListOf(String.class));
+        verify(_resource).getStreamById(anyString(), anyListOf(String.class), anyString(), anyString(), anyString(), anyString());
+        verify(_resource).validateId("testvendor");
+        verify(_resource, times(3)).getStreamService();
+
+        verify(_resource).isNotModified(null, null, metadata);
+        verify(_resource).isRangeApplicable(null, metadata);
+        verify(_resource).createRawStreamResponse(any(FileChannel.class), any(StreamMetadata.class), anyString());
+
+        verify(_streamService).getMetadataForStreamById(anyString());
+        verify(_streamService).getCachedContentsForStream(metadata);
+        verify(_streamService).getChannelForStream(any(StreamMetadata.class));
+
+        verifyNoMoreCollaborations();
+
+        // We should get a 200/OK, with our length taken from the channel. We should also advertise range support.
+        Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.OK.getStatusCode())));
+        Assert.assertThat(response.getEntity(), is(instanceOf(FileChannelStreamingOutput.class)));
+        Assert.assertThat(response.getHeaderString(HttpHeaders.CONTENT_LENGTH), is("4096"));
+        Assert.assertThat(response.getHeaderString(StreamResource.ACCEPT_RANGES), is("bytes"));
+        Assert.assertThat(response.getLastModified(), is(new Date(metadata.getLastModified())));
+        Assert.assertThat(response.getHeaderString(HttpHeaders.ETAG), is("\"15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225\""));
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the case where the
+     * client already has the current version of an unfiltered stream. We should get a 304/NOT MODIFIED, without opening
+     * the stream at all.
+     */
+    @Test
+    public void testGetStreamByIdForNotModified() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata(StreamStatus.SUCCESSFUL, 4096L);
+        metadata.setSha256("15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225");
+
+        doReturn(metadata).when(_streamService).getMetadataForStreamById(anyString());
+
+        final Response response = _resource.getStreamById("testvendor", Collections.emptyList(), null, null, "\"15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225\"", null);
+
+        verify(_resource).getStreamById(anyString(), anyListOf(String.class), anyString(), anyString(), anyString(), anyString());
+        verify(_resource).validateId("testvendor");
+        verify(_resource).getStreamService();
+        verify(_resource).isNotModified("\"15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225\"", null, metadata);
+
+        verify(_streamService).getMetadataForStreamById(anyString());
+
+        verifyNoMoreCollaborations();
+
+        Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.NOT_MODIFIED.getStatusCode())));
+        Assert.assertThat(response.getEntity(), is(nullValue()));
+        Assert.assertThat(response.getHeaderString(HttpHeaders.ETAG), is("\"15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225\""));
+        Assert.assertThat(response.getLastModified(), is(new Date(metadata.getLastModified())));
+    }
+
+    /**
+     * Tests {@link StreamResource#isNotModified(String, String, StreamMetadata)} to make sure it matches entity tags
+     * (weakly, in lists), prefers them to dates, and compares dates the way HTTP expects.
+     */
+    @Test
+    public void testIsNotModified() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata(StreamStatus.SUCCESSFUL, 4096L);
+        metadata.setSha256("15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225");
+
+        // Sun, 06 Nov 1994 08:49:37 GMT, plus some milliseconds that HTTP dates can't represent.
+        metadata.setLastModified(784111777123L);
+
+        Assert.assertThat(_resource.isNotModified(null, null, metadata), is(false));
+        Assert.assertThat(_resource.isNotModified("\"15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225\"", null, metadata), is(true));
+        Assert.assertThat(_resource.isNotModified("\"other\", W/\"15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225\"", null, metadata), is(true));
+        Assert.assertThat(_resource.isNotModified("*", null, metadata), is(true));
+        Assert.assertThat(_resource.isNotModified("\"other\"", "Sun, 06 Nov 1994 08:49:37 GMT", metadata), is(false));
+
+        Assert.assertThat(_resource.isNotModified(null, "Sun, 06 Nov 1994 08:49:37 GMT", metadata), is(true));
+        Assert.assertThat(_resource.isNotModified(null, "Sun, 06 Nov 1994 08:49:36 GMT", metadata), is(false));
+        Assert.assertThat(_resource.isNotModified(null, "yesterday", metadata), is(false));
+
+        // Without a digest, only a wildcard can match.
+        metadata.setSha256(null);
+        Assert.assertThat(_resource.isNotModified("\"15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225\"", null, metadata), is(false));
+        Assert.assertThat(_resource.isNotModified("*", null, metadata), is(true));
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the case where a single byte range is
+     * requested. We should get a 206/PARTIAL CONTENT with a matching Content-Range and length.
+     */
+    @Test
+    public void testGetStreamByIdForSingleRange() throws Exception
+    {
+        stubChannelForStream(createChannel(4096L));
+        doReturn(createMetadata(StreamStatus.SUCCESSFUL, 4096L)).when(_streamService).getMetadataForStreamById(anyString());
+
+        final Response response = _resource.getStreamById("testvendor", Collections.emptyList(), "bytes=100-199", null, null, null);
+
+        Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.PARTIAL_CONTENT.getStatusCode())));
+        Assert.assertThat(response.getEntity(), is(instanceOf(FileChannelStreamingOutput.class)));
+        Assert.assertThat(response.getHeaderString(HttpHeaders.CONTENT_LENGTH), is("100"));
+        Assert.assertThat(response.getHeaderString(StreamResource.CONTENT_RANGE), is("bytes 100-199/4096"));
+
+        // We don't want anyone gzipping our partial content.
+        Assert.assertThat(response.getHeaderString(HttpHeaders.CONTENT_ENCODING), is("identity"));
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the case where multiple byte ranges are
+     * requested. We should get a 206/PARTIAL CONTENT with a multipart/byteranges body.
+     */
+    @Test
+    public void testGetStreamByIdForMultipleRanges() throws Exception
+    {
+        stubChannelForStream(createChannel(4096L));
+        doReturn(createMetadata(StreamStatus.SUCCESSFUL, 4096L)).when(_streamService).getMetadataForStreamById(anyString());
+
+        final Response response = _resource.getStreamById("testvendor", Collections.emptyList(), "bytes=0-9,-10", null, null, null);
+
+        Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.PARTIAL_CONTENT.getStatusCode())));
+        Assert.assertThat(response.getEntity(), is(instanceOf(ByteRangesStreamingOutput.class)));
+        Assert.assertThat(response.getMediaType().toString(), org.hamcrest.Matchers.startsWith("multipart/byteranges;boundary="));
+        Assert.assertThat(response.getHeaderString(HttpHeaders.CONTENT_LENGTH),
+                          is(String.valueOf(((ByteRangesStreamingOutput) response.getEntity()).getContentLength())));
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the case where the requested range
+     * is entirely past the end of the stream. We should get a 416/REQUESTED RANGE NOT SATISFIABLE, and close our channel.
+     */
+    @Test
+    public void testGetStreamByIdForUnsatisfiableRange() throws Exception
+    {
+        final FileChannel channel = createChannel(4096L);
+
+        stubChannelForStream(channel);
+        doReturn(createMetadata(StreamStatus.SUCCESSFUL, 4096L)).when(_streamService).getMetadataForStreamById(anyString());
+
+        final Response response = _resource.getStreamById("testvendor", Collections.emptyList(), "bytes=5000-", null, null, null);
+
+        Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode())));
+        Assert.assertThat(response.getHeaderString(StreamResource.CONTENT_RANGE), is("bytes */4096"));
+
+        verifyStatic(times(1));
+        IOUtils.closeQuietly(channel);
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the case where a range is requested,
+     * but the If-Range does not match the stream. We should get the whole thing back.
+     */
+    @Test
+    public void testGetStreamByIdForStaleIfRange() throws Exception
+    {
+        stubChannelForStream(createChannel(4096L));
+        doReturn(createMetadata(StreamStatus.SUCCESSFUL, 4096L)).when(_streamService).getMetadataForStreamById(anyString());
+
+        final Response response = _resource.getStreamById("testvendor", Collections.emptyList(), "bytes=100-199", "Sun, 06 Nov 1994 08:49:37 GMT", null, null);
+
+        Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.OK.getStatusCode())));
+        Assert.assertThat(response.getHeaderString(HttpHeaders.CONTENT_LENGTH), is("4096"));
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the case where an
+     * update lands between reading the metadata and opening the stream. A client resuming the old version must not get
+     * a range cut from the new one: it should get the whole new version, described as such.
+     */
+    @Test
+    public void testGetStreamByIdForVersionChangedUnderRange() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata(StreamStatus.SUCCESSFUL, 4096L);
+        metadata.setSha256("15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225");
+
+        final StreamMetadata current = createMetadata(StreamStatus.SUCCESSFUL, 8192L);
+        current.setSha256("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+        current.setLastModified(metadata.getLastModified() + 1000L);
+
+        doReturn(metadata).when(_streamService).getMetadataForStreamById(anyString());
+        doReturn(new StreamVersion<>(current, createChannel(8192L))).when(_streamService).getChannelForStream(metadata);
+
+        final Response response = _resource.getStreamById("testvendor", Collections.emptyList(), "bytes=100-199",
+                                                           "\"15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225\"", null, null);
+
+        verify(_resource).isRangeApplicable("\"15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225\"", metadata);
+        verify(_resource).isRangeApplicable("\"15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225\"", current);
+        verify(_resource).isNotModified(null, null, current);
+
+        Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.OK.getStatusCode())));
+        Assert.assertThat(response.getHeaderString(HttpHeaders.CONTENT_LENGTH), is("8192"));
+        Assert.assertThat(response.getHeaderString(HttpHeaders.ETAG), is("\"e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855\""));
+        Assert.assertThat(response.getLastModified(), is(new Date(current.getLastModified())));
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the case where an
+     * update lands between reading the metadata and reading the stream from our cache, and the client already has the
+     * new version. We should say so, rather than send it again under the old version's tag.
+     */
+    @Test
+    public void testGetStreamByIdFromCacheForVersionChanged() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata(StreamStatus.SUCCESSFUL, 4L);
+        metadata.setSha256("15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225");
+
+        final StreamMetadata current = createMetadata(StreamStatus.SUCCESSFUL, 4L);
+        current.setSha256("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+
+        doReturn(metadata).when(_streamService).getMetadataForStreamById(anyString());
+        doReturn(new StreamVersion<>(current, ByteBuffer.wrap("test".getBytes(StandardCharsets.UTF_8)))).when(_streamService).getCachedContentsForStream(metadata);
+
+        final Response response = _resource.getStreamById("testvendor", Collections.emptyList(), null, null,
+                                                           "\"e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855\"", null);
+
+        Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.NOT_MODIFIED.getStatusCode())));
+        Assert.assertThat(response.getHeaderString(HttpHeaders.ETAG), is("\"e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855\""));
+
+        verify(_streamService, never()).getChannelForStream(any(StreamMetadata.class));
+    }
+
+    /**
+     * Tests {@link StreamResource#isRangeApplicable(String, StreamMetadata)} to make sure it compares dates the way HTTP
+     * expects, and only accepts our own strong entity tag.
+     */
+    @Test
+    public void testIsRangeApplicable() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata(StreamStatus.SUCCESSFUL, 4096L);
+
+        // Sun, 06 Nov 1994 08:49:37 GMT, plus some milliseconds that HTTP dates can't represent.
+        metadata.setLastModified(784111777123L);
+
+        Assert.assertThat(_resource.isRangeApplicable(null, metadata), is(true));
+        Assert.assertThat(_resource.isRangeApplicable("Sun, 06 Nov 1994 08:49:37 GMT", metadata), is(true));
+        Assert.assertThat(_resource.isRangeApplicable("Sun, 06 Nov 1994 08:49:38 GMT", metadata), is(false));
+        Assert.assertThat(_resource.isRangeApplicable("\"some-etag\"", metadata), is(false));
+
+        metadata.setSha256("15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225");
+        Assert.assertThat(_resource.isRangeApplicable("\"15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225\"", metadata), is(true));
+        Assert.assertThat(_resource.isRangeApplicable("W/\"15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225\"", metadata), is(false));
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the case where no filters are requested, but the stream
+     * goes away between checking the status and opening the file. We should get a 404/NOT FOUND.
+     */
+    @Test
+    public void testGetStreamByIdWithNoFiltersForDeletedStream() throws Exception
+    {
+        doReturn(createMetadata(StreamStatus.SUCCESSFUL, 4096L)).when(_streamService).getMetadataForStreamById(anyString());
+
+        final Response response = _resource.getStreamById("testvendor", Collections.emptyList(), null, null, null, null);
+
+        verify(_resource).getStreamById(anyString(), anyListOf(String.class), anyString(), anyString(), anyString(), anyString());
+        verify(_resource).validateId("testvendor");
+        verify(_resource, times(3)).getStreamService();
+        verify(_resource).isNotModified(anyString(), anyString(), any(StreamMetadata.class));
+
+        verify(_streamService).getMetadataForStreamById(anyString());
+        verify(_streamService).getCachedContentsForStream(any(StreamMetadata.class));
+        verify(_streamService).getChannelForStream(any(StreamMetadata.class));
+
+        verifyNoMoreCollaborations();
+
+        Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.NOT_FOUND.getStatusCode())));
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the case where no filters are requested, and the stream
+     * is small enough to cache. We should serve it from memory, with the same headers as from disk, and never open the file.
+     */
+    @Test
+    public void testGetStreamByIdWithNoFiltersFromCache() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata(StreamStatus.SUCCESSFUL, 4L);
+        metadata.setSha256("15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225");
+
+        doReturn(new StreamVersion<>(metadata, ByteBuffer.wrap("test".getBytes(StandardCharsets.UTF_8)))).when(_streamService).getCachedContentsForStream(metadata);
+        doReturn(metadata).when(_streamService).getMetadataForStreamById(anyString());
+
+        final Response response = _resource.getStreamById("testvendor", Collections.emptyList(), null, null, null, null);
+
+        verify(_resource).getStreamById(anyString(), anyListOf(String.class), anyString(), anyString(), anyString(), anyString());
         verify(_resource).validateId("testvendor");
         verify(_resource, times(2)).getStreamService();
+        verify(_resource).isNotModified(null, null, metadata);
 
-        verify(_streamService).getStatusForStreamById(anyString());
-        verify(_streamService).getStreamById(anyString(), anyListOf(String.class));
+        verify(_streamService).getMetadataForStreamById(anyString());
+        verify(_streamService).getCachedContentsForStream(metadata);
 
         verifyNoMoreCollaborations();
 
-        // Make sure we got back our 200/OK.
         Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.OK.getStatusCode())));
+        Assert.assertThat(response.getEntity(), is(instanceOf(ByteBufferStreamingOutput.class)));
+        Assert.assertThat(response.getHeaderString(HttpHeaders.CONTENT_LENGTH), is("4"));
+        Assert.assertThat(response.getHeaderString(StreamResource.ACCEPT_RANGES), is("bytes"));
+        Assert.assertThat(response.getHeaderString(HttpHeaders.ETAG), is("\"15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225\""));
     }
 
     /**
-     * Tests {@link StreamResource#getStreamById(String, List)} for the case where the ID is not known to the system.
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the case where the ID is not known to the system.
      */
     @Test
     public void testGetStreamByIdForUnknownId() throws Exception
     {
-        final Response response = _resource.getStreamById("testvendor", Arrays.asList("some", "filters"));
+        doReturn(createMetadata(StreamStatus.NOT_FOUND, 0L)).when(_streamService).getMetadataForStreamById(anyString());
+
+        final Response response = _resource.getStreamById("testvendor", Arrays.asList("some", "filters"), null, null, null, null);
 
         // Verify interactions.
-        verify(_resource).getStreamById(anyString(), anyListOf(String.class));
+        verify(_resource).getStreamById(anyString(), anyListOf(String.class), anyString(), anyString(), anyString(), anyString());
         verify(_resource).validateId("testvendor");
         verify(_resource).getStreamService();
 
-        verify(_streamService).getStatusForStreamById(anyString());
+        verify(_streamService).getMetadataForStreamById(anyString());
 
         verifyNoMoreCollaborations();
 
@@ -139,7 +481,7 @@ public class StreamResourceTestCase
     }
 
     /**
-     * Tests {@link StreamResource#getStreamById(String, List)} for the case where validating the ID throws a
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the case where validating the ID throws a
      * {@link WebApplicationException} with a status of 403/FORBIDDEN.
      */
     @Test
@@ -149,7 +491,7 @@ public class StreamResourceTestCase
 
         try
         {
-            _resource.getStreamById("invalid@path", Arrays.asList("some", "filters"));
+            _resource.getStreamById("invalid@path", Arrays.asList("some", "filters"), null, null, null, null);
             Assert.fail("Whoops, should have caught an exception here...");
         }
         catch(final WebApplicationException ex)
@@ -158,29 +500,29 @@ public class StreamResourceTestCase
             Assert.assertThat(ex.getResponse().getStatus(), is(equalTo(Response.Status.FORBIDDEN.getStatusCode())));
         }
 
-        verify(_resource).getStreamById(anyString(), anyListOf(String.class));
+        verify(_resource).getStreamById(anyString(), anyListOf(String.class), anyString(), anyString(), anyString(), anyString());
         verify(_resource).validateId(anyString());
 
         verifyNoMoreCollaborations();
     }
 
     /**
-     * Tests {@link StreamResource#getStreamById(String, List)} for the case where the stream is {@link StreamStatus#IN_PROGRESS}.
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the case where the stream is {@link StreamStatus#IN_PROGRESS}.
      * We should get back a 409/CONFLICT here.
      **/
     @Test
     public void testGetStreamForInProgress() throws Exception
     {
-        doReturn(StreamStatus.IN_PROGRESS).when(_streamService).getStatusForStreamById(anyString());
+        doReturn(createMetadata(StreamStatus.IN_PROGRESS, 0L)).when(_streamService).getMetadataForStreamById(anyString());
 
-        final Response response = _resource.getStreamById("testvendor", Arrays.asList("some", "filters"));
+        final Response response = _resource.getStreamById("testvendor", Arrays.asList("some", "filters"), null, null, null, null);
 
         // Verify interactions.
-        verify(_resource).getStreamById(anyString(), anyListOf(String.class));
+        verify(_resource).getStreamById(anyString(), anyListOf(String.class), anyString(), anyString(), anyString(), anyString());
         verify(_resource).validateId("testvendor");
         verify(_resource).getStreamService();
 
-        verify(_streamService).getStatusForStreamById(anyString());
+        verify(_streamService).getMetadataForStreamById(anyString());
 
         verifyNoMoreCollaborations();
 
@@ -189,22 +531,44 @@ public class StreamResourceTestCase
     }
 
     /**
-     * Tests {@link StreamResource#getStreamById(String, List)} for the case where the stream is {@link StreamStatus#FAILED}.
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the case where the stream is {@link StreamStatus#IN_PROGRESS},
+     * but has a previous version. We should get back the previous version.
+     **/
+    @Test
+    public void testGetStreamForUpdateInProgress() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata(StreamStatus.IN_PROGRESS, 4096L);
+        metadata.setContentVersion("v1");
+
+        stubChannelForStream(createChannel(4096L));
+        doReturn(metadata).when(_streamService).getMetadataForStreamById(anyString());
+
+        final Response response = _resource.getStreamById("testvendor", Collections.emptyList(), null, null, null, null);
+
+        verify(_streamService).getMetadataForStreamById(anyString());
+        verify(_streamService).getChannelForStream(any(StreamMetadata.class));
+
+        Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.OK.getStatusCode())));
+        Assert.assertThat(response.getHeaderString(HttpHeaders.CONTENT_LENGTH), is("4096"));
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamById(String, List, String, String, String, String)} for the case where the stream is {@link StreamStatus#FAILED}.
      * We should get back a 409/CONFLICT here. Users can grab the metadata for the ID to see what happened.
      **/
     @Test
     public void testGetStreamForFailed() throws Exception
     {
-        doReturn(StreamStatus.FAILED).when(_streamService).getStatusForStreamById(anyString());
+        doReturn(createMetadata(StreamStatus.FAILED, 0L)).when(_streamService).getMetadataForStreamById(anyString());
 
-        final Response response = _resource.getStreamById("testvendor", Arrays.asList("some", "filters"));
+        final Response response = _resource.getStreamById("testvendor", Arrays.asList("some", "filters"), null, null, null, null);
 
         // Verify interactions.
-        verify(_resource).getStreamById(anyString(), anyListOf(String.class));
+        verify(_resource).getStreamById(anyString(), anyListOf(String.class), anyString(), anyString(), anyString(), anyString());
         verify(_resource).validateId("testvendor");
         verify(_resource).getStreamService();
 
-        verify(_streamService).getStatusForStreamById(anyString());
+        verify(_streamService).getMetadataForStreamById(anyString());
 
         verifyNoMoreCollaborations();
 
@@ -215,6 +579,87 @@ public class StreamResourceTestCase
         Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.CONFLICT.getStatusCode())));
     }
 
+    /**
+     * Tests {@link StreamResource#headStreamById(String, List, String, String)} for the happy path. We should get the
+     * same headers a GET would give us, straight from the metadata, without opening the stream.
+     */
+    @Test
+    public void testHeadStreamById() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata(StreamStatus.SUCCESSFUL, 4096L);
+        metadata.setSha256("15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225");
+        metadata.setLastModified(784111777000L);
+
+        doReturn(metadata).when(_streamService).getMetadataForStreamById(anyString());
+
+        final Response response = _resource.headStreamById("testvendor", Collections.emptyList(), null, null);
+
+        verify(_resource).headStreamById(anyString(), anyListOf(String.class), anyString(), anyString());
+        verify(_resource).validateId("testvendor");
+        verify(_resource).getStreamService();
+        verify(_resource).isNotModified(null, null, metadata);
+
+        verify(_streamService).getMetadataForStreamById("testvendor");
+
+        verifyNoMoreCollaborations();
+
+        Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.OK.getStatusCode())));
+        Assert.assertThat(response.getEntity(), is(nullValue()));
+        Assert.assertThat(response.getHeaderString(HttpHeaders.CONTENT_LENGTH), is("4096"));
+        Assert.assertThat(response.getHeaderString(StreamResource.ACCEPT_RANGES), is("bytes"));
+        Assert.assertThat(response.getHeaderString(HttpHeaders.ETAG), is("\"15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225\""));
+        Assert.assertThat(response.getLastModified(), is(new Date(metadata.getLastModified())));
+
+        // And if the client is already up to date, we should say so.
+        final Response notModified = _resource.headStreamById("testvendor", Collections.emptyList(), "\"15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225\"", null);
+
+        Assert.assertThat(notModified.getStatus(), is(equalTo(Response.Status.NOT_MODIFIED.getStatusCode())));
+        Assert.assertThat(notModified.getHeaderString(HttpHeaders.ETAG), is("\"15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225\""));
+    }
+
+    /**
+     * Tests {@link StreamResource#headStreamById(String, List, String, String)} when filters are requested. We can't know
+     * how long (or what) the filtered stream will be, or whether the client's copy of it is current, so we should refuse
+     * without looking the stream up.
+     */
+    @Test
+    public void testHeadStreamByIdWithFilters() throws Exception
+    {
+        final Response response = _resource.headStreamById("testvendor", Arrays.asList("some", "filters"), "\"15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225\"", null);
+
+        Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.BAD_REQUEST.getStatusCode())));
+        Assert.assertThat(response.getHeaderString(HttpHeaders.CONTENT_LENGTH), is(nullValue()));
+        Assert.assertThat(response.getHeaderString(HttpHeaders.ETAG), is(nullValue()));
+
+        verify(_resource).headStreamById(anyString(), anyListOf(String.class), anyString(), anyString());
+        verify(_resource).validateId("testvendor");
+
+        verifyNoMoreCollaborations();
+    }
+
+    /**
+     * Tests {@link StreamResource#headStreamById(String, List, String, String)} for streams we can't hand out: unknown,
+     * failed, or being written for the first time. These should get the same statuses as a GET.
+     */
+    @Test
+    public void testHeadStreamByIdForUnreadable() throws Exception
+    {
+        doReturn(createMetadata(StreamStatus.NOT_FOUND, 0L)).when(_streamService).getMetadataForStreamById("unknown");
+        doReturn(createMetadata(StreamStatus.FAILED, 0L)).when(_streamService).getMetadataForStreamById("failed");
+        doReturn(createMetadata(StreamStatus.IN_PROGRESS, 0L)).when(_streamService).getMetadataForStreamById("busy");
+
+        Assert.assertThat(_resource.headStreamById("unknown", Collections.emptyList(), null, null).getStatus(),
+                          is(equalTo(Response.Status.NOT_FOUND.getStatusCode())));
+        Assert.assertThat(_resource.headStreamById("failed", Collections.emptyList(), null, null).getStatus(),
+                          is(equalTo(Response.Status.CONFLICT.getStatusCode())));
+        Assert.assertThat(_resource.headStreamById("busy", Collections.emptyList(), null, null).getStatus(),
+                          is(equalTo(Response.Status.CONFLICT.getStatusCode())));
+
+        // None of which should have gone anywhere near a stream.
+        verify(_streamService, never()).getChannelForStream(any(StreamMetadata.class));
+        verify(_streamService, never()).getStream(any(StreamMetadata.class), anyListOf(String.class));
+    }
+
     /**
      * Tests {@link StreamResource#createStream(UriInfo, String, List, InputStream)} for the happy path.
      */
@@ -222,7 +667,8 @@ public class StreamResourceTestCase
     public void testCreateStream() throws Exception
     {
         // Make sure we don't collide with a file already on hand...
-        doReturn(StreamStatus.NOT_FOUND).when(_streamService).getStatusForStreamById(anyString());
+        doReturn(createMetadata(StreamStatus.NOT_FOUND, 0L)).when(_streamService).getMetadataForStreamById(anyString());
+        doReturn(true).when(_streamService).saveStream(any(StreamMetadata.class), any(InputStream.class), anyListOf(String.class));
 
         // Mock a URI Info object to return.
         final UriInfo uriInfo = mock(UriInfo.class);
@@ -236,8 +682,8 @@ public class StreamResourceTestCase
         // We're actually going to get this twice: first to see if we've already got the stream (409/CONFLICT), then to save it.
         verify(_resource, times(2)).getStreamService();
 
-        verify(_streamService).getStatusForStreamById(anyString());
-        verify(_streamService).saveStream(anyString(), any(InputStream.class), anyListOf(String.class));
+        verify(_streamService).getMetadataForStreamById(anyString());
+        verify(_streamService).saveStream(any(StreamMetadata.class), any(InputStream.class), anyListOf(String.class));
 
         // Make sure that we grabbed our absolute path off our URI. The URL for getting the document should exactly match
         // the URL for creating it: just different verbs. This might be a problem if we were in a VIP, but for us it's fine -
@@ -265,7 +711,7 @@ public class StreamResourceTestCase
     public void testCreateStreamForIdThatAlreadyExists() throws Exception
     {
         // We've already got a file here.
-        doReturn(StreamStatus.SUCCESSFUL).when(_streamService).getStatusForStreamById(anyString());
+        doReturn(createMetadata(StreamStatus.SUCCESSFUL, 0L)).when(_streamService).getMetadataForStreamById(anyString());
 
         final Response response = _resource.createStream(mock(UriInfo.class), "someId", Arrays.asList("some", "Filters"), _inputStream);
 
@@ -275,7 +721,7 @@ public class StreamResourceTestCase
         // We're not going to save, so this should happen once.
         verify(_resource, times(1)).getStreamService();
 
-        verify(_streamService).getStatusForStreamById(anyString());
+        verify(_streamService).getMetadataForStreamById(anyString());
 
         // Nothing else should have happened here.
         verifyNoMoreCollaborations();
@@ -289,6 +735,44 @@ public class StreamResourceTestCase
         IOUtils.closeQuietly(_inputStream);
     }
 
+    /**
+     * Tests {@link StreamResource#createStream(UriInfo, String, List, InputStream)} for the case where the first write to
+     * the stream was abandoned. It was never really created, so we should have another go, and get a 201/CREATED.
+     */
+    @Test
+    public void testCreateStreamForAbandoned() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata(StreamStatus.IN_PROGRESS, 0L);
+
+        doReturn(metadata).when(_streamService).getMetadataForStreamById(anyString());
+        doReturn(true).when(_streamService).isAbandoned(metadata);
+        doReturn(true).when(_streamService).saveStream(any(StreamMetadata.class), any(InputStream.class), anyListOf(String.class));
+
+        final UriInfo uriInfo = mock(UriInfo.class);
+        doReturn(URI.create("http://not.real.host/hss/awesomeUrl")).when(uriInfo).getAbsolutePath();
+
+        final Response response = _resource.createStream(uriInfo, "someId", Arrays.asList("some", "Filters"), _inputStream);
+
+        verify(_resource).createStream(any(UriInfo.class), anyString(), anyListOf(String.class), any(InputStream.class));
+        verify(_resource).validateId("someId");
+        verify(_resource, times(3)).getStreamService();
+
+        verify(_streamService).getMetadataForStreamById(anyString());
+        verify(_streamService).isAbandoned(metadata);
+        verify(_streamService).saveStream(eq(metadata), any(InputStream.class), anyListOf(String.class));
+
+        verifyNoMoreCollaborations();
+
+        Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.CREATED.getStatusCode())));
+
+        // Whereas one that's still being written (or that has a version already) is taken.
+        doReturn(false).when(_streamService).isAbandoned(metadata);
+        Assert.assertThat(_resource.createStream(uriInfo, "someId", Collections.emptyList(), _inputStream).getStatus(), is(equalTo(Response.Status.CONFLICT.getStatusCode())));
+
+        metadata.setContentVersion("v1");
+        Assert.assertThat(_resource.createStream(uriInfo, "someId", Collections.emptyList(), _inputStream).getStatus(), is(equalTo(Response.Status.CONFLICT.getStatusCode())));
+    }
+
     /**
      * Tests {@link StreamResource#createStream(UriInfo, String, List, InputStream)} for the case where the ID is invalid.
      * This should return a 403/FORBIDDEN.
@@ -328,7 +812,8 @@ public class StreamResourceTestCase
     public void testUpdateStream() throws Exception
     {
         // Pretend we've seen this file.
-        doReturn(StreamStatus.SUCCESSFUL).when(_streamService).getStatusForStreamById(anyString());
+        doReturn(createMetadata(StreamStatus.SUCCESSFUL, 0L)).when(_streamService).getMetadataForStreamById(anyString());
+        doReturn(true).when(_streamService).saveStream(any(StreamMetadata.class), any(InputStream.class), anyListOf(String.class));
 
         final Response response = _resource.updateStream("someId", Arrays.asList("some", "Filters"), _inputStream);
 
@@ -338,8 +823,8 @@ public class StreamResourceTestCase
         // We're actually going to get this twice: first to see if we're missing the stream (404/NOT FOUND), then to save it.
         verify(_resource, times(2)).getStreamService();
 
-        verify(_streamService).getStatusForStreamById(anyString());
-        verify(_streamService).saveStream(anyString(), any(InputStream.class), anyListOf(String.class));
+        verify(_streamService).getMetadataForStreamById(anyString());
+        verify(_streamService).saveStream(any(StreamMetadata.class), any(InputStream.class), anyListOf(String.class));
 
         // Nothing else should have happened here.
         verifyNoMoreCollaborations();
@@ -352,6 +837,34 @@ public class StreamResourceTestCase
         IOUtils.closeQuietly(_inputStream);
     }
 
+    /**
+     * Tests {@link StreamResource#updateStream(String, List, InputStream)} for the case where somebody else starts writing
+     * the stream after we've checked the status. We should get a 409/CONFLICT back.
+     */
+    @Test
+    public void testUpdateStreamForConcurrentWriter() throws Exception
+    {
+        doReturn(createMetadata(StreamStatus.SUCCESSFUL, 0L)).when(_streamService).getMetadataForStreamById(anyString());
+        doReturn(false).when(_streamService).saveStream(any(StreamMetadata.class), any(InputStream.class), anyListOf(String.class));
+
+        final Response response = _resource.updateStream("someId", Arrays.asList("some", "Filters"), _inputStream);
+
+        verify(_resource).updateStream(anyString(), anyListOf(String.class), any(InputStream.class));
+        verify(_resource).validateId("someId");
+        verify(_resource, times(2)).getStreamService();
+
+        verify(_streamService).getMetadataForStreamById(anyString());
+        verify(_streamService).saveStream(any(StreamMetadata.class), any(InputStream.class), anyListOf(String.class));
+
+        verifyNoMoreCollaborations();
+
+        // We lost the race, so we should get a 409/CONFLICT. We should still close our stream though.
+        Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.CONFLICT.getStatusCode())));
+
+        verifyStatic(times(1));
+        IOUtils.closeQuietly(_inputStream);
+    }
+
     /**
      * Tests {@link StreamResource#updateStream(String, List, InputStream)} for the case where the ID is unknown. We should
      * return a 404/NOT FOUND here.
@@ -360,7 +873,7 @@ public class StreamResourceTestCase
     public void testUpdateStreamForUnknownId() throws Exception
     {
         // Pretend we've never seen this file.
-        doReturn(StreamStatus.NOT_FOUND).when(_streamService).getStatusForStreamById(anyString());
+        doReturn(createMetadata(StreamStatus.NOT_FOUND, 0L)).when(_streamService).getMetadataForStreamById(anyString());
 
         final Response response = _resource.updateStream("someId", Arrays.asList("some", "Filters"), _inputStream);
 
@@ -370,7 +883,7 @@ public class StreamResourceTestCase
         // We've never seen this stream, so we're going to return a 404/NOT FOUND.
         verify(_resource, times(1)).getStreamService();
 
-        verify(_streamService).getStatusForStreamById(anyString());
+        verify(_streamService).getMetadataForStreamById(anyString());
 
         // Nothing else should have happened here.
         verifyNoMoreCollaborations();
@@ -422,15 +935,16 @@ public class StreamResourceTestCase
     public void testUpdateStreamForInProgress() throws Exception
     {
         // Shoo, we're busy.
-        doReturn(StreamStatus.IN_PROGRESS).when(_streamService).getStatusForStreamById(anyString());
+        doReturn(createMetadata(StreamStatus.IN_PROGRESS, 0L)).when(_streamService).getMetadataForStreamById(anyString());
 
         final Response response = _resource.updateStream("someId", Arrays.asList("some", "Filters"), _inputStream);
 
         verify(_resource).updateStream(anyString(), anyListOf(String.class), any(InputStream.class));
         verify(_resource).validateId("someId");
-        verify(_resource, times(1)).getStreamService();
+        verify(_resource, times(2)).getStreamService();
 
-        verify(_streamService).getStatusForStreamById(anyString());
+        verify(_streamService).getMetadataForStreamById(anyString());
+        verify(_streamService).isAbandoned(any(StreamMetadata.class));
 
         // Nothing else should have happened here.
         verifyNoMoreCollaborations();
@@ -444,24 +958,55 @@ public class StreamResourceTestCase
     }
 
     /**
-     * Tests {@link StreamResource#deleteStream(String)} for the happy path. This should return a 202/ACEPTED.
-     */
+     * Tests {@link StreamResource#updateStream(String, List, InputStream)} for the case where the stream is
+     * {@link StreamStatus#IN_PROGRESS}, but its writer has gone away. We should take it over, and get a 204/NO CONTENT.
+     **/
     @Test
-    public void testDeleteStream() throws Exception
+    public void testUpdateStreamForAbandoned() throws Exception
     {
-        final Response response = _resource.deleteStream("asdf");
+        final StreamMetadata metadata = createMetadata(StreamStatus.IN_PROGRESS, 0L);
 
-        verify(_resource).deleteStream("asdf");
-        verify(_resource).validateId("asdf");
-        verify(_resource).getStreamService();
+        doReturn(metadata).when(_streamService).getMetadataForStreamById(anyString());
+        doReturn(true).when(_streamService).isAbandoned(metadata);
+        doReturn(true).when(_streamService).saveStream(any(StreamMetadata.class), any(InputStream.class), anyListOf(String.class));
 
-        verify(_streamService).deleteStream("asdf");
+        final Response response = _resource.updateStream("someId", Arrays.asList("some", "Filters"), _inputStream);
+
+        verify(_resource).updateStream(anyString(), anyListOf(String.class), any(InputStream.class));
+        verify(_resource).validateId("someId");
+        verify(_resource, times(3)).getStreamService();
+
+        verify(_streamService).getMetadataForStreamById(anyString());
+        verify(_streamService).isAbandoned(metadata);
+        verify(_streamService).saveStream(eq(metadata), any(InputStream.class), anyListOf(String.class));
 
         verifyNoMoreCollaborations();
 
-        // Make sure we got back a 202/ACCEPTED.
-        Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.ACCEPTED.getStatusCode())));
-    }
+        Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.NO_CONTENT.getStatusCode())));
+
+        verifyStatic(times(1));
+        IOUtils.closeQuietly(_inputStream);
+    }
+
+    /**
+     * Tests {@link StreamResource#deleteStream(String)} for the happy path. This should return a 202/ACEPTED.
+     */
+    @Test
+    public void testDeleteStream() throws Exception
+    {
+        final Response response = _resource.deleteStream("asdf");
+
+        verify(_resource).deleteStream("asdf");
+        verify(_resource).validateId("asdf");
+        verify(_resource).getStreamService();
+
+        verify(_streamService).deleteStream("asdf");
+
+        verifyNoMoreCollaborations();
+
+        // Make sure we got back a 202/ACCEPTED.
+        Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.ACCEPTED.getStatusCode())));
+    }
 
     /**
      * Tests {@link StreamResource#deleteStream(String)} for the case where the ID is invalid. This should return a
@@ -490,18 +1035,238 @@ public class StreamResourceTestCase
     }
 
     /**
-     * Tests {@link StreamResource#getStreamMetadata()} to make sure it does what we expect. We should get back a
-     * 200/OK.
+     * Tests {@link StreamResource#getStreamMetadata(Request, StreamMetadataCriteria, String, String)} to make sure it does what we expect. We should get back
+     * a 200/OK, and since everything fit on one page, no cursor.
      */
     @Test
     public void testGetStreamMetadata() throws Exception
     {
-        Assert.assertThat(200, is(equalTo(_resource.getStreamMetadata().getStatus())));
+        final Request request = mock(Request.class);
+        final StreamMetadataCriteria criteria = new StreamMetadataCriteria();
+        doReturn(Arrays.asList(createMetadata("a"), createMetadata("b"))).when(_streamService).getMetadataForStreams(criteria, null, 3);
+
+        final Response response = _resource.getStreamMetadata(request, criteria, "2", null);
+        Assert.assertThat(200, is(equalTo(response.getStatus())));
+
+        verify(_resource).getStreamMetadata(request, criteria, "2", null);
+        verify(_resource).getStreamService();
+        verify(_resource).validateCriteria(criteria);
+        verify(_resource).decodeCursor(null);
+
+        verify(_streamService).getMetadataForStreams(criteria, null, 3);
+
+        verifyNoMoreCollaborations();
+
+        final StreamMetadataCollection metadata = (StreamMetadataCollection) response.getEntity();
+        Assert.assertThat(metadata.getMetadata().size(), is(2));
+        Assert.assertThat(metadata.getNext(), is(nullValue()));
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamMetadata(Request, StreamMetadataCriteria, String, String)} for the case where there's more than a page. We should
+     * get back a full page, and a cursor that picks up after it.
+     */
+    @Test
+    public void testGetStreamMetadataForNextPage() throws Exception
+    {
+        final Request request = mock(Request.class);
+        final StreamMetadataCriteria criteria = new StreamMetadataCriteria();
+        criteria.setStatus(StreamStatus.FAILED);
+
+        final String cursor = StreamResource.encodeCursor("a");
+        doReturn(Arrays.asList(createMetadata("b"), createMetadata("c"), createMetadata("d"))).when(_streamService).getMetadataForStreams(criteria, "a", 3);
+
+        final Response response = _resource.getStreamMetadata(request, criteria, "2", cursor);
+        Assert.assertThat(200, is(equalTo(response.getStatus())));
+
+        verify(_resource).getStreamMetadata(request, criteria, "2", cursor);
+        verify(_resource).getStreamService();
+        verify(_resource).validateCriteria(criteria);
+        verify(_resource).decodeCursor(cursor);
+
+        verify(_streamService).getMetadataForStreams(criteria, "a", 3);
+
+        verifyNoMoreCollaborations();
+
+        final StreamMetadataCollection metadata = (StreamMetadataCollection) response.getEntity();
+        Assert.assertThat(metadata.getMetadata().stream().map(StreamMetadata::getId).collect(toList()), is(Arrays.asList("b", "c")));
+        Assert.assertThat(_resource.decodeCursor(metadata.getNext()), is("c"));
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamMetadata(Request, StreamMetadataCriteria, String, String)} for a page size that's too big. We should cap it,
+     * rather than complain.
+     */
+    @Test
+    public void testGetStreamMetadataForHugeLimit() throws Exception
+    {
+        final Request request = mock(Request.class);
+        final StreamMetadataCriteria criteria = new StreamMetadataCriteria();
+        Assert.assertThat(200, is(equalTo(_resource.getStreamMetadata(request, criteria, String.valueOf(Integer.MAX_VALUE), null).getStatus())));
+
+        verify(_streamService).getMetadataForStreams(criteria, null, StreamResource.MAX_PAGE_SIZE + 1);
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamMetadata(Request, StreamMetadataCriteria, String, String)} for a page size of nothing at all. We should get back
+     * a 400/BAD REQUEST.
+     */
+    @Test
+    public void testGetStreamMetadataForInvalidLimit() throws Exception
+    {
+        final Request request = mock(Request.class);
+        final StreamMetadataCriteria criteria = new StreamMetadataCriteria();
+
+        try
+        {
+            _resource.getStreamMetadata(request, criteria, "0", null);
+            Assert.fail("Whoops, we should have caught an exception here...");
+        }
+        catch (final WebApplicationException ex)
+        {
+            Assert.assertThat(ex.getResponse().getStatus(), is(equalTo(Response.Status.BAD_REQUEST.getStatusCode())));
+        }
+
+        verify(_resource).getStreamMetadata(request, criteria, "0", null);
+
+        verifyNoMoreCollaborations();
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamMetadata(Request, StreamMetadataCriteria, String, String)} for a page size that isn't a
+     * number. We should get back a 400/BAD REQUEST, rather than the 404/NOT FOUND Jersey would give us.
+     */
+    @Test
+    public void testGetStreamMetadataForNonNumericLimit() throws Exception
+    {
+        final Request request = mock(Request.class);
+        final StreamMetadataCriteria criteria = new StreamMetadataCriteria();
 
-        verify(_resource).getStreamMetadata();
+        for (final String limit : Arrays.asList("ten", "", "99999999999"))
+        {
+            try
+            {
+                _resource.getStreamMetadata(request, criteria, limit, null);
+                Assert.fail("Whoops, we should have caught an exception here...");
+            }
+            catch (final WebApplicationException ex)
+            {
+                Assert.assertThat(ex.getResponse().getStatus(), is(equalTo(Response.Status.BAD_REQUEST.getStatusCode())));
+            }
+        }
+
+        verifyZeroInteractions(_streamService);
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamMetadata(Request, StreamMetadataCriteria, String, String)} for a client that hasn't
+     * asked for a page, IE: one from before we paged. It should get every stream, and no cursor, written as we go.
+     */
+    @Test
+    public void testGetStreamMetadataUnpaged() throws Exception
+    {
+        final Request request = mock(Request.class);
+        final StreamMetadataCriteria criteria = new StreamMetadataCriteria();
+        doReturn(new Variant(MediaType.APPLICATION_JSON_TYPE, (String) null, null)).when(request).selectVariant(StreamResource.LISTING_VARIANTS);
+
+        final Response response = _resource.getStreamMetadata(request, criteria, null, null);
+        Assert.assertThat(200, is(equalTo(response.getStatus())));
+        Assert.assertThat(response.getMediaType(), is(MediaType.APPLICATION_JSON_TYPE));
+
+        verify(_resource).getStreamMetadata(request, criteria, null, null);
         verify(_resource).getStreamService();
+        verify(_resource).validateCriteria(criteria);
+
+        // Nothing should be read until we write.
+        verifyNoMoreCollaborations();
+
+        Assert.assertThat(response.getEntity(), is(instanceOf(StreamMetadataJsonOutput.class)));
+    }
 
-        verify(_streamService).getMetadataForStreams();
+    /**
+     * Tests {@link StreamResource#getStreamMetadata(Request, StreamMetadataCriteria, String, String)} for a client that hasn't
+     * asked for a page, and would like XML.
+     */
+    @Test
+    public void testGetStreamMetadataUnpagedAsXml() throws Exception
+    {
+        final Request request = mock(Request.class);
+        final StreamMetadataCriteria criteria = new StreamMetadataCriteria();
+        doReturn(new Variant(MediaType.APPLICATION_XML_TYPE, (String) null, null)).when(request).selectVariant(StreamResource.LISTING_VARIANTS);
+
+        final Response response = _resource.getStreamMetadata(request, criteria, null, null);
+        Assert.assertThat(200, is(equalTo(response.getStatus())));
+        Assert.assertThat(response.getMediaType(), is(MediaType.APPLICATION_XML_TYPE));
+
+        verify(_resource).getStreamMetadata(request, criteria, null, null);
+        verify(_resource).getStreamService();
+        verify(_resource).validateCriteria(criteria);
+
+        verifyNoMoreCollaborations();
+
+        Assert.assertThat(response.getEntity(), is(instanceOf(StreamMetadataXmlOutput.class)));
+    }
+
+    /**
+     * Tests {@link StreamResource#validateCriteria(StreamMetadataCriteria)} for a prefix that could never match a valid
+     * ID. We should get back a 400/BAD REQUEST.
+     */
+    @Test
+    public void testValidateCriteriaForInvalidPrefix() throws Exception
+    {
+        final StreamMetadataCriteria criteria = new StreamMetadataCriteria();
+        criteria.setPrefix("not/a/prefix");
+
+        try
+        {
+            _resource.validateCriteria(criteria);
+            Assert.fail("Whoops, we should have caught an exception here...");
+        }
+        catch (final WebApplicationException ex)
+        {
+            Assert.assertThat(ex.getResponse().getStatus(), is(equalTo(Response.Status.BAD_REQUEST.getStatusCode())));
+        }
+    }
+
+    /**
+     * Tests {@link StreamResource#decodeCursor(String)} for cursors that aren't ours: not base 64 at all, and base 64 that
+     * doesn't decode to a valid ID. Either way, we should get back a 400/BAD REQUEST.
+     */
+    @Test
+    public void testDecodeCursorForInvalidCursor() throws Exception
+    {
+        for (final String cursor : Arrays.asList("not a cursor!", StreamResource.encodeCursor("not/an/id")))
+        {
+            try
+            {
+                _resource.decodeCursor(cursor);
+                Assert.fail("Whoops, we should have caught an exception here...");
+            }
+            catch (final WebApplicationException ex)
+            {
+                Assert.assertThat(ex.getResponse().getStatus(), is(equalTo(Response.Status.BAD_REQUEST.getStatusCode())));
+            }
+        }
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamMetadataAsNdjson(StreamMetadataCriteria, String)} to make sure we hand back something that'll page
+     * through our service as it's written, rather than doing so up front.
+     */
+    @Test
+    public void testGetStreamMetadataAsNdjson() throws Exception
+    {
+        final StreamMetadataCriteria criteria = new StreamMetadataCriteria();
+        final Response response = _resource.getStreamMetadataAsNdjson(criteria, null);
+
+        Assert.assertThat(200, is(equalTo(response.getStatus())));
+        Assert.assertThat(response.getEntity(), is(instanceOf(StreamMetadataNdjsonOutput.class)));
+        Assert.assertThat(response.getMediaType().toString(), is(StreamResource.APPLICATION_NDJSON));
+
+        verify(_resource).getStreamMetadataAsNdjson(criteria, null);
+        verify(_resource).getStreamService();
+        verify(_resource).validateCriteria(criteria);
+        verify(_resource).decodeCursor(null);
 
         verifyNoMoreCollaborations();
     }
@@ -548,6 +1313,282 @@ public class StreamResourceTestCase
         verifyNoMoreCollaborations();
     }
 
+    /**
+     * Tests {@link StreamResource#getStatistics()}, which should just hand back whatever our service has.
+     */
+    @Test
+    public void testGetStatistics() throws Exception
+    {
+        final StreamStatistics statistics = new StreamStatistics();
+        doReturn(statistics).when(_streamService).getStatistics();
+
+        final Response response = _resource.getStatistics();
+        Assert.assertThat(response.getStatus(), is(200));
+        Assert.assertThat(response.getEntity(), is(statistics));
+
+        verify(_resource).getStatistics();
+        verify(_resource).getStreamService();
+
+        verify(_streamService).getStatistics();
+
+        verifyNoMoreCollaborations();
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamStatusesForIds(StreamIdCollection)} for the happy path. We should hand the IDs
+     * to our service in one go, and answer with just the ID and status of each stream, unknown ones included.
+     */
+    @Test
+    public void testGetStreamStatusesForIds() throws Exception
+    {
+        final StreamMetadata foo = createMetadata("foo");
+        final StreamMetadata bar = createMetadata(StreamStatus.NOT_FOUND, 0L);
+        bar.setId("bar");
+
+        doReturn(Arrays.asList(foo, bar)).when(_streamService).getMetadataForStreamsByIds(anyCollectionOf(String.class));
+
+        final StreamIdCollection ids = new StreamIdCollection();
+        ids.setIds(Arrays.asList("foo", "bar"));
+
+        final Response response = _resource.getStreamStatusesForIds(ids);
+
+        verify(_resource).getStreamStatusesForIds(ids);
+        verify(_resource).validateId("foo");
+        verify(_resource).validateId("bar");
+        verify(_resource).getStreamService();
+
+        verify(_streamService).getMetadataForStreamsByIds(Arrays.asList("foo", "bar"));
+
+        verifyNoMoreCollaborations();
+
+        Assert.assertThat(response.getStatus(), is(equalTo(Response.Status.OK.getStatusCode())));
+
+        final List<StreamStatusCollection.Entry> statuses = ((StreamStatusCollection) response.getEntity()).getStatuses();
+        Assert.assertThat(statuses.stream().map(StreamStatusCollection.Entry::getId).collect(toList()), is(Arrays.asList("foo", "bar")));
+        Assert.assertThat(statuses.stream().map(StreamStatusCollection.Entry::getStatus).collect(toList()),
+                          is(Arrays.asList(StreamStatus.SUCCESSFUL, StreamStatus.NOT_FOUND)));
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamStatusesForIds(StreamIdCollection)} for requests we won't answer: no IDs,
+     * too many, or an invalid one. None of these should get as far as our service.
+     */
+    @Test
+    public void testGetStreamStatusesForInvalidIds() throws Exception
+    {
+        doCallRealMethod().when(_resource).validateId(anyString());
+
+        final StreamIdCollection tooMany = new StreamIdCollection();
+        tooMany.setIds(Collections.nCopies(StreamResource.MAX_BATCH_IDS + 1, "foo"));
+
+        final StreamIdCollection invalid = new StreamIdCollection();
+        invalid.setIds(Arrays.asList("foo", "invalid@path"));
+
+        final StreamIdCollection blank = new StreamIdCollection();
+        blank.setIds(Arrays.asList("foo", null));
+
+        assertBatchStatus(null, Response.Status.BAD_REQUEST);
+        assertBatchStatus(new StreamIdCollection(), Response.Status.BAD_REQUEST);
+        assertBatchStatus(tooMany, Response.Status.BAD_REQUEST);
+        assertBatchStatus(blank, Response.Status.BAD_REQUEST);
+        assertBatchStatus(invalid, Response.Status.FORBIDDEN);
+
+        verify(_streamService, never()).getMetadataForStreamsByIds(anyCollectionOf(String.class));
+    }
+
+    /**
+     * Tests {@link StreamResource#getChanges(String, String)} for the different places a client can tell us where it left
+     * off. The header wins over the query parameter, and with neither we start from whatever happens next. An event ID
+     * from before a restart (IE: another epoch) means starting over, with a reset.
+     */
+    @Test
+    public void testGetChanges() throws Exception
+    {
+        final StreamChangeFeed changeFeed = mock(StreamChangeFeed.class);
+        doReturn(changeFeed).when(_streamService).getChangeFeed();
+        doReturn(42L).when(changeFeed).getLatestSequence();
+        doReturn("epoch").when(changeFeed).getEpoch();
+        doNothing().when(_resource).subscribeToChanges(eq(changeFeed), any(EventOutput.class), anyLong(), anyBoolean());
+
+        final Response response = _resource.getChanges(null, null);
+        Assert.assertThat(response.getStatus(), is(200));
+        Assert.assertThat(response.getEntity(), is(instanceOf(EventOutput.class)));
+        Assert.assertThat(response.getMediaType().toString(), is(StreamResource.TEXT_EVENT_STREAM));
+        Assert.assertThat(response.getHeaderString(HttpHeaders.CACHE_CONTROL), is("no-cache"));
+        Assert.assertThat(response.getHeaderString(HttpHeaders.CONTENT_ENCODING), is("identity"));
+
+        Assert.assertThat(_resource.getChanges("epoch-7", "epoch-3").getStatus(), is(200));
+        Assert.assertThat(_resource.getChanges(null, "epoch-3").getStatus(), is(200));
+        Assert.assertThat(_resource.getChanges("before-9", null).getStatus(), is(200));
+
+        verify(_resource).getChanges(null, null);
+        verify(_resource).getChanges("epoch-7", "epoch-3");
+        verify(_resource).getChanges(null, "epoch-3");
+        verify(_resource).getChanges("before-9", null);
+        verify(_resource, times(4)).getStreamService();
+
+        verify(_resource).subscribeToChanges(changeFeed, (EventOutput) response.getEntity(), 42L, false);
+        verify(_resource).subscribeToChanges(eq(changeFeed), any(EventOutput.class), eq(7L), eq(false));
+        verify(_resource).subscribeToChanges(eq(changeFeed), any(EventOutput.class), eq(3L), eq(false));
+        verify(_resource).subscribeToChanges(eq(changeFeed), any(EventOutput.class), eq(0L), eq(true));
+
+        verify(_streamService, times(4)).getChangeFeed();
+        verify(changeFeed).getLatestSequence();
+        verify(changeFeed, times(3)).getEpoch();
+
+        verifyNoMoreCollaborations();
+        verifyNoMoreInteractions(changeFeed);
+    }
+
+    /**
+     * Tests {@link StreamResource#getChanges(String, String)} for event IDs that aren't. We should get back a
+     * 400/BAD REQUEST.
+     */
+    @Test
+    public void testGetChangesForInvalidEventId() throws Exception
+    {
+        doReturn(mock(StreamChangeFeed.class)).when(_streamService).getChangeFeed();
+
+        for (final String eventId : Arrays.asList("nope", "7", "epoch--1", "epoch-99999999999999999999"))
+        {
+            try
+            {
+                _resource.getChanges(eventId, null);
+                Assert.fail("Whoops, we should have caught an exception here...");
+            }
+            catch (final WebApplicationException ex)
+            {
+                Assert.assertThat(ex.getResponse().getStatus(), is(equalTo(Response.Status.BAD_REQUEST.getStatusCode())));
+            }
+        }
+
+        verify(_resource, never()).subscribeToChanges(any(StreamChangeFeed.class), any(EventOutput.class), anyLong(), anyBoolean());
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamMetadataForId(AsyncResponse, String, String, String)} when we're not asked to
+     * wait. We should answer straight away, as for any other request.
+     */
+    @Test
+    public void testGetStreamMetadataForIdWithoutWaiting() throws Exception
+    {
+        final AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        final Response response = Response.ok().build();
+        doReturn(response).when(_resource).getStreamMetadataForId("foo");
+
+        _resource.getStreamMetadataForId(asyncResponse, "foo", null, null);
+
+        verify(_resource).getStreamMetadataForId(asyncResponse, "foo", null, null);
+        verify(_resource).waitForStream(eq(asyncResponse), eq("foo"), eq(null), eq(null), any(Callable.class));
+        verify(_resource).validateId("foo");
+        verify(_resource).getStreamMetadataForId("foo");
+
+        verify(asyncResponse).resume(response);
+
+        verifyNoMoreCollaborations();
+        verifyNoMoreInteractions(asyncResponse);
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamById(AsyncResponse, String, List, String, String, String, String, String, String)} when asked
+     * to wait on a stream that's in progress. We should park the request, watching the stream, until it's done.
+     */
+    @Test
+    public void testGetStreamByIdWhileInProgress() throws Exception
+    {
+        final AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        final StreamChangeFeed changeFeed = mock(StreamChangeFeed.class);
+        final Response response = Response.ok().build();
+        final List<String> filters = Collections.emptyList();
+
+        doReturn(changeFeed).when(_streamService).getChangeFeed();
+        doReturn(true).when(changeFeed).watch(eq("foo"), any(Runnable.class));
+        doReturn(createMetadata(StreamStatus.IN_PROGRESS, 0L)).when(_streamService).getMetadataForStreamById("foo");
+        doReturn(response).when(_resource).getStreamById("foo", filters, null, null, null, null);
+
+        _resource.getStreamById(asyncResponse, "foo", filters, null, null, null, null, "successful", "10s");
+
+        // We should be parked, watching the stream.
+        final ArgumentCaptor<Runnable> waiter = ArgumentCaptor.forClass(Runnable.class);
+        verify(changeFeed).watch(eq("foo"), waiter.capture());
+        verify(asyncResponse).setTimeoutHandler(any(TimeoutHandler.class));
+        verify(asyncResponse).setTimeout(10000L, TimeUnit.MILLISECONDS);
+        verifyNoMoreInteractions(asyncResponse);
+
+        // Once it's done, we should answer.
+        doReturn(createMetadata(StreamStatus.SUCCESSFUL, 1024L)).when(_streamService).getMetadataForStreamById("foo");
+        waiter.getValue().run();
+
+        verify(_resource).getStreamById(asyncResponse, "foo", filters, null, null, null, null, "successful", "10s");
+        verify(_resource).waitForStream(eq(asyncResponse), eq("foo"), eq("successful"), eq("10s"), any(Callable.class));
+        verify(_resource).validateId("foo");
+        verify(_resource, times(3)).getStreamService();
+        verify(_resource).getStreamById("foo", filters, null, null, null, null);
+
+        verify(_streamService).getChangeFeed();
+        verify(_streamService, times(2)).getMetadataForStreamById("foo");
+
+        verify(changeFeed, times(2)).watch("foo", waiter.getValue());
+        verify(changeFeed).unwatch("foo", waiter.getValue());
+
+        verify(asyncResponse).resume(response);
+
+        verifyNoMoreCollaborations();
+        verifyNoMoreInteractions(asyncResponse, changeFeed);
+    }
+
+    /**
+     * Tests {@link StreamResource#getStreamMetadataForId(AsyncResponse, String, String, String)} for the statuses and
+     * timeouts we don't understand. We should get back a 400/BAD REQUEST, without looking at the stream.
+     */
+    @Test
+    public void testGetStreamMetadataForIdForInvalidWait() throws Exception
+    {
+        final AsyncResponse asyncResponse = mock(AsyncResponse.class);
+
+        _resource.getStreamMetadataForId(asyncResponse, "foo", "DONE", null);
+        _resource.getStreamMetadataForId(asyncResponse, "foo", "SUCCESSFUL", "soon");
+
+        final ArgumentCaptor<WebApplicationException> exceptions = ArgumentCaptor.forClass(WebApplicationException.class);
+        verify(asyncResponse, times(2)).resume(exceptions.capture());
+
+        for (final WebApplicationException ex : exceptions.getAllValues())
+        {
+            Assert.assertThat(ex.getResponse().getStatus(), is(equalTo(Response.Status.BAD_REQUEST.getStatusCode())));
+        }
+
+        verifyZeroInteractions(_streamService);
+    }
+
+    /**
+     * Tests {@link StreamResource#parseWaitTimeout(String)} for the ways we can be told how long to wait.
+     */
+    @Test
+    public void testParseWaitTimeout() throws Exception
+    {
+        Assert.assertThat(StreamResource.parseWaitTimeout(null), is(StreamResource.DEFAULT_WAIT_MILLIS));
+        Assert.assertThat(StreamResource.parseWaitTimeout("30"), is(30000L));
+        Assert.assertThat(StreamResource.parseWaitTimeout("30s"), is(30000L));
+        Assert.assertThat(StreamResource.parseWaitTimeout("500ms"), is(500L));
+        Assert.assertThat(StreamResource.parseWaitTimeout("2m"), is(120000L));
+
+        // Anything too long is capped, rather than refused.
+        Assert.assertThat(StreamResource.parseWaitTimeout("1000m"), is(StreamResource.MAX_WAIT_MILLIS));
+
+        for (final String timeout : Arrays.asList("", "-1s", "30h", "1.5s"))
+        {
+            try
+            {
+                StreamResource.parseWaitTimeout(timeout);
+                Assert.fail("Whoops, we should have caught an exception here...");
+            }
+            catch (final WebApplicationException ex)
+            {
+                Assert.assertThat(ex.getResponse().getStatus(), is(equalTo(Response.Status.BAD_REQUEST.getStatusCode())));
+            }
+        }
+    }
+
     /**
      * Tests {@link StreamResource#getStreamMetadataForId(String)} for the case where an invalid ID is passed. We should
      * get back a 403/FORBIDDEN here.
@@ -606,6 +1647,83 @@ public class StreamResourceTestCase
         }
     }
 
+    /**
+     * Provides a convenience method to create a {@link StreamMetadata} for a given ID.
+     *
+     * @param id The ID of the stream. Must not be null.
+     *
+     * @return A {@link StreamMetadata} with the given ID, which has been successfully saved. Will not be null.
+     */
+    private StreamMetadata createMetadata(final String id)
+    {
+        final StreamMetadata metadata = createMetadata(StreamStatus.SUCCESSFUL, 0L);
+        metadata.setId(id);
+
+        return metadata;
+    }
+
+    /**
+     * Provides a convenience method to check that a batch status lookup is refused with a given status.
+     *
+     * @param ids The {@link StreamIdCollection} to look up. May be null.
+     * @param status The {@link Response.Status} we expect to be refused with.
+     */
+    private void assertBatchStatus(final StreamIdCollection ids, final Response.Status status) throws Exception
+    {
+        try
+        {
+            _resource.getStreamStatusesForIds(ids);
+            Assert.fail("Should have been refused.");
+        }
+        catch (final WebApplicationException ex)
+        {
+            Assert.assertThat(ex.getResponse().getStatus(), is(equalTo(status.getStatusCode())));
+        }
+    }
+
+    /**
+     * Provides a convenience method to create a {@link StreamMetadata} as a one-liner.
+     *
+     * @param status The {@link StreamStatus} of the stream. Must not be null.
+     * @param fileSize The size of the stored stream.
+     *
+     * @return A nice and shiny {@link StreamMetadata}.
+     */
+    private StreamMetadata createMetadata(final StreamStatus status, final long fileSize)
+    {
+        final StreamMetadata metadata = new StreamMetadata();
+
+        metadata.setStatus(status);
+        metadata.setFileSize(fileSize);
+
+        return metadata;
+    }
+
+    /**
+     * Provides a convenience method to have our service hand out a given channel, for whatever version it's asked for.
+     *
+     * @param channel The {@link FileChannel} to hand out.
+     */
+    private void stubChannelForStream(final FileChannel channel) throws Exception
+    {
+        doAnswer(invocation -> new StreamVersion<>((StreamMetadata) invocation.getArguments()[0], channel)).when(_streamService).getChannelForStream(any(StreamMetadata.class));
+    }
+
+    /**
+     * Provides a convenience method to create a mocked {@link FileChannel} of a given size.
+     *
+     * @param size The size of the channel, in bytes.
+     *
+     * @return A mocked {@link FileChannel} reporting the given size.
+     */
+    private FileChannel createChannel(final long size) throws Exception
+    {
+        final FileChannel channel = mock(FileChannel.class);
+        doReturn(size).when(channel).size();
+
+        return channel;
+    }
+
     /**
      * Provides a convenience mechanism to verify there are no more interactions we should be aware of.
      */
@@ -0,0 +1,83 @@
+package com._8x8.cloud.hss.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests the {@link DigestingOutputStream} (and so our {@link Crc32c}) at the unit level.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class DigestingOutputStreamTestCase
+{
+    /**
+     * Tests our digests against the well known check values for "123456789", written a byte at a time and all at once.
+     * Everything should also make it through to the stream we're wrapping.
+     */
+    @Test
+    public void testDigests() throws Exception
+    {
+        final byte[] check = "123456789".getBytes(StandardCharsets.US_ASCII);
+
+        final ByteArrayOutputStream whole = new ByteArrayOutputStream();
+        final DigestingOutputStream wholeDigests = new DigestingOutputStream(whole);
+        wholeDigests.write(check);
+
+        final ByteArrayOutputStream single = new ByteArrayOutputStream();
+        final DigestingOutputStream singleDigests = new DigestingOutputStream(single);
+
+        for (final byte b : check)
+        {
+            singleDigests.write(b);
+        }
+
+        for (final DigestingOutputStream digests : new DigestingOutputStream[] { wholeDigests, singleDigests })
+        {
+            Assert.assertThat(digests.getCrc32c(), is("e3069283"));
+            Assert.assertThat(digests.getSha256(), is("15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225"));
+
+            // Asking again shouldn't change anything.
+            Assert.assertThat(digests.getSha256(), is("15e2b0d3c33891ebb0f1ef609ec419420c20e320ce94c65fbc8c3312448eb225"));
+        }
+
+        Assert.assertThat(whole.toByteArray(), is(check));
+        Assert.assertThat(single.toByteArray(), is(check));
+    }
+
+    /**
+     * Tests that {@link Crc32c} comes out the same however a buffer is split up, which exercises both the eight bytes at
+     * a time path and the leftovers either side of it.
+     */
+    @Test
+    public void testCrc32cForSplits() throws Exception
+    {
+        final byte[] bytes = new byte[1027];
+        new Random(42).nextBytes(bytes);
+
+        final Crc32c expected = new Crc32c();
+
+        for (final byte b : bytes)
+        {
+            expected.update(b);
+        }
+
+        for (int split = 0; split <= 17; split++)
+        {
+            final Crc32c actual = new Crc32c();
+            actual.update(bytes, 0, split);
+            actual.update(bytes, split, bytes.length - split);
+
+            Assert.assertThat(actual.getValue(), is(expected.getValue()));
+        }
+
+        expected.reset();
+        Assert.assertThat(expected.getValue(), is(0L));
+    }
+}
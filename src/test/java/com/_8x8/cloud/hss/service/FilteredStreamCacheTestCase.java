@@ -0,0 +1,244 @@
+package com._8x8.cloud.hss.service;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.arrayContainingInAnyOrder;
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests the {@link FilteredStreamCache} at the unit level, against a real temp directory.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class FilteredStreamCacheTestCase
+{
+    /**
+     * Holds an instance of the class under test.
+     */
+    private FilteredStreamCache _filteredStreamCache;
+
+    /**
+     * Holds the number of times we've had to materialize a variant.
+     */
+    private AtomicInteger _materializations;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _filteredStreamCache = new FilteredStreamCache();
+        _filteredStreamCache.setCacheDirectory(Files.createTempDirectory("hss").toString());
+        _filteredStreamCache.setMaximumBytes(32);
+        _filteredStreamCache.init();
+
+        _materializations = new AtomicInteger();
+    }
+
+    /**
+     * Tests {@link FilteredStreamCache#init()} against a directory that's been used before. Our leftover variants (finished
+     * or not) should go, but anything we didn't create should be left where it is.
+     */
+    @Test
+    public void testInit() throws Exception
+    {
+        read("id", "v1", Collections.singletonList("zip"), "filtered");
+
+        final File directory = _filteredStreamCache.getCacheDirectory();
+        Assert.assertThat(new File(directory, "variant8675309.tmp").createNewFile(), is(true));
+        Assert.assertThat(new File(directory, "important.txt").createNewFile(), is(true));
+        Assert.assertThat(new File(directory, "nested").mkdir(), is(true));
+        Assert.assertThat(directory.listFiles(), is(arrayWithSize(4)));
+
+        final FilteredStreamCache restarted = new FilteredStreamCache();
+        restarted.setCacheDirectory(directory.getPath());
+        restarted.init();
+
+        Assert.assertThat(directory.list(), is(arrayContainingInAnyOrder("important.txt", "nested")));
+    }
+
+    /**
+     * Tests {@link FilteredStreamCache#getStream(String, String, List, FilteredStreamCache.FilteredSource)} for the happy
+     * path. The first read should materialize the variant, the second should come straight from disk.
+     */
+    @Test
+    public void testGetStream() throws Exception
+    {
+        Assert.assertThat(read("id", "v1", Arrays.asList("zip", "base64"), "filtered"), is("filtered"));
+        Assert.assertThat(read("id", "v1", Arrays.asList("zip", "base64"), "ignored"), is("filtered"));
+
+        Assert.assertThat(_materializations.get(), is(1));
+        Assert.assertThat(_filteredStreamCache.getCachedBytes(), is(8L));
+    }
+
+    /**
+     * Tests {@link FilteredStreamCache#getStream(String, String, List, FilteredStreamCache.FilteredSource)} to make sure
+     * the version and the order of the filters are both part of the key.
+     */
+    @Test
+    public void testGetStreamKeying() throws Exception
+    {
+        Assert.assertThat(read("id", "v1", Arrays.asList("zip", "base64"), "first"), is("first"));
+        Assert.assertThat(read("id", "v1", Arrays.asList("base64", "zip"), "second"), is("second"));
+        Assert.assertThat(read("id", "v2", Arrays.asList("zip", "base64"), "third"), is("third"));
+
+        Assert.assertThat(_materializations.get(), is(3));
+    }
+
+    /**
+     * Tests {@link FilteredStreamCache#invalidate(String)} to make sure we drop every variant of the stream, and the files
+     * that go with them.
+     */
+    @Test
+    public void testInvalidate() throws Exception
+    {
+        read("id", "v1", Collections.singletonList("zip"), "first");
+        read("id", "v1", Collections.singletonList("base64"), "second");
+        read("other", "v1", Collections.singletonList("zip"), "third");
+
+        _filteredStreamCache.invalidate("id");
+
+        Assert.assertThat(_filteredStreamCache.getCachedBytes(), is(5L));
+        Assert.assertThat(_filteredStreamCache.getCacheDirectory().listFiles(), is(arrayWithSize(1)));
+
+        Assert.assertThat(read("id", "v1", Collections.singletonList("zip"), "fourth"), is("fourth"));
+        Assert.assertThat(read("other", "v1", Collections.singletonList("zip"), "ignored"), is("third"));
+    }
+
+    /**
+     * Tests {@link FilteredStreamCache#getStream(String, String, List, FilteredStreamCache.FilteredSource)} for a stream
+     * that's written while we're materializing a variant of it. We should serve what we read, but not keep it.
+     */
+    @Test
+    public void testGetStreamForInvalidateWhileMaterializing() throws Exception
+    {
+        final InputStream stream = _filteredStreamCache.getStream("id", "v1", Collections.singletonList("zip"), () -> {
+            _filteredStreamCache.invalidate("id");
+            return IOUtils.toInputStream("stale");
+        });
+
+        try (final InputStream ignored = stream)
+        {
+            Assert.assertThat(IOUtils.toString(stream), is("stale"));
+        }
+
+        Assert.assertThat(_filteredStreamCache.getCachedBytes(), is(0L));
+        Assert.assertThat(_filteredStreamCache.getCacheDirectory().listFiles(), is(arrayWithSize(0)));
+    }
+
+    /**
+     * Tests {@link FilteredStreamCache#getStream(String, String, List, FilteredStreamCache.FilteredSource)} for a
+     * different stream being written while we're materializing a variant. That's got nothing to do with us, so we
+     * should keep what we made.
+     */
+    @Test
+    public void testGetStreamForInvalidateOtherWhileMaterializing() throws Exception
+    {
+        final InputStream stream = _filteredStreamCache.getStream("id", "v1", Collections.singletonList("zip"), () -> {
+            _filteredStreamCache.invalidate("other");
+            return IOUtils.toInputStream("fresh");
+        });
+
+        try (final InputStream ignored = stream)
+        {
+            Assert.assertThat(IOUtils.toString(stream), is("fresh"));
+        }
+
+        Assert.assertThat(_filteredStreamCache.getCachedBytes(), is(5L));
+        Assert.assertThat(read("id", "v1", Collections.singletonList("zip"), "ignored"), is("fresh"));
+        Assert.assertThat(_materializations.get(), is(0));
+    }
+
+    /**
+     * Tests {@link FilteredStreamCache#evict()} to make sure we stay within our quota by dropping the least recently used
+     * variant.
+     */
+    @Test
+    public void testEviction() throws Exception
+    {
+        read("first", "v1", Collections.singletonList("zip"), "0123456789");
+        read("second", "v1", Collections.singletonList("zip"), "0123456789");
+
+        // Touch the first, so the second is least recently used.
+        read("first", "v1", Collections.singletonList("zip"), "ignored");
+
+        read("third", "v1", Collections.singletonList("zip"), "0123456789012345");
+
+        Assert.assertThat(_filteredStreamCache.getCachedBytes(), is(26L));
+        Assert.assertThat(_materializations.get(), is(3));
+
+        // The first should still be there, but the second should have gone.
+        Assert.assertThat(read("first", "v1", Collections.singletonList("zip"), "ignored"), is("0123456789"));
+        Assert.assertThat(read("second", "v1", Collections.singletonList("zip"), "replaced"), is("replaced"));
+        Assert.assertThat(_materializations.get(), is(4));
+    }
+
+    /**
+     * Tests {@link FilteredStreamCache#getStream(String, String, List, FilteredStreamCache.FilteredSource)} for a variant
+     * larger than our whole quota. We should serve it, but not keep it.
+     */
+    @Test
+    public void testGetStreamTooLarge() throws Exception
+    {
+        final String contents = "this is far, far too large to be worth caching";
+
+        Assert.assertThat(read("id", "v1", Collections.singletonList("zip"), contents), is(contents));
+        Assert.assertThat(_filteredStreamCache.getCachedBytes(), is(0L));
+        Assert.assertThat(_filteredStreamCache.getCacheDirectory().listFiles(), is(arrayWithSize(0)));
+    }
+
+    /**
+     * Tests {@link FilteredStreamCache#getStream(String, String, List, FilteredStreamCache.FilteredSource)} for the case
+     * where materializing fails. We should propagate the exception, and not leave anything behind.
+     */
+    @Test
+    public void testGetStreamFailure() throws Exception
+    {
+        try
+        {
+            _filteredStreamCache.getStream("id", "v1", Collections.singletonList("zip"), () -> {
+                throw new IllegalStateException("moo");
+            });
+
+            Assert.fail("Whoops, we should have caught an exception here.");
+        }
+        catch (final IllegalStateException ex)
+        {
+            Assert.assertThat(ex.getMessage(), is("moo"));
+        }
+
+        Assert.assertThat(_filteredStreamCache.getCacheDirectory().listFiles(), is(arrayWithSize(0)));
+    }
+
+    /**
+     * Provides a convenience method to read a variant through our cache, counting the materializations.
+     *
+     * @param id The ID of the stream.
+     * @param version The version of the stream.
+     * @param filters The ordered list of filters.
+     * @param contents The contents to use, if we need to materialize the variant.
+     *
+     * @return What the cache handed back.
+     */
+    private String read(final String id, final String version, final List<String> filters, final String contents) throws Exception
+    {
+        try (final InputStream stream = _filteredStreamCache.getStream(id, version, filters, () -> {
+            _materializations.incrementAndGet();
+            return IOUtils.toInputStream(contents);
+        }))
+        {
+            return IOUtils.toString(stream);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com._8x8.cloud.hss.service;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests the {@link StreamCache} at the unit level. Caffeine is fast and self-contained enough that we use the real thing
+ * here, backed by some temp files.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamCacheTestCase
+{
+    /**
+     * Holds an instance of the class under test.
+     */
+    private StreamCache _streamCache;
+
+    /**
+     * Holds a small file we can cache.
+     */
+    private File _file;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _streamCache = new StreamCache();
+        _streamCache.setMaximumBytes(1024);
+        _streamCache.setMaximumEntryBytes(16);
+        _streamCache.init();
+
+        _file = File.createTempFile("hss", "cache");
+        _file.deleteOnExit();
+
+        Files.write(_file.toPath(), "cached contents".getBytes());
+    }
+
+    /**
+     * Tests {@link StreamCache#getStream(String, File)} for the happy path. The first read should miss and load from
+     * disk, the second should hit and never touch the disk.
+     */
+    @Test
+    public void testGetStream() throws Exception
+    {
+        try (final InputStream stream = _streamCache.getStream("id", _file))
+        {
+            Assert.assertThat(IOUtils.toString(stream), is("cached contents"));
+        }
+
+        // Pull the rug out from under it, we should still get our contents back.
+        Assert.assertThat(_file.delete(), is(true));
+
+        try (final InputStream stream = _streamCache.getStream("id", _file))
+        {
+            Assert.assertThat(IOUtils.toString(stream), is("cached contents"));
+        }
+
+        Assert.assertThat(_streamCache.getMissCount(), is(1L));
+        Assert.assertThat(_streamCache.getHitCount(), is(1L));
+        Assert.assertThat(_streamCache.getCachedBytes(), is(15L));
+    }
+
+    /**
+     * Tests {@link StreamCache#getContents(String, File)} to make sure each caller gets its own view of the contents, so
+     * reading one doesn't use up the other.
+     */
+    @Test
+    public void testGetContents() throws Exception
+    {
+        final ByteBuffer first = _streamCache.getContents("id", _file);
+        first.get(new byte[first.remaining()]);
+
+        final ByteBuffer second = _streamCache.getContents("id", _file);
+
+        Assert.assertThat(second.remaining(), is(15));
+        Assert.assertThat(second.isReadOnly(), is(true));
+        Assert.assertThat(_streamCache.getHitCount(), is(1L));
+    }
+
+    /**
+     * Tests {@link StreamCache#getStream(String, File)} for a stream that's too large to cache. We should get back
+     * <code>null</code>, and nothing should be cached.
+     */
+    @Test
+    public void testGetStreamTooLarge() throws Exception
+    {
+        Files.write(_file.toPath(), "these contents are too large to cache".getBytes());
+
+        Assert.assertThat(_streamCache.getStream("id", _file), is(nullValue()));
+        Assert.assertThat(_streamCache.getCachedBytes(), is(0L));
+    }
+
+    /**
+     * Tests {@link StreamCache#invalidate(String)} to make sure we go back to the disk afterwards.
+     */
+    @Test
+    public void testInvalidate() throws Exception
+    {
+        IOUtils.closeQuietly(_streamCache.getStream("id", _file));
+
+        Files.write(_file.toPath(), "new contents".getBytes());
+        _streamCache.invalidate("id");
+
+        try (final InputStream stream = _streamCache.getStream("id", _file))
+        {
+            Assert.assertThat(IOUtils.toString(stream), is("new contents"));
+        }
+
+        Assert.assertThat(_streamCache.getMissCount(), is(2L));
+        Assert.assertThat(_streamCache.getHitCount(), is(0L));
+    }
+
+    /**
+     * Tests {@link StreamCache#getStream(String, File)} to make sure each version of a stream is cached separately, and
+     * that {@link StreamCache#invalidate(String)} drops all of them without touching any other stream.
+     */
+    @Test
+    public void testGetStreamForVersions() throws Exception
+    {
+        final File version = File.createTempFile("hss", "cache");
+        version.deleteOnExit();
+
+        Files.write(version.toPath(), "new contents".getBytes());
+
+        try (final InputStream first = _streamCache.getStream("id", _file);
+             final InputStream second = _streamCache.getStream("id", version))
+        {
+            Assert.assertThat(IOUtils.toString(first), is("cached contents"));
+            Assert.assertThat(IOUtils.toString(second), is("new contents"));
+        }
+
+        IOUtils.closeQuietly(_streamCache.getStream("id2", _file));
+        Assert.assertThat(_streamCache.getCachedBytes(), is(42L));
+
+        _streamCache.invalidate("id");
+        Assert.assertThat(_streamCache.getCachedBytes(), is(15L));
+    }
+
+    /**
+     * Tests {@link StreamCache#load(File)} in off-heap mode, to make sure we end up with a direct buffer.
+     */
+    @Test
+    public void testLoadOffHeap() throws Exception
+    {
+        _streamCache.setOffHeap(true);
+
+        final ByteBuffer contents = _streamCache.load(_file);
+
+        Assert.assertThat(contents.isDirect(), is(true));
+        Assert.assertThat(contents.isReadOnly(), is(true));
+        Assert.assertThat(contents.remaining(), is(15));
+    }
+
+    /**
+     * Tests the {@link StreamCache.ByteBufferInputStream} to make sure concurrent readers don't trample each other.
+     */
+    @Test
+    public void testConcurrentReaders() throws Exception
+    {
+        final InputStream first = _streamCache.getStream("id", _file);
+        final InputStream second = _streamCache.getStream("id", _file);
+
+        Assert.assertThat(first.skip(7), is(7L));
+        Assert.assertThat(first.available(), is(8));
+
+        Assert.assertThat(IOUtils.toString(second), is("cached contents"));
+        Assert.assertThat(IOUtils.toString(first), is("contents"));
+        Assert.assertThat(first.read(), is(-1));
+    }
+}
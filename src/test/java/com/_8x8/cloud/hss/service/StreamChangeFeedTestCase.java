@@ -0,0 +1,269 @@
+package com._8x8.cloud.hss.service;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamStatus;
+import com._8x8.cloud.hss.service.StreamChangeFeed.Change;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests the {@link StreamChangeFeed} at the unit level.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamChangeFeedTestCase
+{
+    /**
+     * Tests publishing and reading back changes, a batch at a time.
+     */
+    @Test
+    public void testPublishAndRead() throws Exception
+    {
+        final StreamChangeFeed changeFeed = new StreamChangeFeed(10);
+        final StreamMetadata metadata = createMetadata("foo");
+
+        Assert.assertThat(changeFeed.publish(metadata, StreamStatus.IN_PROGRESS), is(1L));
+        Assert.assertThat(changeFeed.publish(metadata, StreamStatus.SUCCESSFUL), is(2L));
+        Assert.assertThat(changeFeed.publish(createMetadata("bar"), StreamStatus.NOT_FOUND), is(3L));
+
+        // What we published is ours: changing the metadata afterwards shouldn't change the feed.
+        metadata.setId("baz");
+
+        final List<Change> first = changeFeed.read(0, 2, 0);
+        Assert.assertThat(first.size(), is(2));
+        Assert.assertThat(first.get(0).getSequence(), is(1L));
+        Assert.assertThat(first.get(0).getMetadata().getId(), is("foo"));
+        Assert.assertThat(first.get(0).getMetadata().getStatus(), is(StreamStatus.IN_PROGRESS));
+        Assert.assertThat(first.get(1).getMetadata().getStatus(), is(StreamStatus.SUCCESSFUL));
+
+        final List<Change> second = changeFeed.read(2, 2, 0);
+        Assert.assertThat(second.size(), is(1));
+        Assert.assertThat(second.get(0).getSequence(), is(3L));
+        Assert.assertThat(second.get(0).getMetadata().getStatus(), is(StreamStatus.NOT_FOUND));
+
+        // Nothing new, and we're not willing to wait.
+        Assert.assertThat(changeFeed.read(3, 2, 0).isEmpty(), is(true));
+        Assert.assertThat(changeFeed.getLatestSequence(), is(3L));
+    }
+
+    /**
+     * Tests a subscriber that falls further behind than we keep changes for. It should pick up from the oldest change
+     * we have, leaving a gap in the sequence numbers.
+     */
+    @Test
+    public void testReadForOverrun() throws Exception
+    {
+        final StreamChangeFeed changeFeed = new StreamChangeFeed(4);
+
+        for (int i = 0; i < 10; i++)
+        {
+            changeFeed.publish(createMetadata("stream-" + i), StreamStatus.SUCCESSFUL);
+        }
+
+        final List<Change> changes = changeFeed.read(2, 100, 0);
+        Assert.assertThat(changes.size(), is(4));
+        Assert.assertThat(changes.get(0).getSequence(), is(7L));
+        Assert.assertThat(changes.get(3).getSequence(), is(10L));
+        Assert.assertThat(changes.get(3).getMetadata().getId(), is("stream-9"));
+
+        // A sequence number we haven't got to yet is treated the same way.
+        Assert.assertThat(changeFeed.read(1000, 100, 0).get(0).getSequence(), is(7L));
+    }
+
+    /**
+     * Tests a subscriber waiting on a change that's published while it waits, and one that's still waiting when we
+     * close.
+     */
+    @Test
+    public void testReadForWait() throws Exception
+    {
+        final StreamChangeFeed changeFeed = new StreamChangeFeed(4);
+
+        final CompletableFuture<List<Change>> waiting = CompletableFuture.supplyAsync(() -> read(changeFeed, 0));
+        Thread.sleep(100);
+
+        changeFeed.publish(createMetadata("foo"), StreamStatus.IN_PROGRESS);
+        Assert.assertThat(waiting.get(10, TimeUnit.SECONDS).get(0).getMetadata().getId(), is("foo"));
+
+        final CompletableFuture<List<Change>> closed = CompletableFuture.supplyAsync(() -> read(changeFeed, 1));
+        Thread.sleep(100);
+
+        changeFeed.close();
+        Assert.assertThat(closed.get(10, TimeUnit.SECONDS).isEmpty(), is(true));
+        Assert.assertThat(changeFeed.isClosed(), is(true));
+    }
+
+    /**
+     * Tests watching a single stream. We should be called back (once) for a change to that stream, and not for changes
+     * to any other, or once we've stopped watching.
+     */
+    @Test
+    public void testWatch() throws Exception
+    {
+        final StreamChangeFeed changeFeed = new StreamChangeFeed(4);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Runnable callback = latch::countDown;
+        final Runnable unwatched = () -> Assert.fail("Whoops, we shouldn't have been called back...");
+
+        Assert.assertThat(changeFeed.watch("foo", callback), is(true));
+        Assert.assertThat(changeFeed.watch("foo", unwatched), is(true));
+        Assert.assertThat(changeFeed.unwatch("foo", unwatched), is(true));
+        Assert.assertThat(changeFeed.getWatcherCount(), is(1));
+
+        changeFeed.publish(createMetadata("bar"), StreamStatus.IN_PROGRESS);
+        Assert.assertThat(changeFeed.getWatcherCount(), is(1));
+
+        changeFeed.publish(createMetadata("foo"), StreamStatus.SUCCESSFUL);
+        Assert.assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+
+        // Once called back, there's nothing left to stop.
+        Assert.assertThat(changeFeed.getWatcherCount(), is(0));
+        Assert.assertThat(changeFeed.unwatch("foo", callback), is(false));
+
+        // Nobody's left to call anybody back once we're closed.
+        changeFeed.watch("foo", unwatched);
+        changeFeed.close();
+
+        Assert.assertThat(changeFeed.getWatcherCount(), is(0));
+        Assert.assertThat(changeFeed.watch("foo", unwatched), is(false));
+        changeFeed.publish(createMetadata("foo"), StreamStatus.FAILED);
+    }
+
+    /**
+     * Tests watching when more watchers are woken than we have threads for. The rest should wait their turn, rather
+     * than each getting a thread of their own.
+     */
+    @Test
+    public void testWatchForBoundedThreads() throws Exception
+    {
+        final StreamChangeFeed changeFeed = new StreamChangeFeed(4, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompletableFuture<String> first = new CompletableFuture<>();
+        final CompletableFuture<String> second = new CompletableFuture<>();
+
+        Assert.assertThat(changeFeed.getWatcherThreads(), is(1));
+
+        changeFeed.watch("foo", () -> {
+            started.countDown();
+
+            try
+            {
+                release.await(10, TimeUnit.SECONDS);
+            }
+            catch (final InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            first.complete(Thread.currentThread().getName());
+        });
+
+        changeFeed.watch("bar", () -> second.complete(Thread.currentThread().getName()));
+
+        changeFeed.publish(createMetadata("foo"), StreamStatus.SUCCESSFUL);
+        Assert.assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+
+        changeFeed.publish(createMetadata("bar"), StreamStatus.SUCCESSFUL);
+        Thread.sleep(100);
+        Assert.assertThat(second.isDone(), is(false));
+
+        release.countDown();
+        Assert.assertThat(second.get(10, TimeUnit.SECONDS), is(first.get(10, TimeUnit.SECONDS)));
+
+        changeFeed.close();
+    }
+
+    /**
+     * Tests creating a feed with no threads to call watchers back on. That's not going to work.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreateForNoWatcherThreads() throws Exception
+    {
+        new StreamChangeFeed(4, 0);
+    }
+
+    /**
+     * Tests subscribing to the feed. We should be called back for every change while we're subscribed, and once more when
+     * the feed is closed, after which nobody else can subscribe.
+     */
+    @Test
+    public void testSubscribe() throws Exception
+    {
+        final StreamChangeFeed changeFeed = new StreamChangeFeed(4);
+        final AtomicInteger calls = new AtomicInteger();
+        final Runnable callback = calls::incrementAndGet;
+        final Runnable unsubscribed = () -> Assert.fail("Whoops, we shouldn't have been called back...");
+
+        Assert.assertThat(changeFeed.subscribe(callback), is(true));
+        Assert.assertThat(changeFeed.subscribe(unsubscribed), is(true));
+        changeFeed.unsubscribe(unsubscribed);
+        Assert.assertThat(changeFeed.getSubscriberCount(), is(1));
+
+        changeFeed.publish(createMetadata("foo"), StreamStatus.IN_PROGRESS);
+        changeFeed.publish(createMetadata("bar"), StreamStatus.SUCCESSFUL);
+        Assert.assertThat(calls.get(), is(2));
+
+        changeFeed.close();
+        Assert.assertThat(calls.get(), is(3));
+        Assert.assertThat(changeFeed.getSubscriberCount(), is(0));
+        Assert.assertThat(changeFeed.subscribe(unsubscribed), is(false));
+    }
+
+    /**
+     * Tests scheduling something to run on a regular basis. It should keep running until it's cancelled, and nothing new
+     * can be scheduled once we're closed.
+     */
+    @Test
+    public void testSchedule() throws Exception
+    {
+        final StreamChangeFeed changeFeed = new StreamChangeFeed(4);
+        final CountDownLatch latch = new CountDownLatch(3);
+
+        final ScheduledFuture<?> scheduled = changeFeed.schedule(latch::countDown, 10);
+        Assert.assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+        scheduled.cancel(false);
+
+        changeFeed.close();
+        Assert.assertThat(changeFeed.schedule(latch::countDown, 10), is(nullValue()));
+    }
+
+    /**
+     * Provides a convenience method to wait (for quite a while) on the changes after a given sequence number.
+     */
+    private static List<Change> read(final StreamChangeFeed changeFeed, final long afterSequence)
+    {
+        try
+        {
+            return changeFeed.read(afterSequence, 10, TimeUnit.MINUTES.toMillis(1));
+        }
+        catch (final InterruptedException ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Provides a convenience method to create a {@link StreamMetadata}.
+     */
+    private static StreamMetadata createMetadata(final String id)
+    {
+        final StreamMetadata metadata = new StreamMetadata();
+
+        metadata.setId(id);
+        metadata.setStatus(StreamStatus.NOT_FOUND);
+
+        return metadata;
+    }
+}
@@ -0,0 +1,399 @@
+package com._8x8.cloud.hss.service;
+
+import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamStatistics;
+import com._8x8.cloud.hss.model.StreamStatus;
+import com._8x8.cloud.hss.persistence.StreamStateDao;
+import com._8x8.cloud.hss.service.StreamTransitionManager.Transition;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the {@link StreamReconciler} at the unit level. We use a real {@link StreamService} over some temp storage for
+ * this, with only our metadata mocked.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamReconcilerTestCase
+{
+    /**
+     * Holds an instance of the class under test.
+     */
+    private StreamReconciler _streamReconciler;
+
+    /**
+     * Holds a {@link StreamService} over our temp storage.
+     */
+    private StreamService _streamService;
+
+    /**
+     * Holds a collaborating {@link StreamStateDao} we can mock.
+     */
+    private StreamStateDao _streamStateDao;
+
+    /**
+     * Holds the root of our temp storage.
+     */
+    private File _storage;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _storage = Files.createTempDirectory("hss").toFile();
+
+        _streamStateDao = mock(StreamStateDao.class);
+        doCallRealMethod().when(_streamStateDao).createStreamMetadata(anyString(), any(StreamStatus.class));
+        doReturn(Collections.emptyList()).when(_streamStateDao).findStreamMetadataByIds(anyCollectionOf(String.class));
+        doReturn(Collections.emptyList()).when(_streamStateDao).findStreamMetadata(null, null, StreamReconciler.METADATA_PAGE_SIZE);
+
+        _streamService = new StreamService();
+        _streamService.setStreamStorageDirectory(_storage.getPath());
+        _streamService.setStorageFanOutLevels(2);
+        _streamService.setStreamStateDao(_streamStateDao);
+
+        _streamReconciler = new StreamReconciler();
+        _streamReconciler.setStreamService(_streamService);
+        _streamReconciler.setParallelism(2);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        FileUtils.deleteQuietly(_storage);
+    }
+
+    /**
+     * Tests {@link StreamReconciler#reconcile()} for a stream we've lost the metadata for. We should recover it using
+     * the newest version, and get rid of the rest.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testReconcileForLostStream() throws Exception
+    {
+        final File older = createVersion("lost", "v1", "old");
+        final File newer = createVersion("lost", "v2", "newer");
+        Assert.assertThat(older.setLastModified(newer.lastModified() - 60000), is(true));
+
+        doReturn(1).when(_streamStateDao).insertStreamMetadata(anyCollectionOf(StreamMetadata.class));
+
+        _streamReconciler.reconcile();
+
+        final ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(_streamStateDao).insertStreamMetadata(captor.capture());
+
+        final StreamMetadata recovered = (StreamMetadata) captor.getValue().iterator().next();
+        Assert.assertThat(recovered.getId(), is("lost"));
+        Assert.assertThat(recovered.getStatus(), is(StreamStatus.SUCCESSFUL));
+        Assert.assertThat(recovered.getContentVersion(), is("v2"));
+        Assert.assertThat(recovered.getFileSize(), is(5L));
+
+        Assert.assertThat(older.exists(), is(false));
+        Assert.assertThat(newer.exists(), is(true));
+
+        assertProgress(2, 1, 0, 1);
+    }
+
+    /**
+     * Tests {@link StreamReconciler#reconcile()} for a lost stream that somebody else recovers first. We can't tell what
+     * we did to the statistics, so they should be reseeded once we're done.
+     */
+    @Test
+    public void testReconcileForLostStreamRecoveredElsewhere() throws Exception
+    {
+        createVersion("lost", "v1", "old");
+
+        final StreamStatistics statistics = new StreamStatistics();
+        statistics.setSuccessfulCount(1);
+        statistics.setTotalBytes(3);
+
+        doReturn(0).when(_streamStateDao).insertStreamMetadata(anyCollectionOf(StreamMetadata.class));
+        doReturn(statistics).when(_streamStateDao).getStreamStatistics();
+
+        _streamReconciler.reconcile();
+
+        verify(_streamStateDao).getStreamStatistics();
+        Assert.assertThat(_streamService.getStatistics().getSuccessfulCount(), is(1L));
+        Assert.assertThat(_streamService.getStatistics().getTotalBytes(), is(3L));
+
+        assertProgress(1, 0, 0, 0);
+    }
+
+    /**
+     * Tests {@link StreamReconciler#createRecoveredMetadata(String, File)} for a stream from before we versioned them.
+     */
+    @Test
+    public void testCreateRecoveredMetadataForLegacyStream() throws Exception
+    {
+        final File file = _streamService.createFileForId("legacy");
+        FileUtils.writeStringToFile(file, "legacy");
+
+        final StreamMetadata recovered = _streamReconciler.createRecoveredMetadata("legacy", file);
+
+        Assert.assertThat(recovered.getContentVersion(), is(nullValue()));
+        Assert.assertThat(_streamService.resolveFileForStream(recovered), is(file));
+    }
+
+    /**
+     * Tests {@link StreamReconciler#reconcile()} for a stream with a version nobody points at. It should go away, and
+     * the current version should be left alone.
+     */
+    @Test
+    public void testReconcileForOrphanedVersion() throws Exception
+    {
+        final File current = createVersion("known", "v1", "current");
+        final File orphan = createVersion("known", "v2", "orphan");
+        final StreamMetadata metadata = createMetadata("known", StreamStatus.SUCCESSFUL, "v1");
+
+        doReturn(Collections.singletonList(metadata)).when(_streamStateDao).findStreamMetadataByIds(anyCollectionOf(String.class));
+        doReturn(Collections.singletonList(metadata)).when(_streamStateDao).findStreamMetadata(null, null, StreamReconciler.METADATA_PAGE_SIZE);
+
+        _streamReconciler.reconcile();
+
+        Assert.assertThat(current.exists(), is(true));
+        Assert.assertThat(orphan.exists(), is(false));
+
+        verify(_streamStateDao, times(2)).findStreamMetadataByIds(Collections.singleton("known"));
+        verify(_streamStateDao, never()).findStreamMetadataById(anyString());
+        verify(_streamStateDao, never()).insertStreamMetadata(anyCollectionOf(StreamMetadata.class));
+        verify(_streamStateDao, never()).transitionStreamMetadata(any(StreamMetadata.class), any(StreamStatus.class));
+
+        assertProgress(2, 0, 0, 1);
+    }
+
+    /**
+     * Tests {@link StreamReconciler#reconcile()} for a stream that's nothing but its current version. There's nothing
+     * to do, so we shouldn't go back to the database for it.
+     */
+    @Test
+    public void testReconcileForCleanStream() throws Exception
+    {
+        final File current = createVersion("clean", "v1", "current");
+        final StreamMetadata metadata = createMetadata("clean", StreamStatus.SUCCESSFUL, "v1");
+
+        doReturn(Collections.singletonList(metadata)).when(_streamStateDao).findStreamMetadataByIds(anyCollectionOf(String.class));
+        doReturn(Collections.singletonList(metadata)).when(_streamStateDao).findStreamMetadata(null, null, StreamReconciler.METADATA_PAGE_SIZE);
+
+        _streamReconciler.reconcile();
+
+        Assert.assertThat(current.exists(), is(true));
+
+        verify(_streamStateDao).findStreamMetadataByIds(anyCollectionOf(String.class));
+        verify(_streamStateDao, never()).findStreamMetadataById(anyString());
+        verify(_streamStateDao, never()).insertStreamMetadata(anyCollectionOf(StreamMetadata.class));
+
+        assertProgress(1, 0, 0, 0);
+    }
+
+    /**
+     * Tests {@link StreamReconciler#reconcile()} for a stream somebody finished updating between our reading its metadata
+     * and claiming it. The version we thought was an orphan is the current one now, so both have to be left alone.
+     */
+    @Test
+    public void testReconcileForStreamUpdatedBeforeClaim() throws Exception
+    {
+        final File previous = createVersion("updated", "v1", "previous");
+        final File current = createVersion("updated", "v2", "current");
+        final StreamMetadata scanned = createMetadata("updated", StreamStatus.SUCCESSFUL, "v1");
+        final StreamMetadata latest = createMetadata("updated", StreamStatus.SUCCESSFUL, "v2");
+
+        when(_streamStateDao.findStreamMetadataByIds(anyCollectionOf(String.class)))
+                .thenReturn(Collections.singletonList(scanned), Collections.singletonList(latest));
+        doReturn(Collections.singletonList(latest)).when(_streamStateDao).findStreamMetadata(null, null, StreamReconciler.METADATA_PAGE_SIZE);
+
+        _streamReconciler.reconcile();
+
+        // The previous version is the writer's to retire, once its readers are done with it.
+        Assert.assertThat(previous.exists(), is(true));
+        Assert.assertThat(current.exists(), is(true));
+
+        verify(_streamStateDao, never()).transitionStreamMetadata(any(StreamMetadata.class), any(StreamStatus.class));
+
+        assertProgress(2, 0, 0, 0);
+    }
+
+    /**
+     * Tests {@link StreamReconciler#reconcile()} for a stream stuck in progress, IE: we went down mid-write. The partial
+     * version should go away, and the stream should be failed with the previous version intact.
+     */
+    @Test
+    public void testReconcileForStuckStream() throws Exception
+    {
+        final File previous = createVersion("stuck", "v1", "previous");
+        final File partial = createVersion("stuck", "v2", "part");
+        final StreamMetadata metadata = createMetadata("stuck", StreamStatus.IN_PROGRESS, "v1");
+
+        doReturn(Collections.singletonList(metadata)).when(_streamStateDao).findStreamMetadataByIds(anyCollectionOf(String.class));
+        doReturn(Collections.singletonList(metadata)).when(_streamStateDao).findStreamMetadata(null, null, StreamReconciler.METADATA_PAGE_SIZE);
+        doReturn(true).when(_streamStateDao).transitionStreamMetadata(any(StreamMetadata.class), any(StreamStatus.class));
+
+        _streamReconciler.reconcile();
+
+        Assert.assertThat(previous.exists(), is(true));
+        Assert.assertThat(partial.exists(), is(false));
+
+        verify(_streamStateDao).transitionStreamMetadata(metadata, StreamStatus.FAILED);
+
+        assertProgress(2, 0, 1, 1);
+    }
+
+    /**
+     * Tests {@link StreamReconciler#reconcile()} for a stream whose current version has gone missing.
+     */
+    @Test
+    public void testReconcileForMissingStream() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata("missing", StreamStatus.SUCCESSFUL, "v1");
+
+        doReturn(Collections.singletonList(metadata)).when(_streamStateDao).findStreamMetadata(null, null, StreamReconciler.METADATA_PAGE_SIZE);
+        doReturn(true).when(_streamStateDao).transitionStreamMetadata(any(StreamMetadata.class), any(StreamStatus.class));
+
+        _streamReconciler.reconcile();
+
+        verify(_streamStateDao).transitionStreamMetadata(metadata, StreamStatus.FAILED);
+
+        assertProgress(0, 0, 1, 0);
+    }
+
+    /**
+     * Tests {@link StreamReconciler#reconcile()} for a stream somebody is busy writing. It looks just like a stuck one,
+     * but it's not ours to touch.
+     */
+    @Test
+    public void testReconcileForStreamBeingWritten() throws Exception
+    {
+        final File inFlight = createVersion("busy", "v1", "writing");
+        final StreamMetadata metadata = createMetadata("busy", StreamStatus.IN_PROGRESS, null);
+
+        doReturn(Collections.singletonList(metadata)).when(_streamStateDao).findStreamMetadataByIds(anyCollectionOf(String.class));
+        doReturn(Collections.singletonList(metadata)).when(_streamStateDao).findStreamMetadata(null, null, StreamReconciler.METADATA_PAGE_SIZE);
+
+        Assert.assertThat(_streamService.getTransitionManager().begin("busy", Transition.WRITE), is(true));
+
+        _streamReconciler.reconcile();
+
+        Assert.assertThat(inFlight.exists(), is(true));
+        verify(_streamStateDao, never()).transitionStreamMetadata(any(StreamMetadata.class), any(StreamStatus.class));
+
+        // And we should have let go of everything we did claim.
+        Assert.assertThat(_streamService.getTransitionManager().getActiveTransitionCount(), is(1));
+
+        assertProgress(1, 0, 0, 0);
+    }
+
+    /**
+     * Tests {@link StreamReconciler#reconcile()} when we're bucketing, and there's something left in the top level. That
+     * belongs to the legacy migrator, so we shouldn't touch it.
+     */
+    @Test
+    public void testReconcileSkipsLegacyLayout() throws Exception
+    {
+        final File legacy = new File(_storage, "legacy");
+        FileUtils.writeStringToFile(legacy, "legacy");
+
+        _streamReconciler.reconcile();
+
+        Assert.assertThat(legacy.exists(), is(true));
+        verify(_streamStateDao, never()).findStreamMetadataByIds(anyCollectionOf(String.class));
+
+        assertProgress(0, 0, 0, 0);
+    }
+
+    /**
+     * Tests {@link StreamReconciler#destroy()} to make sure we stop without touching anything else.
+     */
+    @Test
+    public void testDestroy() throws Exception
+    {
+        final File orphan = createVersion("known", "v2", "orphan");
+        final StreamMetadata metadata = createMetadata("known", StreamStatus.IN_PROGRESS, "v1");
+
+        doReturn(Collections.singletonList(metadata)).when(_streamStateDao).findStreamMetadataByIds(anyCollectionOf(String.class));
+        doReturn(Collections.singletonList(metadata)).when(_streamStateDao).findStreamMetadata(null, null, StreamReconciler.METADATA_PAGE_SIZE);
+
+        _streamReconciler.destroy();
+        _streamReconciler.reconcile();
+
+        Assert.assertThat(orphan.exists(), is(true));
+        verify(_streamStateDao, never()).transitionStreamMetadata(any(StreamMetadata.class), any(StreamStatus.class));
+
+        Assert.assertThat(_streamReconciler.getState(), is(StreamReconciler.State.STOPPED.name()));
+        Assert.assertThat(_streamReconciler.getFilesScanned(), is(0L));
+    }
+
+    /**
+     * Provides a convenience method to write a version of a stream to our temp storage.
+     *
+     * @param id The ID of the stream. Must be valid.
+     * @param version The version of the stream. Must not be blank.
+     * @param contents The contents to write.
+     *
+     * @return The {@link File} we wrote.
+     */
+    private File createVersion(final String id, final String version, final String contents) throws Exception
+    {
+        final File file = _streamService.createFileForVersion(id, version);
+        FileUtils.writeStringToFile(file, contents);
+
+        return file;
+    }
+
+    /**
+     * Provides a convenience method to create a {@link StreamMetadata} as a one-liner.
+     *
+     * @param id The ID of the stream. Must be valid.
+     * @param status The {@link StreamStatus} of the stream. Must not be null.
+     * @param contentVersion The current version of the stream. May be null.
+     *
+     * @return A nice and shiny {@link StreamMetadata}.
+     */
+    private StreamMetadata createMetadata(final String id, final StreamStatus status, final String contentVersion)
+    {
+        final StreamMetadata metadata = new StreamMetadata();
+
+        metadata.setId(id);
+        metadata.setStatus(status);
+        metadata.setContentVersion(contentVersion);
+
+        return metadata;
+    }
+
+    /**
+     * Provides a convenience method to assert that we finished, and how much we did along the way.
+     *
+     * @param filesScanned The number of files we should have scanned.
+     * @param streamsRecovered The number of streams we should have recovered.
+     * @param streamsFailed The number of streams we should have failed.
+     * @param orphansDeleted The number of orphaned versions we should have deleted.
+     */
+    private void assertProgress(final long filesScanned, final long streamsRecovered, final long streamsFailed, final long orphansDeleted)
+    {
+        Assert.assertThat(_streamReconciler.getState(), is(StreamReconciler.State.COMPLETE.name()));
+        Assert.assertThat(_streamReconciler.getFilesScanned(), is(filesScanned));
+        Assert.assertThat(_streamReconciler.getStreamsRecovered(), is(streamsRecovered));
+        Assert.assertThat(_streamReconciler.getStreamsFailed(), is(streamsFailed));
+        Assert.assertThat(_streamReconciler.getOrphansDeleted(), is(orphansDeleted));
+    }
+}
@@ -2,9 +2,11 @@ package com._8x8.cloud.hss.service;
 
 import com._8x8.cloud.hss.filter.FilterManager;
 import com._8x8.cloud.hss.model.StreamMetadata;
+import com._8x8.cloud.hss.model.StreamMetadataCriteria;
 import com._8x8.cloud.hss.model.StreamStatus;
 import com._8x8.cloud.hss.persistence.IStreamStateDao;
 import com._8x8.cloud.hss.persistence.StreamStateDao;
+import com._8x8.cloud.hss.service.StreamTransitionManager.Transition;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.junit.Assert;
@@ -15,26 +17,44 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doCallRealMethod;
-import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 
@@ -63,12 +83,36 @@ public class StreamServiceTestCase
      */
     private IStreamStateDao _streamStateDao;
 
+    /**
+     * Holds a collaborating {@link StreamVersionTracker}, so we can see what we're holding on to.
+     */
+    private StreamVersionTracker _versionTracker;
+
+    /**
+     * Holds a collaborating {@link StreamTransitionManager}, so we can decide who wins.
+     */
+    private StreamTransitionManager _transitionManager;
+
+    /**
+     * Holds a collaborating {@link StreamStatisticsTracker}, so we can see what gets counted.
+     */
+    private StreamStatisticsTracker _statisticsTracker;
+
+    /**
+     * Holds a collaborating {@link StreamChangeFeed}, so we can see what gets published.
+     */
+    private StreamChangeFeed _changeFeed;
+
     @Before
     public void setUp() throws Exception
     {
         _streamService = spy(StreamService.class);
         _filterManager = mock(FilterManager.class);
         _streamStateDao = mock(StreamStateDao.class);
+        _versionTracker = mock(StreamVersionTracker.class);
+        _transitionManager = mock(StreamTransitionManager.class);
+        _statisticsTracker = mock(StreamStatisticsTracker.class);
+        _changeFeed = mock(StreamChangeFeed.class);
 
         _streamService.setFilterManager(_filterManager);
         verify(_streamService).setFilterManager(_filterManager);
@@ -76,13 +120,31 @@ public class StreamServiceTestCase
         _streamService.setStreamStateDao(_streamStateDao);
         verify(_streamService).setStreamStateDao(_streamStateDao);
 
+        _streamService.setVersionTracker(_versionTracker);
+        verify(_streamService).setVersionTracker(_versionTracker);
+
+        _streamService.setTransitionManager(_transitionManager);
+        verify(_streamService).setTransitionManager(_transitionManager);
+
+        _streamService.setStatisticsTracker(_statisticsTracker);
+        verify(_streamService).setStatisticsTracker(_statisticsTracker);
+
+        _streamService.setChangeFeed(_changeFeed);
+        verify(_streamService).setChangeFeed(_changeFeed);
+
+        // Nobody else is writing, unless we say otherwise.
+        doReturn(true).when(_transitionManager).begin(anyString(), any(Transition.class));
+
         mockStatic(FileUtils.class);
         mockStatic(IOUtils.class);
 
-        // We're going to test these callbacks separately.
-        doNothing().when(_streamService).markStreamInProgress(any(StreamMetadata.class));
-        doNothing().when(_streamService).markStreamSuccessful(any(StreamMetadata.class), any(File.class));
-        doNothing().when(_streamService).markStreamFailure(any(StreamMetadata.class));
+        // Writes have to land somewhere, since we digest them on the way past.
+        when(FileUtils.openOutputStream(any(File.class))).thenReturn(mock(FileOutputStream.class));
+
+        // We're going to test these callbacks separately. Nobody else touches the stream, unless we say otherwise.
+        doReturn(true).when(_streamService).markStreamInProgress(any(StreamMetadata.class));
+        doReturn(true).when(_streamService).markStreamSuccessful(any(StreamMetadata.class), any(File.class));
+        doReturn(true).when(_streamService).markStreamFailure(any(StreamMetadata.class));
     }
 
     /**
@@ -96,9 +158,17 @@ public class StreamServiceTestCase
         verify(_streamService).init();
         verify(_streamService, times(2)).getStreamStorageDirectory();
 
+        // We're flat by default, so there's nothing to migrate.
+        verify(_streamService).getStorageFanOutLevels();
+
         verifyStatic(times(1));
         FileUtils.forceMkdir(any(File.class));
 
+        // We should count what we've got before we start.
+        verify(_streamService).getStatisticsTracker();
+        verify(_streamService).getStreamStateDao();
+        verify(_statisticsTracker).seed(_streamStateDao);
+
         verifyNoMoreCollaboratingInteractions();
     }
 
@@ -118,100 +188,449 @@ public class StreamServiceTestCase
 
         // Make sure we're actually pulling our configured value.
         verify(_streamService).getStreamStorageDirectory();
+        verify(_streamService).getStorageFanOutLevels();
 
         verifyNoMoreCollaboratingInteractions();
     }
 
     /**
-     * Tests the happy path of {@link StreamService#getStreamById(String, List)}.
+     * Tests {@link StreamService#createFileForId(String)} when we're bucketing streams. Each level should be the next two
+     * characters of the MD5 of the ID.
      */
     @Test
-    public void testGetStreamById() throws Exception
+    public void testCreateFileForIdWithFanOut() throws Exception
     {
-        doReturn(StreamStatus.SUCCESSFUL).when(_streamService).getStatusForStreamById(anyString());
-        doReturn(new File("asdf")).when(_streamService).createFileForId(anyString());
+        final String path = String.format("/tmp/%s", UUID.randomUUID().toString());
+        _streamService.setStreamStorageDirectory(path);
+        _streamService.setStorageFanOutLevels(2);
 
-        _streamService.getStreamById("test", Arrays.asList("foo", "bar"));
+        // md5("id") = b80bb7740288fda1f201890375a60c8f
+        Assert.assertThat(_streamService.createFileForId("id").getAbsolutePath(), is(equalTo(new File(path + "/b8/0b/id").getAbsolutePath())));
 
-        verify(_streamService).getStreamById(anyString(), anyListOf(String.class));
-        verify(_streamService).getStatusForStreamById("test");
+        verify(_streamService).setStreamStorageDirectory(anyString());
+        verify(_streamService).setStorageFanOutLevels(2);
+        verify(_streamService).createFileForId(anyString());
+        verify(_streamService).getStreamStorageDirectory();
+        verify(_streamService).getStorageFanOutLevels();
+
+        verifyNoMoreCollaboratingInteractions();
+    }
+
+    /**
+     * Tests {@link StreamService#setStorageFanOutLevels(int)} to make sure we refuse nonsensical values.
+     */
+    @Test
+    public void testSetStorageFanOutLevelsOutOfRange() throws Exception
+    {
+        for (final int levels : new int[] {-1, StreamService.MAX_FAN_OUT_LEVELS + 1})
+        {
+            try
+            {
+                _streamService.setStorageFanOutLevels(levels);
+                Assert.fail("Whoops, we should have caught an exception here.");
+            }
+            catch (final IllegalArgumentException ex)
+            {
+                // Expected.
+            }
+        }
+
+        Assert.assertThat(_streamService.getStorageFanOutLevels(), is(0));
+    }
+
+    /**
+     * Tests {@link StreamService#resolveFileForId(String)} to make sure we fall back to the old flat layout for streams
+     * that haven't been migrated yet, and prefer the bucketed location once they have.
+     */
+    @Test
+    public void testResolveFileForId() throws Exception
+    {
+        final Path root = Files.createTempDirectory("hss");
+        _streamService.setStreamStorageDirectory(root.toString());
+        _streamService.setStorageFanOutLevels(2);
+
+        // Nothing anywhere: we should get the bucketed location, since that's where it would go.
+        final File bucketed = _streamService.createFileForId("id");
+        Assert.assertThat(_streamService.resolveFileForId("id"), is(equalTo(bucketed)));
+
+        // Only in the flat layout.
+        final Path legacy = Files.write(root.resolve("id"), "legacy".getBytes());
+        Assert.assertThat(_streamService.resolveFileForId("id"), is(equalTo(legacy.toFile())));
+
+        // In both: the bucketed copy wins.
+        Files.createDirectories(bucketed.getParentFile().toPath());
+        Files.write(bucketed.toPath(), "bucketed".getBytes());
+        Assert.assertThat(_streamService.resolveFileForId("id"), is(equalTo(bucketed)));
+    }
+
+    /**
+     * Tests {@link StreamService#createFileForVersion(String, String)} to make sure versions land in the same bucket as
+     * the stream they belong to.
+     */
+    @Test
+    public void testCreateFileForVersion() throws Exception
+    {
+        _streamService.setStorageFanOutLevels(2);
+
+        final File file = _streamService.createFileForVersion("id", "v1");
+
+        Assert.assertThat(file.getName(), is("id@v1"));
+        Assert.assertThat(file.getParentFile(), is(equalTo(_streamService.createFileForId("id").getParentFile())));
+    }
+
+    /**
+     * Tests {@link StreamService#resolveFileForStream(StreamMetadata)} to make sure we find versioned streams, and fall
+     * back to a file named for the ID for streams written before we had versions.
+     */
+    @Test
+    public void testResolveFileForStream() throws Exception
+    {
+        final Path root = Files.createTempDirectory("hss");
+        _streamService.setStreamStorageDirectory(root.toString());
+        _streamService.setStorageFanOutLevels(2);
+
+        Assert.assertThat(_streamService.resolveFileForStream(createMetadata(StreamStatus.SUCCESSFUL, "v1")),
+                          is(equalTo(_streamService.createFileForVersion("test", "v1"))));
+        Assert.assertThat(_streamService.resolveFileForStream(createMetadata(StreamStatus.SUCCESSFUL, null)),
+                          is(equalTo(_streamService.createFileForId("test"))));
+
+        // A version that hasn't been migrated out of the flat layout yet.
+        final Path legacy = Files.write(root.resolve("test@v1"), "legacy".getBytes());
+        Assert.assertThat(_streamService.resolveFileForStream(createMetadata(StreamStatus.SUCCESSFUL, "v1")), is(equalTo(legacy.toFile())));
+    }
+
+    /**
+     * Tests {@link StreamService#migrateLegacyStorage()} to make sure we move flat streams into their buckets, leave
+     * existing buckets alone and don't clobber a newer bucketed copy with a stale flat one.
+     */
+    @Test
+    public void testMigrateLegacyStorage() throws Exception
+    {
+        final Path root = Files.createTempDirectory("hss");
+        _streamService.setStreamStorageDirectory(root.toString());
+        _streamService.setStorageFanOutLevels(2);
+
+        Files.write(root.resolve("first"), "first".getBytes());
+        Files.write(root.resolve("second"), "stale".getBytes());
+        Files.write(root.resolve("third@v1"), "third".getBytes());
+
+        // Somebody has already re-uploaded the second stream since we switched layouts.
+        final Path second = _streamService.createFileForId("second").toPath();
+        Files.createDirectories(second.getParent());
+        Files.write(second, "fresh".getBytes());
+
+        _streamService.migrateLegacyStorage();
+
+        Assert.assertThat(new String(Files.readAllBytes(_streamService.createFileForId("first").toPath())), is("first"));
+        Assert.assertThat(new String(Files.readAllBytes(_streamService.createFileForVersion("third", "v1").toPath())), is("third"));
+        Assert.assertThat(new String(Files.readAllBytes(second)), is("fresh"));
+
+        // And nothing should be left in the top level, other than our buckets.
+        try (final DirectoryStream<Path> remaining = Files.newDirectoryStream(root, Files::isRegularFile))
+        {
+            Assert.assertThat(remaining.iterator().hasNext(), is(false));
+        }
+    }
+
+    /**
+     * Tests the happy path of {@link StreamService#getStream(StreamMetadata, List)}. We've been handed our metadata, so
+     * we shouldn't go looking for it.
+     */
+    @Test
+    public void testGetStream() throws Exception
+    {
+        final File file = new File("asdf");
+        final StreamMetadata metadata = createMetadata(StreamStatus.SUCCESSFUL, "v1");
+
+        doReturn(new StreamVersion<>(metadata, file)).when(_streamService).acquireFileForStream(any(StreamMetadata.class));
+        doReturn(mock(InputStream.class)).when(_filterManager).prepareInputFilters(any(InputStream.class), anyListOf(String.class));
+
+        final InputStream stream = _streamService.getStream(metadata, Arrays.asList("foo", "bar"));
+        Assert.assertThat(stream, is(instanceOf(ReleasingInputStream.class)));
+
+        verify(_streamService).getStream(any(StreamMetadata.class), anyListOf(String.class));
+        verify(_streamService).acquireFileForStream(metadata);
         verify(_streamService).getFilterManager();
-        verify(_streamService).createFileForId("test");
+        verify(_streamService).getFilteredStreamCache();
+        verify(_streamService).openFilteredStream("test", file, Arrays.asList("foo", "bar"));
+        verify(_streamService).openStoredStream("test", file);
+        verify(_streamService).getStreamCache();
 
         verify(_filterManager).prepareInputFilters(any(InputStream.class), anyListOf(String.class));
 
         verifyStatic(times(1));
-        FileUtils.openInputStream(any(File.class));
+        FileUtils.openInputStream(file);
+
+        verifyNoMoreCollaboratingInteractions();
+
+        // Closing the stream should give back our reference to the version.
+        stream.close();
+
+        verify(_streamService).getVersionTracker();
+        verify(_versionTracker).release(file);
+
+        verifyNoMoreCollaboratingInteractions();
+    }
+
+    /**
+     * Tests {@link StreamService#getStream(StreamMetadata, List)} for the case where we've got a {@link FilteredStreamCache}.
+     * We should hand off to the cache, keyed by the version of the stream, and not run any filters ourselves.
+     */
+    @Test
+    public void testGetStreamWithFilteredStreamCache() throws Exception
+    {
+        final FilteredStreamCache filteredStreamCache = mock(FilteredStreamCache.class);
+        final File file = new File("asdf");
+        final StreamMetadata metadata = createMetadata(StreamStatus.SUCCESSFUL, "v1");
+
+        _streamService.setFilteredStreamCache(filteredStreamCache);
+        doReturn(new StreamVersion<>(metadata, file)).when(_streamService).acquireFileForStream(any(StreamMetadata.class));
+        doReturn("v1").when(_streamService).getVersionForStream(any(File.class));
+        doReturn(mock(InputStream.class)).when(filteredStreamCache).getStream(anyString(), anyString(), anyListOf(String.class), any(FilteredStreamCache.FilteredSource.class));
+
+        Assert.assertThat(_streamService.getStream(metadata, Arrays.asList("foo", "bar")), is(instanceOf(ReleasingInputStream.class)));
+
+        verify(_streamService).setFilteredStreamCache(filteredStreamCache);
+        verify(_streamService).getStream(any(StreamMetadata.class), anyListOf(String.class));
+        verify(_streamService).acquireFileForStream(metadata);
+        verify(_streamService).getFilteredStreamCache();
+        verify(_streamService).getVersionForStream(file);
+
+        verify(filteredStreamCache).getStream(eq("test"), eq("v1"), eq(Arrays.asList("foo", "bar")), any(FilteredStreamCache.FilteredSource.class));
 
         verifyNoMoreCollaboratingInteractions();
+        verifyNoMoreInteractions(filteredStreamCache);
     }
 
     /**
-     * Tests {@link StreamService#getStreamById(String, List)} for the case where the requested file is not found.
+     * Tests {@link StreamService#getVersionForStream(File)} to make sure the version changes along with the contents.
      */
     @Test
-    public void testGetStreamByIdWhenFileNotFound() throws Exception
+    public void testGetVersionForStream() throws Exception
     {
-        doReturn(StreamStatus.NOT_FOUND).when(_streamService).getStatusForStreamById(anyString());
+        final File file = File.createTempFile("hss", "version");
+        file.deleteOnExit();
+
+        final String version = _streamService.getVersionForStream(file);
+        Assert.assertThat(_streamService.getVersionForStream(file), is(version));
 
-        _streamService.getStreamById("test", Arrays.asList("foo", "bar"));
+        Files.write(file.toPath(), "new contents".getBytes());
+        Assert.assertThat(_streamService.getVersionForStream(file), is(not(version)));
+    }
+
+    /**
+     * Tests {@link StreamService#getStreamById(String, List)} for the case where there's no complete version of the
+     * stream to read. We should look up the metadata, and hand off to {@link StreamService#getStream(StreamMetadata, List)}.
+     */
+    @Test
+    public void testGetStreamByIdWhenNotReadable() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata(StreamStatus.FAILED, "v1");
+
+        doReturn(metadata).when(_streamStateDao).findStreamMetadataById(anyString());
+        doReturn(null).when(_streamService).acquireFileForStream(any(StreamMetadata.class));
+
+        Assert.assertThat(_streamService.getStreamById("test", Arrays.asList("foo", "bar")), is(nullValue()));
 
         verify(_streamService).getStreamById(anyString(), anyListOf(String.class));
-        verify(_streamService).getStatusForStreamById("test");
+        verify(_streamService).getStream(metadata, Arrays.asList("foo", "bar"));
+        verify(_streamService).getStreamStateDao();
+        verify(_streamService).acquireFileForStream(metadata);
+
+        verify(_streamStateDao).findStreamMetadataById("test");
 
         verifyNoMoreCollaboratingInteractions();
     }
 
     /**
-     * Tests {@link StreamService#getStreamById(String, List)} for the case where the requested file failed to upload.
+     * Tests {@link StreamService#acquireFileForStream(StreamMetadata)} for the case where the requested file is not found.
+     */
+    @Test
+    public void testAcquireFileForStreamWhenFileNotFound() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata(StreamStatus.NOT_FOUND, null);
+
+        Assert.assertThat(_streamService.acquireFileForStream(metadata), is(nullValue()));
+
+        verify(_streamService).acquireFileForStream(metadata);
+
+        verifyNoMoreCollaboratingInteractions();
+    }
+
+    /**
+     * Tests {@link StreamService#acquireFileForStream(StreamMetadata)} for the case where the requested file failed to upload.
      **/
     @Test
-    public void testGetStreamByIdWhenUploadFailed() throws Exception
+    public void testAcquireFileForStreamWhenUploadFailed() throws Exception
     {
-        doReturn(StreamStatus.FAILED).when(_streamService).getStatusForStreamById(anyString());
+        final StreamMetadata metadata = createMetadata(StreamStatus.FAILED, "v1");
 
-        _streamService.getStreamById("test", Arrays.asList("foo", "bar"));
+        Assert.assertThat(_streamService.acquireFileForStream(metadata), is(nullValue()));
 
-        verify(_streamService).getStreamById(anyString(), anyListOf(String.class));
-        verify(_streamService).getStatusForStreamById("test");
+        verify(_streamService).acquireFileForStream(metadata);
 
         verifyNoMoreCollaboratingInteractions();
     }
 
     /**
-     * Tests {@link StreamService#getStreamById(String, List)} for the case where the requested file is in progress.
+     * Tests {@link StreamService#acquireFileForStream(StreamMetadata)} for the case where the requested file is being uploaded
+     * for the first time, so there's nothing to read yet.
      **/
     @Test
-    public void testGetStreamByIdWhenUploadInProgress() throws Exception
+    public void testAcquireFileForStreamWhenUploadInProgress() throws Exception
     {
-        doReturn(StreamStatus.IN_PROGRESS).when(_streamService).getStatusForStreamById(anyString());
+        final StreamMetadata metadata = createMetadata(StreamStatus.IN_PROGRESS, null);
 
-        _streamService.getStreamById("test", Arrays.asList("foo", "bar"));
+        Assert.assertThat(_streamService.acquireFileForStream(metadata), is(nullValue()));
 
-        verify(_streamService).getStreamById(anyString(), anyListOf(String.class));
-        verify(_streamService).getStatusForStreamById("test");
+        verify(_streamService).acquireFileForStream(metadata);
 
         verifyNoMoreCollaboratingInteractions();
     }
 
     /**
-     * Tests {@link StreamService#getStatusForStreamById(String)} for the case where an exception is thrown. This would be
+     * Tests {@link StreamService#acquireFileForStream(StreamMetadata)} for the case where the stream is being updated. We should
+     * get the previous version, with a reference taken out on it.
+     **/
+    @Test
+    public void testAcquireFileForStreamWhenUpdateInProgress() throws Exception
+    {
+        final File file = File.createTempFile("hss", "version");
+        file.deleteOnExit();
+
+        final StreamMetadata metadata = createMetadata(StreamStatus.IN_PROGRESS, "v1");
+
+        doReturn(file).when(_streamService).resolveFileForStream(any(StreamMetadata.class));
+        doReturn(true).when(_versionTracker).acquire(any(File.class));
+
+        final StreamVersion<File> version = _streamService.acquireFileForStream(metadata);
+        Assert.assertThat(version.getContents(), is(file));
+        Assert.assertThat(version.getMetadata(), is(metadata));
+
+        verify(_streamService).acquireFileForStream(metadata);
+        verify(_streamService).resolveFileForStream(metadata);
+        verify(_streamService).getVersionTracker();
+
+        verify(_versionTracker).acquire(file);
+
+        verifyNoMoreCollaboratingInteractions();
+    }
+
+    /**
+     * Tests {@link StreamService#acquireFileForStream(StreamMetadata)} for the case where we lose races with writers: first the
+     * version we were handed is retired before we can acquire it, then it's deleted right after we do. We should go back
+     * to the metadata each time, and give back any reference we took out.
+     **/
+    @Test
+    public void testAcquireFileForStreamWhenVersionRetired() throws Exception
+    {
+        final File retired = new File("retired");
+        final File deleted = new File("deleted");
+        final File current = File.createTempFile("hss", "version");
+        current.deleteOnExit();
+
+        final StreamMetadata first = createMetadata(StreamStatus.SUCCESSFUL, "v1");
+        final StreamMetadata second = createMetadata(StreamStatus.SUCCESSFUL, "v2");
+        final StreamMetadata third = createMetadata(StreamStatus.SUCCESSFUL, "v3");
+
+        when(_streamStateDao.findStreamMetadataById(anyString())).thenReturn(second, third);
+        doReturn(retired).when(_streamService).resolveFileForStream(first);
+        doReturn(deleted).when(_streamService).resolveFileForStream(second);
+        doReturn(current).when(_streamService).resolveFileForStream(third);
+        doReturn(false).when(_versionTracker).acquire(retired);
+        doReturn(true).when(_versionTracker).acquire(deleted);
+        doReturn(true).when(_versionTracker).acquire(current);
+
+        // And we should be told which version we ended up with.
+        final StreamVersion<File> version = _streamService.acquireFileForStream(first);
+        Assert.assertThat(version.getContents(), is(current));
+        Assert.assertThat(version.getMetadata(), is(third));
+
+        verify(_streamService).acquireFileForStream(first);
+        verify(_streamService, times(2)).getStreamStateDao();
+        verify(_streamService, times(3)).resolveFileForStream(any(StreamMetadata.class));
+        verify(_streamService, times(4)).getVersionTracker();
+
+        verify(_streamStateDao, times(2)).findStreamMetadataById("test");
+        verify(_versionTracker).acquire(retired);
+        verify(_versionTracker).acquire(deleted);
+        verify(_versionTracker).release(deleted);
+        verify(_versionTracker).acquire(current);
+
+        verifyNoMoreCollaboratingInteractions();
+    }
+
+    /**
+     * Tests {@link StreamService#acquireFileForStream(StreamMetadata)} for the case where we keep losing races. We should give up
+     * eventually, rather than spinning forever.
+     **/
+    @Test
+    public void testAcquireFileForStreamGivesUp() throws Exception
+    {
+        doReturn(createMetadata(StreamStatus.SUCCESSFUL, "v1")).when(_streamStateDao).findStreamMetadataById(anyString());
+        doReturn(new File("asdf")).when(_streamService).resolveFileForStream(any(StreamMetadata.class));
+        doReturn(false).when(_versionTracker).acquire(any(File.class));
+
+        try
+        {
+            _streamService.acquireFileForStream(createMetadata(StreamStatus.SUCCESSFUL, "v1"));
+            Assert.fail("Whoops, we should have caught an exception here.");
+        }
+        catch (final IllegalStateException ex)
+        {
+            Assert.assertThat(ex.getMessage(), containsString("test"));
+        }
+
+        verify(_streamStateDao, times(StreamService.MAX_VERSION_ATTEMPTS - 1)).findStreamMetadataById("test");
+        verify(_versionTracker, times(StreamService.MAX_VERSION_ATTEMPTS)).acquire(any(File.class));
+    }
+
+    /**
+     * Tests {@link StreamService#isAbandoned(StreamMetadata)}. Only a stream that's in progress, that we aren't writing,
+     * and that hasn't moved in a while counts.
+     */
+    @Test
+    public void testIsAbandoned() throws Exception
+    {
+        _streamService.setStaleInProgressSeconds(60);
+
+        final StreamMetadata stale = createMetadata(StreamStatus.IN_PROGRESS, null);
+        stale.setLastModified(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(2));
+
+        final StreamMetadata fresh = createMetadata(StreamStatus.IN_PROGRESS, null);
+        fresh.setLastModified(System.currentTimeMillis());
+
+        final StreamMetadata successful = createMetadata(StreamStatus.SUCCESSFUL, "v1");
+        successful.setLastModified(stale.getLastModified());
+
+        Assert.assertThat(_streamService.isAbandoned(stale), is(true));
+        Assert.assertThat(_streamService.isAbandoned(fresh), is(false));
+        Assert.assertThat(_streamService.isAbandoned(successful), is(false));
+
+        // However long it's been, if we're the ones writing it then it isn't abandoned.
+        doReturn(Transition.WRITE).when(_transitionManager).getTransition("test");
+        Assert.assertThat(_streamService.isAbandoned(stale), is(false));
+    }
+
+    /**
+     * Tests {@link StreamService#getStream(StreamMetadata, List)} for the case where an exception is thrown. This would be
      * something like an invalid filter combination being selected. We want to make sure we're closing our streams, since
-     * the MessageBodyWriter will never actually be called.
+     * the MessageBodyWriter will never actually be called. We also need to give back our reference to the version.
      **/
     @Test
     public void testGetStreamIdThrowsException() throws Exception
     {
         // Wire up some stuff we'll need.
-        doReturn(StreamStatus.SUCCESSFUL).when(_streamService).getStatusForStreamById(anyString());
-        doReturn(new File("asdf")).when(_streamService).createFileForId(anyString());
+        final File file = new File("asdf");
+        final StreamMetadata metadata = createMetadata(StreamStatus.SUCCESSFUL, "v1");
+        doReturn(new StreamVersion<>(metadata, file)).when(_streamService).acquireFileForStream(any(StreamMetadata.class));
 
         // Bail when we're trying to get our filters.
         doThrow(new RuntimeException("moo")).when(_streamService).getFilterManager();
 
         try
         {
-            _streamService.getStreamById("test", Arrays.asList("foo", "bar"));
+            _streamService.getStream(metadata, Arrays.asList("foo", "bar"));
             Assert.fail("Whoops, we should have caught an exception here.");
         }
         catch (final RuntimeException ex)
@@ -220,10 +639,16 @@ public class StreamServiceTestCase
         }
 
         // We're still going to call our service calls.
-        verify(_streamService).getStreamById(anyString(), anyListOf(String.class));
-        verify(_streamService).getStatusForStreamById("test");
-        verify(_streamService).createFileForId("test");
+        verify(_streamService).getStream(any(StreamMetadata.class), anyListOf(String.class));
+        verify(_streamService).acquireFileForStream(metadata);
+        verify(_streamService).getFilteredStreamCache();
+        verify(_streamService).openFilteredStream("test", file, Arrays.asList("foo", "bar"));
+        verify(_streamService).openStoredStream("test", file);
+        verify(_streamService).getStreamCache();
         verify(_streamService).getFilterManager();
+        verify(_streamService).getVersionTracker();
+
+        verify(_versionTracker).release(file);
 
         // But no filters.
         verify(_filterManager, times(0)).prepareInputFilters(any(InputStream.class), anyListOf(String.class));
@@ -239,6 +664,205 @@ public class StreamServiceTestCase
         verifyNoMoreCollaboratingInteractions();
     }
 
+    /**
+     * Tests {@link StreamService#openStoredStream(String, File)} for the case where we've got a {@link StreamCache} and
+     * it has the contents of our stream. We should never touch the disk.
+     */
+    @Test
+    public void testOpenStoredStreamFromCache() throws Exception
+    {
+        final StreamCache streamCache = mock(StreamCache.class);
+        final InputStream cachedStream = mock(InputStream.class);
+        final File file = new File("asdf");
+
+        _streamService.setStreamCache(streamCache);
+        doReturn(cachedStream).when(streamCache).getStream(anyString(), any(File.class));
+
+        Assert.assertThat(_streamService.openStoredStream("test", file), is(cachedStream));
+
+        verify(_streamService).setStreamCache(streamCache);
+        verify(_streamService).openStoredStream("test", file);
+        verify(_streamService).getStreamCache();
+
+        verify(streamCache).getStream("test", file);
+
+        verifyStatic(times(0));
+        FileUtils.openInputStream(any(File.class));
+
+        verifyNoMoreCollaboratingInteractions();
+        verifyNoMoreInteractions(streamCache);
+    }
+
+    /**
+     * Tests {@link StreamService#openStoredStream(String, File)} for the case where we've got a {@link StreamCache}, but
+     * the stream is too large to cache. We should fall back to the disk.
+     */
+    @Test
+    public void testOpenStoredStreamTooLargeToCache() throws Exception
+    {
+        final StreamCache streamCache = mock(StreamCache.class);
+        final File file = new File("asdf");
+
+        _streamService.setStreamCache(streamCache);
+        doReturn(null).when(streamCache).getStream(anyString(), any(File.class));
+
+        _streamService.openStoredStream("test", file);
+
+        verify(_streamService).setStreamCache(streamCache);
+        verify(_streamService).openStoredStream("test", file);
+        verify(_streamService).getStreamCache();
+
+        verify(streamCache).getStream("test", file);
+
+        verifyStatic(times(1));
+        FileUtils.openInputStream(file);
+
+        verifyNoMoreCollaboratingInteractions();
+        verifyNoMoreInteractions(streamCache);
+    }
+
+    /**
+     * Tests {@link StreamService#getCachedContentsForStream(StreamMetadata)} for the happy path. We should get the
+     * contents from our cache, and give back our reference to the version as soon as we have them.
+     */
+    @Test
+    public void testGetCachedContentsForStream() throws Exception
+    {
+        final StreamCache streamCache = mock(StreamCache.class);
+        final ByteBuffer contents = ByteBuffer.allocate(4096);
+        final File file = new File("asdf");
+
+        final StreamMetadata metadata = createMetadata(StreamStatus.SUCCESSFUL, "v1");
+        metadata.setFileSize(4096L);
+
+        _streamService.setStreamCache(streamCache);
+        doReturn(1024L * 1024).when(streamCache).getMaximumEntryBytes();
+        doReturn(contents).when(streamCache).getContents(anyString(), any(File.class));
+        doReturn(new StreamVersion<>(metadata, file)).when(_streamService).acquireFileForStream(any(StreamMetadata.class));
+
+        final StreamVersion<ByteBuffer> version = _streamService.getCachedContentsForStream(metadata);
+        Assert.assertThat(version.getContents(), is(contents));
+        Assert.assertThat(version.getMetadata(), is(metadata));
+
+        verify(_streamService).setStreamCache(streamCache);
+        verify(_streamService).getCachedContentsForStream(metadata);
+        verify(_streamService).getStreamCache();
+        verify(_streamService).acquireFileForStream(metadata);
+        verify(_streamService).getVersionTracker();
+
+        verify(streamCache).getMaximumEntryBytes();
+        verify(streamCache).getContents(metadata.getId(), file);
+        verify(_versionTracker).release(file);
+
+        verifyNoMoreCollaboratingInteractions();
+        verifyNoMoreInteractions(streamCache);
+    }
+
+    /**
+     * Tests {@link StreamService#getCachedContentsForStream(StreamMetadata)} for the case where the stream is too large
+     * to cache. We should give up straight away, without taking out a version.
+     */
+    @Test
+    public void testGetCachedContentsForStreamTooLargeToCache() throws Exception
+    {
+        final StreamCache streamCache = mock(StreamCache.class);
+
+        final StreamMetadata metadata = createMetadata(StreamStatus.SUCCESSFUL, "v1");
+        metadata.setFileSize(4096L);
+
+        _streamService.setStreamCache(streamCache);
+        doReturn(1024L).when(streamCache).getMaximumEntryBytes();
+
+        Assert.assertThat(_streamService.getCachedContentsForStream(metadata), is(nullValue()));
+
+        verify(_streamService).setStreamCache(streamCache);
+        verify(_streamService).getCachedContentsForStream(metadata);
+        verify(_streamService).getStreamCache();
+
+        verify(streamCache).getMaximumEntryBytes();
+
+        verifyNoMoreCollaboratingInteractions();
+        verifyNoMoreInteractions(streamCache);
+    }
+
+    /**
+     * Tests {@link StreamService#invalidateCachedStream(String)} to make sure we pass through to our cache.
+     */
+    @Test
+    public void testInvalidateCachedStream() throws Exception
+    {
+        final StreamCache streamCache = mock(StreamCache.class);
+        _streamService.setStreamCache(streamCache);
+
+        _streamService.invalidateCachedStream("test");
+
+        verify(_streamService).setStreamCache(streamCache);
+        verify(_streamService).invalidateCachedStream("test");
+        verify(_streamService).getStreamCache();
+        verify(_streamService).getFilteredStreamCache();
+
+        verify(streamCache).invalidate("test");
+
+        verifyNoMoreCollaboratingInteractions();
+        verifyNoMoreInteractions(streamCache);
+    }
+
+    /**
+     * Tests {@link StreamService#getChannelForStream(StreamMetadata)} for the happy path. We should get back an open
+     * channel to the file, and no filtering should occur. Closing it should give back our reference to the version.
+     */
+    @Test
+    public void testGetChannelForStream() throws Exception
+    {
+        final File file = File.createTempFile("hss", "channel");
+        file.deleteOnExit();
+
+        final StreamMetadata metadata = createMetadata(StreamStatus.SUCCESSFUL, "v1");
+        doReturn(new StreamVersion<>(metadata, file)).when(_streamService).acquireFileForStream(any(StreamMetadata.class));
+
+        final StreamVersion<FileChannel> version = _streamService.getChannelForStream(metadata);
+        Assert.assertThat(version.getMetadata(), is(metadata));
+
+        try (final FileChannel channel = version.getContents())
+        {
+            Assert.assertThat(channel.isOpen(), is(true));
+            Assert.assertThat(channel, is(instanceOf(ReleasingFileChannel.class)));
+        }
+
+        verify(_streamService).getChannelForStream(metadata);
+        verify(_streamService).acquireFileForStream(metadata);
+        verify(_streamService).getVersionTracker();
+
+        verify(_versionTracker).release(file);
+
+        verifyNoMoreCollaboratingInteractions();
+    }
+
+    /**
+     * Tests {@link StreamService#getChannelForStreamById(String)} for the case where the stream is not available. We
+     * should look up the metadata, hand off to {@link StreamService#getChannelForStream(StreamMetadata)}, get back
+     * <code>null</code>, and never touch the filesystem.
+     */
+    @Test
+    public void testGetChannelForStreamByIdWhenInProgress() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata(StreamStatus.IN_PROGRESS, null);
+
+        doReturn(metadata).when(_streamStateDao).findStreamMetadataById(anyString());
+        doReturn(null).when(_streamService).acquireFileForStream(any(StreamMetadata.class));
+
+        Assert.assertThat(_streamService.getChannelForStreamById("test"), is(nullValue()));
+
+        verify(_streamService).getChannelForStreamById("test");
+        verify(_streamService).getChannelForStream(metadata);
+        verify(_streamService).getStreamStateDao();
+        verify(_streamService).acquireFileForStream(metadata);
+
+        verify(_streamStateDao).findStreamMetadataById("test");
+
+        verifyNoMoreCollaboratingInteractions();
+    }
+
     /**
      * Tests {@link StreamService#getStatusForStreamById(String)} to make sure it does what we expect.
      **/
@@ -259,34 +883,55 @@ public class StreamServiceTestCase
     }
 
     /**
-     * Tests {@link StreamService#saveStream(String, InputStream, List)} for the happy path.
+     * Tests {@link StreamService#saveStream(String, InputStream, List)} for the happy path. We should write to a new
+     * version, swap it in, and retire the previous version.
      **/
     @SuppressWarnings("ResultOfMethodCallIgnored")
     @Test
     public void testSaveStream() throws Exception
     {
         final File file = spy(new File("asdf"));
+        final File previousFile = new File("previous");
+
         doReturn(4096L).when(file).length();
-        doReturn(file).when(_streamService).createFileForId(anyString());
+        doReturn(file).when(_streamService).createFileForVersion(anyString(), anyString());
 
         // Pretend this file was previously successfully uploaded.
-        final StreamMetadata metadata = new StreamMetadata();
-        metadata.setStatus(StreamStatus.SUCCESSFUL);
+        final StreamMetadata metadata = createMetadata(StreamStatus.SUCCESSFUL, "v0");
 
         doReturn(metadata).when(_streamStateDao).findStreamMetadataById(anyString());
+        doReturn(previousFile).when(_streamService).resolveFileForStream(any(StreamMetadata.class));
 
         // Call our method.
-        _streamService.saveStream("asdf", mock(InputStream.class), Arrays.asList("curly", "shemp"));
+        Assert.assertThat(_streamService.saveStream("test", mock(InputStream.class), Arrays.asList("curly", "shemp")), is(true));
 
         // Make sure it did what it should...
         verify(_streamService).saveStream(anyString(), any(InputStream.class), anyListOf(String.class));
+        verify(_streamService).saveStream(any(StreamMetadata.class), any(InputStream.class), anyListOf(String.class));
         verify(_streamService).getStreamStateDao();
+        verify(_streamService).resolveFileForStream(metadata);
         verify(_streamService).markStreamInProgress(any(StreamMetadata.class));
-        verify(_streamService).createFileForId(anyString());
+        verify(_streamService).createFileForVersion(eq("test"), anyString());
         verify(_streamService).markStreamSuccessful(any(StreamMetadata.class), any(File.class));
 
+        // We should have held the stream for the duration.
+        verify(_streamService, times(2)).getTransitionManager();
+        verify(_transitionManager).begin("test", Transition.WRITE);
+        verify(_transitionManager).end("test", Transition.WRITE);
+
+        // Nobody is going to find the previous version now.
+        verify(_streamService).getVersionTracker();
+        verify(_versionTracker).retire(previousFile);
+
+        // We're flat, so there's no legacy copy to clean up.
+        verify(_streamService).deleteLegacyFileForId("test");
+        verify(_streamService).getStorageFanOutLevels();
+        verify(_streamService).invalidateCachedStream("test");
+        verify(_streamService).getStreamCache();
+        verify(_streamService).getFilteredStreamCache();
+
         // We're going to call the stream status DAO to find the status for our ID.
-        verify(_streamStateDao).findStreamMetadataById("asdf");
+        verify(_streamStateDao).findStreamMetadataById("test");
 
         // Filtering occurs.
         verify(_streamService).getFilterManager();
@@ -294,33 +939,42 @@ public class StreamServiceTestCase
 
         // Some static IO helpers
         verifyStatic(times(1));
-        FileUtils.openOutputStream(any(File.class));
+        FileUtils.openOutputStream(file);
 
         verifyStatic(times(1));
         IOUtils.copyLarge(any(InputStream.class), any(OutputStream.class));
 
         verifyNoMoreCollaboratingInteractions();
+
+        // And our metadata should now point at our new version.
+        Assert.assertThat(metadata.getContentVersion(), is(not(nullValue())));
+        Assert.assertThat(metadata.getContentVersion(), is(not("v0")));
+
+        // With the digests of what we wrote, which is nothing at all.
+        Assert.assertThat(metadata.getCrc32c(), is("00000000"));
+        Assert.assertThat(metadata.getSha256(), is("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855"));
     }
+
     /**
-     * Tests {@link StreamService#saveStream(String, InputStream, List)} being called on a stream that is in progress.
-     * This should do nothing.
+     * Tests {@link StreamService#saveStream(String, InputStream, List)} being called on a stream that somebody else is
+     * already writing. This should do nothing, and tell us so.
      **/
     @Test
     public void testSaveStreamInProgress() throws Exception
     {
-        // Pretend this file was previously successfully uploaded.
-        final StreamMetadata metadata = new StreamMetadata();
-        metadata.setStatus(StreamStatus.IN_PROGRESS);
-
-        doReturn(metadata).when(_streamStateDao).findStreamMetadataById(anyString());
+        doReturn(createMetadata(StreamStatus.IN_PROGRESS, null)).when(_streamStateDao).findStreamMetadataById(anyString());
+        doReturn(false).when(_transitionManager).begin(anyString(), any(Transition.class));
 
         // Call our method.
-        _streamService.saveStream("asdf", mock(InputStream.class), Arrays.asList("curly", "shemp"));
+        Assert.assertThat(_streamService.saveStream("test", mock(InputStream.class), Arrays.asList("curly", "shemp")), is(false));
 
         // Make sure it did what it should...
         verify(_streamService).saveStream(anyString(), any(InputStream.class), anyListOf(String.class));
+        verify(_streamService).saveStream(any(StreamMetadata.class), any(InputStream.class), anyListOf(String.class));
         verify(_streamService).getStreamStateDao();
-        verify(_streamStateDao).findStreamMetadataById("asdf");
+        verify(_streamService).getTransitionManager();
+        verify(_transitionManager).begin("test", Transition.WRITE);
+        verify(_streamStateDao).findStreamMetadataById("test");
 
         // We're not doing any file IO, so these shouldn't get called.
         verifyStatic(times(0));
@@ -332,27 +986,113 @@ public class StreamServiceTestCase
         verifyNoMoreCollaboratingInteractions();
     }
 
+    /**
+     * Tests {@link StreamService#saveStream(String, InputStream, List)} for a stream the metadata says is in progress, but
+     * which nobody is actually writing (IE: we went down in the middle of a write). The metadata is only a record of
+     * what we're doing, so we should just go ahead.
+     **/
+    @Test
+    public void testSaveStreamForStaleInProgress() throws Exception
+    {
+        final File file = new File("asdf");
+        doReturn(file).when(_streamService).createFileForVersion(anyString(), anyString());
+        doReturn(createMetadata(StreamStatus.IN_PROGRESS, null)).when(_streamStateDao).findStreamMetadataById(anyString());
+        doReturn(new File("previous")).when(_streamService).resolveFileForStream(any(StreamMetadata.class));
+
+        Assert.assertThat(_streamService.saveStream("test", mock(InputStream.class), Arrays.asList("curly", "shemp")), is(true));
+
+        verify(_streamService).markStreamSuccessful(any(StreamMetadata.class), eq(file));
+
+        verifyStatic(times(1));
+        IOUtils.copyLarge(any(InputStream.class), any(OutputStream.class));
+    }
+
+    /**
+     * Tests {@link StreamService#saveStream(String, InputStream, List)} for the case where somebody else (IE: another node)
+     * changes the stream between us reading it and marking it in progress. We should back off without writing anything.
+     **/
+    @Test
+    public void testSaveStreamForLostTransition() throws Exception
+    {
+        final StreamMetadata metadata = createMetadata(StreamStatus.SUCCESSFUL, "v0");
+
+        doReturn(metadata).when(_streamStateDao).findStreamMetadataById(anyString());
+        doReturn(new File("previous")).when(_streamService).resolveFileForStream(any(StreamMetadata.class));
+        doReturn(false).when(_streamService).markStreamInProgress(any(StreamMetadata.class));
+
+        Assert.assertThat(_streamService.saveStream("test", mock(InputStream.class), Arrays.asList("curly", "shemp")), is(false));
+
+        verify(_streamService).saveStream(anyString(), any(InputStream.class), anyListOf(String.class));
+        verify(_streamService).saveStream(any(StreamMetadata.class), any(InputStream.class), anyListOf(String.class));
+        verify(_streamService).getStreamStateDao();
+        verify(_streamService).resolveFileForStream(metadata);
+        verify(_streamService).markStreamInProgress(metadata);
+        verify(_streamStateDao).findStreamMetadataById("test");
+
+        verify(_streamService, times(2)).getTransitionManager();
+        verify(_transitionManager).begin("test", Transition.WRITE);
+        verify(_transitionManager).end("test", Transition.WRITE);
+
+        // We're not doing any file IO, so these shouldn't get called.
+        verifyStatic(times(0));
+        FileUtils.openOutputStream(any(File.class));
+
+        verifyNoMoreCollaboratingInteractions();
+    }
+
+    /**
+     * Tests {@link StreamService#saveStream(String, InputStream, List)} for the case where somebody else (IE: another node
+     * deleting it) changes the stream while we're writing it. Our version should go away, and since the previous version
+     * isn't ours to retire anymore we should leave it be.
+     **/
+    @Test
+    public void testSaveStreamForLostSuccess() throws Exception
+    {
+        final File file = new File("asdf");
+        final File previousFile = new File("previous");
+
+        doReturn(file).when(_streamService).createFileForVersion(anyString(), anyString());
+        doReturn(createMetadata(StreamStatus.SUCCESSFUL, "v0")).when(_streamStateDao).findStreamMetadataById(anyString());
+        doReturn(previousFile).when(_streamService).resolveFileForStream(any(StreamMetadata.class));
+        doReturn(false).when(_streamService).markStreamSuccessful(any(StreamMetadata.class), any(File.class));
+
+        Assert.assertThat(_streamService.saveStream("test", mock(InputStream.class), Arrays.asList("curly", "shemp")), is(false));
+
+        verify(_streamService).markStreamSuccessful(any(StreamMetadata.class), eq(file));
+        verify(_streamService, never()).markStreamFailure(any(StreamMetadata.class));
+        verify(_streamService).invalidateCachedStream("test");
+        verify(_transitionManager).end("test", Transition.WRITE);
+        verify(_versionTracker, never()).retire(any(File.class));
+
+        verifyStatic(times(1));
+        FileUtils.deleteQuietly(file);
+    }
+
     /**
      * Tests {@link StreamService#saveStream(String, InputStream, List)} for the case where it throws an exception during
-     * the persistence. In this case, we want to make sure we're properly setting the status as failed. We're also going
-     * to re-throw the exception as there's no unified policy in place for exception management...
+     * the persistence. In this case, we want to make sure we're properly setting the status as failed, cleaning up our
+     * partial version and leaving the previous one alone. We're also going to re-throw the exception as there's no
+     * unified policy in place for exception management...
      **/
     @Test
     public void testSaveStreamThrowsException() throws Exception
     {
+        final File file = new File("asdf");
+        doReturn(file).when(_streamService).createFileForVersion(anyString(), anyString());
+
         // Fail when we're trying to save.
-        doThrow(new RuntimeException("moo")).when(_streamService).createFileForId(anyString());
+        doThrow(new RuntimeException("moo")).when(_streamService).getFilterManager();
 
         // Pretend this file was previously successfully uploaded.
-        final StreamMetadata metadata = new StreamMetadata();
-        metadata.setStatus(StreamStatus.SUCCESSFUL);
+        final StreamMetadata metadata = createMetadata(StreamStatus.SUCCESSFUL, "v0");
 
         doReturn(metadata).when(_streamStateDao).findStreamMetadataById(anyString());
+        doReturn(new File("previous")).when(_streamService).resolveFileForStream(any(StreamMetadata.class));
 
         // Call our method.
         try
         {
-            _streamService.saveStream("asdf", mock(InputStream.class), Arrays.asList("curly", "shemp"));
+            _streamService.saveStream("test", mock(InputStream.class), Arrays.asList("curly", "shemp"));
             Assert.fail("Hm, there should be an exception here...");
         }
         catch (final RuntimeException ex)
@@ -362,22 +1102,39 @@ public class StreamServiceTestCase
 
         // Make sure it did what it should...
         verify(_streamService).saveStream(anyString(), any(InputStream.class), anyListOf(String.class));
+        verify(_streamService).saveStream(any(StreamMetadata.class), any(InputStream.class), anyListOf(String.class));
         verify(_streamService).getStreamStateDao();
+        verify(_streamService).resolveFileForStream(metadata);
         verify(_streamService).markStreamInProgress(any(StreamMetadata.class));
-        verify(_streamService).createFileForId(anyString());
+        verify(_streamService).createFileForVersion(eq("test"), anyString());
+        verify(_streamService).getFilterManager();
         verify(_streamService).markStreamFailure(any(StreamMetadata.class));
+        verify(_streamService).invalidateCachedStream("test");
+        verify(_streamService).getStreamCache();
+        verify(_streamService).getFilteredStreamCache();
+
+        // Failing or not, we should let go of the stream.
+        verify(_streamService, times(2)).getTransitionManager();
+        verify(_transitionManager).begin("test", Transition.WRITE);
+        verify(_transitionManager).end("test", Transition.WRITE);
 
         // We're going to call the stream status DAO to find the status for our ID.
-        verify(_streamStateDao).findStreamMetadataById("asdf");
+        verify(_streamStateDao).findStreamMetadataById("test");
 
-        // NO IO occurs because we failed prior to getting here.
-        verifyStatic(times(0));
-        FileUtils.openOutputStream(any(File.class));
+        // We got as far as opening our version, but nothing was copied. What we did write should be gone.
+        verifyStatic(times(1));
+        FileUtils.openOutputStream(file);
 
         verifyStatic(times(0));
         IOUtils.copyLarge(any(InputStream.class), any(OutputStream.class));
 
+        verifyStatic(times(1));
+        FileUtils.deleteQuietly(file);
+
         verifyNoMoreCollaboratingInteractions();
+
+        // We should still be pointing at the previous version.
+        Assert.assertThat(metadata.getContentVersion(), is("v0"));
     }
 
     /**
@@ -386,23 +1143,7 @@ public class StreamServiceTestCase
     @Test
     public void testDeleteStreamForSuccess() throws Exception
     {
-        // Pretend we've got the file on hand.
-        doReturn(StreamStatus.SUCCESSFUL).when(_streamService).getStatusForStreamById(anyString());
-
-        _streamService.deleteStream("asdf");
-
-        verify(_streamService).deleteStream("asdf");
-        verify(_streamService).getStatusForStreamById("asdf");
-        verify(_streamService).getStreamStateDao();
-        verify(_streamService).createFileForId("asdf");
-        verify(_streamService).getStreamStorageDirectory();
-
-        verify(_streamStateDao).deleteStreamMetadataById("asdf");
-
-        verifyStatic(times(1));
-        FileUtils.deleteQuietly(any(File.class));
-
-        verifyNoMoreCollaboratingInteractions();
+        doTestDeleteStream(StreamStatus.SUCCESSFUL);
     }
 
     /**
@@ -412,23 +1153,7 @@ public class StreamServiceTestCase
     @Test
     public void testDeleteStreamForFailure() throws Exception
     {
-        // Pretend we've got the file on hand.
-        doReturn(StreamStatus.FAILED).when(_streamService).getStatusForStreamById(anyString());
-
-        _streamService.deleteStream("asdf");
-
-        verify(_streamService).deleteStream("asdf");
-        verify(_streamService).getStatusForStreamById("asdf");
-        verify(_streamService).getStreamStateDao();
-        verify(_streamService).createFileForId("asdf");
-        verify(_streamService).getStreamStorageDirectory();
-
-        verify(_streamStateDao).deleteStreamMetadataById("asdf");
-
-        verifyStatic(times(1));
-        FileUtils.deleteQuietly(any(File.class));
-
-        verifyNoMoreCollaboratingInteractions();
+        doTestDeleteStream(StreamStatus.FAILED);
     }
 
     /**
@@ -438,35 +1163,33 @@ public class StreamServiceTestCase
     @Test
     public void testDeleteStreamForFileNotFound() throws Exception
     {
-        doReturn(StreamStatus.NOT_FOUND).when(_streamService).getStatusForStreamById(anyString());
-
-        _streamService.deleteStream("asdf");
-
-        verify(_streamService).deleteStream("asdf");
-        verify(_streamService).getStatusForStreamById("asdf");
-
-        verifyStatic(times(0));
-        FileUtils.forceDelete(any(File.class));
-
-        verifyNoMoreCollaboratingInteractions();
+        doTestDeleteStreamNoOp(StreamStatus.NOT_FOUND);
     }
 
     /**
-     * Tests {@link StreamService#deleteStream(String)} for the case where the file is busy. This should be pretty
-     * much a no-op.
+     * Tests {@link StreamService#deleteStream(String)} for the case where the metadata says the file is in progress,
+     * but nobody is actually writing it. That's left over from a write that never finished, so we should delete it.
      **/
     @Test
     public void testDeleteStreamForFileInProgress() throws Exception
     {
-        doReturn(StreamStatus.IN_PROGRESS).when(_streamService).getStatusForStreamById(anyString());
+        doTestDeleteStream(StreamStatus.IN_PROGRESS);
+    }
+
+    /**
+     * Tests {@link StreamService#deleteStream(String)} for the case where somebody is actually writing the stream. This
+     * should be a no-op.
+     **/
+    @Test
+    public void testDeleteStreamForConcurrentWriter() throws Exception
+    {
+        doReturn(false).when(_transitionManager).begin(anyString(), any(Transition.class));
 
         _streamService.deleteStream("asdf");
 
         verify(_streamService).deleteStream("asdf");
-        verify(_streamService).getStatusForStreamById("asdf");
-
-        verifyStatic(times(0));
-        FileUtils.forceDelete(any(File.class));
+        verify(_streamService).getTransitionManager();
+        verify(_transitionManager).begin("asdf", Transition.DELETE);
 
         verifyNoMoreCollaboratingInteractions();
     }
@@ -479,17 +1202,7 @@ public class StreamServiceTestCase
     public void testDeleteStreamForUnknownId() throws Exception
     {
         // This file, however, we do not know.
-        doReturn(StreamStatus.NOT_FOUND).when(_streamService).getStatusForStreamById(anyString());
-
-        _streamService.deleteStream("asdf");
-
-        verify(_streamService).deleteStream("asdf");
-        verify(_streamService).getStatusForStreamById("asdf");
-
-        verifyStatic(times(0));
-        FileUtils.forceDelete(any(File.class));
-
-        verifyNoMoreCollaboratingInteractions();
+        doTestDeleteStreamNoOp(StreamStatus.NOT_FOUND);
     }
 
     /**
@@ -508,6 +1221,23 @@ public class StreamServiceTestCase
         verifyNoMoreCollaboratingInteractions();
     }
 
+    /**
+     * Tests {@link StreamService#getMetadataForStreams(StreamMetadataCriteria, String, int)} to make sure we page through our DAO.
+     */
+    @Test
+    public void testGetMetadataForStreamsForPage() throws Exception
+    {
+        final StreamMetadataCriteria criteria = new StreamMetadataCriteria();
+        _streamService.getMetadataForStreams(criteria, "foo", 10);
+
+        verify(_streamService).getMetadataForStreams(criteria, "foo", 10);
+        verify(_streamService).getStreamStateDao();
+
+        verify(_streamStateDao).findStreamMetadata(criteria, "foo", 10);
+
+        verifyNoMoreCollaboratingInteractions();
+    }
+
     /**
      * Tests {@link StreamService#getMetadataForStreamById(String)} to make sure it does what we expect.
      **/
@@ -524,6 +1254,35 @@ public class StreamServiceTestCase
         verifyNoMoreCollaboratingInteractions();
     }
 
+    /**
+     * Tests {@link StreamService#getMetadataForStreamsByIds(Collection)}. We should look everything up at once, and hand
+     * back one entry per distinct ID, in order, with anything the DAO didn't find as {@link StreamStatus#NOT_FOUND}.
+     **/
+    @Test
+    public void testGetMetadataForStreamsByIds() throws Exception
+    {
+        final StreamMetadata bar = createMetadata(StreamStatus.SUCCESSFUL, "v1");
+        bar.setId("bar");
+
+        doReturn(Collections.singletonList(bar)).when(_streamStateDao).findStreamMetadataByIds(anyCollectionOf(String.class));
+        doCallRealMethod().when(_streamStateDao).createStreamMetadata(anyString(), any(StreamStatus.class));
+
+        final List<StreamMetadata> metadata = _streamService.getMetadataForStreamsByIds(Arrays.asList("foo", "bar", "foo"));
+
+        verify(_streamService).getMetadataForStreamsByIds(anyCollectionOf(String.class));
+        verify(_streamService).getStreamStateDao();
+
+        verify(_streamStateDao).findStreamMetadataByIds(new LinkedHashSet<>(Arrays.asList("foo", "bar")));
+        verify(_streamStateDao).createStreamMetadata("foo", StreamStatus.NOT_FOUND);
+
+        verifyNoMoreCollaboratingInteractions();
+
+        Assert.assertThat(metadata.size(), is(2));
+        Assert.assertThat(metadata.get(0).getId(), is("foo"));
+        Assert.assertThat(metadata.get(0).getStatus(), is(StreamStatus.NOT_FOUND));
+        Assert.assertThat(metadata.get(1), is(sameInstance(bar)));
+    }
+
     /**
      * Tests {@link StreamService#markStreamFailure(StreamMetadata)} to make sure it does what we expect.
      **/
@@ -534,21 +1293,26 @@ public class StreamServiceTestCase
         doCallRealMethod().when(_streamService).markStreamFailure(any(StreamMetadata.class));
 
         final StreamMetadata metadata = new StreamMetadata();
-        metadata.setStatus(StreamStatus.SUCCESSFUL);
+        metadata.setStatus(StreamStatus.IN_PROGRESS);
 
-        Assert.assertThat(metadata.getStatus(), is(StreamStatus.SUCCESSFUL));
+        doReturn(true).when(_streamStateDao).transitionStreamMetadata(any(StreamMetadata.class), any(StreamStatus.class));
 
-        _streamService.markStreamFailure(metadata);
+        Assert.assertThat(_streamService.markStreamFailure(metadata), is(true));
 
         verify(_streamService).markStreamFailure(metadata);
+        verify(_streamService).transitionStream(metadata, StreamStatus.FAILED, 0);
         verify(_streamService).getStreamStateDao();
 
-        verify(_streamStateDao).saveOrUpdateStreamMetadata(metadata);
+        // We should be moving the stream to failed, from wherever it was.
+        verify(_streamStateDao).transitionStreamMetadata(metadata, StreamStatus.FAILED);
 
-        verifyNoMoreCollaboratingInteractions();
+        verify(_streamService).getStatisticsTracker();
+        verify(_statisticsTracker).record(StreamStatus.IN_PROGRESS, 0, StreamStatus.FAILED, 0);
 
-        // We should have set the status to failed here.
-        Assert.assertThat(metadata.getStatus(), is(StreamStatus.FAILED));
+        verify(_streamService).getChangeFeed();
+        verify(_changeFeed).publish(metadata, StreamStatus.FAILED);
+
+        verifyNoMoreCollaboratingInteractions();
     }
 
     /**
@@ -566,20 +1330,29 @@ public class StreamServiceTestCase
         final File file = spy(new File("asdf"));
         doReturn(4096L).when(file).length();
 
-        Assert.assertThat(metadata.getStatus(), is(StreamStatus.IN_PROGRESS));
         Assert.assertThat(metadata.getFileSize(), is(0L));
 
-        _streamService.markStreamSuccessful(metadata, file);
+        doReturn(true).when(_streamStateDao).transitionStreamMetadata(any(StreamMetadata.class), any(StreamStatus.class));
+
+        Assert.assertThat(_streamService.markStreamSuccessful(metadata, file), is(true));
 
         verify(_streamService).markStreamSuccessful(metadata, file);
+        verify(_streamService).transitionStream(metadata, StreamStatus.SUCCESSFUL, 4096L);
         verify(_streamService).getStreamStateDao();
 
-        verify(_streamStateDao).saveOrUpdateStreamMetadata(metadata);
+        // We're going to move this to successful, with the file size of whatever our input file was.
+        verify(_streamStateDao).transitionStreamMetadata(metadata, StreamStatus.SUCCESSFUL);
+
+        // And count the bytes we've gained.
+        verify(_streamService).getStatisticsTracker();
+        verify(_statisticsTracker).record(StreamStatus.IN_PROGRESS, 0, StreamStatus.SUCCESSFUL, 4096L);
+
+        // And let anybody waiting on it know.
+        verify(_streamService).getChangeFeed();
+        verify(_changeFeed).publish(metadata, StreamStatus.SUCCESSFUL);
 
         verifyNoMoreCollaboratingInteractions();
 
-        // We're going to set this to successful, and the file size to whatever our input file was.
-        Assert.assertThat(metadata.getStatus(), is(StreamStatus.SUCCESSFUL));
         Assert.assertThat(metadata.getFileSize(), is(4096L));
     }
 
@@ -594,23 +1367,110 @@ public class StreamServiceTestCase
         final StreamMetadata metadata = new StreamMetadata();
         metadata.setStatus(StreamStatus.SUCCESSFUL);
 
-        Assert.assertThat(metadata.getStatus(), is(StreamStatus.SUCCESSFUL));
+        // Pretend somebody else got there first.
+        doReturn(false).when(_streamStateDao).transitionStreamMetadata(any(StreamMetadata.class), any(StreamStatus.class));
 
-        _streamService.markStreamInProgress(metadata);
+        Assert.assertThat(_streamService.markStreamInProgress(metadata), is(false));
 
         verify(_streamService).markStreamInProgress(metadata);
+        verify(_streamService).transitionStream(metadata, StreamStatus.IN_PROGRESS, 0);
+        verify(_streamService).getStreamStateDao();
+
+        // We lost, so there's nothing to count.
+        verify(_streamStateDao).transitionStreamMetadata(metadata, StreamStatus.IN_PROGRESS);
+
+        verifyNoMoreCollaboratingInteractions();
+    }
+
+    /**
+     * Provides a convenience method to test {@link StreamService#deleteStream(String)} for a stream that can be deleted.
+     * The metadata should go, and the current version should be retired.
+     *
+     * @param status The {@link StreamStatus} of the stream to delete.
+     */
+    private void doTestDeleteStream(final StreamStatus status) throws Exception
+    {
+        final StreamMetadata metadata = createMetadata(status, "v1");
+        final File file = new File("asdf");
+
+        doReturn(metadata).when(_streamStateDao).findStreamMetadataById(anyString());
+        doReturn(file).when(_streamService).resolveFileForStream(any(StreamMetadata.class));
+
+        _streamService.deleteStream("asdf");
+
+        verify(_streamService).deleteStream("asdf");
+        verify(_streamService, times(2)).getStreamStateDao();
+        verify(_streamService).deleteLegacyFileForId("asdf");
+        verify(_streamService).getStorageFanOutLevels();
+        verify(_streamService).resolveFileForStream(metadata);
+        verify(_streamService).getVersionTracker();
+        verify(_streamService).invalidateCachedStream("asdf");
+        verify(_streamService).getStreamCache();
+        verify(_streamService).getFilteredStreamCache();
+
+        verify(_streamStateDao).findStreamMetadataById("asdf");
+        verify(_streamStateDao).deleteStreamMetadataById("asdf");
+        verify(_versionTracker).retire(file);
+
+        verify(_streamService).getStatisticsTracker();
+        verify(_statisticsTracker).record(status, 0, StreamStatus.NOT_FOUND, 0);
+
+        verify(_streamService).getChangeFeed();
+        verify(_changeFeed).publish(metadata, StreamStatus.NOT_FOUND);
+
+        verify(_streamService, times(2)).getTransitionManager();
+        verify(_transitionManager).begin("asdf", Transition.DELETE);
+        verify(_transitionManager).end("asdf", Transition.DELETE);
+
+        verifyNoMoreCollaboratingInteractions();
+    }
+
+    /**
+     * Provides a convenience method to test {@link StreamService#deleteStream(String)} for a stream that can't be deleted.
+     *
+     * @param status The {@link StreamStatus} of the stream to (not) delete.
+     */
+    private void doTestDeleteStreamNoOp(final StreamStatus status) throws Exception
+    {
+        doReturn(createMetadata(status, null)).when(_streamStateDao).findStreamMetadataById(anyString());
+
+        _streamService.deleteStream("asdf");
+
+        verify(_streamService).deleteStream("asdf");
         verify(_streamService).getStreamStateDao();
+        verify(_streamStateDao).findStreamMetadataById("asdf");
 
-        verify(_streamStateDao).saveOrUpdateStreamMetadata(metadata);
+        verify(_streamService, times(2)).getTransitionManager();
+        verify(_transitionManager).begin("asdf", Transition.DELETE);
+        verify(_transitionManager).end("asdf", Transition.DELETE);
+
+        verifyStatic(times(0));
+        FileUtils.deleteQuietly(any(File.class));
 
         verifyNoMoreCollaboratingInteractions();
+    }
+
+    /**
+     * Provides a convenience method to create some {@link StreamMetadata}.
+     *
+     * @param status The {@link StreamStatus} of the stream.
+     * @param contentVersion The current version of the stream. May be null.
+     *
+     * @return A new {@link StreamMetadata}, for a stream called "test".
+     */
+    private StreamMetadata createMetadata(final StreamStatus status, final String contentVersion)
+    {
+        final StreamMetadata metadata = new StreamMetadata();
+
+        metadata.setId("test");
+        metadata.setStatus(status);
+        metadata.setContentVersion(contentVersion);
 
-        // We should have set the status to failed here.
-        Assert.assertThat(metadata.getStatus(), is(StreamStatus.IN_PROGRESS));
+        return metadata;
     }
 
     private void verifyNoMoreCollaboratingInteractions()
     {
-        verifyNoMoreInteractions(_streamService, _filterManager, _streamStateDao);
+        verifyNoMoreInteractions(_streamService, _filterManager, _streamStateDao, _versionTracker, _transitionManager, _statisticsTracker, _changeFeed);
     }
 }
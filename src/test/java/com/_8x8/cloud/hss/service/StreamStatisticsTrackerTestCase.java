@@ -0,0 +1,131 @@
+package com._8x8.cloud.hss.service;
+
+import com._8x8.cloud.hss.model.StreamStatistics;
+import com._8x8.cloud.hss.model.StreamStatus;
+import com._8x8.cloud.hss.persistence.IStreamStateDao;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests the {@link StreamStatisticsTracker} at the unit level.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamStatisticsTrackerTestCase
+{
+    /**
+     * Holds an instance of the class under test.
+     */
+    private StreamStatisticsTracker _statisticsTracker;
+
+    /**
+     * Holds a collaborating {@link IStreamStateDao} we can mock, to seed from.
+     */
+    private IStreamStateDao _streamStateDao;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _statisticsTracker = new StreamStatisticsTracker();
+        _streamStateDao = mock(IStreamStateDao.class);
+    }
+
+    /**
+     * Tests {@link StreamStatisticsTracker#seed(IStreamStateDao)}. We should take our counts from the metadata's
+     * aggregates, forgetting anything we'd counted before.
+     */
+    @Test
+    public void testSeed() throws Exception
+    {
+        final StreamStatistics seed = new StreamStatistics();
+        seed.setSuccessfulCount(1000);
+        seed.setFailedCount(1);
+        seed.setTotalBytes(10005);
+
+        doReturn(seed).when(_streamStateDao).getStreamStatistics();
+
+        // Anything we'd counted before should be forgotten.
+        _statisticsTracker.record(StreamStatus.NOT_FOUND, 0, StreamStatus.IN_PROGRESS, 0);
+
+        Assert.assertThat(_statisticsTracker.seed(_streamStateDao), is(1001L));
+
+        final StreamStatistics statistics = _statisticsTracker.getStatistics();
+        Assert.assertThat(statistics.getSuccessfulCount(), is(1000L));
+        Assert.assertThat(statistics.getFailedCount(), is(1L));
+        Assert.assertThat(statistics.getInProgressCount(), is(0L));
+        Assert.assertThat(statistics.getStreamCount(), is(1001L));
+        Assert.assertThat(statistics.getTotalBytes(), is(10005L));
+    }
+
+    /**
+     * Tests {@link StreamStatisticsTracker#seed(IStreamStateDao)} for the case where we can't read our metadata. We
+     * should leave our counts alone.
+     */
+    @Test
+    public void testSeedForFailure() throws Exception
+    {
+        doThrow(new SQLException("Nope")).when(_streamStateDao).getStreamStatistics();
+
+        _statisticsTracker.record(StreamStatus.NOT_FOUND, 0, StreamStatus.SUCCESSFUL, 42);
+
+        try
+        {
+            _statisticsTracker.seed(_streamStateDao);
+            Assert.fail("Expected our seed to fail.");
+        }
+        catch (final SQLException ex)
+        {
+            Assert.assertThat(_statisticsTracker.getCount(StreamStatus.SUCCESSFUL), is(1L));
+            Assert.assertThat(_statisticsTracker.getTotalBytes(), is(42L));
+        }
+    }
+
+    /**
+     * Tests {@link StreamStatisticsTracker#record(StreamStatus, long, StreamStatus, long)} through the life of a
+     * stream: created, uploaded, updated, failed and deleted.
+     */
+    @Test
+    public void testRecord() throws Exception
+    {
+        _statisticsTracker.record(StreamStatus.NOT_FOUND, 0, StreamStatus.IN_PROGRESS, 0);
+        assertCounts(0, 1, 0, 0);
+
+        _statisticsTracker.record(StreamStatus.IN_PROGRESS, 0, StreamStatus.SUCCESSFUL, 100);
+        assertCounts(1, 0, 0, 100);
+
+        // An update keeps the previous version around until it's done, so the bytes stay put.
+        _statisticsTracker.record(StreamStatus.SUCCESSFUL, 100, StreamStatus.IN_PROGRESS, 100);
+        assertCounts(0, 1, 0, 100);
+
+        _statisticsTracker.record(StreamStatus.IN_PROGRESS, 100, StreamStatus.SUCCESSFUL, 250);
+        assertCounts(1, 0, 0, 250);
+
+        _statisticsTracker.record(StreamStatus.SUCCESSFUL, 250, StreamStatus.FAILED, 250);
+        assertCounts(0, 0, 1, 250);
+
+        _statisticsTracker.record(StreamStatus.FAILED, 250, StreamStatus.NOT_FOUND, 0);
+        assertCounts(0, 0, 0, 0);
+
+        Assert.assertThat(_statisticsTracker.getCount(StreamStatus.NOT_FOUND), is(0L));
+    }
+
+    /**
+     * Provides a convenience method to check all of our counts at once.
+     */
+    private void assertCounts(final long successful, final long inProgress, final long failed, final long totalBytes)
+    {
+        Assert.assertThat(_statisticsTracker.getCount(StreamStatus.SUCCESSFUL), is(successful));
+        Assert.assertThat(_statisticsTracker.getCount(StreamStatus.IN_PROGRESS), is(inProgress));
+        Assert.assertThat(_statisticsTracker.getCount(StreamStatus.FAILED), is(failed));
+        Assert.assertThat(_statisticsTracker.getTotalBytes(), is(totalBytes));
+    }
+}
@@ -0,0 +1,205 @@
+package com._8x8.cloud.hss.service;
+
+import com._8x8.cloud.hss.service.StreamTransitionManager.Transition;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests the {@link StreamTransitionManager} at the unit level, including with a bunch of threads hammering on it.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamTransitionManagerTestCase
+{
+    /**
+     * Holds the number of threads to hammer with.
+     */
+    private static final int THREADS = 16;
+
+    /**
+     * Holds the number of transitions each thread attempts.
+     */
+    private static final int ITERATIONS = 20000;
+
+    /**
+     * Holds an instance of the class under test.
+     */
+    private StreamTransitionManager _transitionManager;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _transitionManager = new StreamTransitionManager();
+    }
+
+    /**
+     * Tests {@link StreamTransitionManager#begin(String, Transition)} and {@link StreamTransitionManager#end(String, Transition)}
+     * for the basic lifecycle of a single stream.
+     */
+    @Test
+    public void testBeginAndEnd() throws Exception
+    {
+        Assert.assertThat(_transitionManager.begin("id", Transition.WRITE), is(true));
+        Assert.assertThat(_transitionManager.getTransition("id"), is(Transition.WRITE));
+
+        // Nobody else gets in, whatever they want to do.
+        Assert.assertThat(_transitionManager.begin("id", Transition.WRITE), is(false));
+        Assert.assertThat(_transitionManager.begin("id", Transition.DELETE), is(false));
+
+        // But other streams are unaffected.
+        Assert.assertThat(_transitionManager.begin("other", Transition.DELETE), is(true));
+        Assert.assertThat(_transitionManager.getActiveTransitionCount(), is(2));
+
+        _transitionManager.end("id", Transition.WRITE);
+        _transitionManager.end("other", Transition.DELETE);
+
+        Assert.assertThat(_transitionManager.getTransition("id"), is(nullValue()));
+        Assert.assertThat(_transitionManager.getActiveTransitionCount(), is(0));
+        Assert.assertThat(_transitionManager.begin("id", Transition.DELETE), is(true));
+    }
+
+    /**
+     * Tests {@link StreamTransitionManager#end(String, Transition)} for a transition we never began. That's a bug, so we
+     * should hear about it, and not clobber whoever actually owns the stream.
+     */
+    @Test
+    public void testEndWithoutBegin() throws Exception
+    {
+        Assert.assertThat(_transitionManager.begin("id", Transition.WRITE), is(true));
+
+        try
+        {
+            _transitionManager.end("id", Transition.DELETE);
+            Assert.fail("Whoops, we should have caught an exception here.");
+        }
+        catch (final IllegalStateException ex)
+        {
+            Assert.assertThat(_transitionManager.getTransition("id"), is(Transition.WRITE));
+        }
+    }
+
+    /**
+     * Hammers a single stream from a bunch of threads. At no point should more than one of them be inside a transition,
+     * and somebody should have gotten some work done.
+     */
+    @Test
+    public void testContendedStream() throws Exception
+    {
+        final AtomicInteger inside = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final AtomicInteger wins = new AtomicInteger();
+
+        hammer(thread -> {
+            if (_transitionManager.begin("id", Transition.WRITE))
+            {
+                if (inside.incrementAndGet() > 1)
+                {
+                    overlaps.incrementAndGet();
+                }
+
+                wins.incrementAndGet();
+                inside.decrementAndGet();
+
+                _transitionManager.end("id", Transition.WRITE);
+            }
+        });
+
+        Assert.assertThat(overlaps.get(), is(0));
+        Assert.assertThat(wins.get(), is(greaterThan(0)));
+        Assert.assertThat(_transitionManager.getActiveTransitionCount(), is(0));
+    }
+
+    /**
+     * Hammers a different stream from each thread. Nobody should ever lose, since nobody is sharing.
+     */
+    @Test
+    public void testUncontendedStreams() throws Exception
+    {
+        final AtomicInteger losses = new AtomicInteger();
+
+        hammer(thread -> {
+            final String id = "id" + thread;
+
+            if (_transitionManager.begin(id, Transition.WRITE))
+            {
+                _transitionManager.end(id, Transition.WRITE);
+            }
+            else
+            {
+                losses.incrementAndGet();
+            }
+        });
+
+        Assert.assertThat(losses.get(), is(0));
+        Assert.assertThat(_transitionManager.getActiveTransitionCount(), is(0));
+    }
+
+    /**
+     * Provides a convenience method to run a given operation {@link #ITERATIONS} times on each of {@link #THREADS}
+     * threads, all starting at once.
+     *
+     * @param operation The operation to run, given the index of the thread running it.
+     */
+    private void hammer(final Operation operation) throws Exception
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<Void>> futures = new ArrayList<>();
+
+        try
+        {
+            for (int thread = 0; thread < THREADS; thread++)
+            {
+                final int index = thread;
+
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    start.await();
+
+                    for (int iteration = 0; iteration < ITERATIONS; iteration++)
+                    {
+                        operation.run(index);
+                    }
+
+                    return null;
+                }));
+            }
+
+            start.countDown();
+
+            // Surface any assertion errors or exceptions from our threads.
+            for (final Future<Void> future : futures)
+            {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Provides something to hammer with.
+     */
+    @FunctionalInterface
+    private interface Operation
+    {
+        void run(int thread) throws Exception;
+    }
+}
@@ -0,0 +1,156 @@
+package com._8x8.cloud.hss.service;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests the {@link StreamVersionTracker} at the unit level, against some real temp files.
+ *
+ * @author kog@epiphanic.org
+ * @since 10/17/2026
+ */
+public class StreamVersionTrackerTestCase
+{
+    /**
+     * Holds an instance of the class under test.
+     */
+    private StreamVersionTracker _versionTracker;
+
+    /**
+     * Holds a file standing in for a version of a stream.
+     */
+    private File _file;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        _versionTracker = new StreamVersionTracker();
+
+        _file = File.createTempFile("hss", "version");
+        _file.deleteOnExit();
+    }
+
+    /**
+     * Tests {@link StreamVersionTracker#retire(File)} for a version nobody is reading. It should go away immediately.
+     */
+    @Test
+    public void testRetireUnreferenced() throws Exception
+    {
+        _versionTracker.retire(_file);
+
+        Assert.assertThat(_file.exists(), is(false));
+    }
+
+    /**
+     * Tests {@link StreamVersionTracker#retire(File)} for a version that's being read. It should stick around until the
+     * last reader releases it, and nobody new should be able to acquire it in the meantime.
+     */
+    @Test
+    public void testRetireReferenced() throws Exception
+    {
+        Assert.assertThat(_versionTracker.acquire(_file), is(true));
+        Assert.assertThat(_versionTracker.acquire(_file), is(true));
+        Assert.assertThat(_versionTracker.getReferenceCount(_file), is(2));
+
+        _versionTracker.retire(_file);
+
+        Assert.assertThat(_file.exists(), is(true));
+        Assert.assertThat(_versionTracker.acquire(_file), is(false));
+
+        _versionTracker.release(_file);
+        Assert.assertThat(_file.exists(), is(true));
+
+        _versionTracker.release(_file);
+        Assert.assertThat(_file.exists(), is(false));
+        Assert.assertThat(_versionTracker.getReferenceCount(_file), is(0));
+    }
+
+    /**
+     * Tests {@link StreamVersionTracker#release(File)} for a version that's still current. It should be left alone, and
+     * we shouldn't keep tracking it.
+     */
+    @Test
+    public void testReleaseCurrent() throws Exception
+    {
+        Assert.assertThat(_versionTracker.acquire(_file), is(true));
+
+        _versionTracker.release(_file);
+
+        Assert.assertThat(_file.exists(), is(true));
+        Assert.assertThat(_versionTracker.getReferenceCount(_file), is(0));
+
+        // Releasing something we never acquired shouldn't blow up, or go negative.
+        _versionTracker.release(_file);
+        Assert.assertThat(_versionTracker.getReferenceCount(_file), is(0));
+    }
+
+    /**
+     * Tests {@link StreamVersionTracker#acquire(File)} and {@link StreamVersionTracker#release(File)} from a lot of
+     * readers at once, with the version retired part way through. Nobody who found it there should see it go while they
+     * hold it, and it should be gone once they're all done.
+     */
+    @Test
+    public void testConcurrentReaders() throws Exception
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final AtomicInteger acquired = new AtomicInteger();
+        final CountDownLatch halfway = new CountDownLatch(4000);
+        final List<Future<Boolean>> readers = new ArrayList<>();
+
+        try
+        {
+            for (int i = 0; i < 8; i++)
+            {
+                readers.add(executor.submit(() -> {
+                    boolean intact = true;
+
+                    for (int j = 0; j < 1000; j++)
+                    {
+                        if (_versionTracker.acquire(_file))
+                        {
+                            // Once it's gone we can still acquire it, and look again. But if it's there, it stays there.
+                            final boolean found = _file.exists();
+                            acquired.incrementAndGet();
+                            intact &= !found || _file.exists();
+                            _versionTracker.release(_file);
+                        }
+
+                        halfway.countDown();
+                    }
+
+                    return intact;
+                }));
+            }
+
+            Assert.assertThat(halfway.await(10, TimeUnit.SECONDS), is(true));
+            _versionTracker.retire(_file);
+
+            for (final Future<Boolean> reader : readers)
+            {
+                Assert.assertThat(reader.get(10, TimeUnit.SECONDS), is(true));
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        Assert.assertThat(acquired.get(), is(greaterThan(0)));
+        Assert.assertThat(_file.exists(), is(false));
+        Assert.assertThat(_versionTracker.getReferenceCount(_file), is(0));
+    }
+}